@@ -83,6 +83,22 @@ def run_jar_command(src_path, app_name, jvm=None, jva=None):
     return _run_cmd(src_path, command)
 
 
+def run_class_command(src_path, class_path, main_class, jvm=None, args=None):
+    if jvm is None:
+        jvm = default_jvm_opts
+    else:
+        jvm = default_jvm_opts + " " + " ".join(jvm)
+
+    if args is None:
+        args = ""
+    else:
+        args = " " + " ".join(args)
+
+    command = "java " + jvm + " -cp " + class_path + " " + main_class + args
+
+    return _run_cmd(src_path, command)
+
+
 def extract_from_tag(mfile, tag):
     mfile.seek(mfile.find(tag) + len(tag) + 1)
     return mfile.readline().decode("utf-8").split("<")[0]
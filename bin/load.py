@@ -0,0 +1,38 @@
+#!/usr/bin/python3
+import argparse
+import os
+import sys
+
+from lib import run_class_command, read_app_props
+
+FILE_PATH = os.path.dirname(os.path.realpath(__file__)) + "/.."
+POM_PATH = FILE_PATH + "/pom.xml"
+MAIN_CLASS = "app.tandv.services.loader.BulkLoader"
+
+
+def main():
+    parser = argparse.ArgumentParser()
+    parser.add_argument("-j", "--jvm-opts", nargs="*", help="JVM opts")
+    parser.add_argument("-t", "--threads", help="Threads to normalize the records with")
+    parser.add_argument("-b", "--batch-size", help="Books per insert batch")
+    parser.add_argument("-c", "--chunk-size", help="Records normalized at once")
+    parser.add_argument("files", nargs="+", help="Catalog exports to load, .csv or .json")
+    args = parser.parse_args()
+
+    jar_name = "./target/" + read_app_props(POM_PATH)
+
+    loader_args = []
+    if args.threads is not None:
+        loader_args += ["--threads", args.threads]
+    if args.batch_size is not None:
+        loader_args += ["--batch-size", args.batch_size]
+    if args.chunk_size is not None:
+        loader_args += ["--chunk-size", args.chunk_size]
+    loader_args += [os.path.abspath(file) for file in args.files]
+
+    return run_class_command(FILE_PATH, jar_name, MAIN_CLASS, args.jvm_opts, loader_args)
+
+
+if __name__ == '__main__':
+    rc = main()
+    sys.exit(rc)
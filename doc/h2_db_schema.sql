@@ -8,10 +8,14 @@ create table CONTRIBUTOR
 	ID LONG primary key,
   SHA256 VARCHAR(64) unique not null,
 	NAME VARCHAR(255) not null,
-  CATALOGUING VARCHAR(255) not null
+  CATALOGUING VARCHAR(255) not null,
+  COLLATION_KEY VARBINARY(1024)
 )
 ;
 
+create index CONTRIBUTOR_COLLATION_IDX on CONTRIBUTOR (COLLATION_KEY)
+;
+
 create table BOOK
 (
 	ID LONG primary key,
@@ -22,10 +26,17 @@ create table BOOK
 	YEAR VARCHAR(4),
 	LANGUAGE VARCHAR(5),
 	FORMAT VARCHAR(12) not null,
-	PAGES SMALLINT
+	PAGES SMALLINT,
+  COLLATION_KEY VARBINARY(1024)
 )
 ;
 
+create index BOOK_ISBN_IDX on BOOK (ISBN)
+;
+
+create index BOOK_COLLATION_IDX on BOOK (COLLATION_KEY)
+;
+
 create table BOOK_CONTRIBUTOR
 (
 	BOOK_ID LONG not null,
@@ -50,3 +61,9 @@ create table CONTRIBUTOR_ALIAS
 	on update cascade
 )
 ;
+
+-- Existing databases: the service fills in the keys of the records without one as it starts
+-- alter table CONTRIBUTOR add column if not exists COLLATION_KEY VARBINARY(1024);
+-- alter table BOOK add column if not exists COLLATION_KEY VARBINARY(1024);
+-- create index if not exists CONTRIBUTOR_COLLATION_IDX on CONTRIBUTOR (COLLATION_KEY);
+-- create index if not exists BOOK_COLLATION_IDX on BOOK (COLLATION_KEY);
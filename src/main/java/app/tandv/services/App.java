@@ -1,5 +1,6 @@
 package app.tandv.services;
 
+import app.tandv.services.configuration.VertxConfig;
 import app.tandv.services.data.entity.BookContributor;
 import app.tandv.services.data.entity.ContributorEntity;
 import app.tandv.services.data.entity.BookEntity;
@@ -10,6 +11,7 @@ import io.reactivex.disposables.Disposable;
 import io.vertx.config.ConfigRetrieverOptions;
 import io.vertx.config.ConfigStoreOptions;
 import io.vertx.core.DeploymentOptions;
+import io.vertx.core.VertxOptions;
 import io.vertx.core.json.JsonObject;
 import io.vertx.reactivex.config.ConfigRetriever;
 import io.vertx.reactivex.core.Promise;
@@ -35,11 +37,16 @@ public class App {
     private boolean started = false;
     private Disposable deployment;
 
+    // Only used to read the configuration, the actual instance is created from it
+    private static final VertxOptions BOOTSTRAP_OPTIONS = new VertxOptions()
+            .setEventLoopPoolSize(1)
+            .setWorkerPoolSize(1)
+            .setInternalBlockingPoolSize(1);
+
     private Vertx vertx;
 
     App() {
-        // Check this though. You are my favorite line
-        this.vertx = Vertx.vertx();
+        // The Vert.x instance is created once the configuration is read
     }
 
     public static void main(String[] args) {
@@ -54,11 +61,18 @@ public class App {
     void startUp() {
         LOGGER.info("Starting application {}", this.getClass().getName());
         long st = System.currentTimeMillis();
-        ConfigRetriever retriever = ConfigRetriever.create(vertx, configOptions());
+        Vertx bootstrap = Vertx.vertx(BOOTSTRAP_OPTIONS);
+        ConfigRetriever retriever = ConfigRetriever.create(bootstrap, configOptions());
         this.deployment = retriever.rxGetConfig()
                 .doOnError(cause -> LOGGER.error("Unable to retrieve configuration", cause))
+                .doFinally(() -> {
+                    retriever.close();
+                    bootstrap.close();
+                })
+                .map(this::createVertx)
                 .flatMap(config -> this.rxEntityManagerFactory(vertx, config))
                 .map(config -> new DeploymentOptions().setConfig(config))
+                // A single instance, the indexes, caches and change feed live in it; see VertxConfig
                 .flatMap(config -> vertx.rxDeployVerticle(new ServiceVerticle(this.emf), config))
                 .subscribe(
                         id -> {
@@ -83,6 +97,13 @@ public class App {
      * @return the options for the config retriever.
      */
     ConfigRetrieverOptions configOptions() {
+        return defaultConfigOptions();
+    }
+
+    /**
+     * @return the config stores of the application, also read by the tools running next to it
+     */
+    public static ConfigRetrieverOptions defaultConfigOptions() {
         List<ConfigStoreOptions> configStores = new ArrayList<>();
         configStores.add(new ConfigStoreOptions()
                 .setType("file")
@@ -118,6 +139,12 @@ public class App {
         }
     }
 
+    private JsonObject createVertx(JsonObject config) {
+        // Check this though. You are my favorite line
+        this.vertx = Vertx.vertx(VertxConfig.from(config));
+        return config;
+    }
+
     private Single<JsonObject> rxEntityManagerFactory(Vertx vertx, JsonObject config) {
         return vertx
                 .<EntityManagerFactory>rxExecuteBlocking(promise -> this.entityManagerFactory(promise, config))
@@ -144,9 +171,11 @@ public class App {
             this.deployment.dispose();
             LOGGER.debug("Deployment disposed");
         }
-        LOGGER.debug("Closing Vert.x");
-        vertx.close();
-        LOGGER.debug("Vert.x closed");
+        if (this.vertx != null) {
+            LOGGER.debug("Closing Vert.x");
+            this.vertx.close();
+            LOGGER.debug("Vert.x closed");
+        }
         LOGGER.info("Application finished");
         return rc;
     }
@@ -0,0 +1,83 @@
+package app.tandv.services.concurrency;
+
+import app.tandv.services.metrics.MetricsRegistry;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounds the amount of blocking database work admitted at any given time. Work is admitted in two tiers:
+ * <p>
+ * - Up to {@link Limit#getLimit()} units of work of any priority, which is what the database can run concurrently.
+ * - Above that, only {@link Priority#HIGH} work is admitted, up to {@code highPriorityHeadroom} more units.
+ * <p>
+ * Nothing waits for a permit: anything beyond is rejected immediately so the caller can answer with a 503 instead of
+ * waiting on the connection pool timeout. Work admitted above the limit runs as soon as a database worker is free. Which of reads or writes are high priority is a matter of configuration.
+ *
+ * @author vic on 2020-10-19
+ */
+public class AdmissionController {
+    public enum Priority {
+        HIGH,
+        LOW
+    }
+
+    private final Limit limit;
+    private final int highPriorityHeadroom;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejectedHigh;
+    private final LongAdder rejectedLow;
+
+    public AdmissionController(Limit limit, int highPriorityHeadroom, MetricsRegistry registry) {
+        this.limit = limit;
+        this.highPriorityHeadroom = Math.max(0, highPriorityHeadroom);
+        this.rejectedHigh = registry.counter(
+                "admission_rejected_total", "Units of work rejected by admission control", "priority", "high"
+        );
+        this.rejectedLow = registry.counter(
+                "admission_rejected_total", "Units of work rejected by admission control", "priority", "low"
+        );
+        registry.gauge("admission_in_flight", "Units of work admitted and not yet finished", this.inFlight::get)
+                .gauge("admission_limit", "Current concurrency limit", this.limit::getLimit);
+    }
+
+    /**
+     * @param priority of the work to admit
+     * @return a permit to release once the work is done, or empty if the work should be rejected
+     */
+    public Optional<Permit> tryAcquire(Priority priority) {
+        int allowed = priority == Priority.HIGH ? this.limit.getLimit() + this.highPriorityHeadroom : this.limit.getLimit();
+        int current;
+        do {
+            current = this.inFlight.get();
+            if (current >= allowed) {
+                (priority == Priority.HIGH ? this.rejectedHigh : this.rejectedLow).increment();
+                return Optional.empty();
+            }
+        } while (!this.inFlight.compareAndSet(current, current + 1));
+        return Optional.of(new Permit());
+    }
+
+    public int getInFlight() {
+        return this.inFlight.get();
+    }
+
+    /**
+     * Releasing a permit more than once has no effect, so it is safe to release it from every possible completion
+     * path of a request.
+     */
+    public final class Permit {
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Permit() {
+        }
+
+        public void release() {
+            if (this.released.compareAndSet(false, true)) {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+}
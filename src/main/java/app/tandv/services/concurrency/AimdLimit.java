@@ -0,0 +1,87 @@
+package app.tandv.services.concurrency;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Additive increase, multiplicative decrease limit driven by latency:
+ * <p>
+ * - If a sample takes longer than {@code tolerance} times the baseline for its key (or it was dropped), the database
+ * is past its throughput knee: the limit is multiplied by {@code backoff}.
+ * - Otherwise, if at least half the limit is in use, there is room to grow and the limit is increased by one.
+ * <p>
+ * Since our queries go from single row lookups to full catalog scans, a single baseline latency makes no sense. We
+ * keep one per key (the name of the query), tracking its minimum while slowly letting it drift upwards so that a
+ * single lucky sample does not pin it forever.
+ * <p>
+ * Decreases are spaced by a cooldown, otherwise all queries caught in the same congestion episode would collapse the
+ * limit to its minimum.
+ *
+ * @author vic on 2020-10-19
+ */
+public class AimdLimit implements Limit {
+    private static final double BASELINE_DRIFT = 1.001;
+    private static final long DECREASE_COOLDOWN_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoff;
+    private final double tolerance;
+    private final Map<String, AtomicLong> baselines = new ConcurrentHashMap<>();
+
+    private volatile int limit;
+    private long lastDecrease = System.nanoTime() - DECREASE_COOLDOWN_NANOS;
+
+    /**
+     * @param initialLimit to start with
+     * @param minLimit     the limit will never go below
+     * @param maxLimit     the limit will never go above
+     * @param backoff      ratio to apply on congestion, between 0.5 and 1
+     * @param tolerance    ratio over the baseline latency considered congestion, greater than 1
+     */
+    public AimdLimit(int initialLimit, int minLimit, int maxLimit, double backoff, double tolerance) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Invalid limit range [" + minLimit + ", " + maxLimit + "]");
+        }
+        if (backoff < 0.5 || backoff >= 1.0) {
+            throw new IllegalArgumentException("Backoff ratio must be in [0.5, 1)");
+        }
+        if (tolerance <= 1.0) {
+            throw new IllegalArgumentException("Tolerance must be greater than 1");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoff = backoff;
+        this.tolerance = tolerance;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    @Override
+    public int getLimit() {
+        return this.limit;
+    }
+
+    @Override
+    public void onSample(String key, long rtt, int inFlight, boolean dropped) {
+        long baseline = this.updateBaseline(key, rtt);
+        boolean congested = dropped || rtt > baseline * this.tolerance;
+        synchronized (this) {
+            if (congested) {
+                long now = System.nanoTime();
+                if (now - this.lastDecrease >= DECREASE_COOLDOWN_NANOS) {
+                    this.lastDecrease = now;
+                    this.limit = Math.max(this.minLimit, (int) (this.limit * this.backoff));
+                }
+            } else if (inFlight * 2 >= this.limit) {
+                this.limit = Math.min(this.maxLimit, this.limit + 1);
+            }
+        }
+    }
+
+    private long updateBaseline(String key, long rtt) {
+        AtomicLong baseline = this.baselines.computeIfAbsent(key, k -> new AtomicLong(rtt));
+        return baseline.updateAndGet(current -> Math.min(rtt, Math.max(current + 1, (long) (current * BASELINE_DRIFT))));
+    }
+}
@@ -0,0 +1,20 @@
+package app.tandv.services.concurrency;
+
+/**
+ * @author vic on 2020-10-19
+ */
+public class FixedLimit implements Limit {
+    private final int limit;
+
+    public FixedLimit(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be at least 1");
+        }
+        this.limit = limit;
+    }
+
+    @Override
+    public int getLimit() {
+        return this.limit;
+    }
+}
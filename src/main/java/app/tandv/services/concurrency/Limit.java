@@ -0,0 +1,24 @@
+package app.tandv.services.concurrency;
+
+/**
+ * Source of the concurrency limit applied by the {@link AdmissionController}.
+ *
+ * @author vic on 2020-10-19
+ */
+public interface Limit {
+    /**
+     * @return the number of units of work allowed to run concurrently
+     */
+    int getLimit();
+
+    /**
+     * To feed the limit with the outcome of a unit of work. Static limits ignore it.
+     *
+     * @param key      to tell apart different kinds of work, i.e. the name of a query
+     * @param rtt      time taken by the unit of work in nanoseconds
+     * @param inFlight units of work running when this one finished
+     * @param dropped  whether the unit of work failed because of overload, i.e. a connection timeout
+     */
+    default void onSample(String key, long rtt, int inFlight, boolean dropped) {
+    }
+}
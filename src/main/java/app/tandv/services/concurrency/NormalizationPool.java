@@ -0,0 +1,172 @@
+package app.tandv.services.concurrency;
+
+import io.reactivex.Single;
+import io.reactivex.SingleEmitter;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Bounded pool for the CPU bound part of writing records: title casing, cataloguing strings, collation keys and sha256
+ * signatures. The records of a batch are fanned out across the pool and the results come back in input order, each
+ * either the value normalized or the error of that record, so a batch can be reported on as a whole.
+ * <p>
+ * Kept apart from the event loop, which has to stay responsive, and from the worker pool, which is sized for blocking
+ * database work rather than for the cores of the machine.
+ *
+ * @author vic on 2020-10-19
+ */
+public class NormalizationPool implements AutoCloseable {
+    public static final String THREADS_PROPERTY = "data.normalization.threads";
+    public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+
+    private final ForkJoinPool pool;
+
+    /**
+     * @param threads to normalize with at most
+     */
+    public NormalizationPool(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Normalization threads must be positive");
+        }
+        this.pool = new ForkJoinPool(
+                threads,
+                pool -> {
+                    ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    thread.setName("normalization-" + thread.getPoolIndex());
+                    return thread;
+                },
+                null,
+                false
+        );
+    }
+
+    /**
+     * @return the maximum number of records normalized at the same time
+     */
+    public int getThreads() {
+        return this.pool.getParallelism();
+    }
+
+    /**
+     * @param inputs     to normalize
+     * @param normalizer of each input, called from the threads of the pool; its runtime exceptions are the error of
+     *                   the input
+     * @param <I>        type of the inputs
+     * @param <O>        type of the values normalized
+     * @return the results, one per input and in the same order
+     */
+    public <I, O> CompletableFuture<List<Normalized<O>>> submit(
+            List<I> inputs,
+            Function<? super I, ? extends O> normalizer
+    ) {
+        // Streams started from a task of the pool run in it
+        return CompletableFuture.supplyAsync(
+                () -> IntStream
+                        .range(0, inputs.size())
+                        .parallel()
+                        .mapToObj(index -> Normalized.<I, O>of(index, inputs.get(index), normalizer))
+                        .collect(Collectors.toList()),
+                this.pool
+        );
+    }
+
+    /**
+     * @param inputs     to normalize
+     * @param normalizer of each input, see {@link #submit(List, Function)}
+     * @param <I>        type of the inputs
+     * @param <O>        type of the values normalized
+     * @return a {@link Single} with the results in input order, completed in the calling context
+     */
+    public <I, O> Single<List<Normalized<O>>> rxNormalize(
+            List<I> inputs,
+            Function<? super I, ? extends O> normalizer
+    ) {
+        return Single.defer(() -> {
+            Context context = Vertx.currentContext();
+            return Single.<List<Normalized<O>>>create(emitter -> this
+                    .<I, O>submit(inputs, normalizer)
+                    .whenComplete((results, error) -> {
+                        if (context == null) {
+                            complete(emitter, results, error);
+                        } else {
+                            context.runOnContext(ignored -> complete(emitter, results, error));
+                        }
+                    }));
+        });
+    }
+
+    @Override
+    public void close() {
+        this.pool.shutdown();
+    }
+
+    private static <O> void complete(
+            SingleEmitter<List<Normalized<O>>> emitter,
+            List<Normalized<O>> results,
+            Throwable error
+    ) {
+        if (error == null) {
+            emitter.onSuccess(results);
+        } else {
+            emitter.onError(error);
+        }
+    }
+
+    /**
+     * Result of normalizing one input: either its value or the error that prevented it.
+     *
+     * @param <O> type of the value
+     */
+    public static final class Normalized<O> {
+        private final int index;
+        private final O value;
+        private final RuntimeException error;
+
+        private Normalized(int index, O value, RuntimeException error) {
+            this.index = index;
+            this.value = value;
+            this.error = error;
+        }
+
+        private static <I, O> Normalized<O> of(int index, I input, Function<? super I, ? extends O> normalizer) {
+            try {
+                return new Normalized<>(index, normalizer.apply(input), null);
+            } catch (RuntimeException exception) {
+                return new Normalized<>(index, null, exception);
+            }
+        }
+
+        /**
+         * @return position of the input, from 0
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return the value normalized, null if the input was rejected
+         */
+        public O getValue() {
+            return value;
+        }
+
+        /**
+         * @return the reason the input was rejected, null if it was normalized
+         */
+        public RuntimeException getError() {
+            return error;
+        }
+
+        public boolean isValid() {
+            return error == null;
+        }
+    }
+}
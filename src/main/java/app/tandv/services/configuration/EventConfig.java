@@ -10,17 +10,14 @@ public final class EventConfig {
 
     // Plumbing keys: aka those that the verticles use to handle stuff
     public static final String EVENT = "event";
-    public static final String DISPOSABLES = "disposables";
-    public static final String STATUS = "status";
     public static final String UID = "uid";
-    public static final String ST = "st";
-    public static final String CONTENT = "content";
-    public static final String ENTITY_MANAGER = "em";
+    public static final String PERSISTENCE = "persistence";
 
     // Entity related keys: aka those used by the database entities
     public static final String ID = "id";
     public static final String SHA_256 = "sha256";
     public static final String CATALOGUING = "cataloguing";
+    public static final String COLLATION_KEY = "collation_key";
 
     // Contributor fields
     public static final String NAME = "name";
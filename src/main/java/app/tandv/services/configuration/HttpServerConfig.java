@@ -0,0 +1,112 @@
+package app.tandv.services.configuration;
+
+import io.vertx.core.http.Http2Settings;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.JksOptions;
+import io.vertx.core.net.SelfSignedCertificate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+/**
+ * Builds the options of the http server from the application config.
+ * <p>
+ * Responses are compressed with gzip or deflate when the client accepts it. The full catalog listings are served
+ * already compressed from {@link app.tandv.services.data.catalog.CatalogCache} and are not compressed again.
+ * <p>
+ * HTTP/2 is available in two flavours:
+ * <p>
+ * - Over TLS, negotiated with ALPN, when {@code http.ssl} is enabled. Without a key store configured the server uses
+ * a self signed certificate, which is only good for testing.
+ * - In clear text (h2c), either upgrading an HTTP/1.1 connection or with prior knowledge. Vert.x accepts this on any
+ * server without TLS, it can only be turned off for the whole JVM with {@code -Dvertx.disableH2c=true}.
+ * <p>
+ * TCP fast open only takes effect with the native transport, see {@link VertxConfig}. The idle timeout
+ * is in seconds, 0 keeps idle connections open forever.
+ *
+ * @author vic on 2020-10-19
+ */
+public final class HttpServerConfig {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HttpServerConfig.class);
+
+    public static final String COMPRESSION_PROPERTY = "http.compression";
+    public static final String COMPRESSION_LEVEL_PROPERTY = "http.compression.level";
+    public static final String SSL_PROPERTY = "http.ssl";
+    public static final String KEY_STORE_PATH_PROPERTY = "http.ssl.key-store.path";
+    public static final String KEY_STORE_PASSWORD_PROPERTY = "http.ssl.key-store.password";
+    public static final String ALPN_PROPERTY = "http.alpn";
+    public static final String MAX_CONCURRENT_STREAMS_PROPERTY = "http.http2.max-concurrent-streams";
+    public static final String INITIAL_WINDOW_SIZE_PROPERTY = "http.http2.initial-window-size";
+    public static final String CONNECTION_WINDOW_SIZE_PROPERTY = "http.http2.connection-window-size";
+    public static final String TCP_NO_DELAY_PROPERTY = "http.tcp.no-delay";
+    public static final String TCP_FAST_OPEN_PROPERTY = "http.tcp.fast-open";
+    public static final String ACCEPT_BACKLOG_PROPERTY = "http.accept-backlog";
+    public static final String IDLE_TIMEOUT_PROPERTY = "http.idle-timeout";
+
+    private HttpServerConfig() {
+        // To prevent instantiation
+    }
+
+    /**
+     * @param config of the application
+     * @return the options for the http server
+     */
+    public static HttpServerOptions from(JsonObject config) {
+        HttpServerOptions options = new HttpServerOptions()
+                .setTcpNoDelay(config.getBoolean(TCP_NO_DELAY_PROPERTY, HttpServerOptions.DEFAULT_TCP_NO_DELAY))
+                .setTcpFastOpen(config.getBoolean(TCP_FAST_OPEN_PROPERTY, HttpServerOptions.DEFAULT_TCP_FAST_OPEN))
+                .setAcceptBacklog(config.getInteger(ACCEPT_BACKLOG_PROPERTY, HttpServerOptions.DEFAULT_ACCEPT_BACKLOG))
+                .setIdleTimeout(config.getInteger(IDLE_TIMEOUT_PROPERTY, HttpServerOptions.DEFAULT_IDLE_TIMEOUT))
+                .setCompressionSupported(config.getBoolean(COMPRESSION_PROPERTY, true))
+                .setCompressionLevel(config.getInteger(COMPRESSION_LEVEL_PROPERTY, HttpServerOptions.DEFAULT_COMPRESSION_LEVEL))
+                .setInitialSettings(new Http2Settings()
+                        .setMaxConcurrentStreams(config.getLong(
+                                MAX_CONCURRENT_STREAMS_PROPERTY,
+                                HttpServerOptions.DEFAULT_INITIAL_SETTINGS_MAX_CONCURRENT_STREAMS
+                        ))
+                        .setInitialWindowSize(config.getInteger(
+                                INITIAL_WINDOW_SIZE_PROPERTY,
+                                Http2Settings.DEFAULT_INITIAL_WINDOW_SIZE
+                        ))
+                )
+                .setHttp2ConnectionWindowSize(config.getInteger(
+                        CONNECTION_WINDOW_SIZE_PROPERTY,
+                        HttpServerOptions.DEFAULT_HTTP2_CONNECTION_WINDOW_SIZE
+                ));
+        if (config.getBoolean(SSL_PROPERTY, false)) {
+            options.setSsl(true)
+                    .setUseAlpn(config.getBoolean(ALPN_PROPERTY, true))
+                    .setAlpnVersions(Arrays.asList(HttpVersion.HTTP_2, HttpVersion.HTTP_1_1));
+            String keyStore = config.getString(KEY_STORE_PATH_PROPERTY);
+            if (keyStore != null) {
+                options.setKeyStoreOptions(new JksOptions()
+                        .setPath(keyStore)
+                        .setPassword(config.getString(KEY_STORE_PASSWORD_PROPERTY))
+                );
+            } else {
+                LOGGER.warn("No key store configured, using a self signed certificate");
+                options.setKeyCertOptions(SelfSignedCertificate.create().keyCertOptions());
+            }
+        }
+        return options;
+    }
+
+    /**
+     * @param options the http server was created with
+     * @return a one line description of the options for the startup log
+     */
+    public static String describe(HttpServerOptions options) {
+        return "ssl=" + options.isSsl()
+                + ", alpn=" + options.isUseAlpn()
+                + ", compression=" + (options.isCompressionSupported() ? options.getCompressionLevel() : "off")
+                + ", h2 streams=" + options.getInitialSettings().getMaxConcurrentStreams()
+                + ", h2 window=" + options.getInitialSettings().getInitialWindowSize()
+                + ", tcpNoDelay=" + options.isTcpNoDelay()
+                + ", tcpFastOpen=" + options.isTcpFastOpen()
+                + ", backlog=" + options.getAcceptBacklog()
+                + ", idleTimeout=" + options.getIdleTimeout() + " " + options.getIdleTimeoutUnit().name().toLowerCase();
+    }
+}
@@ -5,6 +5,8 @@ package app.tandv.services.configuration;
  */
 public final class MediaTypes {
     public static final String APPLICATION_JSON = "application/json";
+    public static final String PROMETHEUS_TEXT = "text/plain; version=0.0.4; charset=utf-8";
+    public static final String EVENT_STREAM = "text/event-stream";
 
     // PENDING: perhaps add some media type for each one of the resources?
 
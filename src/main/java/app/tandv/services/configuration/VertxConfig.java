@@ -0,0 +1,53 @@
+package app.tandv.services.configuration;
+
+import io.vertx.core.VertxOptions;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Builds the options of the Vert.x instance from the application config.
+ * <p>
+ * The native transport (epoll on linux) is preferred by default, Vert.x falls back to NIO if it is not available. It
+ * is required for some of the TCP options of the http server, see {@link HttpServerConfig}.
+ * <p>
+ * The size of the event loop pool is left to Vert.x: a single {@link app.tandv.services.verticle.ServiceVerticle} is
+ * deployed, since the indexes, caches and change feed live in it, so the http server runs on one event loop whatever
+ * the size of the pool.
+ *
+ * @author vic on 2020-10-19
+ */
+public final class VertxConfig {
+    public static final String WORKER_POOL_SIZE_PROPERTY = "vertx.worker-pool-size";
+    public static final String PREFER_NATIVE_TRANSPORT_PROPERTY = "vertx.prefer-native-transport";
+
+    private VertxConfig() {
+        // To prevent instantiation
+    }
+
+    /**
+     * @param config of the application
+     * @return the options for the Vert.x instance
+     */
+    public static VertxOptions from(JsonObject config) {
+        return new VertxOptions()
+                .setWorkerPoolSize(getWorkerPoolSize(config))
+                .setPreferNativeTransport(config.getBoolean(PREFER_NATIVE_TRANSPORT_PROPERTY, true));
+    }
+
+    /**
+     * @param config of the application
+     * @return the size of the worker pool, for blocking work other than the database queries
+     */
+    public static int getWorkerPoolSize(JsonObject config) {
+        return config.getInteger(WORKER_POOL_SIZE_PROPERTY, VertxOptions.DEFAULT_WORKER_POOL_SIZE);
+    }
+
+    /**
+     * @param options         the Vert.x instance was created with
+     * @param nativeTransport whether the native transport is in use
+     * @return a one line description of the options for the startup log
+     */
+    public static String describe(VertxOptions options, boolean nativeTransport) {
+        return "workers=" + options.getWorkerPoolSize()
+                + ", transport=" + (nativeTransport ? "native" : "nio");
+    }
+}
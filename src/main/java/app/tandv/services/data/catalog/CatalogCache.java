@@ -0,0 +1,124 @@
+package app.tandv.services.data.catalog;
+
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.core.buffer.Buffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the last encoded payload of the full catalog listings, along with its gzip compressed bytes, for as long as
+ * the {@link CatalogVersion} they were read at is the current one.
+ * <p>
+ * Compression happens once per version, from a worker thread as soon as the payload is cached, instead of once per
+ * response. Until it is done the payload is served as is, so no request waits on the event loop for the whole catalog
+ * to be compressed.
+ *
+ * @author vic on 2020-10-19
+ */
+public class CatalogCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CatalogCache.class);
+
+    private final Vertx vertx;
+    private final CatalogVersion version;
+    private final int compressionLevel;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * @param vertx            to compress the payloads in the worker pool
+     * @param version          of the catalog
+     * @param compressionLevel for gzip, from 1 (fastest) to 9 (smallest)
+     */
+    public CatalogCache(Vertx vertx, CatalogVersion version, int compressionLevel) {
+        this.vertx = vertx;
+        this.version = version;
+        this.compressionLevel = compressionLevel;
+    }
+
+    public CatalogVersion getVersion() {
+        return version;
+    }
+
+    /**
+     * @param key of the payload
+     * @return the payload if it was read at the current version of the catalog
+     */
+    public Optional<Entry> get(String key) {
+        Entry entry = this.entries.get(key);
+        return entry != null && entry.version == this.version.current() ? Optional.of(entry) : Optional.empty();
+    }
+
+    /**
+     * @param key     of the payload
+     * @param version of the catalog the payload was read at, before running the query
+     * @param json    payload
+     * @return the entry for the payload, which is only kept, and compressed, if the version is still the current one
+     */
+    public Entry put(String key, long version, String json) {
+        Entry entry = new Entry(version, json);
+        if (version == this.version.current()) {
+            this.entries.put(key, entry);
+            this.vertx
+                    .rxExecuteBlocking(promise -> {
+                        entry.gzipped = Buffer.buffer(gzip(json, this.compressionLevel));
+                        promise.complete();
+                    }, false)
+                    .subscribe(
+                            done -> {
+                            },
+                            error -> LOGGER.error("Unable to compress catalog payload", error)
+                    );
+        }
+        return entry;
+    }
+
+    private static byte[] gzip(String json, int level) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, bytes.length / 4));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out) {
+            {
+                this.def.setLevel(level);
+            }
+        }) {
+            gzip.write(bytes);
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        return out.toByteArray();
+    }
+
+    public static final class Entry {
+        private final long version;
+        private final String json;
+        // set once compressed
+        private volatile Buffer gzipped;
+
+        private Entry(long version, String json) {
+            this.version = version;
+            this.json = json;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public String getJson() {
+            return json;
+        }
+
+        /**
+         * @return the gzip compressed bytes of the payload, null until they are ready
+         */
+        public Buffer getGzipped() {
+            return gzipped;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package app.tandv.services.data.catalog;
+
+import app.tandv.services.data.entity.LibraryEntity;
+
+/**
+ * An entity created or updated by a request, handed to the {@link CatalogListener}s once committed.
+ *
+ * @author vic on 2020-10-19
+ */
+public final class CatalogChange {
+    public enum Kind {
+        CREATED, UPDATED;
+
+        @Override
+        public String toString() {
+            return this.name().toLowerCase();
+        }
+    }
+
+    private final Kind kind;
+    private final LibraryEntity<?> entity;
+
+    public CatalogChange(Kind kind, LibraryEntity<?> entity) {
+        this.kind = kind;
+        this.entity = entity;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public LibraryEntity<?> getEntity() {
+        return entity;
+    }
+}
@@ -0,0 +1,21 @@
+package app.tandv.services.data.catalog;
+
+import app.tandv.services.data.entity.BookEntity;
+
+import java.util.List;
+
+/**
+ * In memory index over the catalog, loaded from the database when the service starts and kept up to date with the
+ * changes committed afterwards.
+ *
+ * @author vic on 2020-10-19
+ */
+public interface CatalogIndex extends CatalogListener {
+    /**
+     * Called once, from a worker thread, before the service starts listening; the entity manager the books were read
+     * with is still open.
+     *
+     * @param books in the database, with their contributors
+     */
+    void load(List<BookEntity> books);
+}
@@ -0,0 +1,18 @@
+package app.tandv.services.data.catalog;
+
+import java.util.List;
+
+/**
+ * Notified on the event loop of the request, after its transaction is committed and the {@link CatalogVersion} bumped,
+ * while the entity manager is still open so lazy associations of the entities can be read.
+ *
+ * @author vic on 2020-10-19
+ */
+@FunctionalInterface
+public interface CatalogListener {
+    /**
+     * @param version of the catalog after the commit
+     * @param changes committed, in the order they were made
+     */
+    void committed(long version, List<CatalogChange> changes);
+}
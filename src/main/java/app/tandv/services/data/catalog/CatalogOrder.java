@@ -0,0 +1,60 @@
+package app.tandv.services.data.catalog;
+
+import app.tandv.services.data.entity.LibraryEntity;
+import app.tandv.services.util.CollationKeys;
+
+import java.util.Arrays;
+
+/**
+ * Order of the entities in the indexes, the same as the one of the database listings: by collation key, then by id for
+ * entities with the same key.
+ *
+ * @author vic on 2020-10-19
+ */
+final class CatalogOrder {
+    private CatalogOrder() {
+    }
+
+    /**
+     * @return the collation key of the entity, computed from its cataloguing string if it was not stored
+     */
+    static byte[] key(LibraryEntity<?> entity) {
+        byte[] key = entity.getCollationKey();
+        return key == null ? CollationKeys.of(entity.getCataloguing()) : key;
+    }
+
+    /**
+     * @param ordinals of the entities, sorted in place
+     * @param size     number of ordinals to sort from the start of the array
+     * @param keys     collation keys by ordinal
+     * @param ids      ids by ordinal
+     */
+    static void sort(int[] ordinals, int size, byte[][] keys, long[] ids) {
+        sort(ordinals, size, 0, keys, ids);
+    }
+
+    /**
+     * Values with the same ordinal keep their relative order.
+     *
+     * @param values with the ordinal of an entity in their high bits, sorted in place
+     * @param size   number of values to sort from the start of the array
+     * @param shift  of the values to get the ordinal
+     * @param keys   collation keys by ordinal
+     * @param ids    ids by ordinal
+     */
+    static void sort(int[] values, int size, int shift, byte[][] keys, long[] ids) {
+        Integer[] boxed = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            boxed[i] = values[i];
+        }
+        Arrays.sort(boxed, (a, b) -> compare(keys, ids, a >>> shift, b >>> shift));
+        for (int i = 0; i < size; i++) {
+            values[i] = boxed[i];
+        }
+    }
+
+    static int compare(byte[][] keys, long[] ids, int a, int b) {
+        int order = CollationKeys.compare(keys[a], keys[b]);
+        return order != 0 ? order : Long.compare(ids[a], ids[b]);
+    }
+}
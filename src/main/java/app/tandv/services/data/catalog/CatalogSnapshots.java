@@ -0,0 +1,279 @@
+package app.tandv.services.data.catalog;
+
+import app.tandv.services.data.entity.BookEntity;
+import app.tandv.services.data.entity.ContributorEntity;
+import app.tandv.services.data.entity.LibraryEntity;
+import app.tandv.services.metrics.MetricsRegistry;
+import io.reactivex.Completable;
+import io.vertx.core.json.JsonArray;
+import io.vertx.reactivex.core.Vertx;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the full catalog listings to files, tagged with the {@link CatalogVersion} they were read at, so they can be
+ * served with {@code sendFile} and never go through the heap.
+ * <p>
+ * A new snapshot is written from a worker thread shortly after every commit, bursts of commits within
+ * {@code catalog.snapshot.delay} milliseconds being written once. The snapshot of the previous version is kept until
+ * the next one replaces it, since it may still be being sent.
+ *
+ * @author vic on 2020-10-19
+ */
+public class CatalogSnapshots implements CatalogListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CatalogSnapshots.class);
+
+    public static final String DIRECTORY_PROPERTY = "catalog.snapshot.directory";
+    public static final String GZIP_PROPERTY = "catalog.snapshot.gzip";
+    public static final String DELAY_PROPERTY = "catalog.snapshot.delay";
+    public static final boolean DEFAULT_GZIP = true;
+    // in milliseconds
+    public static final long DEFAULT_DELAY = 100L;
+
+    public static final String BOOKS = "books";
+    public static final String CONTRIBUTORS = "contributors";
+
+    private static final String JSON_EXTENSION = ".json";
+    private static final String GZIP_EXTENSION = ".json.gz";
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+
+    private final Vertx vertx;
+    private final EntityManagerFactory entityManagerFactory;
+    private final CatalogVersion version;
+    private final Path directory;
+    private final boolean gzip;
+    private final int compressionLevel;
+    private final long delay;
+
+    private final Map<String, Snapshot> current = new ConcurrentHashMap<>();
+    private final Map<String, Snapshot> retired = new ConcurrentHashMap<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicLong written = new AtomicLong(-1L);
+
+    /**
+     * @param vertx                to run the writes in the worker pool
+     * @param entityManagerFactory to read the catalog with
+     * @param version              of the catalog
+     * @param directory            to write the snapshots to, snapshots are disabled if null
+     * @param gzip                 true to also write the gzip compressed snapshots
+     * @param compressionLevel     for gzip, from 1 (fastest) to 9 (smallest)
+     * @param delay                in milliseconds from a commit to writing the snapshot
+     * @param registry             to report the version of the last snapshot written
+     */
+    public CatalogSnapshots(
+            Vertx vertx,
+            EntityManagerFactory entityManagerFactory,
+            CatalogVersion version,
+            String directory,
+            boolean gzip,
+            int compressionLevel,
+            long delay,
+            MetricsRegistry registry
+    ) {
+        this.vertx = vertx;
+        this.entityManagerFactory = entityManagerFactory;
+        this.version = version;
+        this.directory = directory == null ? null : Paths.get(directory);
+        this.gzip = gzip;
+        this.compressionLevel = compressionLevel;
+        this.delay = delay;
+        registry.gauge(
+                "catalog_snapshot_version",
+                "Catalog version of the last snapshot written, -1 if none",
+                this.written::get
+        );
+    }
+
+    public boolean isEnabled() {
+        return this.directory != null;
+    }
+
+    /**
+     * Removes the snapshots left by previous runs, whose versions mean nothing to this one, and writes the first one.
+     *
+     * @return completed once the first snapshot is written, right away if disabled
+     */
+    public Completable start() {
+        if (!this.isEnabled()) {
+            return Completable.complete();
+        }
+        return this.vertx
+                .rxExecuteBlocking(promise -> {
+                    try {
+                        Files.createDirectories(this.directory);
+                        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory, this::isSnapshotFile)) {
+                            for (Path file : files) {
+                                Files.deleteIfExists(file);
+                            }
+                        }
+                    } catch (IOException exception) {
+                        throw new UncheckedIOException(exception);
+                    }
+                    this.write();
+                    promise.complete();
+                })
+                .ignoreElement();
+    }
+
+    @Override
+    public void committed(long version, List<CatalogChange> changes) {
+        if (this.isEnabled() && this.scheduled.compareAndSet(false, true)) {
+            this.vertx.setTimer(this.delay, timer -> this.vertx
+                    .rxExecuteBlocking(promise -> {
+                        // Commits from here on need a new snapshot
+                        this.scheduled.set(false);
+                        this.write();
+                        promise.complete();
+                    })
+                    .subscribe(
+                            done -> {
+                            },
+                            error -> LOGGER.error("Unable to write catalog snapshot", error)
+                    ));
+        }
+    }
+
+    /**
+     * @param key of the listing, {@link #BOOKS} or {@link #CONTRIBUTORS}
+     * @return the snapshot of the listing if it was read at the current version of the catalog
+     */
+    public Optional<Snapshot> get(String key) {
+        Snapshot snapshot = this.current.get(key);
+        return snapshot != null && snapshot.version == this.version.current()
+                ? Optional.of(snapshot)
+                : Optional.empty();
+    }
+
+    private void write() {
+        // Read before the queries, so a write committed while they run makes the snapshot stale right away
+        long version = this.version.current();
+        EntityManager entityManager = this.entityManagerFactory.createEntityManager();
+        try {
+            this.write(BOOKS, version, this.read(entityManager, BookEntity.class));
+            this.write(CONTRIBUTORS, version, this.read(entityManager, ContributorEntity.class));
+        } finally {
+            entityManager.close();
+        }
+        this.written.set(version);
+        LOGGER.debug("Catalog snapshot written for version {}", version);
+    }
+
+    private <T extends LibraryEntity<T>> String read(EntityManager entityManager, Class<T> type) {
+        JsonArray result = new JsonArray();
+        entityManager
+                .createNamedQuery(type.getSimpleName() + ".findAll", type)
+                .getResultList()
+                .forEach(entity -> result.add(entity.toJson()));
+        return result.encode();
+    }
+
+    private void write(String key, long version, String json) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        Path file = this.directory.resolve(key + "-" + version + JSON_EXTENSION);
+        Path gzipped = this.gzip ? this.directory.resolve(key + "-" + version + GZIP_EXTENSION) : null;
+        try {
+            this.writeAtomically(file, bytes, false);
+            if (gzipped != null) {
+                this.writeAtomically(gzipped, bytes, true);
+            }
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+
+        Snapshot snapshot = new Snapshot(version, file.toString(), gzipped == null ? null : gzipped.toString());
+        Snapshot previous = this.current.put(key, snapshot);
+        Snapshot replaced = previous == null ? null : this.retired.put(key, previous);
+        if (replaced != null && replaced.version != version) {
+            replaced.delete();
+        }
+    }
+
+    /**
+     * Files are written under a temporary name and then moved, so a file with a snapshot name is always complete.
+     */
+    private void writeAtomically(Path file, byte[] bytes, boolean compress) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + TEMPORARY_EXTENSION);
+        try (OutputStream out = this.open(temporary, compress)) {
+            out.write(bytes);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private OutputStream open(Path file, boolean compress) throws IOException {
+        OutputStream out = Files.newOutputStream(file);
+        if (!compress) {
+            return out;
+        }
+        return new GZIPOutputStream(out) {
+            {
+                this.def.setLevel(CatalogSnapshots.this.compressionLevel);
+            }
+        };
+    }
+
+    private boolean isSnapshotFile(Path file) {
+        String name = file.getFileName().toString();
+        return (name.startsWith(BOOKS + "-") || name.startsWith(CONTRIBUTORS + "-"))
+                && (name.endsWith(JSON_EXTENSION) || name.endsWith(GZIP_EXTENSION) || name.endsWith(TEMPORARY_EXTENSION));
+    }
+
+    public static final class Snapshot {
+        private final long version;
+        private final String file;
+        private final String gzipped;
+
+        private Snapshot(long version, String file, String gzipped) {
+            this.version = version;
+            this.file = file;
+            this.gzipped = gzipped;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * @return the path of the json file
+         */
+        public String getFile() {
+            return file;
+        }
+
+        /**
+         * @return the path of the gzip compressed json file, null if not written
+         */
+        public String getGzipped() {
+            return gzipped;
+        }
+
+        private void delete() {
+            try {
+                Files.deleteIfExists(Paths.get(this.file));
+                if (this.gzipped != null) {
+                    Files.deleteIfExists(Paths.get(this.gzipped));
+                }
+            } catch (IOException exception) {
+                LOGGER.warn("Unable to delete catalog snapshot {}", this.file, exception);
+            }
+        }
+    }
+}
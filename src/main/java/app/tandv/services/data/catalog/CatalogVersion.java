@@ -0,0 +1,25 @@
+package app.tandv.services.data.catalog;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monotonic version of the catalog as seen by this service, bumped every time a write is committed. Anything derived
+ * from the catalog (cached payloads, indexes) is tagged with the version it was built from, and is stale as soon as
+ * the version moves on.
+ *
+ * @author vic on 2020-10-19
+ */
+public class CatalogVersion {
+    private final AtomicLong version = new AtomicLong();
+
+    public long current() {
+        return this.version.get();
+    }
+
+    /**
+     * @return the new version
+     */
+    public long bump() {
+        return this.version.incrementAndGet();
+    }
+}
@@ -0,0 +1,291 @@
+package app.tandv.services.data.catalog;
+
+import app.tandv.services.data.entity.BookEntity;
+import app.tandv.services.metrics.MetricsRegistry;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sequence of the catalog changes committed by this service, pushed to the connected clients so they don't need to
+ * poll the full catalog to stay up to date.
+ * <p>
+ * The last {@code history} events are kept so clients reconnecting with the sequence number of the last event they saw
+ * get what they missed; if that is gone already they are told to reload the catalog instead. Each subscriber has a
+ * buffer of at most {@code bufferSize} events waiting for its connection to accept them, a subscriber falling further
+ * behind is disconnected.
+ * <p>
+ * Sequence numbers are only meaningful to the instance of the feed that published them. Each instance starts past the
+ * numbers a previous one could have reached, see {@link #startOfInstance()}, so a client resuming with a number from
+ * another instance, lower or higher, is told to reload the catalog instead of silently missing events.
+ *
+ * @author vic on 2020-10-19
+ */
+public class ChangeFeed implements CatalogListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChangeFeed.class);
+
+    public static final String HISTORY_PROPERTY = "catalog.feed.history";
+    public static final String BUFFER_SIZE_PROPERTY = "catalog.feed.buffer-size";
+    public static final int DEFAULT_HISTORY = 1024;
+    public static final int DEFAULT_BUFFER_SIZE = 256;
+    // More than any instance can publish per millisecond it is up
+    private static final long EVENTS_PER_MILLISECOND = 1024L;
+
+    private static final String SEQUENCE = "seq";
+    private static final String ENTITY = "entity";
+    private static final String CHANGE = "change";
+    private static final String DATA = "data";
+    private static final String BOOK = "book";
+    private static final String CONTRIBUTOR = "contributor";
+
+    private final int bufferSize;
+    private final long start;
+    private final Event[] history;
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final LongAdder slowConsumers;
+
+    // guarded by this
+    private long sequence;
+
+    /**
+     * @param history    number of events kept to resume from
+     * @param bufferSize number of events a subscriber can fall behind before being disconnected
+     * @param registry   to export the number of subscribers and disconnections
+     */
+    public ChangeFeed(int history, int bufferSize, MetricsRegistry registry) {
+        this(history, bufferSize, 0L, registry);
+    }
+
+    /**
+     * @param history    number of events kept to resume from
+     * @param bufferSize number of events a subscriber can fall behind before being disconnected
+     * @param start      sequence number before the first event, events of other instances are at most this
+     * @param registry   to export the number of subscribers and disconnections
+     */
+    public ChangeFeed(int history, int bufferSize, long start, MetricsRegistry registry) {
+        this.history = new Event[Math.max(1, history)];
+        this.bufferSize = bufferSize;
+        this.start = start;
+        this.sequence = start;
+        this.slowConsumers = registry.counter(
+                "catalog_feed_slow_consumers_total", "Subscribers disconnected for falling behind the catalog changes"
+        );
+        registry.gauge("catalog_feed_subscribers", "Clients connected to the catalog changes", this.subscriptions::size);
+    }
+
+    /**
+     * @return a start for a new instance past the sequence numbers of the instances started before it, as long as the
+     * clock doesn't go back; kept well below 2^53 so clients reading them as doubles get them right
+     */
+    public static long startOfInstance() {
+        return System.currentTimeMillis() * EVENTS_PER_MILLISECOND;
+    }
+
+    /**
+     * @return the sequence number of the last event published
+     */
+    public synchronized long current() {
+        return this.sequence;
+    }
+
+    @Override
+    public void committed(long version, List<CatalogChange> changes) {
+        for (CatalogChange change : changes) {
+            JsonObject event = new JsonObject()
+                    .put(ENTITY, change.getEntity() instanceof BookEntity ? BOOK : CONTRIBUTOR)
+                    .put(CHANGE, change.getKind().toString())
+                    .put(DATA, change.getEntity().toJson());
+            this.publish(event);
+        }
+    }
+
+    /**
+     * @param event to publish, its sequence number is added to it
+     * @return the sequence number of the event
+     */
+    public synchronized long publish(JsonObject event) {
+        long seq = ++this.sequence;
+        Event published = new Event(seq, event.put(SEQUENCE, seq).encode());
+        this.history[(int) (seq % this.history.length)] = published;
+        for (Subscription subscription : this.subscriptions) {
+            subscription.offer(published);
+        }
+        return seq;
+    }
+
+    /**
+     * Events published from now on are written to the sink, from the given context.
+     *
+     * @param since   sequence number of the last event seen by the client, to get the ones after it first; 0 for all
+     *                the events kept, negative to only get new events. If they are no longer kept, more than fit in
+     *                the buffer, or the sequence number is not one of this instance, the sink is reset first
+     * @param context to write to the sink from
+     * @param sink    to write the events to
+     * @return the subscription, to cancel once the connection is closed
+     */
+    public synchronized Subscription subscribe(long since, Context context, Sink sink) {
+        Subscription subscription = new Subscription(context, sink);
+        // 0 is never the sequence number of an event, it stands for the start of this instance
+        since = since == 0L ? this.start : since;
+        if (since >= 0L && since != this.sequence) {
+            long oldest = Math.max(this.start + 1, this.sequence - this.history.length + 1);
+            if (since > this.sequence || since + 1 < oldest || this.sequence - since > this.bufferSize) {
+                // Events the client has not seen are gone, too many to catch up with, or from another instance
+                subscription.reset = this.sequence;
+            } else {
+                for (long seq = since + 1; seq <= this.sequence; seq++) {
+                    subscription.offer(this.history[(int) (seq % this.history.length)]);
+                }
+            }
+        }
+        this.subscriptions.add(subscription);
+        subscription.schedule();
+        return subscription;
+    }
+
+    /**
+     * A published event, encoded once for all the subscribers.
+     */
+    public static final class Event {
+        private final long sequence;
+        private final String json;
+
+        private Event(long sequence, String json) {
+            this.sequence = sequence;
+            this.json = json;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public String getJson() {
+            return json;
+        }
+    }
+
+    /**
+     * A connection the events are written to, only used from the context it subscribed from.
+     */
+    public interface Sink {
+        /**
+         * @return true if the connection can't take more data for now
+         */
+        boolean writeQueueFull();
+
+        /**
+         * @param handler to call once the connection can take more data
+         */
+        void drainHandler(Handler<Void> handler);
+
+        /**
+         * @param event to write
+         */
+        void write(Event event);
+
+        /**
+         * Tells the client that events it has not seen are no longer available, and that it should reload the catalog.
+         *
+         * @param sequence of the last event published when the client subscribed, the events after it follow
+         */
+        void reset(long sequence);
+
+        /**
+         * Closes the connection, the client fell too far behind.
+         */
+        void close();
+    }
+
+    public final class Subscription {
+        private final Context context;
+        private final Sink sink;
+        // guarded by this
+        private final ArrayDeque<Event> pending = new ArrayDeque<>();
+        // sequence to reset the sink to before any event, if any
+        private long reset = -1L;
+        private boolean scheduled = false;
+        private boolean cancelled = false;
+
+        private Subscription(Context context, Sink sink) {
+            this.context = context;
+            this.sink = sink;
+        }
+
+        /**
+         * Stops writing to the sink, to be called once the connection is closed.
+         */
+        public void cancel() {
+            synchronized (this) {
+                this.cancelled = true;
+                this.pending.clear();
+            }
+            ChangeFeed.this.subscriptions.remove(this);
+        }
+
+        private void offer(Event event) {
+            boolean overflow;
+            synchronized (this) {
+                if (this.cancelled) {
+                    return;
+                }
+                overflow = this.pending.size() >= ChangeFeed.this.bufferSize;
+                if (!overflow) {
+                    this.pending.addLast(event);
+                }
+            }
+            if (overflow) {
+                LOGGER.warn("Disconnecting catalog feed subscriber, more than {} events behind", ChangeFeed.this.bufferSize);
+                ChangeFeed.this.slowConsumers.increment();
+                this.cancel();
+                this.context.runOnContext(v -> this.sink.close());
+            } else {
+                this.schedule();
+            }
+        }
+
+        private void schedule() {
+            synchronized (this) {
+                if (this.scheduled || this.cancelled) {
+                    return;
+                }
+                this.scheduled = true;
+            }
+            this.context.runOnContext(v -> this.drain());
+        }
+
+        private void drain() {
+            long reset;
+            synchronized (this) {
+                this.scheduled = false;
+                if (this.cancelled) {
+                    return;
+                }
+                reset = this.reset;
+                this.reset = -1L;
+            }
+            if (reset >= 0L) {
+                this.sink.reset(reset);
+            }
+            while (!this.sink.writeQueueFull()) {
+                Event event;
+                synchronized (this) {
+                    event = this.cancelled ? null : this.pending.pollFirst();
+                }
+                if (event == null) {
+                    return;
+                }
+                this.sink.write(event);
+            }
+            // Resumed once the connection catches up, meanwhile events pile up in the buffer
+            this.sink.drainHandler(v -> this.schedule());
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package app.tandv.services.data.catalog;
+
+import app.tandv.services.configuration.EventConfig;
+import app.tandv.services.data.entity.BookContributor;
+import app.tandv.services.data.entity.BookEntity;
+import app.tandv.services.data.entity.BookFormat;
+import app.tandv.services.data.entity.ContributorType;
+import app.tandv.services.util.Sha256;
+import app.tandv.services.util.collections.StringDictionary;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Set;
+
+/**
+ * Immutable copy of a book as the in memory indexes keep it, its json built only when the book is read.
+ * <p>
+ * A {@link JsonObject} per book costs a map with an entry, a boxed id and a string per field, and a json object per
+ * contributor. Here the sha256 signature is four longs instead of a 64 character string, the year a short, the format
+ * and the types of the contributors their ordinal, the languages shared through a {@link StringDictionary} and the
+ * contributors two arrays. Values that would not come back the same from their compact form, a lower case signature
+ * or a year such as {@code c. 1990}, are kept as they were.
+ *
+ * @author vic on 2020-10-19
+ */
+public final class CompactBook {
+    private static final int MAX_LANGUAGES = 1024;
+    private static final StringDictionary LANGUAGES = new StringDictionary(MAX_LANGUAGES);
+    private static final BookFormat[] FORMATS = BookFormat.values();
+    private static final ContributorType[] TYPES = ContributorType.values();
+    private static final char[] HEX_ARRAY = "0123456789ABCDEF".toCharArray();
+    private static final int HEX_PER_LONG = 16;
+    private static final long[] NO_CONTRIBUTORS = new long[0];
+    private static final byte[] NO_TYPES = new byte[0];
+    private static final byte NO_FORMAT = -1;
+    private static final byte SHA_256 = 1;
+    private static final byte YEAR = 2;
+
+    private final long id;
+    private final String title;
+    private final String cataloguing;
+    private final String isbn;
+    private final String language;
+    // Only when they have no compact form
+    private final String sha256Text;
+    private final String yearText;
+    private final long sha0;
+    private final long sha1;
+    private final long sha2;
+    private final long sha3;
+    private final short year;
+    private final byte format;
+    private final byte compact;
+    private final long[] contributors;
+    private final byte[] types;
+
+    private CompactBook(BookEntity entity) {
+        this.id = entity.getId();
+        this.title = entity.getTitle();
+        this.cataloguing = entity.getCataloguing();
+        this.isbn = entity.getIsbn();
+        this.language = LANGUAGES.intern(entity.getLanguage());
+        this.format = entity.getFormat() == null ? NO_FORMAT : (byte) entity.getFormat().ordinal();
+
+        byte compact = 0;
+        String sha256 = entity.getSha256();
+        long[] words = new long[4];
+        if (hex(sha256, words)) {
+            compact |= SHA_256;
+            this.sha256Text = null;
+        } else {
+            this.sha256Text = sha256;
+        }
+        this.sha0 = words[0];
+        this.sha1 = words[1];
+        this.sha2 = words[2];
+        this.sha3 = words[3];
+
+        String year = entity.getYear();
+        int number = number(year);
+        if (number != Integer.MIN_VALUE) {
+            compact |= YEAR;
+            this.year = (short) number;
+            this.yearText = null;
+        } else {
+            this.year = 0;
+            this.yearText = year;
+        }
+        this.compact = compact;
+
+        Set<BookContributor> contributors = entity.getContributors();
+        if (contributors.isEmpty()) {
+            this.contributors = NO_CONTRIBUTORS;
+            this.types = NO_TYPES;
+        } else {
+            this.contributors = new long[contributors.size()];
+            this.types = new byte[contributors.size()];
+            int index = 0;
+            for (BookContributor contributor : contributors) {
+                this.contributors[index] = contributor.getContributor().getId();
+                this.types[index++] = (byte) contributor.getType().ordinal();
+            }
+        }
+    }
+
+    /**
+     * @param entity to copy, with its contributors
+     * @return the compact copy of the book
+     */
+    public static CompactBook of(BookEntity entity) {
+        return new CompactBook(entity);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getCataloguing() {
+        return cataloguing;
+    }
+
+    public String getIsbn() {
+        return isbn;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    public BookFormat getFormat() {
+        return format == NO_FORMAT ? null : FORMATS[format];
+    }
+
+    /**
+     * @return the signature, a new string every call unless it had no compact form
+     */
+    public String getSha256() {
+        if ((compact & SHA_256) == 0) {
+            return sha256Text;
+        }
+        char[] hex = new char[Sha256.HEX_LENGTH];
+        hex(sha0, hex, 0);
+        hex(sha1, hex, HEX_PER_LONG);
+        hex(sha2, hex, HEX_PER_LONG * 2);
+        hex(sha3, hex, HEX_PER_LONG * 3);
+        return new String(hex);
+    }
+
+    /**
+     * @return the year, a new string every call unless it had no compact form
+     */
+    public String getYear() {
+        return (compact & YEAR) == 0 ? yearText : Short.toString(year);
+    }
+
+    /**
+     * @return true if the year was stored as a number, see {@link #getYearNumber()}
+     */
+    public boolean hasYearNumber() {
+        return (compact & YEAR) != 0;
+    }
+
+    public short getYearNumber() {
+        return year;
+    }
+
+    /**
+     * @return the same json as {@link BookEntity#toJson()} for the book copied
+     */
+    public JsonObject toJson() {
+        JsonArray contributors = new JsonArray(new ArrayList<>(this.contributors.length));
+        for (int index = 0; index < this.contributors.length; index++) {
+            contributors.add(new JsonObject()
+                    .put(EventConfig.ID, this.contributors[index])
+                    .put(EventConfig.TYPE, TYPES[this.types[index]].name()));
+        }
+        BookFormat format = this.getFormat();
+        return new JsonObject()
+                .put(EventConfig.ID, this.id)
+                .put(EventConfig.SHA_256, this.getSha256())
+                .put(EventConfig.TITLE, this.title)
+                .put(EventConfig.CATALOGUING, this.cataloguing)
+                .put(EventConfig.ISBN, this.isbn)
+                .put(EventConfig.YEAR, this.getYear())
+                .put(EventConfig.LANGUAGE, this.language)
+                .put(EventConfig.FORMAT, format == null ? null : format.name())
+                .put(EventConfig.CONTRIBUTORS, contributors)
+                ;
+    }
+
+    /**
+     * @return true if the signature is upper case hex of the right length, and its value was written to the words
+     */
+    private static boolean hex(String sha256, long[] words) {
+        if (sha256 == null || sha256.length() != Sha256.HEX_LENGTH) {
+            return false;
+        }
+        for (int ind = 0; ind < Sha256.HEX_LENGTH; ind++) {
+            char character = sha256.charAt(ind);
+            int digit;
+            if (character >= '0' && character <= '9') {
+                digit = character - '0';
+            } else if (character >= 'A' && character <= 'F') {
+                digit = character - 'A' + 10;
+            } else {
+                return false;
+            }
+            words[ind / HEX_PER_LONG] = words[ind / HEX_PER_LONG] << 4 | digit;
+        }
+        return true;
+    }
+
+    private static void hex(long word, char[] hex, int offset) {
+        for (int ind = HEX_PER_LONG - 1; ind >= 0; ind--) {
+            hex[offset + ind] = HEX_ARRAY[(int) word & 0xF];
+            word >>>= 4;
+        }
+    }
+
+    /**
+     * @return the year as a short if it is written the same way {@link Short#toString(short)} would write it back,
+     * {@link Integer#MIN_VALUE} otherwise
+     */
+    private static int number(String year) {
+        if (year == null || year.isEmpty() || year.length() > 6) {
+            return Integer.MIN_VALUE;
+        }
+        boolean negative = year.charAt(0) == '-';
+        int start = negative ? 1 : 0;
+        int length = year.length() - start;
+        // No sign alone, no leading zeros and no negative zero
+        if (length == 0 || year.charAt(start) == '0' && (length > 1 || negative)) {
+            return Integer.MIN_VALUE;
+        }
+        int number = 0;
+        for (int ind = start; ind < year.length(); ind++) {
+            char character = year.charAt(ind);
+            if (character < '0' || character > '9') {
+                return Integer.MIN_VALUE;
+            }
+            number = number * 10 + character - '0';
+        }
+        number = negative ? -number : number;
+        return number < Short.MIN_VALUE || number > Short.MAX_VALUE ? Integer.MIN_VALUE : number;
+    }
+}
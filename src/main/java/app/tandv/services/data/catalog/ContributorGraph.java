@@ -0,0 +1,323 @@
+package app.tandv.services.data.catalog;
+
+import app.tandv.services.configuration.EventConfig;
+import app.tandv.services.data.entity.BookContributor;
+import app.tandv.services.data.entity.BookEntity;
+import app.tandv.services.data.entity.ContributorType;
+import app.tandv.services.util.collections.AdjacencyOverlay;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Bipartite graph of books and their contributors, to answer who has worked with whom and on which books without
+ * joining through the book_contributor table.
+ * <p>
+ * Books and contributors get a dense ordinal the first time they are seen, and the graph is kept twice as
+ * {@link AdjacencyOverlay}, from books to contributors and from contributors to books. Each edge is a single int with
+ * the ordinal of the other end in the high bits and the {@link ContributorType} in the low {@link #TYPE_BITS}, so rows
+ * sorted by edge are sorted by ordinal too. Only the rows of the books committed, and of their contributors, are
+ * replaced on every change; the whole graph is copied once every so many rows replaced, when the overlay compacts.
+ * The collation key of each book and contributor is kept by ordinal, to return them in catalog order.
+ *
+ * @author vic on 2020-10-19
+ */
+public class ContributorGraph implements CatalogIndex {
+    private static final int TYPE_BITS = 3;
+    private static final int TYPE_MASK = (1 << TYPE_BITS) - 1;
+    private static final String BOOKS = "books";
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // guarded by lock
+    private final Map<Long, Integer> bookOrdinals = new HashMap<>();
+    private final Map<Long, Integer> contributorOrdinals = new HashMap<>();
+    private long[] bookIds = new long[64];
+    private long[] contributorIds = new long[64];
+    private byte[][] bookKeys = new byte[64][];
+    private byte[][] contributorKeys = new byte[64][];
+    private final AdjacencyOverlay bookContributors = new AdjacencyOverlay();
+    private final AdjacencyOverlay contributorBooks = new AdjacencyOverlay();
+
+    @Override
+    public void load(List<BookEntity> books) {
+        this.lock.writeLock().lock();
+        try {
+            this.index(books);
+            // Start from arrays of the whole catalog
+            this.bookContributors.compact();
+            this.contributorBooks.compact();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void committed(long version, List<CatalogChange> changes) {
+        List<BookEntity> books = new ArrayList<>();
+        for (CatalogChange change : changes) {
+            if (change.getEntity() instanceof BookEntity) {
+                books.add((BookEntity) change.getEntity());
+            }
+        }
+        if (books.isEmpty()) {
+            return;
+        }
+        this.lock.writeLock().lock();
+        try {
+            this.index(books);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param contributorId of the contributor
+     * @return the other contributors of the books of the contributor, with the number of books in common, most
+     * frequent first, then by collation key
+     */
+    public JsonArray coContributors(long contributorId) {
+        this.lock.readLock().lock();
+        try {
+            JsonArray result = new JsonArray();
+            Integer contributor = this.contributorOrdinals.get(contributorId);
+            if (contributor == null) {
+                return result;
+            }
+            // Gather the ordinals of every contributor of every book, sorting them leaves the repetitions together
+            int size = 0;
+            int[] others = new int[16];
+            for (int book : this.contributorBooks.row(contributor)) {
+                for (int other : this.bookContributors.row(book >>> TYPE_BITS)) {
+                    if (other >>> TYPE_BITS == contributor) {
+                        continue;
+                    }
+                    if (size == others.length) {
+                        others = Arrays.copyOf(others, size * 2);
+                    }
+                    others[size++] = other >>> TYPE_BITS;
+                }
+            }
+            Arrays.sort(others, 0, size);
+
+            // Ordinal and number of books in common of each contributor
+            List<int[]> counts = new ArrayList<>();
+            for (int i = 0; i < size; ) {
+                int j = i;
+                while (j < size && others[j] == others[i]) {
+                    j++;
+                }
+                counts.add(new int[]{others[i], j - i});
+                i = j;
+            }
+            counts.sort((a, b) -> a[1] != b[1]
+                    ? Integer.compare(b[1], a[1])
+                    : CatalogOrder.compare(this.contributorKeys, this.contributorIds, a[0], b[0]));
+            counts.forEach(count -> result.add(new JsonObject()
+                    .put(EventConfig.ID, this.contributorIds[count[0]])
+                    .put(BOOKS, count[1])));
+            return result;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param contributorId of the contributor
+     * @param types         of contribution to include, all if empty
+     * @return the books of the contributor as id and type of contribution, by collation key
+     */
+    public JsonArray contributions(long contributorId, Set<ContributorType> types) {
+        this.lock.readLock().lock();
+        try {
+            JsonArray result = new JsonArray();
+            Integer contributor = this.contributorOrdinals.get(contributorId);
+            if (contributor == null) {
+                return result;
+            }
+            int[] edges = this.contributorBooks.row(contributor);
+            int size = 0;
+            for (int edge : edges) {
+                if (types.isEmpty() || types.contains(type(edge))) {
+                    edges[size++] = edge;
+                }
+            }
+            CatalogOrder.sort(edges, size, TYPE_BITS, this.bookKeys, this.bookIds);
+            for (int i = 0; i < size; i++) {
+                result.add(new JsonObject()
+                        .put(EventConfig.ID, this.bookIds[edges[i] >>> TYPE_BITS])
+                        .put(EventConfig.TYPE, type(edges[i]).name()));
+            }
+            return result;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param contributorIds of the contributors
+     * @param types          of contribution to include, all if empty
+     * @return the ids of the books every one of the contributors worked on, by collation key
+     */
+    public JsonArray commonBooks(Collection<Long> contributorIds, Set<ContributorType> types) {
+        this.lock.readLock().lock();
+        try {
+            JsonArray result = new JsonArray();
+            if (contributorIds.isEmpty()) {
+                return result;
+            }
+            int[] common = null;
+            for (Long contributorId : contributorIds) {
+                Integer contributor = this.contributorOrdinals.get(contributorId);
+                if (contributor == null) {
+                    return result;
+                }
+                int[] books = this.books(contributor, types);
+                common = common == null ? books : intersect(common, books);
+                if (common.length == 0) {
+                    return result;
+                }
+            }
+            CatalogOrder.sort(common, common.length, this.bookKeys, this.bookIds);
+            for (int book : common) {
+                result.add(this.bookIds[book]);
+            }
+            return result;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the sorted ordinals of the books of the contributor with any of the types given
+     */
+    private int[] books(int contributor, Set<ContributorType> types) {
+        int[] edges = this.contributorBooks.row(contributor);
+        int size = 0;
+        for (int edge : edges) {
+            if (types.isEmpty() || types.contains(type(edge))) {
+                edges[size++] = edge >>> TYPE_BITS;
+            }
+        }
+        return Arrays.copyOf(edges, size);
+    }
+
+    private void index(List<BookEntity> books) {
+        Map<Integer, int[]> bookRows = new HashMap<>();
+        // Rows of contributors being changed, starting from their current contents
+        Map<Integer, Set<Integer>> contributorRows = new HashMap<>();
+        for (BookEntity book : books) {
+            int ordinal = this.bookOrdinal(book.getId());
+            this.bookKeys[ordinal] = CatalogOrder.key(book);
+            int[] previous = bookRows.containsKey(ordinal) ? bookRows.get(ordinal) : this.bookContributors.row(ordinal);
+            for (int edge : previous) {
+                this.contributorRow(contributorRows, edge >>> TYPE_BITS).remove(ordinal << TYPE_BITS | edge & TYPE_MASK);
+            }
+            int[] edges = new int[book.getContributors().size()];
+            int size = 0;
+            for (BookContributor contribution : book.getContributors()) {
+                int contributor = this.contributorOrdinal(contribution.getContributorId());
+                this.contributorKeys[contributor] = CatalogOrder.key(contribution.getContributor());
+                int type = contribution.getType().ordinal();
+                edges[size++] = contributor << TYPE_BITS | type;
+                this.contributorRow(contributorRows, contributor).add(ordinal << TYPE_BITS | type);
+            }
+            bookRows.put(ordinal, edges);
+        }
+
+        Map<Integer, int[]> rows = new HashMap<>();
+        contributorRows.forEach((contributor, edges) ->
+                rows.put(contributor, edges.stream().mapToInt(Integer::intValue).toArray())
+        );
+        this.bookContributors.setRows(bookRows);
+        this.contributorBooks.setRows(rows);
+    }
+
+    private Set<Integer> contributorRow(Map<Integer, Set<Integer>> rows, int contributor) {
+        return rows.computeIfAbsent(contributor, key -> {
+            Set<Integer> edges = new LinkedHashSet<>();
+            this.contributorBooks.forEach(key, edges::add);
+            return edges;
+        });
+    }
+
+    private int bookOrdinal(long id) {
+        Integer ordinal = this.bookOrdinals.get(id);
+        if (ordinal == null) {
+            ordinal = this.bookOrdinals.size();
+            this.bookOrdinals.put(id, ordinal);
+            if (ordinal == this.bookIds.length) {
+                this.bookIds = Arrays.copyOf(this.bookIds, ordinal * 2);
+                this.bookKeys = Arrays.copyOf(this.bookKeys, ordinal * 2);
+            }
+            this.bookIds[ordinal] = id;
+        }
+        return ordinal;
+    }
+
+    private int contributorOrdinal(long id) {
+        Integer ordinal = this.contributorOrdinals.get(id);
+        if (ordinal == null) {
+            ordinal = this.contributorOrdinals.size();
+            this.contributorOrdinals.put(id, ordinal);
+            if (ordinal == this.contributorIds.length) {
+                this.contributorIds = Arrays.copyOf(this.contributorIds, ordinal * 2);
+                this.contributorKeys = Arrays.copyOf(this.contributorKeys, ordinal * 2);
+            }
+            this.contributorIds[ordinal] = id;
+        }
+        return ordinal;
+    }
+
+    private static ContributorType type(int edge) {
+        return ContributorType.values()[edge & TYPE_MASK];
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * @param types of contribution, either comma separated or repeated
+     * @return the types given, empty if none
+     * @throws IllegalArgumentException if not a {@link ContributorType}
+     */
+    public static Set<ContributorType> parseTypes(List<String> types) {
+        Set<ContributorType> result = EnumSet.noneOf(ContributorType.class);
+        for (String value : types) {
+            for (String type : value.split(",")) {
+                if (!type.trim().isEmpty()) {
+                    result.add(ContributorType.valueOf(type.trim().toUpperCase(Locale.ROOT)));
+                }
+            }
+        }
+        return result;
+    }
+}
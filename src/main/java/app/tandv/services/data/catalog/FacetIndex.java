@@ -0,0 +1,350 @@
+package app.tandv.services.data.catalog;
+
+import app.tandv.services.configuration.EventConfig;
+import app.tandv.services.data.entity.BookEntity;
+import app.tandv.services.data.entity.BookFormat;
+import app.tandv.services.util.collections.CompactBitmap;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Bitmap indexes of the books by format, language and year, so the catalog can be filtered and its facets counted
+ * without going to the database.
+ * <p>
+ * Every book gets a dense ordinal the first time it is indexed, and each facet value keeps the {@link CompactBitmap}
+ * of the ordinals of its books. A filter is the intersection of the union of the values requested for each facet, and
+ * counting a facet value within it is a single intersection cardinality. The books matched are returned in catalog
+ * order, by the collation key of each book kept next to it. Books are kept as {@link CompactBook}, their json built
+ * as they are returned.
+ *
+ * @author vic on 2020-10-19
+ */
+public class FacetIndex implements CatalogIndex {
+    private static final String YEAR_RANGE = "..";
+    private static final String TOTAL = "total";
+    // Below this fraction of the catalog, facets are counted by going through the books matched
+    private static final int TALLY_FRACTION = 8;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // guarded by lock
+    private final Map<Long, Integer> ordinals = new HashMap<>();
+    private CompactBook[] books = new CompactBook[64];
+    private byte[][] keys = new byte[64][];
+    private long[] ids = new long[64];
+    private final CompactBitmap all = new CompactBitmap();
+    private final Map<String, CompactBitmap> formats = new TreeMap<>();
+    private final Map<String, CompactBitmap> languages = new TreeMap<>();
+    private final NavigableMap<Integer, CompactBitmap> years = new TreeMap<>();
+
+    @Override
+    public void load(List<BookEntity> books) {
+        this.lock.writeLock().lock();
+        try {
+            books.forEach(this::index);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void committed(long version, List<CatalogChange> changes) {
+        this.lock.writeLock().lock();
+        try {
+            for (CatalogChange change : changes) {
+                if (change.getEntity() instanceof BookEntity) {
+                    this.index((BookEntity) change.getEntity());
+                }
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param query to filter by
+     * @return the books matching the query, by collation key
+     */
+    public JsonArray filter(Query query) {
+        this.lock.readLock().lock();
+        try {
+            CompactBitmap match = this.match(query);
+            int[] ordinals = new int[match.cardinality()];
+            int[] size = {0};
+            match.forEach(ordinal -> ordinals[size[0]++] = ordinal);
+            CatalogOrder.sort(ordinals, size[0], this.keys, this.ids);
+
+            JsonArray result = new JsonArray(new ArrayList<>(ordinals.length));
+            for (int ordinal : ordinals) {
+                result.add(this.books[ordinal].toJson());
+            }
+            return result;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param query to filter by
+     * @return the number of books matching the query, and of those the number for each value of each facet
+     */
+    public JsonObject facets(Query query) {
+        this.lock.readLock().lock();
+        try {
+            CompactBitmap match = this.match(query);
+            int total = match.cardinality();
+            if (total * TALLY_FRACTION < this.ordinals.size()) {
+                return this.tally(match).put(TOTAL, total);
+            }
+            JsonObject years = new JsonObject();
+            this.years.forEach((year, bitmap) -> count(years, String.valueOf(year), bitmap, match));
+            return new JsonObject()
+                    .put(TOTAL, total)
+                    .put(EventConfig.FORMAT, counts(this.formats, match))
+                    .put(EventConfig.LANGUAGE, counts(this.languages, match))
+                    .put(EventConfig.YEAR, years);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Counting each facet value against a small match costs more than reading the values of the books matched.
+     */
+    private JsonObject tally(CompactBitmap match) {
+        Map<String, Integer> formats = new TreeMap<>();
+        Map<String, Integer> languages = new TreeMap<>();
+        Map<Integer, Integer> years = new TreeMap<>();
+        match.forEach(ordinal -> {
+            CompactBook book = this.books[ordinal];
+            if (book.getFormat() != null) {
+                formats.merge(book.getFormat().name(), 1, Integer::sum);
+            }
+            String language = language(book.getLanguage());
+            if (language != null) {
+                languages.merge(language, 1, Integer::sum);
+            }
+            Integer year = year(book);
+            if (year != null) {
+                years.merge(year, 1, Integer::sum);
+            }
+        });
+        JsonObject yearCounts = new JsonObject();
+        years.forEach((year, count) -> yearCounts.put(String.valueOf(year), count));
+        return new JsonObject()
+                .put(EventConfig.FORMAT, new JsonObject(new LinkedHashMap<>(formats)))
+                .put(EventConfig.LANGUAGE, new JsonObject(new LinkedHashMap<>(languages)))
+                .put(EventConfig.YEAR, yearCounts);
+    }
+
+    /**
+     * @return the books matching the query, never to be modified as it may be one of the bitmaps of the index
+     */
+    private CompactBitmap match(Query query) {
+        CompactBitmap match = this.all;
+        if (!query.formats.isEmpty()) {
+            match = intersect(match, union(this.formats, query.formats));
+        }
+        if (!query.languages.isEmpty()) {
+            match = intersect(match, union(this.languages, query.languages));
+        }
+        if (!query.years.isEmpty()) {
+            List<CompactBitmap> years = new ArrayList<>();
+            for (int[] range : query.years) {
+                years.addAll(this.years.subMap(range[0], true, range[1], true).values());
+            }
+            match = intersect(match, CompactBitmap.union(years));
+        }
+        return match;
+    }
+
+    private CompactBitmap intersect(CompactBitmap match, CompactBitmap facet) {
+        // Every book is in all, no need to build a copy of the facet
+        return match == this.all ? facet : match.and(facet);
+    }
+
+    private void index(BookEntity entity) {
+        CompactBook book = CompactBook.of(entity);
+        Integer ordinal = this.ordinals.get(entity.getId());
+        if (ordinal == null) {
+            ordinal = this.ordinals.size();
+            this.ordinals.put(entity.getId(), ordinal);
+            if (ordinal == this.books.length) {
+                this.books = Arrays.copyOf(this.books, this.books.length * 2);
+                this.keys = Arrays.copyOf(this.keys, this.keys.length * 2);
+                this.ids = Arrays.copyOf(this.ids, this.ids.length * 2);
+            }
+            this.ids[ordinal] = entity.getId();
+            this.all.add(ordinal);
+        } else {
+            this.apply(this.books[ordinal], ordinal, false);
+        }
+        this.books[ordinal] = book;
+        this.keys[ordinal] = CatalogOrder.key(entity);
+        this.apply(book, ordinal, true);
+    }
+
+    private void apply(CompactBook book, int ordinal, boolean add) {
+        update(this.formats, book.getFormat() == null ? null : book.getFormat().name(), ordinal, add);
+        update(this.languages, language(book.getLanguage()), ordinal, add);
+        Integer year = year(book);
+        if (year != null) {
+            update(this.years, year, ordinal, add);
+        }
+    }
+
+    private static <K> void update(Map<K, CompactBitmap> facet, K value, int ordinal, boolean add) {
+        if (value == null) {
+            return;
+        }
+        if (add) {
+            facet.computeIfAbsent(value, key -> new CompactBitmap()).add(ordinal);
+        } else {
+            CompactBitmap bitmap = facet.get(value);
+            if (bitmap != null && bitmap.remove(ordinal).isEmpty()) {
+                facet.remove(value);
+            }
+        }
+    }
+
+    private static CompactBitmap union(Map<String, CompactBitmap> facet, Set<String> values) {
+        if (values.size() == 1) {
+            CompactBitmap bitmap = facet.get(values.iterator().next());
+            return bitmap == null ? new CompactBitmap() : bitmap;
+        }
+        List<CompactBitmap> bitmaps = new ArrayList<>(values.size());
+        for (String value : values) {
+            CompactBitmap bitmap = facet.get(value);
+            if (bitmap != null) {
+                bitmaps.add(bitmap);
+            }
+        }
+        return CompactBitmap.union(bitmaps);
+    }
+
+    private static JsonObject counts(Map<String, CompactBitmap> facet, CompactBitmap match) {
+        JsonObject counts = new JsonObject();
+        facet.forEach((value, bitmap) -> count(counts, value, bitmap, match));
+        return counts;
+    }
+
+    private static void count(JsonObject counts, String value, CompactBitmap bitmap, CompactBitmap match) {
+        int count = bitmap.andCardinality(match);
+        if (count > 0) {
+            counts.put(value, count);
+        }
+    }
+
+    private static String language(String language) {
+        return language == null || language.trim().isEmpty() ? null : language.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static Integer year(CompactBook book) {
+        return book.hasYearNumber() ? Integer.valueOf(book.getYearNumber()) : year(book.getYear());
+    }
+
+    private static Integer year(String year) {
+        try {
+            return year == null ? null : Integer.valueOf(year.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Values requested for each facet, a book matches if it has any of the values of every facet requested.
+     */
+    public static final class Query {
+        private final Set<String> formats = new LinkedHashSet<>();
+        private final Set<String> languages = new LinkedHashSet<>();
+        private final List<int[]> years = new ArrayList<>();
+
+        /**
+         * @param format values, either comma separated or repeated
+         * @return a reference to this instance for fluent API
+         * @throws IllegalArgumentException if not a {@link BookFormat}
+         */
+        public Query withFormats(List<String> format) {
+            for (String value : split(format)) {
+                this.formats.add(BookFormat.valueOf(value.toUpperCase(Locale.ROOT)).name());
+            }
+            return this;
+        }
+
+        /**
+         * @param language values, either comma separated or repeated
+         * @return a reference to this instance for fluent API
+         */
+        public Query withLanguages(List<String> language) {
+            for (String value : split(language)) {
+                this.languages.add(language(value));
+            }
+            return this;
+        }
+
+        /**
+         * @param year values, either comma separated or repeated, each a year or an inclusive range as
+         *             {@code 1990..1999}; either end of the range may be left out
+         * @return a reference to this instance for fluent API
+         * @throws IllegalArgumentException if not a year or a range of years
+         */
+        public Query withYears(List<String> year) {
+            for (String value : split(year)) {
+                int separator = value.indexOf(YEAR_RANGE);
+                try {
+                    if (separator < 0) {
+                        int single = Integer.parseInt(value);
+                        this.years.add(new int[]{single, single});
+                    } else {
+                        String from = value.substring(0, separator).trim();
+                        String to = value.substring(separator + YEAR_RANGE.length()).trim();
+                        this.years.add(new int[]{
+                                from.isEmpty() ? Integer.MIN_VALUE : Integer.parseInt(from),
+                                to.isEmpty() ? Integer.MAX_VALUE : Integer.parseInt(to)
+                        });
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid year or range of years: " + value);
+                }
+                int[] range = this.years.get(this.years.size() - 1);
+                if (range[0] > range[1]) {
+                    throw new IllegalArgumentException("Invalid range of years: " + value);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * @return true if no facet was requested
+         */
+        public boolean isEmpty() {
+            return this.formats.isEmpty() && this.languages.isEmpty() && this.years.isEmpty();
+        }
+
+        private static Set<String> split(List<String> values) {
+            Set<String> result = new LinkedHashSet<>();
+            for (String value : values) {
+                for (String part : value.split(",")) {
+                    if (!part.trim().isEmpty()) {
+                        result.add(part.trim());
+                    }
+                }
+            }
+            return result;
+        }
+    }
+}
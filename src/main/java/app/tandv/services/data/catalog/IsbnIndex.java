@@ -0,0 +1,113 @@
+package app.tandv.services.data.catalog;
+
+import app.tandv.services.data.entity.BookEntity;
+import app.tandv.services.util.CollationKeys;
+import app.tandv.services.util.IsbnUtils;
+import io.vertx.core.json.JsonArray;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Hash index of the books by their canonical ISBN, for lookups such as barcode scans to be answered without going to
+ * the database. More than one book may share an ISBN, in which case all of them are kept, by collation key. Books are
+ * kept as {@link CompactBook}, their json built as they are found.
+ *
+ * @author vic on 2020-10-19
+ */
+public class IsbnIndex implements CatalogIndex {
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // guarded by lock
+    private final Map<String, List<Entry>> books = new HashMap<>();
+    private final Map<Long, String> isbns = new HashMap<>();
+
+    @Override
+    public void load(List<BookEntity> books) {
+        this.lock.writeLock().lock();
+        try {
+            books.forEach(this::index);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void committed(long version, List<CatalogChange> changes) {
+        this.lock.writeLock().lock();
+        try {
+            for (CatalogChange change : changes) {
+                if (change.getEntity() instanceof BookEntity) {
+                    this.index((BookEntity) change.getEntity());
+                }
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param isbn ISBN-10 or ISBN-13, with or without hyphens
+     * @return the books with the isbn, empty if none
+     * @throws IllegalArgumentException if not a valid ISBN
+     */
+    public JsonArray find(String isbn) {
+        String canonical = IsbnUtils
+                .canonical(isbn)
+                .orElseThrow(() -> new IllegalArgumentException("Invalid ISBN [" + isbn + "]"));
+        this.lock.readLock().lock();
+        try {
+            JsonArray result = new JsonArray();
+            this.books.getOrDefault(canonical, Collections.emptyList()).forEach(entry -> result.add(entry.book.toJson()));
+            return result;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    private void index(BookEntity book) {
+        String previous = this.isbns.remove(book.getId());
+        if (previous != null) {
+            List<Entry> books = this.books.get(previous);
+            books.removeIf(entry -> entry.book.getId() == book.getId());
+            if (books.isEmpty()) {
+                this.books.remove(previous);
+            }
+        }
+        // Books stored before ISBNs were canonicalized are indexed only if they can be
+        IsbnUtils.canonical(book.getIsbn()).ifPresent(isbn -> {
+            this.isbns.put(book.getId(), isbn);
+            List<Entry> books = this.books.computeIfAbsent(isbn, key -> new ArrayList<>(1));
+            Entry entry = new Entry(CatalogOrder.key(book), CompactBook.of(book));
+            int index = 0;
+            while (index < books.size() && books.get(index).compareTo(entry) < 0) {
+                index++;
+            }
+            books.add(index, entry);
+        });
+    }
+
+    /**
+     * Very few books share an ISBN, they are kept in a list in order.
+     */
+    private static final class Entry implements Comparable<Entry> {
+        private final byte[] key;
+        private final CompactBook book;
+
+        private Entry(byte[] key, CompactBook book) {
+            this.key = key;
+            this.book = book;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int order = CollationKeys.compare(this.key, other.key);
+            return order != 0 ? order : Long.compare(this.book.getId(), other.book.getId());
+        }
+    }
+}
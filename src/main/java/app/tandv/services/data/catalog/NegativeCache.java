@@ -0,0 +1,143 @@
+package app.tandv.services.data.catalog;
+
+import app.tandv.services.data.entity.LibraryEntity;
+import app.tandv.services.metrics.MetricsRegistry;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers, for a short time, the ids recently confirmed missing from the database, per entity type, so clients
+ * retrying bad lookups are answered without a round trip.
+ * <p>
+ * A miss is only recorded if no write was committed since the query confirming it started (see
+ * {@link CatalogVersion}), and entities created by this service are removed from the cache once their transaction is
+ * committed. Each entity type keeps at most {@code maxSize} ids, the oldest ones are dropped first.
+ * <p>
+ * Only lookups by id are cached: nothing in the service looks entities up by sha256, duplicates are caught by the
+ * unique constraint as they are written.
+ *
+ * @author vic on 2020-10-19
+ */
+public class NegativeCache implements CatalogListener {
+    public static final String MAX_SIZE_PROPERTY = "data.negative-cache.max-size";
+    public static final String TTL_PROPERTY = "data.negative-cache.ttl";
+    public static final int DEFAULT_MAX_SIZE = 10_000;
+    // in milliseconds
+    public static final long DEFAULT_TTL = 5_000L;
+
+    private final CatalogVersion version;
+    private final int maxSize;
+    private final long ttlNanos;
+    private final MetricsRegistry registry;
+    private final Map<Class<?>, Misses> ids = new ConcurrentHashMap<>();
+
+    /**
+     * @param version   of the catalog
+     * @param maxSize   of misses kept per entity type, 0 to disable the cache
+     * @param ttlMillis for a miss to be trusted
+     * @param registry  to count the lookups answered by the cache
+     */
+    public NegativeCache(CatalogVersion version, int maxSize, long ttlMillis, MetricsRegistry registry) {
+        this.version = version;
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.registry = registry;
+    }
+
+    public CatalogVersion getVersion() {
+        return version;
+    }
+
+    /**
+     * @param type of the entity
+     * @param id   to look up
+     * @return true if the id was recently confirmed missing
+     */
+    public boolean isMissingId(Class<?> type, Long id) {
+        return this.misses(this.ids, type, "id").contains(id);
+    }
+
+    /**
+     * @param type    of the entity
+     * @param id      confirmed missing
+     * @param version of the catalog read before running the query that confirmed it
+     */
+    public void missingId(Class<?> type, Long id, long version) {
+        this.misses(this.ids, type, "id").add(id, version);
+    }
+
+    @Override
+    public void committed(long version, List<CatalogChange> changes) {
+        changes.forEach(change -> this.created(change.getEntity()));
+    }
+
+    /**
+     * To be called once the entity is committed, after the catalog version was bumped.
+     *
+     * @param entity created
+     */
+    public void created(LibraryEntity<?> entity) {
+        this.misses(this.ids, entity.getClass(), "id").remove(entity.getId());
+    }
+
+    private Misses misses(Map<Class<?>, Misses> byType, Class<?> type, String key) {
+        return byType.computeIfAbsent(type, t -> new Misses(this.registry.counter(
+                "db_negative_cache_hits_total",
+                "Lookups answered as missing without querying the database",
+                "entity", t.getSimpleName(),
+                "key", key
+        )));
+    }
+
+    /**
+     * Misses of one entity type, in insertion order so the oldest are evicted first. Checks and updates happen under
+     * the same lock, so a miss confirmed by a query that raced with a write is either rejected for its version or
+     * removed by the invalidation that follows the write.
+     */
+    private final class Misses {
+        private final LongAdder hits;
+        private final LinkedHashMap<Object, Long> expirations = new LinkedHashMap<Object, Long>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Long> eldest) {
+                return this.size() > NegativeCache.this.maxSize;
+            }
+        };
+
+        private Misses(LongAdder hits) {
+            this.hits = hits;
+        }
+
+        private synchronized boolean contains(Object key) {
+            Long expiration = this.expirations.get(key);
+            if (expiration == null) {
+                return false;
+            }
+            if (expiration - System.nanoTime() <= 0L) {
+                this.expirations.remove(key);
+                return false;
+            }
+            this.hits.increment();
+            return true;
+        }
+
+        private synchronized void add(Object key, long version) {
+            if (version != NegativeCache.this.version.current()) {
+                return;
+            }
+            // Re-inserted so it moves to the end of the eviction order
+            this.expirations.remove(key);
+            this.expirations.put(key, System.nanoTime() + NegativeCache.this.ttlNanos);
+        }
+
+        private synchronized void remove(Object key) {
+            if (key != null) {
+                this.expirations.remove(key);
+            }
+        }
+    }
+}
@@ -2,6 +2,7 @@ package app.tandv.services.data.entity;
 
 import app.tandv.services.configuration.EventConfig;
 import app.tandv.services.util.EntityUtils;
+import app.tandv.services.util.IsbnUtils;
 import app.tandv.services.util.StringUtils;
 import app.tandv.services.util.collections.FluentHashSet;
 import app.tandv.services.util.collections.Pair;
@@ -31,6 +32,10 @@ import java.util.stream.Collectors;
  * <p>
  * Above titles will be ordered both under <em>dream interpretation</em>
  *
+ * <strong>ISBN</strong>
+ * ISBNs are stored in the canonical form defined in {@link IsbnUtils#canonical(String)}, ISBN-13 without hyphens, and
+ * rejected if their check digit does not match.
+ *
  * <strong>Uniqueness</strong>
  * A book's uniqueness should be identified by the title in appropriate case as defined by
  * {@link StringUtils::titleCase} normalization as well as by the contributors for that particular book. There is a
@@ -48,11 +53,14 @@ import java.util.stream.Collectors;
  */
 @SuppressWarnings({"unused", "WeakerAccess", "JpaQlInspection"})
 @Entity
-@Table(name = "book")
+@Table(name = "book", indexes = {
+        @Index(name = "book_isbn_idx", columnList = EventConfig.ISBN),
+        @Index(name = "book_collation_idx", columnList = EventConfig.COLLATION_KEY)
+})
 @NamedQueries({
         @NamedQuery(
                 name = "BookEntity.findAll",
-                query = "SELECT DISTINCT b FROM BookEntity b LEFT OUTER JOIN FETCH b.contributors"
+                query = "SELECT DISTINCT b FROM BookEntity b LEFT OUTER JOIN FETCH b.contributors ORDER BY b.collationKey, b.id"
         ),
         @NamedQuery(
                 name = "BookEntity.findAllById",
@@ -66,6 +74,8 @@ import java.util.stream.Collectors;
 public class BookEntity extends LibraryEntity<BookEntity> {
     private static final Logger LOGGER = LoggerFactory.getLogger(BookEntity.class);
 
+    private static final int LANGUAGE_LENGTH = 5;
+
     private static final Set<String> REQUIRED_FIELDS = new FluentHashSet<String>()
             .thenAdd(EventConfig.TITLE)
             .thenAdd(EventConfig.FORMAT)
@@ -86,7 +96,7 @@ public class BookEntity extends LibraryEntity<BookEntity> {
                 .titleCase(rawTitle)
                 .orElseThrow(() -> new IllegalArgumentException("Unable to generate title case for title [" + rawTitle + "]"));
         String ordering = StringUtils
-                .contributorForOrdering(rawTitle)
+                .titleForOrdering(rawTitle)
                 .orElseThrow(() -> new IllegalArgumentException("Unable to generate cataloguing string for title [" + rawTitle + "]"));
         BookEntity entity = new BookEntity()
                 .withGeneratedId()
@@ -94,8 +104,23 @@ public class BookEntity extends LibraryEntity<BookEntity> {
                 .withTitle(cleanTitle)
                 .withCataloguing(ordering);
 
-        Optional.ofNullable(data.getString(EventConfig.ISBN)).ifPresent(entity::setIsbn);
+        Optional.ofNullable(data.getString(EventConfig.ISBN))
+                .filter(isbn -> !isbn.trim().isEmpty())
+                .map(isbn -> IsbnUtils
+                        .canonical(isbn)
+                        .orElseThrow(() -> new IllegalArgumentException("Invalid ISBN [" + isbn + "]")))
+                .ifPresent(entity::setIsbn);
         Optional.ofNullable(data.getString(EventConfig.YEAR)).ifPresent(entity::setYear);
+        Optional.ofNullable(data.getString(EventConfig.LANGUAGE))
+                .map(language -> language.trim().toLowerCase(Locale.ROOT))
+                .filter(language -> !language.isEmpty())
+                .map(language -> {
+                    if (language.length() > LANGUAGE_LENGTH) {
+                        throw new IllegalArgumentException("Language code too long [" + language + "]");
+                    }
+                    return language;
+                })
+                .ifPresent(entity::setLanguage);
 
         return entity;
     }
@@ -109,7 +134,7 @@ public class BookEntity extends LibraryEntity<BookEntity> {
     @Column(name = EventConfig.YEAR, length = 4)
     private String year;
 
-    @Column(name = EventConfig.LANGUAGE, length = 5)
+    @Column(name = EventConfig.LANGUAGE, length = LANGUAGE_LENGTH)
     private String language;
 
     @Column(name = EventConfig.FORMAT, nullable = false, length = 12)
@@ -248,6 +273,8 @@ public class BookEntity extends LibraryEntity<BookEntity> {
                 .stream()
                 .map(BookContributor::getContributor)
                 .map(ContributorEntity::getSha256)
+                // sorted, for the same contributors to always give the same signature
+                .sorted()
                 .collect(Collectors.joining(StringUtils.WORD_SEPARATOR));
         String bookSha256 = StringUtils.sha256(this.title + StringUtils.WORD_SEPARATOR + contributorSha256)
                 .orElseThrow(() -> new IllegalArgumentException("Unable to generate SHA 256 for title [" + this.title + "]"));
@@ -276,14 +303,15 @@ public class BookEntity extends LibraryEntity<BookEntity> {
                 ", " + EventConfig.CATALOGUING + "='" + this.cataloguing + '\'' +
                 ", " + EventConfig.ISBN + "='" + isbn + '\'' +
                 ", " + EventConfig.YEAR + "='" + year + '\'' +
+                ", " + EventConfig.LANGUAGE + "='" + language + '\'' +
                 ", " + EventConfig.FORMAT + "=" + format +
-                ", " + EventConfig.CONTRIBUTORS + "=" + contributors.size() +
+                ", " + EventConfig.CONTRIBUTORS + "=" + getContributors().size() +
                 '}';
     }
 
     @Override
     public JsonObject toJson() {
-        JsonArray contributors = this.contributors.stream()
+        JsonArray contributors = this.getContributors().stream()
                 .map(BookContributor::toBookJson)
                 .collect(JsonArray::new, JsonArray::add, JsonArray::addAll);
         return new JsonObject()
@@ -293,6 +321,7 @@ public class BookEntity extends LibraryEntity<BookEntity> {
                 .put(EventConfig.CATALOGUING, this.cataloguing)
                 .put(EventConfig.ISBN, this.isbn)
                 .put(EventConfig.YEAR, this.year)
+                .put(EventConfig.LANGUAGE, this.language)
                 .put(EventConfig.FORMAT, this.format.name())
                 .put(EventConfig.CONTRIBUTORS, contributors)
                 ;
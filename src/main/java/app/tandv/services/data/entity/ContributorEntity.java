@@ -43,16 +43,20 @@ import java.util.Set;
  */
 @SuppressWarnings({"unused", "WeakerAccess", "JpaQlInspection"})
 @Entity
-@Table(name = "contributor")
+@Table(name = "contributor", indexes = @Index(name = "contributor_collation_idx", columnList = EventConfig.COLLATION_KEY))
 @NamedQueries({
         @NamedQuery(
                 name = "ContributorEntity.findAll",
-                query = "SELECT DISTINCT a FROM ContributorEntity a LEFT OUTER JOIN FETCH a.contributions"
+                query = "SELECT DISTINCT a FROM ContributorEntity a LEFT OUTER JOIN FETCH a.contributions ORDER BY a.collationKey, a.id"
         ),
         @NamedQuery(
                 name = "ContributorEntity.findAllById",
                 query = "SELECT DISTINCT a FROM ContributorEntity a WHERE a.id IN :ids"
         ),
+        @NamedQuery(
+                name = "ContributorEntity.findAllByIdWithContributions",
+                query = "SELECT DISTINCT a FROM ContributorEntity a LEFT OUTER JOIN FETCH a.contributions WHERE a.id IN :ids"
+        ),
         @NamedQuery(
                 name = "ContributorEntity.findById",
                 query = "SELECT DISTINCT a FROM ContributorEntity a WHERE a.id = :id"
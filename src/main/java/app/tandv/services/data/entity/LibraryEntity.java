@@ -1,14 +1,16 @@
 package app.tandv.services.data.entity;
 
 import app.tandv.services.configuration.EventConfig;
+import app.tandv.services.util.CollationKeys;
 import io.vertx.core.json.JsonObject;
 
 import javax.persistence.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class represents an record of an entity in the library database with the following characteristics:
  * - The data in the record is unique (not two records of similar data can be created)
- * - The data in the record can be sorted for cataloguing
+ * - The data in the record can be sorted for cataloguing, by the binary collation key of its cataloguing string
  *
  * Uniqueness and cataloguing rules must be defined by each implementing class.
  *
@@ -20,6 +22,9 @@ import javax.persistence.*;
 @SuppressWarnings({"unused"})
 @MappedSuperclass
 public abstract class LibraryEntity<T> {
+    // Last id generated, so entities built in the same millisecond, as in a batch, get different ones
+    private static final AtomicLong LAST_GENERATED_ID = new AtomicLong();
+
     @Id
     Long id;
 
@@ -29,9 +34,16 @@ public abstract class LibraryEntity<T> {
     @Column(name = EventConfig.CATALOGUING, nullable = false)
     String cataloguing;
 
+    @Column(name = EventConfig.COLLATION_KEY, length = CollationKeys.MAX_LENGTH)
+    byte[] collationKey;
+
     @Transient
     private final Class<T> type;
 
+    // Set for entities built from requests, whose id is not in the database yet
+    @Transient
+    private boolean generatedId = false;
+
     LibraryEntity(Class<T> type) {
         this.type = type;
     }
@@ -44,11 +56,29 @@ public abstract class LibraryEntity<T> {
         this.id = id;
     }
 
+    /**
+     * Makes the ids generated from now on greater than the one given, to not reuse ids written by someone else, such
+     * as the bulk loader, that may be ahead of the clock.
+     *
+     * @param id the highest id in the database
+     */
+    public static void generateIdsAfter(long id) {
+        LAST_GENERATED_ID.accumulateAndGet(id, Math::max);
+    }
+
     T withGeneratedId() {
-        this.id = System.currentTimeMillis();
+        this.id = LAST_GENERATED_ID.updateAndGet(last -> Math.max(last + 1, System.currentTimeMillis()));
+        this.generatedId = true;
         return type.cast(this);
     }
 
+    /**
+     * @return true if the id of this entity was generated by the service rather than read from the database
+     */
+    public boolean hasGeneratedId() {
+        return generatedId;
+    }
+
     public String getSha256() {
         return sha256;
     }
@@ -68,12 +98,25 @@ public abstract class LibraryEntity<T> {
 
     public void setCataloguing(String cataloguing) {
         this.cataloguing = cataloguing;
+        this.collationKey = CollationKeys.of(cataloguing);
     }
 
     T withCataloguing(String ordering) {
-        this.cataloguing = ordering;
+        this.setCataloguing(ordering);
         return type.cast(this);
     }
 
+    /**
+     * @return the key to sort this entity by, see {@link CollationKeys}, null for records stored before it was added
+     * until the service starts again
+     */
+    public byte[] getCollationKey() {
+        return collationKey;
+    }
+
+    public void setCollationKey(byte[] collationKey) {
+        this.collationKey = collationKey;
+    }
+
     public abstract JsonObject toJson();
 }
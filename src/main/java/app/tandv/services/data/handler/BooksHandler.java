@@ -1,22 +1,37 @@
 package app.tandv.services.data.handler;
 
+import app.tandv.services.concurrency.NormalizationPool;
 import app.tandv.services.configuration.EventConfig;
+import app.tandv.services.data.catalog.CatalogCache;
+import app.tandv.services.data.catalog.CatalogSnapshots;
+import app.tandv.services.data.catalog.FacetIndex;
+import app.tandv.services.data.catalog.IsbnIndex;
+import app.tandv.services.data.catalog.NegativeCache;
 import app.tandv.services.data.entity.BookEntity;
+import app.tandv.services.data.entity.ContributorEntity;
 import app.tandv.services.data.entity.ContributorType;
+import app.tandv.services.data.jpa.PersistenceHandle;
 import app.tandv.services.data.repository.ContributorsRepository;
 import app.tandv.services.data.repository.BooksRepository;
+import app.tandv.services.data.repository.BatchLoader;
+import app.tandv.services.data.repository.QueryExecutor;
+import app.tandv.services.handler.RequestContext;
 import app.tandv.services.util.collections.Pair;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.reactivex.Single;
 import io.reactivex.disposables.Disposable;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
-import io.vertx.reactivex.core.Vertx;
 import io.vertx.reactivex.ext.web.RoutingContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.persistence.EntityManager;
+import javax.persistence.NoResultException;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -24,31 +39,129 @@ import java.util.stream.Collectors;
  */
 public class BooksHandler extends LibraryHandler {
     private static final Logger LOGGER = LoggerFactory.getLogger(BooksHandler.class);
+    private static final String BOOKS_KEY = CatalogSnapshots.BOOKS;
+
+    private final FacetIndex facetIndex;
+    private final IsbnIndex isbnIndex;
+
+    public BooksHandler(QueryExecutor executor, CatalogCache cache, BatchLoader<BookEntity> loader,
+                        NegativeCache negativeCache, CatalogSnapshots snapshots, NormalizationPool normalization,
+                        int maxRecords, FacetIndex facetIndex, IsbnIndex isbnIndex) {
+        super(executor, cache, loader, negativeCache, snapshots, normalization, maxRecords);
+        this.facetIndex = facetIndex;
+        this.isbnIndex = isbnIndex;
+    }
 
     /**
-     * To retrieve all books available in the DB.
+     * To retrieve all books available in the DB, or the ones with the ids or facets (format, language and year) given
+     * in the query parameters.
      *
      * @param context of the current request
      */
     public void books(RoutingContext context) {
+        if (this.respondByIds(context)) {
+            LOGGER.debug("Retrieving books by id");
+            return;
+        }
+        FacetIndex.Query query;
+        try {
+            query = this.getFacetQuery(context);
+        } catch (IllegalArgumentException e) {
+            this.errorHandler(context, e);
+            return;
+        }
+        if (!query.isEmpty()) {
+            LOGGER.debug("Filtering books by facets");
+            RequestContext request = context.get(EventConfig.EVENT);
+            request.respond(HttpResponseStatus.OK.code(), this.facetIndex.filter(query).encode());
+            context.next();
+            return;
+        }
+        if (this.respondFromSnapshot(context, BOOKS_KEY)) {
+            LOGGER.debug("Books served from snapshot");
+            context.next();
+            return;
+        }
+        if (this.respondFromCache(context, BOOKS_KEY)) {
+            LOGGER.debug("Books served from cache");
+            context.next();
+            return;
+        }
         LOGGER.debug("Retrieving all books from DB");
-        JsonObject event = context.get(EventConfig.EVENT);
-        EntityManager entityManager = context.get(EventConfig.ENTITY_MANAGER);
-        BooksRepository repository = new BooksRepository(context.vertx(), entityManager);
+        RequestContext request = context.get(EventConfig.EVENT);
+        PersistenceHandle persistence = context.get(EventConfig.PERSISTENCE);
+        BooksRepository repository = new BooksRepository(this.executor, persistence, this.negativeCache);
+        // Read before the query, so a write committed while it runs makes the result stale right away
+        long version = this.cache.getVersion().current();
 
         Disposable toDispose = repository.fetchAll()
                 .map(BookEntity::toJson)
                 .collect(JsonArray::new, JsonArray::add)
                 .map(JsonArray::encode)
-                .map(books -> event
-                        .put(EventConfig.CONTENT, books)
-                        .put(EventConfig.STATUS, HttpResponseStatus.OK.code())
-                )
+                .map(books -> this.cache.put(BOOKS_KEY, version, books))
+                .map(entry -> this.respond(context, entry))
                 .subscribe(
-                        evt -> context.next(),
+                        req -> context.next(),
                         error -> this.errorHandler(context, error)
                 );
-        this.dispose(context.get(EventConfig.DISPOSABLES), toDispose);
+        this.dispose(request.getDisposables(), toDispose);
+    }
+
+    /**
+     * To count the books by format, language and year, within the ones matching the same filters as {@link #books}.
+     *
+     * @param context of the current request
+     */
+    public void facets(RoutingContext context) {
+        LOGGER.debug("Counting book facets");
+        RequestContext request = context.get(EventConfig.EVENT);
+        try {
+            request.respond(HttpResponseStatus.OK.code(), this.facetIndex.facets(this.getFacetQuery(context)).encode());
+        } catch (IllegalArgumentException e) {
+            this.errorHandler(context, e);
+            return;
+        }
+        context.next();
+    }
+
+    private FacetIndex.Query getFacetQuery(RoutingContext context) {
+        return new FacetIndex.Query()
+                .withFormats(context.queryParam(EventConfig.FORMAT))
+                .withLanguages(context.queryParam(EventConfig.LANGUAGE))
+                .withYears(context.queryParam(EventConfig.YEAR));
+    }
+
+    /**
+     * To retrieve the books with the ISBN of the {@code isbn} path parameter, either ISBN-10 or ISBN-13 with or without
+     * hyphens, from the in memory index.
+     *
+     * @param context of the current request
+     */
+    public void byIsbn(RoutingContext context) {
+        LOGGER.debug("Retrieving books by isbn");
+        RequestContext request = context.get(EventConfig.EVENT);
+        String isbn = context.pathParam(EventConfig.ISBN);
+        try {
+            JsonArray books = this.isbnIndex.find(isbn);
+            if (books.isEmpty()) {
+                throw new NoResultException("No books found with isbn " + isbn);
+            }
+            request.respond(HttpResponseStatus.OK.code(), books.encode());
+        } catch (IllegalArgumentException | NoResultException e) {
+            this.errorHandler(context, e);
+            return;
+        }
+        context.next();
+    }
+
+    /**
+     * To retrieve a single book by id, lookups arriving at the same time are batched in one query.
+     *
+     * @param context of the current request
+     */
+    public void book(RoutingContext context) {
+        LOGGER.debug("Retrieving book by id");
+        this.respondById(context);
     }
 
     /**
@@ -59,12 +172,11 @@ public class BooksHandler extends LibraryHandler {
     public void add(RoutingContext context) {
         LOGGER.debug("Adding book to DB");
         JsonObject body = context.getBodyAsJson();
-        JsonObject event = context.get(EventConfig.EVENT);
-        Vertx vertx = context.vertx();
+        RequestContext request = context.get(EventConfig.EVENT);
 
-        EntityManager entityManager = context.get(EventConfig.ENTITY_MANAGER);
-        BooksRepository booksRepository = new BooksRepository(vertx, entityManager);
-        ContributorsRepository contributorsRepository = new ContributorsRepository(vertx, entityManager);
+        PersistenceHandle persistence = context.get(EventConfig.PERSISTENCE);
+        BooksRepository booksRepository = new BooksRepository(this.executor, persistence, this.negativeCache);
+        ContributorsRepository contributorsRepository = new ContributorsRepository(this.executor, persistence, this.negativeCache);
 
         if (LOGGER.isTraceEnabled()) {
             LOGGER.trace(body.encode());
@@ -73,7 +185,7 @@ public class BooksHandler extends LibraryHandler {
         // To add books we actually need a whole transaction so we can get a bunch of entities in managed state
         // ...
         // in theory. And it worked :)
-        entityManager.getTransaction().begin();
+        persistence.transactional();
 
         Disposable toDispose = Single.just(body)
                 .filter(b -> b.containsKey(EventConfig.CONTRIBUTORS))
@@ -96,20 +208,103 @@ public class BooksHandler extends LibraryHandler {
                 // After adding books, then we set the sha 256
                 .map(BookEntity::calculateSha256)
                 // Save the book entity
-                .map(booksRepository::add)
+                .flatMap(booksRepository::add)
+                .flatMap(booksRepository::commit)
                 // Make it nice looking for the response
                 .map(BookEntity::toJson)
                 .map(JsonObject::encode)
                 // Put it in the response
-                .map(book -> event
-                        .put(EventConfig.CONTENT, book)
-                        .put(EventConfig.STATUS, HttpResponseStatus.CREATED.code())
-                )
+                .map(book -> request.respond(HttpResponseStatus.CREATED.code(), book))
                 // Materialize everything
                 .subscribe(
-                        evt -> context.next(),
+                        req -> context.next(),
+                        error -> this.errorHandler(context, error)
+                );
+        this.dispose(request.getDisposables(), toDispose);
+    }
+
+    /**
+     * To add a batch of books to the database, the body being an array of books as for {@link #add}. Titles are
+     * normalized in parallel, the contributors of all the books are read in one query and the books are inserted
+     * together; if any of the records is invalid none is added and the error names each of them by position.
+     *
+     * @param context to retrieve parameters
+     */
+    public void addAll(RoutingContext context) {
+        LOGGER.debug("Adding batch of books to DB");
+        RequestContext request = context.get(EventConfig.EVENT);
+        List<JsonObject> records;
+        try {
+            records = this.getRecords(context);
+        } catch (IllegalArgumentException e) {
+            this.errorHandler(context, e);
+            return;
+        }
+
+        PersistenceHandle persistence = context.get(EventConfig.PERSISTENCE);
+        BooksRepository booksRepository = new BooksRepository(this.executor, persistence, this.negativeCache);
+        ContributorsRepository contributorsRepository = new ContributorsRepository(this.executor, persistence, this.negativeCache);
+        persistence.transactional();
+
+        Disposable toDispose = this.normalization
+                .rxNormalize(records, BooksHandler::draft)
+                .map(LibraryHandler::valid)
+                .flatMap(drafts -> {
+                    Set<Long> ids = new LinkedHashSet<>();
+                    drafts.forEach(draft -> ids.addAll(draft.getTwo().keySet()));
+                    return contributorsRepository
+                            .fetchAllById(ids)
+                            .toMap(ContributorEntity::getId)
+                            // Associations change the contributors shared between books, one book at a time
+                            .map(contributors -> drafts
+                                    .stream()
+                                    .map(draft -> withContributors(draft, contributors))
+                                    .collect(Collectors.toList()));
+                })
+                .flatMap(books -> this.normalization.rxNormalize(books, BookEntity::calculateSha256))
+                .map(LibraryHandler::valid)
+                .map(LibraryHandler::unique)
+                .flatMap(booksRepository::addAll)
+                .flatMap(booksRepository::commit)
+                .map(books -> books
+                        .stream()
+                        .map(BookEntity::toJson)
+                        .collect(JsonArray::new, JsonArray::add, JsonArray::addAll))
+                .map(JsonArray::encode)
+                .map(books -> request.respond(HttpResponseStatus.CREATED.code(), books))
+                .subscribe(
+                        req -> context.next(),
                         error -> this.errorHandler(context, error)
                 );
-        this.dispose(context.get(EventConfig.DISPOSABLES), toDispose);
+        this.dispose(request.getDisposables(), toDispose);
+    }
+
+    /**
+     * @return the book of the record, and the type of contribution of each of its contributors by id
+     */
+    private static Pair<BookEntity, Map<Long, ContributorType>> draft(JsonObject record) {
+        BookEntity book = BookEntity.fromJson(record);
+        Map<Long, ContributorType> contributors = new LinkedHashMap<>();
+        for (Object contributor : record.getJsonArray(EventConfig.CONTRIBUTORS)) {
+            if (!(contributor instanceof JsonObject) || ((JsonObject) contributor).getLong(EventConfig.ID) == null) {
+                throw new IllegalArgumentException("Contributors must be objects with an id");
+            }
+            JsonObject json = (JsonObject) contributor;
+            ContributorType type = ContributorType.fromString(json.getString(EventConfig.TYPE));
+            contributors.put(json.getLong(EventConfig.ID), type);
+        }
+        if (contributors.isEmpty()) {
+            throw new IllegalArgumentException("At least one contributor is required");
+        }
+        return new Pair<>(book, contributors);
+    }
+
+    private static BookEntity withContributors(
+            Pair<BookEntity, Map<Long, ContributorType>> draft,
+            Map<Long, ContributorEntity> contributors
+    ) {
+        BookEntity book = draft.getOne();
+        draft.getTwo().forEach((id, type) -> book.addContributor(new Pair<>(contributors.get(id), type)));
+        return book;
     }
 }
@@ -1,8 +1,18 @@
 package app.tandv.services.data.handler;
 
+import app.tandv.services.concurrency.NormalizationPool;
 import app.tandv.services.configuration.EventConfig;
+import app.tandv.services.data.catalog.CatalogCache;
+import app.tandv.services.data.catalog.CatalogSnapshots;
+import app.tandv.services.data.catalog.ContributorGraph;
+import app.tandv.services.data.catalog.NegativeCache;
 import app.tandv.services.data.entity.ContributorEntity;
+import app.tandv.services.data.entity.ContributorType;
+import app.tandv.services.data.jpa.PersistenceHandle;
 import app.tandv.services.data.repository.ContributorsRepository;
+import app.tandv.services.data.repository.BatchLoader;
+import app.tandv.services.data.repository.QueryExecutor;
+import app.tandv.services.handler.RequestContext;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.reactivex.Single;
 import io.reactivex.disposables.Disposable;
@@ -12,68 +22,215 @@ import io.vertx.reactivex.ext.web.RoutingContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
 
 /**
  * @author vic on 2020-07-21
  */
 public class ContributorHandler extends LibraryHandler {
     private static final Logger LOGGER = LoggerFactory.getLogger(ContributorHandler.class);
+    private static final String CONTRIBUTORS_KEY = CatalogSnapshots.CONTRIBUTORS;
+
+    private final ContributorGraph graph;
+
+    public ContributorHandler(
+            QueryExecutor executor,
+            CatalogCache cache,
+            BatchLoader<ContributorEntity> loader,
+            NegativeCache negativeCache,
+            CatalogSnapshots snapshots,
+            NormalizationPool normalization,
+            int maxRecords,
+            ContributorGraph graph
+    ) {
+        super(executor, cache, loader, negativeCache, snapshots, normalization, maxRecords);
+        this.graph = graph;
+    }
 
     public void contributors(RoutingContext context) {
+        if (this.respondByIds(context)) {
+            LOGGER.debug("Retrieving contributors by id");
+            return;
+        }
+        if (this.respondFromSnapshot(context, CONTRIBUTORS_KEY)) {
+            LOGGER.debug("Contributors served from snapshot");
+            context.next();
+            return;
+        }
+        if (this.respondFromCache(context, CONTRIBUTORS_KEY)) {
+            LOGGER.debug("Contributors served from cache");
+            context.next();
+            return;
+        }
         LOGGER.debug("Retrieving all contributors from DB");
-        JsonObject event = context.get(EventConfig.EVENT);
-        EntityManager entityManager = context.get(EventConfig.ENTITY_MANAGER);
-        ContributorsRepository repository = new ContributorsRepository(context.vertx(), entityManager);
+        RequestContext request = context.get(EventConfig.EVENT);
+        PersistenceHandle persistence = context.get(EventConfig.PERSISTENCE);
+        ContributorsRepository repository = new ContributorsRepository(this.executor, persistence, this.negativeCache);
+        // Read before the query, so a write committed while it runs makes the result stale right away
+        long version = this.cache.getVersion().current();
 
         Disposable toDispose = repository.fetchAll()
                 .map(ContributorEntity::toJson)
                 .collect(JsonArray::new, JsonArray::add)
                 .map(JsonArray::encode)
-                .map(contributors -> event
-                        .put(EventConfig.CONTENT, contributors)
-                        .put(EventConfig.STATUS, HttpResponseStatus.OK.code())
-                )
+                .map(contributors -> this.cache.put(CONTRIBUTORS_KEY, version, contributors))
+                .map(entry -> this.respond(context, entry))
                 .subscribe(
-                        evt -> context.next(),
+                        req -> context.next(),
                         error -> this.errorHandler(context, error)
                 );
-        this.dispose(context.get(EventConfig.DISPOSABLES), toDispose);
+        this.dispose(request.getDisposables(), toDispose);
+    }
+
+    /**
+     * To retrieve a single contributor by id, lookups arriving at the same time are batched in one query.
+     *
+     * @param context of the current request
+     */
+    public void contributor(RoutingContext context) {
+        LOGGER.debug("Retrieving contributor by id");
+        this.respondById(context);
+    }
+
+    /**
+     * To retrieve the contributors that have worked on the same books as the one of the {@code id} path parameter,
+     * with how many books they share.
+     *
+     * @param context of the current request
+     */
+    public void coContributors(RoutingContext context) {
+        LOGGER.debug("Retrieving co-contributors from graph");
+        this.respondFromGraph(context, this.graph::coContributors);
+    }
+
+    /**
+     * To retrieve the books of the contributor of the {@code id} path parameter, optionally only those with the
+     * contribution {@code type} given in the query.
+     *
+     * @param context of the current request
+     */
+    public void contributions(RoutingContext context) {
+        LOGGER.debug("Retrieving contributions from graph");
+        Set<ContributorType> types;
+        try {
+            types = ContributorGraph.parseTypes(context.queryParam(EventConfig.TYPE));
+        } catch (IllegalArgumentException e) {
+            this.errorHandler(context, e);
+            return;
+        }
+        this.respondFromGraph(context, id -> this.graph.contributions(id, types));
+    }
+
+    /**
+     * To retrieve the ids of the books all the contributors in the {@code ids} query parameter have worked on,
+     * optionally only with the contribution {@code type} given.
+     *
+     * @param context of the current request
+     */
+    public void commonBooks(RoutingContext context) {
+        LOGGER.debug("Retrieving common books from graph");
+        RequestContext request = context.get(EventConfig.EVENT);
+        try {
+            Set<Long> ids = this.getIdsParam(context);
+            if (ids.isEmpty()) {
+                throw new IllegalArgumentException("At least one contributor id is required");
+            }
+            Set<ContributorType> types = ContributorGraph.parseTypes(context.queryParam(EventConfig.TYPE));
+            request.respond(HttpResponseStatus.OK.code(), this.graph.commonBooks(ids, types).encode());
+        } catch (IllegalArgumentException e) {
+            this.errorHandler(context, e);
+            return;
+        }
+        context.next();
+    }
+
+    private void respondFromGraph(RoutingContext context, Function<Long, JsonArray> query) {
+        RequestContext request = context.get(EventConfig.EVENT);
+        try {
+            Long id = this.parseId(context.pathParam(EventConfig.ID));
+            request.respond(HttpResponseStatus.OK.code(), query.apply(id).encode());
+        } catch (IllegalArgumentException e) {
+            this.errorHandler(context, e);
+            return;
+        }
+        context.next();
     }
 
     public void add(RoutingContext context) {
         LOGGER.debug("Adding contributor to DB");
-        JsonObject event = context.get(EventConfig.EVENT);
+        RequestContext request = context.get(EventConfig.EVENT);
         JsonObject body = context.getBodyAsJson();
-        EntityManager entityManager = context.get(EventConfig.ENTITY_MANAGER);
-        ContributorsRepository repository = new ContributorsRepository(context.vertx(), entityManager);
+        PersistenceHandle persistence = context.get(EventConfig.PERSISTENCE);
+        ContributorsRepository repository = new ContributorsRepository(this.executor, persistence, this.negativeCache);
 
         if (LOGGER.isTraceEnabled()) {
             LOGGER.trace(body.encode());
         }
 
         // To add contributors we actually need a whole transaction so we can get entities in managed state
-        entityManager.getTransaction().begin();
+        persistence.transactional();
 
         // Get the new contributor entity to build
         Disposable toDispose = Single.just(body)
                 .map(ContributorEntity::fromJson)
                 // Save it
-                .map(repository::add)
+                .flatMap(repository::add)
+                .flatMap(repository::commit)
                 // Make it nice looking for the response
                 .map(ContributorEntity::toJson)
                 .map(JsonObject::encode)
                 // Put it in the response
-                .map(contributor -> event
-                        .put(EventConfig.CONTENT, contributor)
-                        .put(EventConfig.STATUS, HttpResponseStatus.CREATED.code())
-                )
+                .map(contributor -> request.respond(HttpResponseStatus.CREATED.code(), contributor))
                 // Materialize everything
                 .subscribe(
-                        evt -> context.next(),
+                        req -> context.next(),
                         error -> this.errorHandler(context, error)
                 );
 
-        this.dispose(context.get(EventConfig.DISPOSABLES), toDispose);
+        this.dispose(request.getDisposables(), toDispose);
+    }
+
+    /**
+     * To add a batch of contributors to the database, the body being an array of contributors as for {@link #add}.
+     * Names are normalized in parallel and the contributors inserted together; if any of the records is invalid none
+     * is added and the error names each of them by position.
+     *
+     * @param context to retrieve parameters
+     */
+    public void addAll(RoutingContext context) {
+        LOGGER.debug("Adding batch of contributors to DB");
+        RequestContext request = context.get(EventConfig.EVENT);
+        List<JsonObject> records;
+        try {
+            records = this.getRecords(context);
+        } catch (IllegalArgumentException e) {
+            this.errorHandler(context, e);
+            return;
+        }
+
+        PersistenceHandle persistence = context.get(EventConfig.PERSISTENCE);
+        ContributorsRepository repository = new ContributorsRepository(this.executor, persistence, this.negativeCache);
+        persistence.transactional();
+
+        Disposable toDispose = this.normalization
+                .rxNormalize(records, ContributorEntity::fromJson)
+                .map(LibraryHandler::valid)
+                .map(LibraryHandler::unique)
+                .flatMap(repository::addAll)
+                .flatMap(repository::commit)
+                .map(contributors -> contributors
+                        .stream()
+                        .map(ContributorEntity::toJson)
+                        .collect(JsonArray::new, JsonArray::add, JsonArray::addAll))
+                .map(JsonArray::encode)
+                .map(contributors -> request.respond(HttpResponseStatus.CREATED.code(), contributors))
+                .subscribe(
+                        req -> context.next(),
+                        error -> this.errorHandler(context, error)
+                );
+        this.dispose(request.getDisposables(), toDispose);
     }
 }
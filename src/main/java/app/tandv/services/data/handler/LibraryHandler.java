@@ -1,17 +1,41 @@
 package app.tandv.services.data.handler;
 
+import app.tandv.services.concurrency.NormalizationPool;
+import app.tandv.services.configuration.EventConfig;
+import app.tandv.services.configuration.MediaTypes;
+import app.tandv.services.data.catalog.CatalogCache;
+import app.tandv.services.data.catalog.CatalogSnapshots;
+import app.tandv.services.data.catalog.NegativeCache;
+import app.tandv.services.data.entity.LibraryEntity;
+import app.tandv.services.data.repository.BatchLoader;
+import app.tandv.services.data.repository.QueryExecutor;
 import app.tandv.services.exception.PartialResultException;
+import app.tandv.services.handler.RequestContext;
 import app.tandv.services.util.DisposableHandler;
 import app.tandv.services.util.collections.FluentHashMap;
+import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpResponseStatus;
+import io.reactivex.Single;
+import io.reactivex.disposables.Disposable;
+import io.vertx.core.json.DecodeException;
 import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.ParsedHeaderValue;
+import io.vertx.reactivex.core.buffer.Buffer;
+import io.vertx.reactivex.core.http.HttpServerResponse;
 import io.vertx.reactivex.ext.web.RoutingContext;
 import org.hibernate.exception.ConstraintViolationException;
 
 import javax.persistence.NoResultException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.StringJoiner;
 import java.util.function.BiFunction;
 
 /**
@@ -24,6 +48,294 @@ abstract class LibraryHandler extends DisposableHandler {
             .thenPut(ConstraintViolationException.class.getSimpleName(), HttpResponseStatus.CONFLICT.code())
             .thenPut(PartialResultException.class.getSimpleName(), HttpResponseStatus.NOT_FOUND.code());
 
+    private static final String GZIP = "gzip";
+    private static final String IDS_PARAM = "ids";
+
+    final QueryExecutor executor;
+    final CatalogCache cache;
+    final BatchLoader<?> loader;
+    final NegativeCache negativeCache;
+    final CatalogSnapshots snapshots;
+    final NormalizationPool normalization;
+    private final int maxRecords;
+
+    LibraryHandler(QueryExecutor executor, CatalogCache cache, BatchLoader<?> loader, NegativeCache negativeCache,
+                   CatalogSnapshots snapshots, NormalizationPool normalization, int maxRecords) {
+        this.executor = executor;
+        this.cache = cache;
+        this.loader = loader;
+        this.negativeCache = negativeCache;
+        this.snapshots = snapshots;
+        this.normalization = normalization;
+        this.maxRecords = maxRecords;
+    }
+
+    /**
+     * Answers with the entity of the {@code id} path parameter, looked up through the batch loader.
+     *
+     * @param context of the current request
+     */
+    void respondById(RoutingContext context) {
+        RequestContext request = context.get(EventConfig.EVENT);
+        Long id;
+        try {
+            id = this.parseId(context.pathParam(EventConfig.ID));
+        } catch (IllegalArgumentException e) {
+            this.errorHandler(context, e);
+            return;
+        }
+        Disposable toDispose = this.loadOne(id)
+                .map(JsonObject::encode)
+                .map(entity -> request.respond(HttpResponseStatus.OK.code(), entity))
+                .subscribe(
+                        req -> context.next(),
+                        error -> this.errorHandler(context, error)
+                );
+        this.dispose(request.getDisposables(), toDispose);
+    }
+
+    /**
+     * Answers with the entities of the {@code ids} query parameter if present, looked up through the batch loader.
+     *
+     * @param context of the current request
+     * @return true if the request had ids and is being answered with them, false if it is not a multi-get
+     */
+    boolean respondByIds(RoutingContext context) {
+        Set<Long> ids;
+        try {
+            ids = this.getIdsParam(context);
+        } catch (IllegalArgumentException e) {
+            this.errorHandler(context, e);
+            return true;
+        }
+        if (ids.isEmpty()) {
+            return false;
+        }
+        RequestContext request = context.get(EventConfig.EVENT);
+        Disposable toDispose = this.loadAll(ids)
+                .map(JsonArray::encode)
+                .map(entities -> request.respond(HttpResponseStatus.OK.code(), entities))
+                .subscribe(
+                        req -> context.next(),
+                        error -> this.errorHandler(context, error)
+                );
+        this.dispose(request.getDisposables(), toDispose);
+        return true;
+    }
+
+    /**
+     * @param context of the current request
+     * @return the ids of the {@code ids} query parameter, either comma separated or repeated, in order and without
+     * duplicates; empty if not present
+     */
+    Set<Long> getIdsParam(RoutingContext context) {
+        Set<Long> ids = new LinkedHashSet<>();
+        for (String value : context.queryParam(IDS_PARAM)) {
+            for (String id : value.split(",")) {
+                if (!id.trim().isEmpty()) {
+                    ids.add(this.parseId(id));
+                }
+            }
+        }
+        if (ids.size() > this.loader.getMaxSize()) {
+            throw new IllegalArgumentException("At most " + this.loader.getMaxSize() + " ids can be requested at once");
+        }
+        return ids;
+    }
+
+    /**
+     * @param context of the current request
+     * @return the records of a batch write, the json objects of the body array
+     * @throws IllegalArgumentException if the body is not an array of objects, is empty or has too many of them
+     */
+    List<JsonObject> getRecords(RoutingContext context) {
+        JsonArray body;
+        try {
+            body = context.getBodyAsJsonArray();
+        } catch (DecodeException e) {
+            throw new IllegalArgumentException("Expected an array of records");
+        }
+        if (body == null || body.isEmpty()) {
+            throw new IllegalArgumentException("At least one record is required");
+        }
+        if (body.size() > this.maxRecords) {
+            throw new IllegalArgumentException("At most " + this.maxRecords + " records can be written at once");
+        }
+        List<JsonObject> records = new ArrayList<>(body.size());
+        for (int i = 0; i < body.size(); i++) {
+            if (!(body.getValue(i) instanceof JsonObject)) {
+                throw new IllegalArgumentException("Record " + i + " is not an object");
+            }
+            records.add(body.getJsonObject(i));
+        }
+        return records;
+    }
+
+    /**
+     * @param results of normalizing the records of a batch
+     * @param <T>     type of the entities normalized
+     * @return the entities, in the same order as the records
+     * @throws IllegalArgumentException naming every record that could not be normalized, in input order
+     */
+    static <T> List<T> valid(List<NormalizationPool.Normalized<T>> results) {
+        List<T> entities = new ArrayList<>(results.size());
+        StringJoiner errors = new StringJoiner("; ", "Invalid records: ", "");
+        boolean invalid = false;
+        for (NormalizationPool.Normalized<T> result : results) {
+            if (result.isValid()) {
+                entities.add(result.getValue());
+            } else {
+                invalid = true;
+                errors.add("[" + result.getIndex() + "] " + result.getError().getMessage());
+            }
+        }
+        if (invalid) {
+            throw new IllegalArgumentException(errors.toString());
+        }
+        return entities;
+    }
+
+    /**
+     * @param entities of a batch, with their sha256 signature
+     * @param <T>      type of the entities
+     * @return the same entities
+     * @throws IllegalArgumentException if two records of the batch are the same entity
+     */
+    static <T extends LibraryEntity<?>> List<T> unique(List<T> entities) {
+        Map<String, Integer> first = new HashMap<>();
+        for (int i = 0; i < entities.size(); i++) {
+            Integer previous = first.putIfAbsent(entities.get(i).getSha256(), i);
+            if (previous != null) {
+                throw new IllegalArgumentException("Records " + previous + " and " + i + " are the same");
+            }
+        }
+        return entities;
+    }
+
+    /**
+     * @param id to parse
+     * @return the id as long
+     * @throws IllegalArgumentException if not a number
+     */
+    Long parseId(String id) {
+        try {
+            return Long.valueOf(id.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid id: " + id);
+        }
+    }
+
+    /**
+     * @param id to look up
+     * @return the json of the entity, through the batch loader
+     */
+    Single<JsonObject> loadOne(Long id) {
+        return this.loader
+                .load(Collections.singleton(id))
+                .map(found -> {
+                    JsonObject entity = found.get(id);
+                    if (entity == null) {
+                        throw new NoResultException("No entity found with id " + id);
+                    }
+                    return entity;
+                });
+    }
+
+    /**
+     * @param ids to look up
+     * @return the json of the entities, in the same order as the ids, through the batch loader
+     */
+    Single<JsonArray> loadAll(Set<Long> ids) {
+        return this.loader
+                .load(ids)
+                .map(found -> {
+                    JsonArray entities = new JsonArray();
+                    List<Long> missing = new ArrayList<>();
+                    for (Long id : ids) {
+                        JsonObject entity = found.get(id);
+                        if (entity == null) {
+                            missing.add(id);
+                        } else {
+                            entities.add(entity);
+                        }
+                    }
+                    if (entities.isEmpty()) {
+                        throw new NoResultException("No entities found with ids " + missing);
+                    }
+                    if (!missing.isEmpty()) {
+                        throw new PartialResultException("No entities found with ids " + missing);
+                    }
+                    return entities;
+                });
+    }
+
+    /**
+     * Answers with the snapshot file of the listing, the gzip compressed one if the client accepts it, to be sent by
+     * the {@link app.tandv.services.handler.ResponseHandler} without reading it.
+     *
+     * @param context of the current request
+     * @param key     of the listing
+     * @return true if there is a snapshot for the current catalog version and the request was answered with it
+     */
+    boolean respondFromSnapshot(RoutingContext context, String key) {
+        Optional<CatalogSnapshots.Snapshot> snapshot = this.snapshots.get(key);
+        if (!snapshot.isPresent()) {
+            return false;
+        }
+        RequestContext request = context.get(EventConfig.EVENT);
+        HttpServerResponse response = context.response();
+        // Otherwise sendFile would guess it from the file extension
+        response.putHeader(HttpHeaderNames.CONTENT_TYPE.toString(), MediaTypes.APPLICATION_JSON);
+        response.putHeader(HttpHeaderNames.VARY.toString(), HttpHeaderNames.ACCEPT_ENCODING.toString());
+        if (snapshot.get().getGzipped() != null && this.acceptsGzip(context)) {
+            response.putHeader(HttpHeaderNames.CONTENT_ENCODING.toString(), GZIP);
+            request.respondWithFile(HttpResponseStatus.OK.code(), snapshot.get().getGzipped());
+        } else {
+            request.respondWithFile(HttpResponseStatus.OK.code(), snapshot.get().getFile());
+        }
+        return true;
+    }
+
+    /**
+     * @param context of the current request
+     * @param key     of the cached payload
+     * @return true if the payload was cached for the current catalog version and the request was answered with it
+     */
+    boolean respondFromCache(RoutingContext context, String key) {
+        Optional<CatalogCache.Entry> entry = this.cache.get(key);
+        entry.ifPresent(cached -> this.respond(context, cached));
+        return entry.isPresent();
+    }
+
+    /**
+     * Answers with the gzip compressed bytes of the payload if the client accepts them and they are ready. Since the
+     * response is already encoded the server won't compress it again.
+     *
+     * @param context of the current request
+     * @param entry   with the payload to respond with
+     * @return the request context
+     */
+    RequestContext respond(RoutingContext context, CatalogCache.Entry entry) {
+        RequestContext request = context.get(EventConfig.EVENT);
+        HttpServerResponse response = context.response();
+        response.putHeader(HttpHeaderNames.VARY.toString(), HttpHeaderNames.ACCEPT_ENCODING.toString());
+        Buffer gzipped = entry.getGzipped();
+        if (gzipped != null && this.acceptsGzip(context)) {
+            response.putHeader(HttpHeaderNames.CONTENT_ENCODING.toString(), GZIP);
+            return request.respond(HttpResponseStatus.OK.code(), gzipped);
+        }
+        return request.respond(HttpResponseStatus.OK.code(), entry.getJson());
+    }
+
+    private boolean acceptsGzip(RoutingContext context) {
+        for (ParsedHeaderValue encoding : context.getDelegate().parsedHeaders().acceptEncoding()) {
+            if (GZIP.equalsIgnoreCase(encoding.value()) && encoding.weight() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     void errorHandler(RoutingContext context, Throwable exception) {
         Throwable cause = exception.getCause();
         String exceptionName = cause == null ? exception.getClass().getSimpleName() : cause.getClass().getSimpleName();
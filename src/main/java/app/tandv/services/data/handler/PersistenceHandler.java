@@ -0,0 +1,99 @@
+package app.tandv.services.data.handler;
+
+import app.tandv.services.configuration.EventConfig;
+import app.tandv.services.data.catalog.CatalogListener;
+import app.tandv.services.data.catalog.CatalogVersion;
+import app.tandv.services.data.jpa.PersistenceHandle;
+import app.tandv.services.data.jpa.PersistenceMetrics;
+import app.tandv.services.data.repository.QueryExecutor;
+import app.tandv.services.handler.LifecycleHook;
+import app.tandv.services.handler.RequestContext;
+import io.vertx.reactivex.ext.web.RoutingContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+
+/**
+ * Gives the data handlers a {@link PersistenceHandle} before they run, and once they are done (or the request failed)
+ * closes the entity manager, if it was ever created.
+ * <p>
+ * The data handlers commit their transaction themselves, from the worker pool, before answering. Once one was
+ * committed this bumps the {@link CatalogVersion}, then hands the changes recorded in the handle to the
+ * {@link CatalogListener}s. A transaction left active by a failed request is rolled back in the worker pool as well.
+ *
+ * @author vic on 2020-10-19
+ */
+public class PersistenceHandler implements LifecycleHook {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PersistenceHandler.class);
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final PersistenceMetrics persistenceMetrics;
+    private final QueryExecutor executor;
+    private final CatalogVersion catalogVersion;
+    private final List<CatalogListener> listeners;
+
+    public PersistenceHandler(EntityManagerFactory entityManagerFactory, PersistenceMetrics persistenceMetrics,
+                              QueryExecutor executor, CatalogVersion catalogVersion, List<CatalogListener> listeners) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.persistenceMetrics = persistenceMetrics;
+        this.executor = executor;
+        this.catalogVersion = catalogVersion;
+        this.listeners = listeners;
+    }
+
+    @Override
+    public boolean beforeHandler(RoutingContext context) {
+        context.put(EventConfig.PERSISTENCE, new PersistenceHandle(this.entityManagerFactory));
+        return true;
+    }
+
+    @Override
+    public boolean afterHandler(RoutingContext context) {
+        PersistenceHandle handle = context.remove(EventConfig.PERSISTENCE);
+        if (handle == null || !handle.isAcquired()) {
+            // The request failed before getting to the data handlers, or never needed the database
+            return true;
+        }
+        if (handle.isCommitted()) {
+            // Only writes run in a transaction
+            long version = this.catalogVersion.bump();
+            this.notifyListeners(version, handle);
+        }
+        RequestContext request = context.get(EventConfig.EVENT);
+        if (request != null) {
+            this.persistenceMetrics.record(request.getRoute().getRoute(), handle);
+        }
+        if (handle.isTransactionActive()) {
+            LOGGER.debug("Rolling back transaction");
+            this.executor
+                    .execute("rollback", () -> {
+                        handle.close();
+                        return true;
+                    })
+                    .subscribe(
+                            closed -> LOGGER.debug("Entity manager closed"),
+                            error -> LOGGER.error("Error rolling back transaction", error)
+                    );
+        } else {
+            handle.close();
+            LOGGER.debug("Entity manager closed");
+        }
+        return true;
+    }
+
+    private void notifyListeners(long version, PersistenceHandle handle) {
+        if (handle.getChanges().isEmpty()) {
+            return;
+        }
+        for (CatalogListener listener : this.listeners) {
+            try {
+                listener.committed(version, handle.getChanges());
+            } catch (RuntimeException exception) {
+                // The transaction is already committed, a listener failing must not roll it back
+                LOGGER.error("Error notifying catalog listener", exception);
+            }
+        }
+    }
+}
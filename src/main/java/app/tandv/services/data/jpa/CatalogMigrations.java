@@ -0,0 +1,119 @@
+package app.tandv.services.data.jpa;
+
+import app.tandv.services.data.entity.BookEntity;
+import app.tandv.services.data.entity.ContributorEntity;
+import app.tandv.services.data.entity.LibraryEntity;
+import app.tandv.services.util.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Brings records stored by earlier versions of the service up to date with how they are built now. Every migration
+ * only touches the records that need it, so running them on every start costs a query once they are done.
+ * <p>
+ * They are meant to run before the catalog is read, within a transaction of the caller.
+ *
+ * @author vic on 2020-10-19
+ */
+public final class CatalogMigrations {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CatalogMigrations.class);
+
+    private CatalogMigrations() {
+    }
+
+    /**
+     * Runs every migration.
+     *
+     * @param entityManager with an active transaction
+     */
+    public static void migrate(EntityManager entityManager) {
+        int catalogued = recalculateBookCataloguing(entityManager);
+        if (catalogued > 0) {
+            LOGGER.info("Cataloguing recalculated for {} books", catalogued);
+        }
+        int keyed = addCollationKeys(entityManager, BookEntity.class)
+                + addCollationKeys(entityManager, ContributorEntity.class);
+        if (keyed > 0) {
+            LOGGER.info("Collation keys added to {} records", keyed);
+        }
+        int signed = recalculateBookSignatures(entityManager);
+        if (signed > 0) {
+            LOGGER.info("Signatures recalculated for {} books", signed);
+        }
+    }
+
+    /**
+     * Records stored before the collation keys were added get theirs.
+     *
+     * @return the number of records changed
+     */
+    static int addCollationKeys(EntityManager entityManager, Class<? extends LibraryEntity<?>> type) {
+        List<? extends LibraryEntity<?>> entities = entityManager
+                .createQuery("SELECT e FROM " + type.getSimpleName() + " e WHERE e.collationKey IS NULL", type)
+                .getResultList();
+        entities.forEach(entity -> entity.setCataloguing(entity.getCataloguing()));
+        return entities.size();
+    }
+
+    /**
+     * Books used to be catalogued by {@link StringUtils#contributorForOrdering(String)}, with the first word of the
+     * title last, instead of {@link StringUtils#titleForOrdering(String)}. Their cataloguing string, and with it their
+     * collation key, is computed again from their title.
+     *
+     * @return the number of books changed
+     */
+    static int recalculateBookCataloguing(EntityManager entityManager) {
+        List<Object[]> books = entityManager
+                .createQuery("SELECT b.id, b.title, b.cataloguing FROM BookEntity b", Object[].class)
+                .getResultList();
+        int changed = 0;
+        for (Object[] book : books) {
+            String current = StringUtils.titleForOrdering((String) book[1]).orElse(null);
+            if (current != null && !current.equals(book[2])) {
+                entityManager.find(BookEntity.class, book[0]).setCataloguing(current);
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Books with more than one contributor used to be signed with the signatures of their contributors in no
+     * particular order, see {@link BookEntity#calculateSha256()}, so the same book could be stored twice. They are
+     * signed again in order, except for those that would then be the same as a book already stored, which are left
+     * as they are and logged.
+     *
+     * @return the number of books changed
+     */
+    static int recalculateBookSignatures(EntityManager entityManager) {
+        List<BookEntity> books = entityManager
+                .createQuery("SELECT DISTINCT b FROM BookEntity b JOIN FETCH b.contributors WHERE SIZE(b.contributors) > 1", BookEntity.class)
+                .getResultList();
+        if (books.isEmpty()) {
+            return 0;
+        }
+        Set<String> signatures = new HashSet<>(entityManager
+                .createQuery("SELECT b.sha256 FROM BookEntity b", String.class)
+                .getResultList());
+        int changed = 0;
+        for (BookEntity book : books) {
+            String previous = book.getSha256();
+            String current = book.calculateSha256().getSha256();
+            if (current.equals(previous)) {
+                continue;
+            }
+            if (signatures.add(current)) {
+                changed++;
+            } else {
+                LOGGER.warn("Book {} is the same as another book already stored, its signature is left unchanged", book.getId());
+                book.setSha256(previous);
+            }
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,35 @@
+package app.tandv.services.data.jpa;
+
+import org.hibernate.BaseSessionEventListener;
+
+/**
+ * Registered on a single session to measure how long it held a JDBC connection, from the end of each acquisition to
+ * the end of its release. Hikari reports the same for the pool as a whole, this is what lets us tell which routes
+ * hold connections the longest.
+ *
+ * @author vic on 2020-10-19
+ */
+class ConnectionHoldListener extends BaseSessionEventListener {
+    private long acquiredAt = -1L;
+    private long heldNanos = 0L;
+
+    @Override
+    public void jdbcConnectionAcquisitionEnd() {
+        this.acquiredAt = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcConnectionReleaseEnd() {
+        if (this.acquiredAt != -1L) {
+            this.heldNanos += System.nanoTime() - this.acquiredAt;
+            this.acquiredAt = -1L;
+        }
+    }
+
+    /**
+     * @return nanoseconds the connection was held for, including the current acquisition if still held
+     */
+    long getHeldNanos() {
+        return this.acquiredAt == -1L ? this.heldNanos : this.heldNanos + System.nanoTime() - this.acquiredAt;
+    }
+}
@@ -0,0 +1,81 @@
+package app.tandv.services.data.jpa;
+
+import app.tandv.services.metrics.Histogram;
+import app.tandv.services.metrics.MetricsRegistry;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hikari instantiates this factory by its class name (see {@link JpaEntityManagerFactory#getProperties()}), hence the
+ * need of a public no arguments constructor and of using the default {@link MetricsRegistry}.
+ *
+ * @author vic on 2020-10-19
+ */
+public class HikariMetricsTrackerFactory implements MetricsTrackerFactory {
+    private final MetricsRegistry registry;
+
+    public HikariMetricsTrackerFactory() {
+        this(MetricsRegistry.getDefault());
+    }
+
+    HikariMetricsTrackerFactory(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        this.registry
+                .gauge("hikari_connections_active", "Connections in use", poolStats::getActiveConnections, "pool", poolName)
+                .gauge("hikari_connections_idle", "Connections idle in the pool", poolStats::getIdleConnections, "pool", poolName)
+                .gauge("hikari_connections_pending", "Threads waiting for a connection", poolStats::getPendingThreads, "pool", poolName)
+                .gauge("hikari_connections_total", "Connections in the pool", poolStats::getTotalConnections, "pool", poolName)
+                .gauge("hikari_connections_max", "Maximum size of the pool", poolStats::getMaxConnections, "pool", poolName);
+        return new Tracker(poolName);
+    }
+
+    private final class Tracker implements IMetricsTracker {
+        private final Histogram acquire;
+        private final Histogram usage;
+        private final Histogram creation;
+        private final LongAdder timeouts;
+
+        private Tracker(String poolName) {
+            this.acquire = registry.timer(
+                    "hikari_connection_acquire_seconds", "Time to acquire a connection from the pool", "pool", poolName
+            );
+            this.usage = registry.timer(
+                    "hikari_connection_usage_seconds", "Time a connection is held before returning to the pool", "pool", poolName
+            );
+            this.creation = registry.timer(
+                    "hikari_connection_creation_seconds", "Time to create a new physical connection", "pool", poolName
+            );
+            this.timeouts = registry.counter(
+                    "hikari_connection_timeouts_total", "Connection requests that timed out", "pool", poolName
+            );
+        }
+
+        @Override
+        public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+            this.creation.record(TimeUnit.MILLISECONDS.toNanos(connectionCreatedMillis));
+        }
+
+        @Override
+        public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+            this.acquire.record(elapsedAcquiredNanos);
+        }
+
+        @Override
+        public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+            this.usage.record(TimeUnit.MILLISECONDS.toNanos(elapsedBorrowedMillis));
+        }
+
+        @Override
+        public void recordConnectionTimeout() {
+            this.timeouts.increment();
+        }
+    }
+}
@@ -28,9 +28,14 @@ public class JpaEntityManagerFactory {
     private static final String DB_CONNECTION_TIMEOUT_PROPERTY = "db.timeout.connection";
     private static final String DB_LEAK_DETECTION_THRESHOLD_PROPERTY = "db.timeout.leak";
     private static final String DB_CONNECTION_VALIDATION_TIMEOUT_PROPERTY = "db.timeout.conn-validation";
+    private static final String DB_POOL_NAME_PROPERTY = "db.pool.name";
+    private static final String DB_STATISTICS_PROPERTY = "db.statistics";
+    private static final String DB_BATCH_SIZE_PROPERTY = "db.batch-size";
 
     private static final String DEFAULT_DB_HOST = "localhost";
+    private static final String DEFAULT_POOL_NAME = "library";
     private static final int DEFAULT_POOL_SIZE = 10;
+    private static final int DEFAULT_BATCH_SIZE = 50;
     // in milliseconds
     private static final long DEFAULT_CONNECTION_TIMEOUT = 5000;
     private static final long DEFAULT_LEAK_THRESHOLD = 3000;
@@ -70,6 +75,14 @@ public class JpaEntityManagerFactory {
         return this.entityManagerFactory;
     }
 
+    /**
+     * @param config of the application
+     * @return the maximum number of connections of the pool, the most queries that can run at the same time
+     */
+    public static int getPoolSize(JsonObject config) {
+        return config.getInteger(DB_POOL_SIZE_PROPERTY, DEFAULT_POOL_SIZE);
+    }
+
     private List<String> classEntities() {
         return Arrays.stream(entityClasses)
                 .map(Class::getName)
@@ -94,7 +107,7 @@ public class JpaEntityManagerFactory {
         jpaProperties.put("hibernate.hikari.dataSource.password", this.getRequiredProperty(DB_SECRET_PROPERTY));
         jpaProperties.put("hibernate.hikari.dataSourceClassName", this.getRequiredProperty(DB_CLASSNAME_PROPERTY));
 
-        int poolSize = this.config.getInteger(DB_POOL_SIZE_PROPERTY, DEFAULT_POOL_SIZE);
+        int poolSize = getPoolSize(this.config);
         long connectionTimeout = this.config.getLong(DB_CONNECTION_TIMEOUT_PROPERTY, DEFAULT_CONNECTION_TIMEOUT);
         long leakThreshold = this.config.getLong(DB_LEAK_DETECTION_THRESHOLD_PROPERTY, DEFAULT_LEAK_THRESHOLD);
         long validationTimeout = this.config.getLong(DB_CONNECTION_VALIDATION_TIMEOUT_PROPERTY, DEFAULT_CONNECTION_VALIDATION);
@@ -103,6 +116,9 @@ public class JpaEntityManagerFactory {
         jpaProperties.put("hibernate.hikari.connectionTimeout", String.valueOf(connectionTimeout));
         jpaProperties.put("hibernate.hikari.leakDetectionThreshold", String.valueOf(leakThreshold));
         jpaProperties.put("hibernate.hikari.validationTimeout", String.valueOf(validationTimeout));
+        jpaProperties.put("hibernate.hikari.poolName", this.config.getString(DB_POOL_NAME_PROPERTY, DEFAULT_POOL_NAME));
+        // Hikari creates the factory by class name
+        jpaProperties.put("hibernate.hikari.metricsTrackerFactory", HikariMetricsTrackerFactory.class.getName());
 
         boolean showSql = this.config.getBoolean(Environment.SHOW_SQL, true);
         boolean queryCache = this.config.getBoolean(Environment.USE_QUERY_CACHE, false);
@@ -112,6 +128,16 @@ public class JpaEntityManagerFactory {
         jpaProperties.put(Environment.USE_QUERY_CACHE, queryCache);
         jpaProperties.put(Environment.USE_SECOND_LEVEL_CACHE, secondLevelCache);
         jpaProperties.put(Environment.USE_NEW_ID_GENERATOR_MAPPINGS, false);
+        // Inserts of batch writes grouped by table and sent together
+        jpaProperties.put(Environment.STATEMENT_BATCH_SIZE, this.config.getInteger(DB_BATCH_SIZE_PROPERTY, DEFAULT_BATCH_SIZE));
+        jpaProperties.put(Environment.ORDER_INSERTS, true);
+
+        boolean statistics = this.config.getBoolean(DB_STATISTICS_PROPERTY, true);
+        jpaProperties.put(Environment.GENERATE_STATISTICS, statistics);
+        if (statistics) {
+            // One instance per entity manager to count statements of each request
+            jpaProperties.put(Environment.SESSION_SCOPED_INTERCEPTOR, RequestStatisticsInterceptor.class.getName());
+        }
 
         return jpaProperties;
     }
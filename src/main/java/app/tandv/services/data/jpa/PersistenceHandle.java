@@ -0,0 +1,153 @@
+package app.tandv.services.data.jpa;
+
+import app.tandv.services.data.catalog.CatalogChange;
+import app.tandv.services.data.entity.LibraryEntity;
+import org.hibernate.Session;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Request scoped access to the persistence context. The entity manager (and with it a session and eventually a
+ * connection) is only created the first time a repository asks for it, so requests answered without reaching the
+ * database don't pay for it.
+ * <p>
+ * Everything that may block on a connection (creating the entity manager, beginning, committing or rolling back the
+ * transaction) happens on the worker threads running the queries; the event loop only marks the handle and reads its
+ * state. The handle is used from one thread at a time, hence the synchronization is only there for visibility.
+ *
+ * @author vic on 2020-10-19
+ */
+public class PersistenceHandle {
+    private final EntityManagerFactory entityManagerFactory;
+    private final ConnectionHoldListener holdListener = new ConnectionHoldListener();
+
+    private EntityManager entityManager;
+    private boolean transactional = false;
+    private boolean committed = false;
+    private List<CatalogChange> changes;
+
+    public PersistenceHandle(EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    /**
+     * To be called from the worker pool, see {@link app.tandv.services.data.repository.QueryExecutor}.
+     *
+     * @return the entity manager of this request, created on first use, with its transaction begun if this handle is
+     * transactional
+     */
+    public synchronized EntityManager get() {
+        if (this.entityManager == null) {
+            this.entityManager = this.entityManagerFactory.createEntityManager();
+            this.entityManager.unwrap(Session.class).addEventListeners(this.holdListener);
+        }
+        if (this.transactional && !this.committed && !this.entityManager.getTransaction().isActive()) {
+            this.entityManager.getTransaction().begin();
+        }
+        return this.entityManager;
+    }
+
+    /**
+     * Marks this handle as requiring a transaction, which begins with the first query of the request and lasts until
+     * {@link #commit()}.
+     *
+     * @return a reference to this instance for fluent API
+     */
+    public synchronized PersistenceHandle transactional() {
+        this.transactional = true;
+        return this;
+    }
+
+    /**
+     * Commits the transaction of this request, if one was begun. To be called from the worker pool.
+     */
+    public synchronized void commit() {
+        if (this.entityManager != null && this.entityManager.getTransaction().isActive()) {
+            this.entityManager.getTransaction().commit();
+            this.committed = true;
+        }
+    }
+
+    /**
+     * @return true if the transaction of this request was committed
+     */
+    public synchronized boolean isCommitted() {
+        return this.committed;
+    }
+
+    /**
+     * @return true if a transaction was begun and is neither committed nor rolled back, closing the handle then rolls
+     * it back
+     */
+    public synchronized boolean isTransactionActive() {
+        return this.entityManager != null && this.entityManager.getTransaction().isActive();
+    }
+
+    /**
+     * @return true if this handle was marked as requiring a transaction
+     */
+    public synchronized boolean isTransactional() {
+        return this.transactional;
+    }
+
+    /**
+     * @param kind   of change
+     * @param entity created or updated in the transaction of this request
+     * @return a reference to this instance for fluent API
+     */
+    public synchronized PersistenceHandle changed(CatalogChange.Kind kind, LibraryEntity<?> entity) {
+        if (this.changes == null) {
+            this.changes = new ArrayList<>();
+        }
+        this.changes.add(new CatalogChange(kind, entity));
+        return this;
+    }
+
+    /**
+     * @return the entities created or updated in the transaction of this request
+     */
+    public synchronized List<CatalogChange> getChanges() {
+        return this.changes == null ? Collections.emptyList() : this.changes;
+    }
+
+    /**
+     * @return true if the entity manager was created during this request
+     */
+    public synchronized boolean isAcquired() {
+        return this.entityManager != null;
+    }
+
+    /**
+     * @return the entity manager if it was created during this request, as is, null otherwise
+     */
+    synchronized EntityManager getAcquired() {
+        return this.entityManager;
+    }
+
+    /**
+     * @return nanoseconds the JDBC connection was held for during this request
+     */
+    public synchronized long getConnectionHoldNanos() {
+        return this.holdListener.getHeldNanos();
+    }
+
+    /**
+     * Closes the entity manager if it was created, rolling back its transaction if still active. Blocks on the
+     * connection in that case, so it should then be called from the worker pool.
+     */
+    public synchronized void close() {
+        if (this.entityManager != null && this.entityManager.isOpen()) {
+            try {
+                if (this.entityManager.getTransaction().isActive()) {
+                    this.entityManager.getTransaction().rollback();
+                }
+            } finally {
+                this.entityManager.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package app.tandv.services.data.jpa;
+
+import app.tandv.services.metrics.MetricsRegistry;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * To expose the Hibernate statistics of the session factory and the statistics of each single entity manager as
+ * collected by {@link RequestStatisticsInterceptor}.
+ * <p>
+ * The per request distributions are the ones to look at for N+1 regressions: a list endpoint whose statements per
+ * request grow with the size of the catalog is fetching associations one by one.
+ *
+ * @author vic on 2020-10-19
+ */
+public class PersistenceMetrics {
+    private final MetricsRegistry registry;
+
+    public PersistenceMetrics(MetricsRegistry registry, EntityManagerFactory entityManagerFactory) {
+        this.registry = registry;
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        if (statistics.isStatisticsEnabled()) {
+            registry.gauge("hibernate_query_executions", "Queries executed", statistics::getQueryExecutionCount)
+                    .gauge("hibernate_query_execution_max_seconds", "Slowest query execution time", () -> statistics.getQueryExecutionMaxTime() / 1e3)
+                    .gauge("hibernate_statements_prepared", "Statements prepared", statistics::getPrepareStatementCount)
+                    .gauge("hibernate_entity_loads", "Entities loaded", statistics::getEntityLoadCount)
+                    .gauge("hibernate_entity_fetches", "Entities fetched by a second select", statistics::getEntityFetchCount)
+                    .gauge("hibernate_collection_loads", "Collections loaded", statistics::getCollectionLoadCount)
+                    .gauge("hibernate_collection_fetches", "Collections fetched by a second select", statistics::getCollectionFetchCount)
+                    .gauge("hibernate_transactions", "Transactions completed", statistics::getTransactionCount);
+        }
+    }
+
+    /**
+     * @param route  to which the persistence handle belonged
+     * @param handle about to be closed, only recorded if it was used
+     */
+    public void record(String route, PersistenceHandle handle) {
+        if (!handle.isAcquired()) {
+            return;
+        }
+        this.registry.timer(
+                "db_connection_hold_seconds",
+                "Time a single request held a JDBC connection",
+                "route", route
+        ).record(handle.getConnectionHoldNanos());
+        RequestStatisticsInterceptor.of(handle.getAcquired()).ifPresent(interceptor -> {
+            this.registry.distribution(
+                    "db_statements_per_request",
+                    "Statements prepared by a single entity manager",
+                    "route", route
+            ).record(interceptor.getStatements());
+            this.registry.distribution(
+                    "db_entity_loads_per_request",
+                    "Entities loaded by a single entity manager",
+                    "route", route
+            ).record(interceptor.getEntityLoads());
+        });
+    }
+}
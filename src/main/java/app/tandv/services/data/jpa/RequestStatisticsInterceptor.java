@@ -0,0 +1,55 @@
+package app.tandv.services.data.jpa;
+
+import org.hibernate.EmptyInterceptor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.type.Type;
+
+import javax.persistence.EntityManager;
+import java.io.Serializable;
+import java.util.Optional;
+
+/**
+ * Hibernate {@link org.hibernate.stat.Statistics} are global to the session factory, which makes them useless to tell
+ * how many statements a single request issued when several requests run at the same time. This interceptor is
+ * registered as session scoped, so Hibernate creates one instance per entity manager and we get the counts for that
+ * entity manager alone.
+ * <p>
+ * Since there is no statement inspector configured, Hibernate routes every prepared statement through
+ * {@link #onPrepareStatement(String)}.
+ *
+ * @author vic on 2020-10-19
+ */
+public class RequestStatisticsInterceptor extends EmptyInterceptor {
+    private int statements = 0;
+    private int entityLoads = 0;
+
+    /**
+     * @param entityManager to get the interceptor from
+     * @return the interceptor of the session behind the given entity manager, if any
+     */
+    public static Optional<RequestStatisticsInterceptor> of(EntityManager entityManager) {
+        return Optional.of(entityManager.unwrap(SessionImplementor.class).getInterceptor())
+                .filter(RequestStatisticsInterceptor.class::isInstance)
+                .map(RequestStatisticsInterceptor.class::cast);
+    }
+
+    @Override
+    public boolean onLoad(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
+        this.entityLoads++;
+        return false;
+    }
+
+    @Override
+    public String onPrepareStatement(String sql) {
+        this.statements++;
+        return sql;
+    }
+
+    public int getStatements() {
+        return statements;
+    }
+
+    public int getEntityLoads() {
+        return entityLoads;
+    }
+}
@@ -0,0 +1,233 @@
+package app.tandv.services.data.repository;
+
+import app.tandv.services.data.catalog.NegativeCache;
+import app.tandv.services.data.entity.LibraryEntity;
+import app.tandv.services.metrics.Histogram;
+import io.reactivex.Single;
+import io.reactivex.SingleEmitter;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.Context;
+import io.vertx.reactivex.core.Vertx;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Batches lookups by id issued by concurrent requests, DataLoader style: the ids requested within a short window are
+ * fetched with a single "findAllById" named query, and every caller gets the entities found.
+ * <p>
+ * The batch runs in its own entity manager, closed as soon as the entities are converted to json, since it is shared
+ * by requests that each have their own {@link app.tandv.services.data.jpa.PersistenceHandle}. Each caller is
+ * completed in its own Vert.x context.
+ * <p>
+ * Ids recently confirmed missing are left out of the batch, and the ones a batch doesn't find are recorded in the
+ * {@link NegativeCache}.
+ * <p>
+ * No batch holds more than its maximum size of ids: those of a lookup that don't fit in the pending batch go to the
+ * next one, and the lookup is completed once all of its batches are.
+ *
+ * @param <T> type of the entities to load
+ * @author vic on 2020-10-19
+ */
+public class BatchLoader<T extends LibraryEntity<T>> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchLoader.class);
+
+    public static final String WINDOW_PROPERTY = "data.batch.window";
+    public static final String MAX_SIZE_PROPERTY = "data.batch.max-size";
+    // in milliseconds
+    public static final long DEFAULT_WINDOW = 2L;
+    public static final int DEFAULT_MAX_SIZE = 100;
+
+    private final Vertx vertx;
+    private final QueryExecutor executor;
+    private final EntityManagerFactory entityManagerFactory;
+    private final Class<T> type;
+    private final String queryName;
+    private final long window;
+    private final int maxSize;
+    private final Histogram batchSizes;
+    private final NegativeCache negativeCache;
+
+    // guarded by this
+    private Batch pending;
+
+    /**
+     * @param vertx                to schedule the batches
+     * @param executor             to run the queries
+     * @param entityManagerFactory to create the entity manager for each batch
+     * @param type                 of the entities to load
+     * @param queryName            of the named query, with an "ids" parameter
+     * @param window               in milliseconds to wait for other lookups, 0 to run every lookup right away
+     * @param maxSize              of a batch, it runs right away once reached
+     * @param batchSizes           to record the number of ids of every batch
+     * @param negativeCache        of the ids recently confirmed missing
+     */
+    public BatchLoader(Vertx vertx, QueryExecutor executor, EntityManagerFactory entityManagerFactory, Class<T> type,
+                       String queryName, long window, int maxSize, Histogram batchSizes, NegativeCache negativeCache) {
+        this.vertx = vertx;
+        this.executor = executor;
+        this.entityManagerFactory = entityManagerFactory;
+        this.type = type;
+        this.queryName = queryName;
+        this.window = window;
+        this.maxSize = maxSize;
+        this.batchSizes = batchSizes;
+        this.negativeCache = negativeCache;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @param ids to look up
+     * @return the json of the entities found, by id; it may include entities requested by other callers
+     */
+    public Single<Map<Long, JsonObject>> load(Collection<Long> ids) {
+        List<Long> toLoad = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            if (!this.negativeCache.isMissingId(this.type, id)) {
+                toLoad.add(id);
+            }
+        }
+        if (toLoad.isEmpty()) {
+            return Single.just(Collections.emptyMap());
+        }
+        return Single.create(emitter -> {
+            Caller caller = new Caller(this.vertx.getOrCreateContext(), emitter);
+            List<Batch> full = new ArrayList<>();
+            Batch opened = null;
+            synchronized (this) {
+                // Ids past the size of a batch go to the next one, the caller is completed once all of them are
+                for (Long id : toLoad) {
+                    if (this.pending == null) {
+                        this.pending = new Batch();
+                        opened = this.pending;
+                    }
+                    this.pending.add(id, caller);
+                    if (this.pending.ids.size() >= this.maxSize) {
+                        full.add(this.pending);
+                        this.pending = null;
+                    }
+                }
+                if (this.window <= 0L && this.pending != null) {
+                    full.add(this.pending);
+                    this.pending = null;
+                }
+            }
+            full.forEach(this::dispatch);
+            Batch waiting = opened;
+            if (waiting != null && !full.contains(waiting)) {
+                this.vertx.setTimer(this.window, timer -> {
+                    synchronized (this) {
+                        if (this.pending != waiting) {
+                            // Already dispatched for being full
+                            return;
+                        }
+                        this.pending = null;
+                    }
+                    this.dispatch(waiting);
+                });
+            }
+        });
+    }
+
+    private void dispatch(Batch batch) {
+        List<Long> ids = new ArrayList<>(batch.ids);
+        LOGGER.debug("Loading {} {} ids in one batch", ids.size(), this.type.getSimpleName());
+        this.batchSizes.record(ids.size());
+        long version = this.negativeCache.getVersion().current();
+        this.executor
+                .execute(this.queryName, () -> this.query(ids, version))
+                .toSingle(Collections.emptyMap())
+                .subscribe(batch::complete, batch::fail);
+    }
+
+    private Map<Long, JsonObject> query(List<Long> ids, long version) {
+        EntityManager entityManager = this.entityManagerFactory.createEntityManager();
+        try {
+            List<T> result = entityManager
+                    .createNamedQuery(this.queryName, this.type)
+                    .setParameter("ids", ids)
+                    .getResultList();
+            Map<Long, JsonObject> byId = new HashMap<>(result.size() * 2);
+            for (T entity : result) {
+                byId.put(entity.getId(), entity.toJson());
+            }
+            for (Long id : ids) {
+                if (!byId.containsKey(id)) {
+                    this.negativeCache.missingId(this.type, id, version);
+                }
+            }
+            return byId;
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    private static final class Batch {
+        private final Set<Long> ids = new LinkedHashSet<>();
+        private final List<Caller> callers = new ArrayList<>();
+
+        private void add(Long id, Caller caller) {
+            this.ids.add(id);
+            if (this.callers.isEmpty() || this.callers.get(this.callers.size() - 1) != caller) {
+                this.callers.add(caller);
+                caller.batches++;
+            }
+        }
+
+        private void complete(Map<Long, JsonObject> result) {
+            this.callers.forEach(caller -> caller.complete(result));
+        }
+
+        private void fail(Throwable error) {
+            this.callers.forEach(caller -> caller.fail(error));
+        }
+    }
+
+    /**
+     * A lookup, spread over as many batches as it takes to stay within their size.
+     */
+    private static final class Caller {
+        private final Context context;
+        private final SingleEmitter<Map<Long, JsonObject>> emitter;
+        private final Map<Long, JsonObject> result = new HashMap<>();
+        // guarded by the loader until its batches are dispatched, by this after
+        private int batches = 0;
+        private boolean failed = false;
+
+        private Caller(Context context, SingleEmitter<Map<Long, JsonObject>> emitter) {
+            this.context = context;
+            this.emitter = emitter;
+        }
+
+        private synchronized void complete(Map<Long, JsonObject> result) {
+            if (this.failed) {
+                return;
+            }
+            this.result.putAll(result);
+            if (--this.batches == 0) {
+                this.context.runOnContext(v -> this.emitter.onSuccess(this.result));
+            }
+        }
+
+        private synchronized void fail(Throwable error) {
+            if (this.failed) {
+                return;
+            }
+            this.failed = true;
+            this.context.runOnContext(v -> this.emitter.onError(error));
+        }
+    }
+}
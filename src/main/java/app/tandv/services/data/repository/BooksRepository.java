@@ -1,9 +1,8 @@
 package app.tandv.services.data.repository;
 
+import app.tandv.services.data.catalog.NegativeCache;
 import app.tandv.services.data.entity.BookEntity;
-import io.vertx.reactivex.core.Vertx;
-
-import javax.persistence.EntityManager;
+import app.tandv.services.data.jpa.PersistenceHandle;
 
 /**
  * We may remove this class, it all depends on the other entities as we add them and see if the library repository is
@@ -12,7 +11,7 @@ import javax.persistence.EntityManager;
  * @author vic on 2018-08-29
  */
 public class BooksRepository extends LibraryRepository<BookEntity> {
-    public BooksRepository(Vertx vertx, EntityManager entityManager) {
-        super(BookEntity.class, vertx, entityManager);
+    public BooksRepository(QueryExecutor executor, PersistenceHandle persistence, NegativeCache negativeCache) {
+        super(BookEntity.class, executor, persistence, negativeCache);
     }
 }
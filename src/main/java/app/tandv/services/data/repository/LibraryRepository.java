@@ -1,19 +1,20 @@
 package app.tandv.services.data.repository;
 
+import app.tandv.services.data.catalog.CatalogChange;
+import app.tandv.services.data.catalog.NegativeCache;
 import app.tandv.services.data.entity.LibraryEntity;
+import app.tandv.services.data.jpa.PersistenceHandle;
 import app.tandv.services.exception.PartialResultException;
 import io.reactivex.Maybe;
 import io.reactivex.Observable;
-import io.vertx.reactivex.core.Vertx;
+import io.reactivex.Single;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
 import java.util.function.Supplier;
 
-import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
-import javax.persistence.PersistenceException;
 
 /**
  * To have a generic way to handle the data repositories, this class implements {@link ClassValue} which serves to
@@ -24,31 +25,77 @@ import javax.persistence.PersistenceException;
 public abstract class LibraryRepository<T extends LibraryEntity> {
     private static final Logger LOGGER = LoggerFactory.getLogger(ContributorsRepository.class);
 
-    private final EntityManager entityManager;
+    private final PersistenceHandle persistence;
     private final Class<T> type;
-    private final Vertx vertx;
+    private final QueryExecutor executor;
+    private final NegativeCache negativeCache;
 
     // Technically this could exist for any entity matching all criteria of LibraryEntity
-    LibraryRepository(Class<T> type, Vertx vertx, EntityManager entityManager) {
+    LibraryRepository(Class<T> type, QueryExecutor executor, PersistenceHandle persistence, NegativeCache negativeCache) {
         this.type = type;
-        this.vertx = vertx;
-        this.entityManager = entityManager;
+        this.executor = executor;
+        this.persistence = persistence;
+        this.negativeCache = negativeCache;
     }
 
     /**
-     * Depending on the presence of the id we'll either persist (id == null : new entity) or merge ( id != null :
-     * existing entity) the entity.
+     * Adds the entity as {@link #addAll} does, from the worker pool, and sends it to the database before completing so
+     * a duplicate fails the request that added it.
      *
-     * @param entity to save/merge.
+     * @param entity to save/merge
      * @return the same entity being saved
      */
-    public T add(T entity) {
-        if (entity.getId() == null) {
-            entityManager.persist(entity);
+    public Single<T> add(T entity) {
+        return this.addAll(Collections.singletonList(entity)).map(entities -> entities.get(0));
+    }
+
+    /**
+     * Saves every entity, from the worker pool, and sends them to the database before completing so the inserts go out
+     * in JDBC batches of {@code db.batch-size} rather than one by one on commit.
+     * <p>
+     * Depending on the id we'll either persist (id == null or generated by the service : new entity) or merge (id read
+     * from the database : existing entity) each entity. New entities are never merged, since merge would first select
+     * them by id to tell whether they exist.
+     *
+     * @param entities to save/merge
+     * @return the same entities, in the same order
+     */
+    public Single<List<T>> addAll(List<T> entities) {
+        return this.executor
+                .execute(type.getSimpleName() + ".addAll", () -> {
+                    entities.forEach(this::save);
+                    this.persistence.get().flush();
+                    return entities;
+                })
+                .toSingle();
+    }
+
+    /**
+     * Commits the transaction of the request from the worker pool, so the event loop never waits on the connection.
+     *
+     * @param result of the request so far
+     * @param <R>    type of the result
+     * @return the same result, once committed
+     */
+    public <R> Single<R> commit(R result) {
+        return this.executor
+                .execute(type.getSimpleName() + ".commit", () -> {
+                    this.persistence.commit();
+                    return result;
+                })
+                .toSingle();
+    }
+
+    private void save(T entity) {
+        if (entity.getId() == null || entity.hasGeneratedId()) {
+            this.persistence.get().persist(entity);
         } else {
-            entityManager.merge(entity);
+            this.persistence.get().merge(entity);
         }
-        return entity;
+        this.persistence.changed(
+                entity.getId() == null || entity.hasGeneratedId() ? CatalogChange.Kind.CREATED : CatalogChange.Kind.UPDATED,
+                entity
+        );
     }
 
     /**
@@ -59,7 +106,8 @@ public abstract class LibraryRepository<T extends LibraryEntity> {
     public Observable<T> fetchAll() {
         String queryName = type.getSimpleName() + ".findAll";
         return this.rxExecuteQuery(
-                () -> entityManager.createNamedQuery(queryName, type)
+                queryName,
+                () -> this.persistence.get().createNamedQuery(queryName, type)
                         .getResultList()
         );
     }
@@ -73,13 +121,29 @@ public abstract class LibraryRepository<T extends LibraryEntity> {
      */
     public Observable<T> fetchAllById(Collection<Long> ids) {
         LOGGER.debug(String.valueOf(ids));
+        long missing = ids.stream().filter(id -> this.negativeCache.isMissingId(type, id)).count();
+        if (missing == ids.size()) {
+            return Observable.error(new NoResultException("None of expected " + type.getSimpleName() + " ids were found"));
+        }
+        if (missing > 0) {
+            return Observable.error(new PartialResultException("Not all of expected " + type.getSimpleName() + "ids were found"));
+        }
         String queryName = type.getSimpleName() + ".findAllById";
+        long version = this.negativeCache.getVersion().current();
         return this.rxExecuteQuery(
+                queryName,
                 () -> {
-                    List<T> result = entityManager
+                    List<T> result = this.persistence.get()
                             .createNamedQuery(queryName, type)
                             .setParameter("ids", ids)
                             .getResultList();
+                    if (result.size() < ids.size()) {
+                        Set<Long> found = new HashSet<>();
+                        result.forEach(entity -> found.add(entity.getId()));
+                        ids.stream()
+                                .filter(id -> !found.contains(id))
+                                .forEach(id -> this.negativeCache.missingId(type, id, version));
+                    }
                     if (result.isEmpty()) {
                         throw new NoResultException("None of expected " + type.getSimpleName() + " ids were found");
                     }
@@ -93,43 +157,36 @@ public abstract class LibraryRepository<T extends LibraryEntity> {
 
     public Maybe<T> fetchById(Long id) {
         LOGGER.debug(String.valueOf(id));
+        if (this.negativeCache.isMissingId(type, id)) {
+            return Maybe.error(new NoResultException("No " + type.getSimpleName() + " found with id " + id));
+        }
         String queryName = type.getSimpleName() + ".findById";
+        long version = this.negativeCache.getVersion().current();
         return this.rxExecuteSingleQuery(
+                queryName,
                 () -> {
-                    T result = entityManager
-                            .createNamedQuery(queryName, type)
-                            .setParameter("id", id)
-                            .getSingleResult();
-                    if(result == null){
+                    try {
+                        return this.persistence.get()
+                                .createNamedQuery(queryName, type)
+                                .setParameter("id", id)
+                                .getSingleResult();
+                    } catch (NoResultException e) {
+                        this.negativeCache.missingId(type, id, version);
                         throw new NoResultException("No " + type.getSimpleName() + " found with id " + id);
                     }
-                    return result;
                 }
         );
     }
 
-    private Observable<T> rxExecuteQuery(Supplier<List<T>> query) {
-        return vertx
+    private Observable<T> rxExecuteQuery(String queryName, Supplier<List<T>> query) {
+        return this.executor
                 // get results from the database
-                .<List<T>>rxExecuteBlocking(promise -> {
-                    try {
-                        promise.complete(query.get());
-                    } catch (PersistenceException exception) {
-                        promise.fail(exception);
-                    }
-                })
+                .execute(queryName, query)
                 // and put them in superposition
                 .flatMapObservable(Observable::fromIterable);
     }
 
-    private Maybe<T> rxExecuteSingleQuery(Supplier<T> query){
-        return vertx
-                .rxExecuteBlocking(promise -> {
-                    try {
-                        promise.complete(query.get());
-                    } catch (PersistenceException exception) {
-                        promise.fail(exception);
-                    }
-                });
+    private Maybe<T> rxExecuteSingleQuery(String queryName, Supplier<T> query) {
+        return this.executor.execute(queryName, query);
     }
 }
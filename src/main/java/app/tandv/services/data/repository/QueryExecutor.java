@@ -0,0 +1,129 @@
+package app.tandv.services.data.repository;
+
+import app.tandv.services.concurrency.Limit;
+import app.tandv.services.data.jpa.JpaEntityManagerFactory;
+import app.tandv.services.metrics.MetricsRegistry;
+import io.reactivex.Maybe;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.core.WorkerExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.PersistenceException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * All blocking database work issued by the repositories goes through this class. This gives us a single place to:
+ * <p>
+ * - move the query out of the event loop into a worker pool of its own, as large as the connection pool
+ * - time every named query and report it in the metrics registry
+ * - log queries slower than the configured threshold, naming the query involved
+ * - feed the concurrency {@link Limit} with the latency observed for each query
+ * <p>
+ * Queries run unordered, so those of different requests run side by side up to the size of the connection pool. The
+ * latency given to the limit goes from the submission of the query to its end, time waiting for a worker included,
+ * along with the number of queries running on a connection at the time: once the pool is saturated the latency grows
+ * with the queue and the limit stops growing.
+ *
+ * @author vic on 2020-10-19
+ */
+public class QueryExecutor implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueryExecutor.class);
+
+    public static final String SLOW_QUERY_THRESHOLD_PROPERTY = "db.slow-query.threshold";
+    // in milliseconds
+    private static final long DEFAULT_SLOW_QUERY_THRESHOLD = 200L;
+    private static final String WORKER_POOL_NAME = "db-queries";
+
+    private final WorkerExecutor workers;
+    private final MetricsRegistry registry;
+    private final Limit limit;
+    private final long slowQueryThresholdNanos;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+
+    public QueryExecutor(Vertx vertx, MetricsRegistry registry, Limit limit, JsonObject config) {
+        this.workers = vertx.createSharedWorkerExecutor(WORKER_POOL_NAME, JpaEntityManagerFactory.getPoolSize(config));
+        this.registry = registry;
+        this.limit = limit;
+        this.slowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(
+                config.getLong(SLOW_QUERY_THRESHOLD_PROPERTY, DEFAULT_SLOW_QUERY_THRESHOLD)
+        );
+        registry.gauge(
+                "db_queries_in_flight",
+                "Number of queries submitted to the worker pool and not yet completed",
+                this.inFlight::get
+        );
+        registry.gauge(
+                "db_queries_running",
+                "Number of queries running on a connection",
+                this.running::get
+        );
+    }
+
+    /**
+     * @param queryName to report in metrics and logs, normally the name of the JPA named query
+     * @param query     to execute in the worker pool
+     * @param <R>       type of the query result
+     * @return a {@link Maybe} with the result of the query, completed in the calling context
+     */
+    public <R> Maybe<R> execute(String queryName, Supplier<R> query) {
+        return Maybe.defer(() -> {
+            long submitted = System.nanoTime();
+            this.inFlight.incrementAndGet();
+            return this.workers
+                    .<R>rxExecuteBlocking(promise -> {
+                        long started = System.nanoTime();
+                        int running = this.running.incrementAndGet();
+                        boolean dropped = false;
+                        try {
+                            promise.complete(query.get());
+                        } catch (PersistenceException exception) {
+                            dropped = isConnectionTimeout(exception);
+                            promise.fail(exception);
+                        } finally {
+                            this.running.decrementAndGet();
+                            this.record(queryName, submitted, started, running, dropped);
+                        }
+                    }, false)
+                    .doFinally(this.inFlight::decrementAndGet);
+        });
+    }
+
+    @Override
+    public void close() {
+        this.workers.close();
+    }
+
+    private void record(String queryName, long submitted, long started, int running, boolean dropped) {
+        long ended = System.nanoTime();
+        long elapsed = ended - started;
+        this.limit.onSample(queryName, ended - submitted, running, dropped);
+        this.registry.timer(
+                "db_query_seconds",
+                "Execution time of named queries in the worker pool",
+                "query", queryName
+        ).record(elapsed);
+        this.registry.timer(
+                "db_query_wait_seconds",
+                "Time named queries waited for a worker",
+                "query", queryName
+        ).record(started - submitted);
+        if (elapsed >= this.slowQueryThresholdNanos) {
+            LOGGER.warn("Slow query {} took {}ms", queryName, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        }
+    }
+
+    private static boolean isConnectionTimeout(Throwable exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLTransientConnectionException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,22 @@
+package app.tandv.services.exception;
+
+/**
+ * Thrown when a request is rejected by admission control.
+ *
+ * @author vic on 2020-10-19
+ */
+public class OverloadedException extends RuntimeException {
+    private final long retryAfter;
+
+    public OverloadedException(String message, long retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return seconds the client should wait before retrying
+     */
+    public long getRetryAfter() {
+        return retryAfter;
+    }
+}
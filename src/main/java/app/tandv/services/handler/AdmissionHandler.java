@@ -0,0 +1,80 @@
+package app.tandv.services.handler;
+
+import app.tandv.services.concurrency.AdmissionController;
+import app.tandv.services.concurrency.AdmissionController.Priority;
+import app.tandv.services.exception.OverloadedException;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.ext.web.RoutingContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Optional;
+
+/**
+ * Placed in front of the handlers that reach the database. It asks the {@link AdmissionController} for a permit and
+ * either lets the request through, or fails it right away with a 503 and a retry after hint.
+ * <p>
+ * The permit is released by an end handler of the routing context, called whether the response ended normally or the
+ * connection was closed, so the single end handler of the response is left to the routes.
+ *
+ * @author vic on 2020-10-19
+ */
+public class AdmissionHandler implements Handler<RoutingContext>, LifecycleHook {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdmissionHandler.class);
+
+    public static final String MAX_IN_FLIGHT_PROPERTY = "db.admission.max-in-flight";
+    public static final String HIGH_PRIORITY_HEADROOM_PROPERTY = "db.admission.high-priority-headroom";
+    public static final String SHED_FIRST_PROPERTY = "db.admission.shed-first";
+    public static final String RETRY_AFTER_PROPERTY = "db.admission.retry-after";
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 20;
+    public static final int DEFAULT_HIGH_PRIORITY_HEADROOM = 50;
+    private static final String SHED_READS = "reads";
+    private static final String SHED_WRITES = "writes";
+    // in seconds
+    private static final long DEFAULT_RETRY_AFTER = 1L;
+
+    private final AdmissionController controller;
+    private final Priority readPriority;
+    private final Priority writePriority;
+    private final long retryAfter;
+
+    public AdmissionHandler(AdmissionController controller, JsonObject config) {
+        this.controller = controller;
+        String shedFirst = config.getString(SHED_FIRST_PROPERTY, SHED_READS);
+        if (!SHED_READS.equals(shedFirst) && !SHED_WRITES.equals(shedFirst)) {
+            throw new IllegalArgumentException("Property '" + SHED_FIRST_PROPERTY + "' must be one of: " + SHED_READS + ", " + SHED_WRITES);
+        }
+        this.readPriority = SHED_READS.equals(shedFirst) ? Priority.LOW : Priority.HIGH;
+        this.writePriority = SHED_READS.equals(shedFirst) ? Priority.HIGH : Priority.LOW;
+        this.retryAfter = config.getLong(RETRY_AFTER_PROPERTY, DEFAULT_RETRY_AFTER);
+    }
+
+    @Override
+    public void handle(RoutingContext context) {
+        if (this.beforeHandler(context)) {
+            context.next();
+        }
+    }
+
+    @Override
+    public boolean beforeHandler(RoutingContext context) {
+        HttpMethod method = context.request().method();
+        Priority priority = method == HttpMethod.GET || method == HttpMethod.HEAD ? this.readPriority : this.writePriority;
+        Optional<AdmissionController.Permit> permit = this.controller.tryAcquire(priority);
+        if (permit.isPresent()) {
+            context.addEndHandler(ignored -> permit.get().release());
+            return true;
+        } else {
+            LOGGER.warn("Rejecting {} priority request, {} in flight", priority, this.controller.getInFlight());
+            context.fail(
+                    HttpResponseStatus.SERVICE_UNAVAILABLE.code(),
+                    new OverloadedException("Service overloaded, retry later", this.retryAfter)
+            );
+            return false;
+        }
+    }
+}
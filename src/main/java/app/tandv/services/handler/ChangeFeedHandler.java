@@ -0,0 +1,177 @@
+package app.tandv.services.handler;
+
+import app.tandv.services.configuration.MediaTypes;
+import app.tandv.services.data.catalog.ChangeFeed;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.core.buffer.Buffer;
+import io.vertx.reactivex.core.http.HttpServerRequest;
+import io.vertx.reactivex.core.http.HttpServerResponse;
+import io.vertx.reactivex.core.http.ServerWebSocket;
+import io.vertx.reactivex.ext.web.RoutingContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams the {@link ChangeFeed} to clients, as server-sent events or over a WebSocket if the request asks for the
+ * upgrade. Clients resume from the last event they saw with the {@code Last-Event-ID} header (which browsers send on
+ * their own when reconnecting) or the {@code since} query parameter.
+ * <p>
+ * Like the metrics, the connections don't go through the request/response handlers: they are long lived, and don't
+ * use the database.
+ *
+ * @author vic on 2020-10-19
+ */
+public class ChangeFeedHandler implements Handler<RoutingContext> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChangeFeedHandler.class);
+
+    public static final String HEARTBEAT_PROPERTY = "catalog.feed.heartbeat";
+    // in milliseconds
+    public static final long DEFAULT_HEARTBEAT = 15_000L;
+
+    private static final String SINCE_PARAM = "since";
+    private static final String LAST_EVENT_ID = "Last-Event-ID";
+    private static final String WEBSOCKET = "websocket";
+    private static final String RESET = "reset";
+    private static final String SEQUENCE = "seq";
+
+    private final Vertx vertx;
+    private final ChangeFeed feed;
+    private final long heartbeat;
+
+    /**
+     * @param vertx     to schedule the heartbeats
+     * @param feed      of catalog changes
+     * @param heartbeat milliseconds between writes on idle connections, so they are not closed by proxies or the
+     *                  server idle timeout
+     */
+    public ChangeFeedHandler(Vertx vertx, ChangeFeed feed, long heartbeat) {
+        this.vertx = vertx;
+        this.feed = feed;
+        this.heartbeat = heartbeat;
+    }
+
+    @Override
+    public void handle(RoutingContext context) {
+        HttpServerRequest request = context.request();
+        long since;
+        try {
+            since = this.getSince(request);
+        } catch (NumberFormatException e) {
+            context.response().setStatusCode(HttpResponseStatus.BAD_REQUEST.code()).end();
+            return;
+        }
+        if (WEBSOCKET.equalsIgnoreCase(request.getHeader(HttpHeaders.UPGRADE.toString()))) {
+            this.webSocket(request.upgrade(), since);
+        } else {
+            this.eventStream(context.response(), since);
+        }
+    }
+
+    private long getSince(HttpServerRequest request) {
+        String since = request.getParam(SINCE_PARAM);
+        if (since == null) {
+            since = request.getHeader(LAST_EVENT_ID);
+        }
+        return since == null ? -1L : Long.parseLong(since.trim());
+    }
+
+    private void eventStream(HttpServerResponse response, long since) {
+        LOGGER.debug("Catalog feed event stream opened since {}", since);
+        response.setChunked(true)
+                .setStatusCode(HttpResponseStatus.OK.code())
+                .putHeader(HttpHeaders.CONTENT_TYPE.toString(), MediaTypes.EVENT_STREAM)
+                .putHeader(HttpHeaders.CACHE_CONTROL.toString(), HttpHeaderValues.NO_CACHE.toString())
+                // Events must go out as soon as written, not held back by the compressor
+                .putHeader(HttpHeaders.CONTENT_ENCODING.toString(), HttpHeaders.IDENTITY.toString())
+                .write(":\n\n");
+        long timer = this.vertx.setPeriodic(this.heartbeat, id -> {
+            if (!response.writeQueueFull()) {
+                response.write(":\n\n");
+            }
+        });
+        ChangeFeed.Subscription subscription = this.feed.subscribe(since, this.vertx.getOrCreateContext(), new ChangeFeed.Sink() {
+            @Override
+            public boolean writeQueueFull() {
+                return response.writeQueueFull();
+            }
+
+            @Override
+            public void drainHandler(Handler<Void> handler) {
+                response.drainHandler(handler);
+            }
+
+            @Override
+            public void write(ChangeFeed.Event event) {
+                response.write("id: " + event.getSequence() + "\nevent: change\ndata: " + event.getJson() + "\n\n");
+            }
+
+            @Override
+            public void reset(long sequence) {
+                response.write("id: " + sequence + "\nevent: " + RESET + "\ndata: " + resetJson(sequence) + "\n\n");
+            }
+
+            @Override
+            public void close() {
+                // Ending the response alone would leave a kept alive connection, and the heartbeat writing to it
+                vertx.cancelTimer(timer);
+                response.close();
+            }
+        });
+        response.closeHandler(v -> {
+            LOGGER.debug("Catalog feed event stream closed");
+            this.vertx.cancelTimer(timer);
+            subscription.cancel();
+        });
+    }
+
+    private void webSocket(ServerWebSocket socket, long since) {
+        LOGGER.debug("Catalog feed web socket opened since {}", since);
+        long timer = this.vertx.setPeriodic(this.heartbeat, id -> {
+            if (!socket.writeQueueFull()) {
+                socket.writePing(Buffer.buffer());
+            }
+        });
+        ChangeFeed.Subscription subscription = this.feed.subscribe(since, this.vertx.getOrCreateContext(), new ChangeFeed.Sink() {
+            @Override
+            public boolean writeQueueFull() {
+                return socket.writeQueueFull();
+            }
+
+            @Override
+            public void drainHandler(Handler<Void> handler) {
+                socket.drainHandler(handler);
+            }
+
+            @Override
+            public void write(ChangeFeed.Event event) {
+                socket.writeTextMessage(event.getJson());
+            }
+
+            @Override
+            public void reset(long sequence) {
+                socket.writeTextMessage(resetJson(sequence));
+            }
+
+            @Override
+            public void close() {
+                // No pings while the closing handshake completes
+                vertx.cancelTimer(timer);
+                socket.close();
+            }
+        });
+        socket.closeHandler(v -> {
+            LOGGER.debug("Catalog feed web socket closed");
+            this.vertx.cancelTimer(timer);
+            subscription.cancel();
+        });
+    }
+
+    private static String resetJson(long sequence) {
+        return new JsonObject().put(RESET, true).put(SEQUENCE, sequence).encode();
+    }
+}
@@ -0,0 +1,30 @@
+package app.tandv.services.handler;
+
+import io.vertx.reactivex.ext.web.RoutingContext;
+
+/**
+ * A step of the request lifecycle that runs before and/or after the data handler of a route.
+ * <p>
+ * Hooks can either be chained as individual route handlers, or fused into a single handler by a {@link Pipeline}.
+ * Either way they must not call {@link RoutingContext#next()} themselves, they signal whether the request should go
+ * on through their return value instead.
+ *
+ * @author vic on 2020-10-19
+ */
+public interface LifecycleHook {
+    /**
+     * @param context of the current request
+     * @return true if the request should continue, false if the hook already failed or ended it
+     */
+    default boolean beforeHandler(RoutingContext context) {
+        return true;
+    }
+
+    /**
+     * @param context of the current request
+     * @return true if the request should continue, false if the hook already failed or ended it
+     */
+    default boolean afterHandler(RoutingContext context) {
+        return true;
+    }
+}
@@ -0,0 +1,31 @@
+package app.tandv.services.handler;
+
+import app.tandv.services.configuration.MediaTypes;
+import app.tandv.services.metrics.MetricsRegistry;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.vertx.core.Handler;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.reactivex.ext.web.RoutingContext;
+
+/**
+ * To expose the content of the {@link MetricsRegistry} in Prometheus text format. This handler ends the response
+ * itself, it does not go through the request/response handlers since we don't want scrapes to show up in the latency
+ * histograms of the service.
+ *
+ * @author vic on 2020-10-19
+ */
+public class MetricsHandler implements Handler<RoutingContext> {
+    private final MetricsRegistry registry;
+
+    public MetricsHandler(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void handle(RoutingContext context) {
+        context.response()
+                .setStatusCode(HttpResponseStatus.OK.code())
+                .putHeader(HttpHeaders.CONTENT_TYPE.toString(), MediaTypes.PROMETHEUS_TEXT)
+                .end(this.registry.scrape());
+    }
+}
@@ -0,0 +1,149 @@
+package app.tandv.services.handler;
+
+import app.tandv.services.metrics.RouteMetrics;
+import app.tandv.services.util.RequestIds;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.reactivex.disposables.CompositeDisposable;
+import io.vertx.reactivex.core.buffer.Buffer;
+
+import java.util.ArrayDeque;
+
+/**
+ * Typed holder of the state of a single request as it goes through the handlers, stored in the routing context
+ * under {@link app.tandv.services.configuration.EventConfig#EVENT}.
+ * <p>
+ * Instances are pooled per thread: since every handler of a request runs on the event loop the request arrived on,
+ * the context is normally released on the same thread it was acquired from. If not, it simply goes to the pool of the
+ * releasing thread.
+ *
+ * @author vic on 2020-10-19
+ */
+public final class RequestContext {
+    private static final int MAX_POOLED = 64;
+    private static final ThreadLocal<ArrayDeque<RequestContext>> POOL =
+            ThreadLocal.withInitial(() -> new ArrayDeque<>(MAX_POOLED));
+
+    // The composite is cleared, not disposed, on release so it can be reused
+    private final CompositeDisposable disposables = new CompositeDisposable();
+
+    private String uid;
+    private long startNanos;
+    private RouteMetrics route;
+    private int status;
+    private String content;
+    private Buffer body;
+    private String file;
+
+    private RequestContext() {
+    }
+
+    /**
+     * @param route the request belongs to
+     * @return a context initialized with a new request id and the current time
+     */
+    public static RequestContext acquire(RouteMetrics route) {
+        RequestContext request = POOL.get().pollFirst();
+        if (request == null) {
+            request = new RequestContext();
+        }
+        request.uid = RequestIds.next();
+        request.startNanos = System.nanoTime();
+        request.route = route;
+        request.status = HttpResponseStatus.OK.code();
+        request.content = null;
+        request.body = null;
+        request.file = null;
+        return request;
+    }
+
+    /**
+     * Disposes of any pending observer and returns this instance to the pool, it should not be used afterwards.
+     */
+    public void release() {
+        this.disposables.clear();
+        this.uid = null;
+        this.route = null;
+        this.content = null;
+        this.body = null;
+        this.file = null;
+        ArrayDeque<RequestContext> pool = POOL.get();
+        if (pool.size() < MAX_POOLED) {
+            pool.offerFirst(this);
+        }
+    }
+
+    /**
+     * @param status  of the response
+     * @param content of the response, may be null
+     * @return a reference to this instance for fluent API
+     */
+    public RequestContext respond(int status, String content) {
+        this.status = status;
+        this.content = content;
+        this.body = null;
+        this.file = null;
+        return this;
+    }
+
+    /**
+     * @param status of the response
+     * @param body   of the response, already encoded
+     * @return a reference to this instance for fluent API
+     */
+    public RequestContext respond(int status, Buffer body) {
+        this.status = status;
+        this.content = null;
+        this.body = body;
+        this.file = null;
+        return this;
+    }
+
+    /**
+     * @param status of the response
+     * @param file   with the body of the response, sent as is
+     * @return a reference to this instance for fluent API
+     */
+    public RequestContext respondWithFile(int status, String file) {
+        this.status = status;
+        this.content = null;
+        this.body = null;
+        this.file = file;
+        return this;
+    }
+
+    public String getUid() {
+        return uid;
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    public RouteMetrics getRoute() {
+        return route;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public boolean hasContent() {
+        return content != null;
+    }
+
+    public Buffer getBody() {
+        return body;
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    public CompositeDisposable getDisposables() {
+        return disposables;
+    }
+}
@@ -1,35 +1,82 @@
 package app.tandv.services.handler;
 
 import app.tandv.services.configuration.EventConfig;
-import io.reactivex.disposables.CompositeDisposable;
+import app.tandv.services.metrics.MetricsRegistry;
+import app.tandv.services.metrics.RouteMetrics;
 import io.vertx.core.Handler;
-import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Route;
 import io.vertx.reactivex.ext.web.RoutingContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.UUID;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author vic on 2020-07-20
  */
-public class RequestHandler implements Handler<RoutingContext> {
+public class RequestHandler implements Handler<RoutingContext>, LifecycleHook {
     private static final Logger LOGGER = LoggerFactory.getLogger(RequestHandler.class);
+    private static final String UNMATCHED_ROUTE = "unmatched";
+
+    private final MetricsRegistry registry;
+    // Routes are declared once at start up, so this is bounded by the number of routes
+    private final Map<Route, RouteMetrics> routes = new ConcurrentHashMap<>();
+    private final RouteMetrics unmatched;
+
+    public RequestHandler(MetricsRegistry registry) {
+        this.registry = registry;
+        this.unmatched = new RouteMetrics(registry, UNMATCHED_ROUTE);
+    }
 
     @Override
     public void handle(RoutingContext context) {
-        LOGGER.info("Request received {}", context.request().uri());
-        // Here we'll add a nice way to handle disposing of any subscriber created during the execution of this request
-        context.put(EventConfig.DISPOSABLES, new CompositeDisposable());
-        JsonObject event = this.getRequestEvent();
-        context.put(EventConfig.EVENT, event);
-        context.response().putHeader(EventConfig.UID, event.getString(EventConfig.UID));
-        context.next();
+        if (this.beforeHandler(context)) {
+            context.next();
+        }
+    }
+
+    @Override
+    public boolean beforeHandler(RoutingContext context) {
+        if (LOGGER.isInfoEnabled()) {
+            LOGGER.info("Request received {}", context.request().uri());
+        }
+        this.begin(context);
+        return true;
+    }
+
+    /**
+     * Creates the request context for the current request, this is also used by failure handlers for requests that
+     * failed before getting here.
+     *
+     * @param context of the current request
+     * @return the request context stored in the routing context
+     */
+    public RequestContext begin(RoutingContext context) {
+        RequestContext request = RequestContext.acquire(this.getRoute(context));
+        context.put(EventConfig.EVENT, request);
+        context.response().putHeader(EventConfig.UID, request.getUid());
+        return request;
     }
 
-    private JsonObject getRequestEvent(){
-        return new JsonObject()
-                .put(EventConfig.UID, UUID.randomUUID().toString())
-                .put(EventConfig.ST, System.currentTimeMillis());
+    /**
+     * We use the path the route was declared with (including the mount point of any sub router) rather than the
+     * actual path of the request, to keep the number of different routes reported in metrics bounded.
+     *
+     * @param context of the current request
+     * @return the route metrics for the current request
+     */
+    private RouteMetrics getRoute(RoutingContext context) {
+        // Going through the delegate to skip the allocation of the rx wrapper
+        Route route = context.getDelegate().currentRoute();
+        if (route == null || route.getPath() == null) {
+            return this.unmatched;
+        }
+        RouteMetrics metrics = this.routes.get(route);
+        if (metrics == null) {
+            String mountPoint = context.mountPoint() == null ? "" : context.mountPoint();
+            metrics = this.routes.computeIfAbsent(route, r -> new RouteMetrics(this.registry, mountPoint + r.getPath()));
+        }
+        return metrics;
     }
 }
@@ -1,50 +1,80 @@
 package app.tandv.services.handler;
 
 import app.tandv.services.configuration.EventConfig;
-import io.reactivex.disposables.CompositeDisposable;
+import io.netty.handler.codec.http.HttpResponseStatus;
 import io.vertx.core.Handler;
-import io.vertx.core.json.JsonObject;
 import io.vertx.reactivex.core.http.HttpServerResponse;
 import io.vertx.reactivex.ext.web.RoutingContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * This handler is in charge of finishing up a single request. It will close any opened resources and dispose of any
  * pending observers
  *
  * @author vic on 2020-07-20
  */
-public class ResponseHandler implements Handler<RoutingContext> {
+public class ResponseHandler implements Handler<RoutingContext>, LifecycleHook {
     private static final Logger LOGGER = LoggerFactory.getLogger(ResponseHandler.class);
 
     @Override
     public void handle(RoutingContext context) {
-        JsonObject event = context.get(EventConfig.EVENT);
-
-        // To dispose of any disposables captured during execution
-        this.dispose(context.get(EventConfig.DISPOSABLES));
+        this.afterHandler(context);
+    }
 
-        int status = event.getInteger(EventConfig.STATUS);
-        HttpServerResponse response = context.response();
-        response.setStatusCode(status);
-        if (event.containsKey(EventConfig.CONTENT)) {
-            String responseContent = event.getString(EventConfig.CONTENT);
-            LOGGER.trace(responseContent);
-            response.end(responseContent);
-        } else {
-            response.end();
+    /**
+     * @param context of the current request
+     * @return false, since the response is ended here
+     */
+    @Override
+    public boolean afterHandler(RoutingContext context) {
+        RequestContext request = context.get(EventConfig.EVENT);
+        if (request == null) {
+            // Nothing went through the request handler, we can only finish the response
+            context.response().end();
+            return false;
         }
+        try {
+            // To dispose of any disposables captured during execution
+            LOGGER.debug("Disposing of pending observers...");
+            request.getDisposables().clear();
 
-        long st = event.getLong(EventConfig.ST, -1L);
-        long tt = st != -1L ? System.currentTimeMillis() - st : st;
-        LOGGER.info("Total time {}ms {}", tt, status);
-    }
+            int status = request.getStatus();
+            HttpServerResponse response = context.response();
+            response.setStatusCode(status);
+            if (request.getFile() != null) {
+                String file = request.getFile();
+                response.sendFile(file, sent -> {
+                    if (sent.failed()) {
+                        LOGGER.error("Unable to send file {}", file, sent.cause());
+                        // Once the headers are out the only way to tell the client is to cut the response short
+                        if (response.headWritten()) {
+                            response.close();
+                        } else {
+                            response.setStatusCode(HttpResponseStatus.INTERNAL_SERVER_ERROR.code()).end();
+                        }
+                    }
+                });
+            } else if (request.getBody() != null) {
+                response.end(request.getBody());
+            } else if (request.hasContent()) {
+                LOGGER.trace(request.getContent());
+                response.end(request.getContent());
+            } else {
+                response.end();
+            }
 
-    private void dispose(CompositeDisposable compositeDisposable) {
-        if (compositeDisposable != null) {
-            LOGGER.debug("Disposing of pending observers...");
-            compositeDisposable.dispose();
+            long tt = System.nanoTime() - request.getStartNanos();
+            request.getRoute().timer(context.request().method(), status).record(tt);
+            if (LOGGER.isInfoEnabled()) {
+                LOGGER.info("Total time {}us {}", TimeUnit.NANOSECONDS.toMicros(tt), status);
+            }
+        } finally {
+            context.remove(EventConfig.EVENT);
+            request.release();
         }
+        return false;
     }
 }
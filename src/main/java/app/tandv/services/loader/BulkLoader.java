@@ -0,0 +1,342 @@
+package app.tandv.services.loader;
+
+import app.tandv.services.App;
+import app.tandv.services.concurrency.NormalizationPool;
+import app.tandv.services.configuration.EventConfig;
+import app.tandv.services.data.entity.BookContributor;
+import app.tandv.services.data.entity.BookEntity;
+import app.tandv.services.data.entity.ContributorEntity;
+import app.tandv.services.data.entity.ContributorType;
+import app.tandv.services.data.jpa.CatalogMigrations;
+import app.tandv.services.data.jpa.JpaEntityManagerFactory;
+import app.tandv.services.util.collections.Pair;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.config.ConfigRetriever;
+import io.vertx.reactivex.core.Vertx;
+import org.hibernate.JDBCException;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Loads catalog exports, csv or json, straight into the database of the service, going around the http api and the
+ * entity manager. Meant for the initial load of large catalogs, and to be run while the service is stopped: the
+ * service caches know nothing of the rows written. Records stored by earlier versions are migrated first, see
+ * {@link CatalogMigrations}, for the books already stored to be matched by their current signature.
+ * <p>
+ * Records are read in chunks and normalized in parallel by a {@link NormalizationPool} (title casing, cataloguing
+ * strings and sha256 signatures, the expensive part) while the previous chunk is written, in input order, with batched
+ * inserts. Books already in the
+ * database or earlier in the input are skipped, records that can't be normalized are logged with their number and
+ * skipped too.
+ * <pre>
+ * java -cp library-service.jar app.tandv.services.loader.BulkLoader [--threads n] [--batch-size n] [--chunk-size n] file...
+ * </pre>
+ *
+ * @author vic on 2020-10-19
+ */
+public class BulkLoader {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BulkLoader.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final int DEFAULT_CHUNK_SIZE = 8192;
+
+    private static final String THREADS_OPTION = "--threads";
+    private static final String BATCH_SIZE_OPTION = "--batch-size";
+    private static final String CHUNK_SIZE_OPTION = "--chunk-size";
+    private static final String CSV_EXTENSION = ".csv";
+    private static final String JSON_EXTENSION = ".json";
+    private static final int YEAR_LENGTH = 4;
+
+    private final int threads;
+    private final int batchSize;
+    private final int chunkSize;
+
+    /**
+     * @param threads   to normalize the records with
+     * @param batchSize number of books per insert batch and transaction
+     * @param chunkSize number of records normalized at once
+     */
+    public BulkLoader(int threads, int batchSize, int chunkSize) {
+        if (threads < 1 || batchSize < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("Threads, batch size and chunk size must be positive");
+        }
+        this.threads = threads;
+        this.batchSize = batchSize;
+        this.chunkSize = chunkSize;
+    }
+
+    public static void main(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int batchSize = DEFAULT_BATCH_SIZE;
+        int chunkSize = DEFAULT_CHUNK_SIZE;
+        List<Path> files = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case THREADS_OPTION:
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case BATCH_SIZE_OPTION:
+                        batchSize = Integer.parseInt(args[++i]);
+                        break;
+                    case CHUNK_SIZE_OPTION:
+                        chunkSize = Integer.parseInt(args[++i]);
+                        break;
+                    default:
+                        files.add(Paths.get(args[i]));
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException exception) {
+            files.clear();
+        }
+        if (files.isEmpty()) {
+            System.err.println("Usage: BulkLoader [--threads n] [--batch-size n] [--chunk-size n] file.csv|file.json...");
+            System.exit(2);
+        }
+
+        Vertx bootstrap = Vertx.vertx();
+        ConfigRetriever retriever = ConfigRetriever.create(bootstrap, App.defaultConfigOptions());
+        JsonObject config;
+        try {
+            config = retriever.rxGetConfig().blockingGet();
+        } finally {
+            retriever.close();
+            bootstrap.close();
+        }
+
+        EntityManagerFactory entityManagerFactory = new JpaEntityManagerFactory(
+                config,
+                BookEntity.class,
+                ContributorEntity.class,
+                BookContributor.class
+        ).getFactory();
+        int rc = 0;
+        try {
+            Result result = new BulkLoader(threads, batchSize, chunkSize).load(entityManagerFactory, files);
+            LOGGER.info("Bulk load finished: {}", result);
+            if (result.getRejected() > 0) {
+                rc = 1;
+            }
+        } catch (IOException | SQLException exception) {
+            LOGGER.error("Bulk load failed", exception);
+            rc = -1;
+        } finally {
+            entityManagerFactory.close();
+        }
+        System.exit(rc);
+    }
+
+    /**
+     * @param entityManagerFactory to take the connection from
+     * @param files                to load, csv or json by their extension
+     * @return the counts of the load
+     * @throws IOException  if a file can't be read or is malformed
+     * @throws SQLException if a batch fails, the batches committed before it are kept
+     */
+    public Result load(EntityManagerFactory entityManagerFactory, List<Path> files) throws IOException, SQLException {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            entityManager.getTransaction().begin();
+            CatalogMigrations.migrate(entityManager);
+            entityManager.getTransaction().commit();
+            entityManager.clear();
+            return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+                try {
+                    return this.load(connection, files);
+                } catch (IOException exception) {
+                    throw new UncheckedIOException(exception);
+                }
+            });
+        } catch (UncheckedIOException exception) {
+            throw exception.getCause();
+        } catch (JDBCException exception) {
+            throw exception.getSQLException();
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * @param connection to write with
+     * @param files      to load, csv or json by their extension
+     * @return the counts of the load
+     * @throws IOException  if a file can't be read or is malformed
+     * @throws SQLException if a batch fails, the batches committed before it are kept
+     */
+    public Result load(Connection connection, List<Path> files) throws IOException, SQLException {
+        Result result = new Result();
+        try (NormalizationPool pool = new NormalizationPool(this.threads);
+             CatalogWriter writer = new CatalogWriter(connection, this.batchSize)) {
+            for (Path file : files) {
+                LOGGER.info("Loading {}", file);
+                this.load(file, pool, writer, result);
+            }
+            writer.flush();
+            result.books = writer.getBooksWritten();
+            result.contributors = writer.getContributorsWritten();
+            result.duplicates = writer.getDuplicates();
+        }
+        return result;
+    }
+
+    private void load(Path file, NormalizationPool pool, CatalogWriter writer, Result result)
+            throws IOException, SQLException {
+        try (RecordReader reader = open(file)) {
+            List<JsonObject> records = this.read(reader);
+            Future<List<NormalizationPool.Normalized<BookEntity>>> pending = normalize(pool, records);
+            // Number of the first record of the chunk pending, from 1
+            long first = 1L;
+            while (pending != null) {
+                List<NormalizationPool.Normalized<BookEntity>> chunk = join(pending);
+                // The next chunk is normalized while this one is written
+                long next = first + records.size();
+                records = this.read(reader);
+                pending = normalize(pool, records);
+
+                for (NormalizationPool.Normalized<BookEntity> normalized : chunk) {
+                    result.read++;
+                    if (normalized.isValid()) {
+                        writer.write(normalized.getValue());
+                    } else {
+                        result.rejected++;
+                        LOGGER.warn(
+                                "Record {} of {} rejected: {}",
+                                first + normalized.getIndex(), file, normalized.getError().getMessage()
+                        );
+                    }
+                }
+                first = next;
+            }
+        }
+    }
+
+    private List<JsonObject> read(RecordReader reader) throws IOException {
+        List<JsonObject> records = new ArrayList<>(this.chunkSize);
+        JsonObject record;
+        while (records.size() < this.chunkSize && (record = reader.next()) != null) {
+            records.add(record);
+        }
+        return records;
+    }
+
+    private static Future<List<NormalizationPool.Normalized<BookEntity>>> normalize(
+            NormalizationPool pool,
+            List<JsonObject> records
+    ) {
+        return records.isEmpty() ? null : pool.submit(records, BulkLoader::normalize);
+    }
+
+    /**
+     * The same normalization as adding the book through the api, with contributors by name instead of id.
+     */
+    private static BookEntity normalize(JsonObject record) {
+        Object year = record.getValue(EventConfig.YEAR);
+        if (year instanceof Number) {
+            record.put(EventConfig.YEAR, year.toString());
+        } else if (year instanceof String && ((String) year).length() > YEAR_LENGTH) {
+            throw new IllegalArgumentException("Year too long [" + year + "]");
+        }
+        BookEntity book = BookEntity.fromJson(record);
+        JsonArray contributors = record.getJsonArray(EventConfig.CONTRIBUTORS);
+        for (Object contributor : contributors) {
+            if (!(contributor instanceof JsonObject)) {
+                throw new IllegalArgumentException("Contributors must be objects with a name");
+            }
+            JsonObject json = (JsonObject) contributor;
+            book.addContributor(new Pair<>(
+                    ContributorEntity.fromJson(json),
+                    ContributorType.fromString(json.getString(EventConfig.TYPE))
+            ));
+        }
+        return book.calculateSha256();
+    }
+
+    private static <T> T join(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while normalizing records", exception);
+        } catch (ExecutionException exception) {
+            throw new IllegalStateException("Unable to normalize records", exception.getCause());
+        }
+    }
+
+    private static RecordReader open(Path file) throws IOException {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(CSV_EXTENSION)) {
+            return new CsvRecordReader(Files.newBufferedReader(file, StandardCharsets.UTF_8));
+        }
+        if (name.endsWith(JSON_EXTENSION)) {
+            return new JsonRecordReader(Files.newBufferedReader(file, StandardCharsets.UTF_8));
+        }
+        throw new IOException("Unknown file type, expected " + CSV_EXTENSION + " or " + JSON_EXTENSION + ": " + file);
+    }
+
+    public static final class Result {
+        private long read = 0;
+        private long books = 0;
+        private long contributors = 0;
+        private long duplicates = 0;
+        private long rejected = 0;
+
+        /**
+         * @return number of records read
+         */
+        public long getRead() {
+            return read;
+        }
+
+        /**
+         * @return number of books written
+         */
+        public long getBooks() {
+            return books;
+        }
+
+        /**
+         * @return number of contributors written, not counting the ones already in the database
+         */
+        public long getContributors() {
+            return contributors;
+        }
+
+        /**
+         * @return number of books skipped for being in the database already or earlier in the input
+         */
+        public long getDuplicates() {
+            return duplicates;
+        }
+
+        /**
+         * @return number of records that couldn't be normalized
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        @Override
+        public String toString() {
+            return "read=" + read + ", books=" + books + ", contributors=" + contributors
+                    + ", duplicates=" + duplicates + ", rejected=" + rejected;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package app.tandv.services.loader;
+
+import app.tandv.services.data.entity.BookContributor;
+import app.tandv.services.data.entity.BookEntity;
+import app.tandv.services.data.entity.ContributorEntity;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes normalized books and their contributors with batched JDBC inserts, committing once per batch.
+ * <p>
+ * Books and contributors are told apart by their sha256, both from the ones already in the database, read once when
+ * created, and from the ones written before. Each new one gets the next id, starting from the current time in
+ * milliseconds as the service does, or after the highest one in the database if that is ahead.
+ * Not thread safe.
+ *
+ * @author vic on 2020-10-19
+ */
+class CatalogWriter implements AutoCloseable {
+    private static final String INSERT_CONTRIBUTOR =
+            "INSERT INTO contributor (id, sha256, name, cataloguing, collation_key) VALUES (?, ?, ?, ?, ?)";
+    private static final String INSERT_BOOK =
+            "INSERT INTO book (id, sha256, title, cataloguing, isbn, year, language, format, collation_key) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_BOOK_CONTRIBUTOR =
+            "INSERT INTO book_contributor (book_id, contributor_id, type) VALUES (?, ?, ?)";
+
+    private final Connection connection;
+    private final int batchSize;
+    private final PreparedStatement contributors;
+    private final PreparedStatement books;
+    private final PreparedStatement bookContributors;
+
+    private final Map<String, Long> contributorIds = new HashMap<>();
+    private final Set<String> bookShas = new HashSet<>();
+    private long nextId;
+    private int pending = 0;
+
+    private long booksWritten = 0;
+    private long contributorsWritten = 0;
+    private long duplicates = 0;
+
+    /**
+     * @param connection to write with, its auto commit is turned off
+     * @param batchSize  number of books per batch
+     * @throws SQLException if the existing books and contributors can't be read
+     */
+    CatalogWriter(Connection connection, int batchSize) throws SQLException {
+        this.connection = connection;
+        this.batchSize = batchSize;
+        long maxId = 0L;
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet rows = statement.executeQuery("SELECT id, sha256 FROM contributor")) {
+                while (rows.next()) {
+                    this.contributorIds.put(rows.getString(2), rows.getLong(1));
+                    maxId = Math.max(maxId, rows.getLong(1));
+                }
+            }
+            try (ResultSet rows = statement.executeQuery("SELECT id, sha256 FROM book")) {
+                while (rows.next()) {
+                    this.bookShas.add(rows.getString(2));
+                    maxId = Math.max(maxId, rows.getLong(1));
+                }
+            }
+        }
+        this.nextId = Math.max(maxId, System.currentTimeMillis()) + 1;
+        connection.setAutoCommit(false);
+        this.contributors = connection.prepareStatement(INSERT_CONTRIBUTOR);
+        this.books = connection.prepareStatement(INSERT_BOOK);
+        this.bookContributors = connection.prepareStatement(INSERT_BOOK_CONTRIBUTOR);
+    }
+
+    /**
+     * @param book normalized, with its contributors and sha256
+     * @return false if the book was already in the database or written before
+     * @throws SQLException if a batch fails
+     */
+    boolean write(BookEntity book) throws SQLException {
+        if (!this.bookShas.add(book.getSha256())) {
+            this.duplicates++;
+            return false;
+        }
+        long bookId = this.nextId++;
+        this.books.setLong(1, bookId);
+        this.books.setString(2, book.getSha256());
+        this.books.setString(3, book.getTitle());
+        this.books.setString(4, book.getCataloguing());
+        setNullable(this.books, 5, book.getIsbn());
+        setNullable(this.books, 6, book.getYear());
+        setNullable(this.books, 7, book.getLanguage());
+        this.books.setString(8, book.getFormat().name());
+        this.books.setBytes(9, book.getCollationKey());
+        this.books.addBatch();
+
+        Set<Long> linked = new HashSet<>();
+        for (BookContributor contribution : book.getContributors()) {
+            long contributorId = this.contributorId(contribution.getContributor());
+            // The same contributor twice in a book would break the primary key of the link
+            if (linked.add(contributorId)) {
+                this.bookContributors.setLong(1, bookId);
+                this.bookContributors.setLong(2, contributorId);
+                this.bookContributors.setString(3, contribution.getType().name());
+                this.bookContributors.addBatch();
+            }
+        }
+
+        this.booksWritten++;
+        if (++this.pending >= this.batchSize) {
+            this.flush();
+        }
+        return true;
+    }
+
+    /**
+     * Sends the pending batches, contributors first for the links to find them, and commits.
+     *
+     * @throws SQLException if a batch fails
+     */
+    void flush() throws SQLException {
+        if (this.pending == 0) {
+            return;
+        }
+        this.contributors.executeBatch();
+        this.books.executeBatch();
+        this.bookContributors.executeBatch();
+        this.connection.commit();
+        this.pending = 0;
+    }
+
+    private long contributorId(ContributorEntity contributor) throws SQLException {
+        Long id = this.contributorIds.get(contributor.getSha256());
+        if (id != null) {
+            return id;
+        }
+        id = this.nextId++;
+        this.contributorIds.put(contributor.getSha256(), id);
+        this.contributors.setLong(1, id);
+        this.contributors.setString(2, contributor.getSha256());
+        this.contributors.setString(3, contributor.getName());
+        this.contributors.setString(4, contributor.getCataloguing());
+        this.contributors.setBytes(5, contributor.getCollationKey());
+        this.contributors.addBatch();
+        this.contributorsWritten++;
+        return id;
+    }
+
+    private static void setNullable(PreparedStatement statement, int index, String value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.VARCHAR);
+        } else {
+            statement.setString(index, value);
+        }
+    }
+
+    long getBooksWritten() {
+        return booksWritten;
+    }
+
+    long getContributorsWritten() {
+        return contributorsWritten;
+    }
+
+    long getDuplicates() {
+        return duplicates;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        this.contributors.close();
+        this.books.close();
+        this.bookContributors.close();
+    }
+}
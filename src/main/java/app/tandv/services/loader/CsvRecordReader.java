@@ -0,0 +1,160 @@
+package app.tandv.services.loader;
+
+import app.tandv.services.configuration.EventConfig;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads records from comma separated values as in RFC 4180, fields optionally quoted with {@code "}. The first line is
+ * the header, naming the field of the record each column goes to, unknown columns are ignored. Contributors are given
+ * in a single column as {@code name:TYPE} separated by {@code ;}, the type being optional:
+ * <pre>
+ * title,format,isbn,year,contributors
+ * The Outsider,PAPERBACK,9781501180989,2018,"King, Stephen:AUTHOR"
+ * </pre>
+ *
+ * @author vic on 2020-10-19
+ */
+public class CsvRecordReader implements RecordReader {
+    private static final char SEPARATOR = ',';
+    private static final char QUOTE = '"';
+    private static final String CONTRIBUTOR_SEPARATOR = ";";
+    private static final char TYPE_SEPARATOR = ':';
+    private static final int NO_LOOKAHEAD = -2;
+
+    private final Reader reader;
+    private final StringBuilder field = new StringBuilder();
+    private List<String> header;
+    private int lookahead = NO_LOOKAHEAD;
+
+    /**
+     * @param reader to read from, better buffered
+     */
+    public CsvRecordReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public JsonObject next() throws IOException {
+        if (this.header == null) {
+            this.header = this.readRow();
+            if (this.header == null) {
+                return null;
+            }
+            this.header.replaceAll(column -> column.trim().toLowerCase(Locale.ROOT));
+        }
+        List<String> row = this.readRow();
+        // Blank lines are skipped
+        while (row != null && row.size() == 1 && row.get(0).isEmpty()) {
+            row = this.readRow();
+        }
+        if (row == null) {
+            return null;
+        }
+        JsonObject record = new JsonObject();
+        for (int i = 0; i < Math.min(row.size(), this.header.size()); i++) {
+            String column = this.header.get(i);
+            String value = row.get(i).trim();
+            if (value.isEmpty()) {
+                continue;
+            }
+            if (EventConfig.CONTRIBUTORS.equals(column)) {
+                record.put(column, contributors(value));
+            } else {
+                record.put(column, value);
+            }
+        }
+        return record;
+    }
+
+    private static JsonArray contributors(String value) {
+        JsonArray contributors = new JsonArray();
+        for (String contributor : value.split(CONTRIBUTOR_SEPARATOR)) {
+            if (contributor.trim().isEmpty()) {
+                continue;
+            }
+            int separator = contributor.lastIndexOf(TYPE_SEPARATOR);
+            JsonObject json = new JsonObject();
+            if (separator < 0) {
+                json.put(EventConfig.NAME, contributor.trim());
+            } else {
+                json.put(EventConfig.NAME, contributor.substring(0, separator).trim())
+                        .put(EventConfig.TYPE, contributor.substring(separator + 1).trim().toUpperCase(Locale.ROOT));
+            }
+            contributors.add(json);
+        }
+        return contributors;
+    }
+
+    /**
+     * @return the fields of the next row, null at the end of the input
+     */
+    private List<String> readRow() throws IOException {
+        int c = this.read();
+        if (c < 0) {
+            return null;
+        }
+        List<String> row = new ArrayList<>();
+        boolean quoted = false;
+        this.field.setLength(0);
+        while (c >= 0) {
+            if (quoted) {
+                if (c == QUOTE) {
+                    if (this.peek() == QUOTE) {
+                        this.read();
+                        this.field.append(QUOTE);
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    this.field.append((char) c);
+                }
+            } else if (c == QUOTE) {
+                quoted = true;
+            } else if (c == SEPARATOR) {
+                row.add(this.field.toString());
+                this.field.setLength(0);
+            } else if (c == '\n' || c == '\r') {
+                if (c == '\r' && this.peek() == '\n') {
+                    this.read();
+                }
+                break;
+            } else {
+                this.field.append((char) c);
+            }
+            c = this.read();
+        }
+        if (quoted) {
+            throw new IOException("Unterminated quoted field: " + this.field);
+        }
+        row.add(this.field.toString());
+        return row;
+    }
+
+    private int read() throws IOException {
+        if (this.lookahead != NO_LOOKAHEAD) {
+            int c = this.lookahead;
+            this.lookahead = NO_LOOKAHEAD;
+            return c;
+        }
+        return this.reader.read();
+    }
+
+    private int peek() throws IOException {
+        if (this.lookahead == NO_LOOKAHEAD) {
+            this.lookahead = this.reader.read();
+        }
+        return this.lookahead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.reader.close();
+    }
+}
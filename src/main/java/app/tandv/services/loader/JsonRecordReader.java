@@ -0,0 +1,50 @@
+package app.tandv.services.loader;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.vertx.core.json.JsonObject;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Map;
+
+/**
+ * Reads a json array of records element by element, so the export never has to fit in memory at once.
+ *
+ * @author vic on 2020-10-19
+ */
+public class JsonRecordReader implements RecordReader {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final JsonParser parser;
+    private boolean started = false;
+
+    public JsonRecordReader(Reader reader) throws IOException {
+        this.parser = MAPPER.getFactory().createParser(reader);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public JsonObject next() throws IOException {
+        if (!this.started) {
+            this.started = true;
+            if (this.parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Expected a json array of records at " + this.parser.getCurrentLocation());
+            }
+        }
+        JsonToken token = this.parser.nextToken();
+        if (token == JsonToken.END_ARRAY || token == null) {
+            return null;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new IOException("Expected a json object at " + this.parser.getCurrentLocation());
+        }
+        return new JsonObject(MAPPER.readValue(this.parser, Map.class));
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.parser.close();
+    }
+}
@@ -0,0 +1,23 @@
+package app.tandv.services.loader;
+
+import io.vertx.core.json.JsonObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads the books of a catalog export one at a time, each in the same shape as the body of {@code POST /data/book}
+ * but with its contributors given by name:
+ * <pre>
+ * {"title": "...", "format": "PAPERBACK", "isbn": "...", "contributors": [{"name": "...", "type": "AUTHOR"}]}
+ * </pre>
+ *
+ * @author vic on 2020-10-19
+ */
+public interface RecordReader extends Closeable {
+    /**
+     * @return the next record, null once there are no more
+     * @throws IOException if the file can't be read or is malformed
+     */
+    JsonObject next() throws IOException;
+}
@@ -0,0 +1,106 @@
+package app.tandv.services.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock free histogram of positive long values (normally nanoseconds) following the same log-linear bucketing idea
+ * used by HdrHistogram:
+ * <p>
+ * - Values below {@code 2^SUB_BUCKET_BITS} are recorded exactly
+ * - Every power of two above that is split into {@code 2^SUB_BUCKET_BITS} linear sub buckets
+ * <p>
+ * With 4 bits of sub buckets the relative error of any reported value is below 6.25%, which is more than enough to
+ * reason about p99 latencies, and the whole histogram fits in 960 longs regardless of the range recorded.
+ * <p>
+ * Recording is a couple of bit operations and an atomic increment, so it can be called from the event loop on every
+ * request without any contention other than the one of the atomic counters themselves.
+ *
+ * @author vic on 2020-10-19
+ */
+public class Histogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param value to record, negative values are recorded as zero
+     */
+    public void record(long value) {
+        long safe = Math.max(0L, value);
+        this.buckets.incrementAndGet(bucketIndex(safe));
+        this.count.increment();
+        this.sum.add(safe);
+        long currentMax = this.max.get();
+        while (safe > currentMax && !this.max.compareAndSet(currentMax, safe)) {
+            currentMax = this.max.get();
+        }
+    }
+
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    public long getSum() {
+        return this.sum.sum();
+    }
+
+    public long getMax() {
+        return this.max.get();
+    }
+
+    /**
+     * Please note that since recording is not stopped while this method iterates the buckets, the value returned is
+     * consistent only up to the values recorded while iterating.
+     *
+     * @param quantile between 0 and 1 to get the value for
+     * @return the highest value equivalent to the bucket in which the given quantile falls, or 0 if nothing has been
+     * recorded yet
+     */
+    public long getValueAtQuantile(double quantile) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = this.buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(Math.min(1.0, Math.max(0.0, quantile)) * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highestEquivalentValue(i), this.max.get());
+            }
+        }
+        return this.max.get();
+    }
+
+    static int bucketIndex(long value) {
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        if (magnitude < SUB_BUCKET_BITS) {
+            // This includes zero since numberOfLeadingZeros(0) is 64
+            return (int) value;
+        }
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKET_COUNT - 1);
+        return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long subBucket = SUB_BUCKET_COUNT + (index % SUB_BUCKET_COUNT);
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
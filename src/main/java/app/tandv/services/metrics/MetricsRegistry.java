@@ -0,0 +1,203 @@
+package app.tandv.services.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Minimal registry of metrics that can be rendered in the Prometheus text exposition format (version 0.0.4).
+ * <p>
+ * We support three kinds of metric families:
+ * - counters, backed by a {@link LongAdder}
+ * - gauges, backed by a {@link DoubleSupplier} evaluated at scrape time
+ * - summaries, backed by a {@link Histogram} and rendered with the quantiles defined in {@link #QUANTILES}
+ * <p>
+ * Each family may hold several children identified by their labels, given as pairs of name and value. Lookups of
+ * existing children are a single {@link ConcurrentHashMap} read, so callers are free to resolve metrics on every
+ * request instead of caching them.
+ *
+ * @author vic on 2020-10-19
+ */
+public class MetricsRegistry {
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    private enum Type {
+        COUNTER("counter"),
+        GAUGE("gauge"),
+        SUMMARY("summary");
+
+        private final String text;
+
+        Type(String text) {
+            this.text = text;
+        }
+    }
+
+    private static final class Family {
+        private final String name;
+        private final String help;
+        private final Type type;
+        private final double scale;
+        private final ConcurrentMap<String, Object> children = new ConcurrentHashMap<>();
+
+        private Family(String name, String help, Type type, double scale) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.scale = scale;
+        }
+    }
+
+    private final ConcurrentMap<String, Family> families = new ConcurrentHashMap<>();
+
+    /**
+     * Components that cannot receive the registry by construction (i.e. those instantiated by reflection by third
+     * party libraries) use this instance. The service itself wires this same instance everywhere.
+     *
+     * @return the process wide registry
+     */
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param name   of the metric family
+     * @param help   to describe the metric family
+     * @param labels pairs of label name and value
+     * @return a histogram of nanoseconds that will be rendered in seconds
+     */
+    public Histogram timer(String name, String help, String... labels) {
+        return (Histogram) this.family(name, help, Type.SUMMARY, 1 / NANOS_PER_SECOND)
+                .children.computeIfAbsent(labels(labels), key -> new Histogram());
+    }
+
+    /**
+     * @param name   of the metric family
+     * @param help   to describe the metric family
+     * @param labels pairs of label name and value
+     * @return a histogram of plain values (counts, sizes) that will be rendered unchanged
+     */
+    public Histogram distribution(String name, String help, String... labels) {
+        return (Histogram) this.family(name, help, Type.SUMMARY, 1.0)
+                .children.computeIfAbsent(labels(labels), key -> new Histogram());
+    }
+
+    /**
+     * @param name   of the metric family
+     * @param help   to describe the metric family
+     * @param labels pairs of label name and value
+     * @return the counter to increment
+     */
+    public LongAdder counter(String name, String help, String... labels) {
+        return (LongAdder) this.family(name, help, Type.COUNTER, 1.0)
+                .children.computeIfAbsent(labels(labels), key -> new LongAdder());
+    }
+
+    /**
+     * Registering a gauge with the same name and labels replaces the previous supplier.
+     *
+     * @param name     of the metric family
+     * @param help     to describe the metric family
+     * @param supplier of the value, evaluated only when metrics are scraped
+     * @param labels   pairs of label name and value
+     * @return a reference to this instance for fluent API
+     */
+    public MetricsRegistry gauge(String name, String help, DoubleSupplier supplier, String... labels) {
+        this.family(name, help, Type.GAUGE, 1.0).children.put(labels(labels), supplier);
+        return this;
+    }
+
+    /**
+     * @return all registered metrics in Prometheus text format, families sorted by name
+     */
+    public String scrape() {
+        StringBuilder builder = new StringBuilder(4096);
+        for (Family family : new TreeMap<>(this.families).values()) {
+            builder.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            builder.append("# TYPE ").append(family.name).append(' ').append(family.type.text).append('\n');
+            for (Map.Entry<String, Object> child : new TreeMap<>(family.children).entrySet()) {
+                this.render(builder, family, child.getKey(), child.getValue());
+            }
+        }
+        return builder.toString();
+    }
+
+    private void render(StringBuilder builder, Family family, String labels, Object metric) {
+        switch (family.type) {
+            case COUNTER:
+                sample(builder, family.name, labels, ((LongAdder) metric).sum());
+                break;
+            case GAUGE:
+                sample(builder, family.name, labels, ((DoubleSupplier) metric).getAsDouble());
+                break;
+            case SUMMARY:
+                Histogram histogram = (Histogram) metric;
+                for (double quantile : QUANTILES) {
+                    sample(
+                            builder,
+                            family.name,
+                            withLabel(labels, "quantile", String.valueOf(quantile)),
+                            histogram.getValueAtQuantile(quantile) * family.scale
+                    );
+                }
+                sample(builder, family.name + "_sum", labels, histogram.getSum() * family.scale);
+                sample(builder, family.name + "_count", labels, histogram.getCount());
+                break;
+        }
+    }
+
+    private Family family(String name, String help, Type type, double scale) {
+        Family family = this.families.computeIfAbsent(name, key -> new Family(name, help, type, scale));
+        if (family.type != type) {
+            throw new IllegalArgumentException("Metric '" + name + "' already registered as " + family.type.text);
+        }
+        return family;
+    }
+
+    private static void sample(StringBuilder builder, String name, String labels, double value) {
+        builder.append(name).append(labels).append(' ');
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            builder.append((long) value);
+        } else {
+            builder.append(value);
+        }
+        builder.append('\n');
+    }
+
+    private static String labels(String... pairs) {
+        if (pairs.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be given as name and value pairs");
+        }
+        if (pairs.length == 0) {
+            return "";
+        }
+        StringBuilder builder = new StringBuilder().append('{');
+        for (int i = 0; i < pairs.length; i += 2) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(pairs[i]).append("=\"").append(escape(pairs[i + 1])).append('"');
+        }
+        return builder.append('}').toString();
+    }
+
+    private static String withLabel(String labels, String name, String value) {
+        String label = name + "=\"" + value + '"';
+        if (labels.isEmpty()) {
+            return "{" + label + "}";
+        }
+        return labels.substring(0, labels.length() - 1) + "," + label + "}";
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,56 @@
+package app.tandv.services.metrics;
+
+import io.vertx.core.http.HttpMethod;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Per route cache of the request latency histograms, indexed by method and status code, so that recording the
+ * latency of a request does not need to build the label string to look the histogram up in the registry.
+ *
+ * @author vic on 2020-10-19
+ */
+public class RouteMetrics {
+    private static final int MAX_STATUS = 600;
+
+    private final MetricsRegistry registry;
+    private final String route;
+    private final AtomicReferenceArray<AtomicReferenceArray<Histogram>> byMethod =
+            new AtomicReferenceArray<>(HttpMethod.values().length);
+
+    public RouteMetrics(MetricsRegistry registry, String route) {
+        this.registry = registry;
+        this.route = route;
+    }
+
+    public String getRoute() {
+        return route;
+    }
+
+    /**
+     * @param method of the request
+     * @param status of the response
+     * @return the histogram to record the request latency into
+     */
+    public Histogram timer(HttpMethod method, int status) {
+        AtomicReferenceArray<Histogram> byStatus = this.byMethod.get(method.ordinal());
+        if (byStatus == null) {
+            this.byMethod.compareAndSet(method.ordinal(), null, new AtomicReferenceArray<>(MAX_STATUS));
+            byStatus = this.byMethod.get(method.ordinal());
+        }
+        int index = status >= 0 && status < MAX_STATUS ? status : 0;
+        Histogram histogram = byStatus.get(index);
+        if (histogram == null) {
+            // The registry returns the same instance if someone else got here first
+            histogram = this.registry.timer(
+                    "http_server_requests_seconds",
+                    "Latency of requests from the request handler to the response handler",
+                    "route", this.route,
+                    "method", method.name(),
+                    "status", String.valueOf(status)
+            );
+            byStatus.set(index, histogram);
+        }
+        return histogram;
+    }
+}
@@ -0,0 +1,86 @@
+package app.tandv.services.metrics;
+
+import io.vertx.reactivex.core.Vertx;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Vert.x does not expose the state of its event loops and worker pool unless a full metrics SPI implementation is
+ * plugged in. Instead of that we measure what actually matters from the outside with two periodic probes:
+ * <p>
+ * - <strong>event loop lag:</strong> how late a timer fires compared to when it was scheduled. Any blocking code or
+ * saturation of the event loop shows up here.
+ * - <strong>worker queue delay:</strong> how long a no-op task waits in the worker pool queue before being executed.
+ * When all workers are busy with blocking work this value grows with the queue.
+ * <p>
+ * Both probes keep the maximum seen since the last scrape, which is what we care about when looking for stalls.
+ *
+ * @author vic on 2020-10-19
+ */
+public class VertxProbes {
+    private static final long PROBE_INTERVAL_MS = 100L;
+
+    private final Vertx vertx;
+    private final AtomicLong eventLoopLag = new AtomicLong();
+    private final AtomicLong workerQueueDelay = new AtomicLong();
+
+    private long timerId = -1L;
+
+    public VertxProbes(Vertx vertx) {
+        this.vertx = vertx;
+    }
+
+    /**
+     * @param registry       to register the gauges into
+     * @param workerPoolSize configured for the current Vert.x instance
+     * @return a reference to this instance for fluent API
+     */
+    public VertxProbes register(MetricsRegistry registry, int workerPoolSize) {
+        registry.gauge(
+                "vertx_event_loop_lag_seconds",
+                "Maximum delay of the event loop probe timer since last scrape",
+                () -> this.eventLoopLag.getAndSet(0L) / 1e9
+        );
+        registry.gauge(
+                "vertx_worker_queue_delay_seconds",
+                "Maximum time a probe task waited in the worker pool queue since last scrape",
+                () -> this.workerQueueDelay.getAndSet(0L) / 1e9
+        );
+        registry.gauge(
+                "vertx_worker_pool_size",
+                "Configured size of the Vert.x worker pool",
+                () -> workerPoolSize
+        );
+        return this;
+    }
+
+    public void start() {
+        this.schedule(System.nanoTime());
+    }
+
+    public void stop() {
+        if (this.timerId != -1L) {
+            this.vertx.cancelTimer(this.timerId);
+            this.timerId = -1L;
+        }
+    }
+
+    private void schedule(long now) {
+        long expected = now + TimeUnit.MILLISECONDS.toNanos(PROBE_INTERVAL_MS);
+        this.timerId = this.vertx.setTimer(PROBE_INTERVAL_MS, id -> {
+            long fired = System.nanoTime();
+            this.eventLoopLag.accumulateAndGet(fired - expected, Math::max);
+            this.vertx.<Void>executeBlocking(
+                    promise -> {
+                        this.workerQueueDelay.accumulateAndGet(System.nanoTime() - fired, Math::max);
+                        promise.complete();
+                    },
+                    false,
+                    result -> {
+                    }
+            );
+            this.schedule(fired);
+        });
+    }
+}
@@ -0,0 +1,200 @@
+package app.tandv.services.util;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+
+/**
+ * Binary sort keys for the cataloguing strings of {@link StringUtils#titleForOrdering(String)} and
+ * {@link StringUtils#contributorForOrdering(String)}, so they are ordered by comparing bytes, the same in java as in
+ * the database.
+ * <p>
+ * The key holds the primary weights of the string, letters without their accents, then, only if there are accents,
+ * a separator and the weight of the accent of each letter. {@code cote} sorts before {@code coté}, which sorts before
+ * {@code cote d} and {@code coter}: accents only break ties between the same letters.
+ * <ul>
+ * <li>space {@code 0x02}, digits {@code 0x10} to {@code 0x19}, letters a to z {@code 0x20} to {@code 0x39}</li>
+ * <li>ß, æ, œ and þ count as ss, ae, oe and th, ø, ł, đ and ð as their base letter with a stroke, and ı as i</li>
+ * <li>any other character is written as 3 bytes, from {@code 0x40}, in code point order after the latin letters</li>
+ * </ul>
+ * Every byte is between {@code 0x01} and {@code 0x7F}, so the keys compare the same signed or unsigned, and whatever
+ * binary collation the database uses.
+ *
+ * @author vic on 2020-10-19
+ */
+public final class CollationKeys {
+    public static final int MAX_LENGTH = 1024;
+
+    private static final byte SECONDARY_SEPARATOR = 0x01;
+    private static final byte SPACE = 0x02;
+    private static final byte DIGITS = 0x10;
+    private static final byte LETTERS = 0x20;
+    private static final byte OTHERS = 0x40;
+    private static final byte NO_ACCENT = 0x02;
+    private static final byte ACCENTS = 0x03;
+    private static final byte OTHER_ACCENT = 0x7F;
+    private static final char FIRST_COMBINING_MARK = '̀';
+    private static final char LAST_COMBINING_MARK = 'ͯ';
+    private static final char STROKE = '̵';
+    private static final char SLASH = '̸';
+
+    private CollationKeys() {
+    }
+
+    /**
+     * @param cataloguing string to get the key of
+     * @return the key, at most {@link #MAX_LENGTH} bytes, null for a null string
+     */
+    public static byte[] of(final String cataloguing) {
+        if (cataloguing == null) {
+            return null;
+        }
+        // Accents are split from their letters, é being e and a combining acute accent
+        String decomposed = Normalizer.normalize(cataloguing, Normalizer.Form.NFD);
+        Weights weights = new Weights(decomposed.length());
+        for (int ind = 0; ind < decomposed.length(); ind++) {
+            char character = Character.toLowerCase(decomposed.charAt(ind));
+            if (Character.getType(character) == Character.NON_SPACING_MARK) {
+                weights.accent(character);
+            } else if (character == ' ') {
+                weights.primary(SPACE);
+            } else if (character >= '0' && character <= '9') {
+                weights.primary((byte) (DIGITS + character - '0'));
+            } else if (character >= 'a' && character <= 'z') {
+                weights.letter(character);
+            } else if (!expand(character, weights)) {
+                weights.primary((byte) (OTHERS | character >>> 12));
+                weights.extend((byte) (0x01 + (character >>> 6 & 0x3F)));
+                weights.extend((byte) (0x01 + (character & 0x3F)));
+            }
+        }
+        return weights.toKey();
+    }
+
+    /**
+     * Unsigned lexicographic order of the keys, null first as in the database.
+     *
+     * @return negative, zero or positive as the first key sorts before, the same as or after the second
+     */
+    public static int compare(final byte[] first, final byte[] second) {
+        if (first == second) {
+            return 0;
+        }
+        if (first == null || second == null) {
+            return first == null ? -1 : 1;
+        }
+        int length = Math.min(first.length, second.length);
+        for (int ind = 0; ind < length; ind++) {
+            int difference = (first[ind] & 0xFF) - (second[ind] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return first.length - second.length;
+    }
+
+    private static boolean expand(final char character, final Weights weights) {
+        switch (character) {
+            case 'ß':
+                weights.letter('s');
+                weights.letter('s');
+                return true;
+            case 'æ':
+                weights.letter('a');
+                weights.letter('e');
+                return true;
+            case 'œ':
+                weights.letter('o');
+                weights.letter('e');
+                return true;
+            case 'þ':
+                weights.letter('t');
+                weights.letter('h');
+                return true;
+            case 'ø':
+                weights.letter('o');
+                weights.accent(SLASH);
+                return true;
+            case 'ł':
+                weights.letter('l');
+                weights.accent(SLASH);
+                return true;
+            case 'đ':
+            case 'ð':
+                weights.letter('d');
+                weights.accent(STROKE);
+                return true;
+            case 'ı':
+                weights.letter('i');
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static final class Weights {
+        private final byte[] primary;
+        private final byte[] secondary;
+        private int primaryLength = 0;
+        // One per primary weight, accents of characters other than letters are ignored
+        private int secondaryLength = 0;
+        private boolean accented = false;
+        private boolean accentable = false;
+
+        private Weights(int length) {
+            // Expansions take at most 3 bytes per character
+            this.primary = new byte[length * 3];
+            this.secondary = new byte[length * 3];
+        }
+
+        private void letter(final char letter) {
+            this.primary((byte) (LETTERS + letter - 'a'));
+            this.accentable = true;
+        }
+
+        private void primary(final byte weight) {
+            this.primary[this.primaryLength++] = weight;
+            this.secondary[this.secondaryLength++] = NO_ACCENT;
+            this.accentable = false;
+        }
+
+        private void extend(final byte weight) {
+            this.primary[this.primaryLength++] = weight;
+            this.secondary[this.secondaryLength++] = NO_ACCENT;
+        }
+
+        /**
+         * Only the first accent of a letter counts.
+         */
+        private void accent(final char mark) {
+            if (!this.accentable) {
+                return;
+            }
+            this.secondary[this.secondaryLength - 1] = mark >= FIRST_COMBINING_MARK && mark <= LAST_COMBINING_MARK
+                    ? (byte) (ACCENTS + mark - FIRST_COMBINING_MARK)
+                    : OTHER_ACCENT;
+            this.accented = true;
+            this.accentable = false;
+        }
+
+        private byte[] toKey() {
+            if (!this.accented) {
+                return Arrays.copyOf(this.primary, Math.min(this.primaryLength, MAX_LENGTH));
+            }
+            int secondaryLength = this.secondaryLength;
+            while (this.secondary[secondaryLength - 1] == NO_ACCENT) {
+                secondaryLength--;
+            }
+            int length = Math.min(this.primaryLength + 1 + secondaryLength, MAX_LENGTH);
+            byte[] key = Arrays.copyOf(this.primary, length);
+            if (this.primaryLength < length) {
+                key[this.primaryLength] = SECONDARY_SEPARATOR;
+                System.arraycopy(
+                        this.secondary, 0,
+                        key, this.primaryLength + 1,
+                        Math.min(secondaryLength, length - this.primaryLength - 1)
+                );
+            }
+            return key;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package app.tandv.services.util;
+
+import java.util.Optional;
+
+/**
+ * Canonical form of ISBNs: the 13 digits of the ISBN-13, without separators. ISBN-10 are converted by prefixing them
+ * with 978 and recalculating the check digit, so a book is found the same whether it was catalogued or scanned with
+ * one or the other.
+ *
+ * @author vic on 2020-10-19
+ */
+public final class IsbnUtils {
+    public static final int ISBN_10_LENGTH = 10;
+    public static final int ISBN_13_LENGTH = 13;
+
+    private static final String BOOKLAND = "978";
+    private static final String BOOKLAND_MUSIC = "979";
+
+    private IsbnUtils() {
+    }
+
+    /**
+     * @param isbn ISBN-10 or ISBN-13, hyphens and spaces are ignored
+     * @return an optional with the 13 digits of the ISBN-13, empty if the isbn is not valid or its check digit does not
+     * match
+     */
+    public static Optional<String> canonical(final String isbn) {
+        if (isbn == null) {
+            return Optional.empty();
+        }
+        char[] digits = new char[ISBN_13_LENGTH];
+        int length = 0;
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if (c == '-' || c == ' ') {
+                continue;
+            }
+            boolean checkX = (c == 'X' || c == 'x') && length == ISBN_10_LENGTH - 1;
+            if (length == ISBN_13_LENGTH || !(c >= '0' && c <= '9' || checkX)) {
+                return Optional.empty();
+            }
+            digits[length++] = checkX ? 'X' : c;
+        }
+        if (length == ISBN_10_LENGTH) {
+            return isValid10(digits) ? Optional.of(toIsbn13(digits)) : Optional.empty();
+        }
+        if (length == ISBN_13_LENGTH && digits[ISBN_10_LENGTH - 1] != 'X' && isValid13(digits)) {
+            String canonical = new String(digits);
+            return canonical.startsWith(BOOKLAND) || canonical.startsWith(BOOKLAND_MUSIC)
+                    ? Optional.of(canonical)
+                    : Optional.empty();
+        }
+        return Optional.empty();
+    }
+
+    private static boolean isValid10(char[] digits) {
+        int sum = 0;
+        for (int i = 0; i < ISBN_10_LENGTH; i++) {
+            // X only ever gets this far as the last digit
+            int digit = digits[i] == 'X' ? 10 : digits[i] - '0';
+            sum += (ISBN_10_LENGTH - i) * digit;
+        }
+        return sum % 11 == 0;
+    }
+
+    private static boolean isValid13(char[] digits) {
+        return checkDigit13(digits) == digits[ISBN_13_LENGTH - 1] - '0';
+    }
+
+    private static String toIsbn13(char[] isbn10) {
+        char[] digits = new char[ISBN_13_LENGTH];
+        BOOKLAND.getChars(0, BOOKLAND.length(), digits, 0);
+        System.arraycopy(isbn10, 0, digits, BOOKLAND.length(), ISBN_10_LENGTH - 1);
+        digits[ISBN_13_LENGTH - 1] = (char) ('0' + checkDigit13(digits));
+        return new String(digits);
+    }
+
+    /**
+     * @return the check digit of the first 12 digits, weighted alternately by 1 and 3
+     */
+    private static int checkDigit13(char[] digits) {
+        int sum = 0;
+        for (int i = 0; i < ISBN_13_LENGTH - 1; i++) {
+            sum += (i % 2 == 0 ? 1 : 3) * (digits[i] - '0');
+        }
+        return (10 - sum % 10) % 10;
+    }
+}
@@ -0,0 +1,50 @@
+package app.tandv.services.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Request ids only need to be unique enough to correlate log lines and responses, there is no need to pay for the
+ * {@link java.security.SecureRandom} behind {@link java.util.UUID#randomUUID()}, which is shared (and contended) by
+ * all threads.
+ * <p>
+ * The ids generated here keep the format of a version 4 UUID so clients parsing them are not affected.
+ *
+ * @author vic on 2020-10-19
+ */
+public final class RequestIds {
+    private static final char[] HEX_ARRAY = "0123456789abcdef".toCharArray();
+    private static final int UUID_LENGTH = 36;
+    private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[UUID_LENGTH]);
+
+    private RequestIds() {
+    }
+
+    /**
+     * @return a random id formatted as a version 4 UUID
+     */
+    public static String next() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        // version 4
+        long high = (random.nextLong() & 0xFFFFFFFFFFFF0FFFL) | 0x0000000000004000L;
+        // IETF variant
+        long low = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        char[] buffer = BUFFER.get();
+        hex(buffer, 0, high >>> 32, 8);
+        buffer[8] = '-';
+        hex(buffer, 9, high >>> 16, 4);
+        buffer[13] = '-';
+        hex(buffer, 14, high, 4);
+        buffer[18] = '-';
+        hex(buffer, 19, low >>> 48, 4);
+        buffer[23] = '-';
+        hex(buffer, 24, low, 12);
+        return new String(buffer);
+    }
+
+    private static void hex(char[] buffer, int offset, long value, int digits) {
+        for (int i = digits - 1; i >= 0; i--) {
+            buffer[offset + i] = HEX_ARRAY[(int) (value & 0x0F)];
+            value >>>= 4;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package app.tandv.services.util;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA 256 signatures as upper case hex strings, safe to call from any thread.
+ * <p>
+ * {@link MessageDigest} keeps state between updates, so each thread gets its own, along with the buffers for the utf-8
+ * bytes, the digest and its hex form. Only the resulting string is allocated, the buffers growing with the longest
+ * input seen by the thread.
+ *
+ * @author vic on 2020-10-19
+ */
+public final class Sha256 {
+    public static final int HEX_LENGTH = 64;
+
+    private static final int DIGEST_LENGTH = 32;
+    private static final char[] HEX_ARRAY = "0123456789ABCDEF".toCharArray();
+    private static final byte REPLACEMENT = '?';
+
+    private static final ThreadLocal<Hasher> HASHERS = ThreadLocal.withInitial(Hasher::new);
+
+    private Sha256() {
+    }
+
+    /**
+     * @param bytes  to hash
+     * @param offset of the first byte to hash
+     * @param length number of bytes to hash
+     * @return the hex string of the signature
+     */
+    public static String hex(final byte[] bytes, final int offset, final int length) {
+        Hasher hasher = HASHERS.get();
+        hasher.digest.update(bytes, offset, length);
+        return hasher.hex();
+    }
+
+    /**
+     * @param chars to hash, as their utf-8 bytes
+     * @return the hex string of the signature, the same as hashing {@code chars.toString().getBytes(UTF_8)}
+     */
+    public static String hex(final CharSequence chars) {
+        Hasher hasher = HASHERS.get();
+        int length = hasher.encode(chars);
+        hasher.digest.update(hasher.bytes, 0, length);
+        return hasher.hex();
+    }
+
+    private static final class Hasher {
+        private final MessageDigest digest;
+        private final byte[] signature = new byte[DIGEST_LENGTH];
+        private final char[] hexChars = new char[HEX_LENGTH];
+        private byte[] bytes = new byte[256];
+
+        private Hasher() {
+            try {
+                this.digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException exception) {
+                // Every java platform is required to support it
+                throw new IllegalStateException("Unable to get SHA 256 digest", exception);
+            }
+        }
+
+        private String hex() {
+            try {
+                this.digest.digest(this.signature, 0, DIGEST_LENGTH);
+            } catch (DigestException exception) {
+                throw new IllegalStateException("Unable to complete SHA 256 digest", exception);
+            }
+            for (int j = 0; j < DIGEST_LENGTH; j++) {
+                int v = this.signature[j] & 0xFF;
+                this.hexChars[j * 2] = HEX_ARRAY[v >>> 4];
+                this.hexChars[j * 2 + 1] = HEX_ARRAY[v & 0x0F];
+            }
+            return new String(this.hexChars);
+        }
+
+        /**
+         * Unpaired surrogates are encoded as {@code ?}, as {@link String#getBytes} does.
+         *
+         * @return the number of bytes encoded
+         */
+        private int encode(final CharSequence chars) {
+            int length = chars.length();
+            // At most 3 bytes per char, a surrogate pair taking 4 for 2 chars
+            if (this.bytes.length < length * 3) {
+                this.bytes = new byte[Math.max(length * 3, this.bytes.length * 2)];
+            }
+            byte[] out = this.bytes;
+            int position = 0;
+            for (int ind = 0; ind < length; ind++) {
+                char c = chars.charAt(ind);
+                if (c < 0x80) {
+                    out[position++] = (byte) c;
+                } else if (c < 0x800) {
+                    out[position++] = (byte) (0xC0 | c >> 6);
+                    out[position++] = (byte) (0x80 | c & 0x3F);
+                } else if (Character.isHighSurrogate(c)
+                        && ind + 1 < length
+                        && Character.isLowSurrogate(chars.charAt(ind + 1))) {
+                    int codePoint = Character.toCodePoint(c, chars.charAt(++ind));
+                    out[position++] = (byte) (0xF0 | codePoint >> 18);
+                    out[position++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                    out[position++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                    out[position++] = (byte) (0x80 | codePoint & 0x3F);
+                } else if (Character.isSurrogate(c)) {
+                    out[position++] = REPLACEMENT;
+                } else {
+                    out[position++] = (byte) (0xE0 | c >> 12);
+                    out[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+                    out[position++] = (byte) (0x80 | c & 0x3F);
+                }
+            }
+            return position;
+        }
+    }
+}
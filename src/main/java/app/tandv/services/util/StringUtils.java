@@ -1,15 +1,8 @@
 package app.tandv.services.util;
 
-import app.tandv.services.util.collections.FluentArrayList;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.function.IntPredicate;
-import java.util.function.Predicate;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 
@@ -17,29 +10,26 @@ import java.util.regex.Pattern;
  * @author vic on 2018-08-28
  */
 public final class StringUtils {
-    private static final Logger LOGGER = LoggerFactory.getLogger(StringUtils.class);
-
     public static final Pattern ROMAN_NUMERAL = Pattern.compile("^m{0,3}(cm|cd|d?c{0,3})(xc|xl|l?x{0,3})(ix|iv|v?i{0,3})$");
     public static final String WORD_SEPARATOR = " ";
 
-    private static final Set<String> ARTICLES = new HashSet<>(Arrays.asList("a", "an", "of", "the", "is", "in", "to"));
-    private static final Set<String> TITLE_ARTICLES = new HashSet<>(Arrays.asList("a", "an", "the"));
-    private static final Set<String> HONORIFICS = new HashSet<>(Arrays.asList("sir", "sire", "mrs", "miss", "ms", "lord", "dr", "phd", "dphil", "md", "do", "doc", "sr", "jr"));
-    private static final char[] HEX_ARRAY = "0123456789ABCDEF".toCharArray();
     private static final char EMPTY_SPACE_ASCII = 0x20;
     private static final IntPredicate IS_ALPHANUM = charCodePoint -> Character.isAlphabetic(charCodePoint)
             || Character.isDigit(charCodePoint)
             || charCodePoint == EMPTY_SPACE_ASCII;
-    private static final Predicate<String> INVALID_AUTHOR_WORD = word -> HONORIFICS.contains(word)
-            || ROMAN_NUMERAL.matcher(word).matches();
 
-    private static MessageDigest DIGEST = null;
+    // Languages with locale specific case mappings, see String#toLowerCase(Locale)
+    private static final Set<String> SPECIAL_CASING_LANGUAGES = new HashSet<>(Arrays.asList("tr", "az", "lt"));
+    // Characters up to Greek whose case maps to a single character with no context, as String does
+    private static final boolean[] SIMPLE_CASING = new boolean[0x0370];
+
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
 
     static {
-        try {
-            DIGEST = MessageDigest.getInstance("SHA-256");
-        } catch (NoSuchAlgorithmException exception) {
-            LOGGER.error("Unable to get SHA 256 digest", exception);
+        for (char character = 0; character < SIMPLE_CASING.length; character++) {
+            String string = String.valueOf(character);
+            SIMPLE_CASING[character] = string.toLowerCase(Locale.ROOT).equals(String.valueOf(Character.toLowerCase(character)))
+                    && string.toUpperCase(Locale.ROOT).equals(String.valueOf(Character.toUpperCase(character)));
         }
     }
 
@@ -51,19 +41,40 @@ public final class StringUtils {
     }
 
     /**
+     * Words are separated by single spaces, as given, and trailing spaces are dropped.
+     *
      * @param title to convert to proper case
      * @param force to force all upper case to be capitalized
      * @return an optional that will contain a string with each individual word capitalized. Articles contained in the
      * original string will not be capitalized except if it is the first word in the string.
      */
     public static Optional<String> titleCase(final String title, final boolean force) {
-        return Optional.ofNullable(title)
-                .filter(StringUtils::validString)
-                .map(words -> title.split(WORD_SEPARATOR))
-                .map(FluentArrayList::new)
-                .map(words -> words.thenReplaceAll(word -> capitalize(word, force, false)))
-                .map(words -> words.thenReplace(word -> capitalize(word, false, true), 0))
-                .map(words -> String.join(WORD_SEPARATOR, words));
+        if (!validString(title)) {
+            return Optional.empty();
+        }
+        int end = trimmedLength(title);
+        if (end == 0) {
+            return Optional.empty();
+        }
+        Buffers buffers = BUFFERS.get();
+        StringBuilder result = buffers.result;
+        result.setLength(0);
+        boolean simpleCasing = !SPECIAL_CASING_LANGUAGES.contains(Locale.getDefault().getLanguage());
+        for (int start = 0, ind = 0; ind <= end; ind++) {
+            if (ind == end || title.charAt(ind) == EMPTY_SPACE_ASCII) {
+                int wordStart = result.length();
+                capitalize(title, start, ind, force, false, simpleCasing, buffers);
+                if (start == 0) {
+                    // The first word is capitalized once more, articles included
+                    capitalize(result, wordStart, result.length(), false, true, simpleCasing, buffers);
+                }
+                if (ind < end) {
+                    result.append(EMPTY_SPACE_ASCII);
+                }
+                start = ind + 1;
+            }
+        }
+        return Optional.of(result.toString());
     }
 
     /**
@@ -73,40 +84,64 @@ public final class StringUtils {
      * regime"}).
      */
     public static Optional<String> titleForOrdering(final String title) {
-        return Optional.ofNullable(title)
-                .filter(StringUtils::validString)
-                // normalize the input string
-                .map(StringUtils::normalize)
-                // split by any word separator
-                .map(normalized -> normalized.split(WORD_SEPARATOR))
-                // convert to fluent array list
-                .map(FluentArrayList::new)
-                // cut after first word not in title articles
-                .map(words -> words.removeBefore(words.firstNotIn(TITLE_ARTICLES)))
-                // join back together
-                .map(words -> String.join(WORD_SEPARATOR, words));
+        if (!validString(title)) {
+            return Optional.empty();
+        }
+        StringBuilder normalized = normalize(title, BUFFERS.get());
+        int end = trimmedLength(normalized);
+        // Cut before the first word that is not an article, unless they all are
+        for (int start = 0, ind = 0; ind <= end; ind++) {
+            if (ind == end || normalized.charAt(ind) == EMPTY_SPACE_ASCII) {
+                if (!isTitleArticle(normalized, start, ind)) {
+                    return Optional.of(normalized.substring(start, end));
+                }
+                start = ind + 1;
+            }
+        }
+        return Optional.of(normalized.substring(0, end));
     }
 
     /**
      * @param name of an author to normalize and order
      * @return an {@link Optional} containing the author name in normalized form removing any honorific or roman
-     * numerals from the name and starting from the first last name
+     * numerals from the name and starting from the first last name, empty if nothing is left of the name.
      */
     public static Optional<String> contributorForOrdering(final String name) {
-        return Optional.ofNullable(name)
-                .filter(StringUtils::validString)
-                // normalize the input string
-                .map(StringUtils::normalize)
-                // split by any word separator
-                .map(normalized -> normalized.split(WORD_SEPARATOR))
-                // convert to fluent array list
-                .map(FluentArrayList::new)
-                // remove all non invalid words for an contributor ordering
-                .map(words -> words.thenRemoveIf(StringUtils.INVALID_AUTHOR_WORD))
-                // swap first to last word
-                .map(words -> words.swap(0, -1))
-                // join back on a single string
-                .map(words -> String.join(WORD_SEPARATOR, words));
+        if (!validString(name)) {
+            return Optional.empty();
+        }
+        Buffers buffers = BUFFERS.get();
+        StringBuilder normalized = normalize(name, buffers);
+        StringBuilder result = buffers.result;
+        result.setLength(0);
+        int firstStart = -1;
+        int firstEnd = -1;
+        for (int start = 0, ind = 0, end = normalized.length(); ind <= end; ind++) {
+            if (ind == end || normalized.charAt(ind) == EMPTY_SPACE_ASCII) {
+                // Empty words are removed as well, they are valid roman numerals
+                if (ind > start && !isInvalidAuthorWord(normalized, start, ind)) {
+                    if (firstStart < 0) {
+                        firstStart = start;
+                        firstEnd = ind;
+                    } else {
+                        if (result.length() > 0) {
+                            result.append(EMPTY_SPACE_ASCII);
+                        }
+                        result.append(normalized, start, ind);
+                    }
+                }
+                start = ind + 1;
+            }
+        }
+        if (firstStart < 0) {
+            return Optional.empty();
+        }
+        // The first word goes last
+        if (result.length() > 0) {
+            result.append(EMPTY_SPACE_ASCII);
+        }
+        result.append(normalized, firstStart, firstEnd);
+        return Optional.of(result.toString());
     }
 
     /**
@@ -114,16 +149,11 @@ public final class StringUtils {
      * @return a sha 256 digest over the normalization of the string
      */
     public static Optional<String> sha256(final String string) {
-        return Optional.ofNullable(string)
-                .filter(StringUtils::validString)
-                // normalize the input string
-                .map(StringUtils::normalize)
-                // convert to bytes
-                .map(w -> w.getBytes(StandardCharsets.UTF_8))
-                // if digest available, generate
-                .flatMap(bytes -> Optional.ofNullable(DIGEST).map(digest -> digest.digest(bytes)))
-                // convert to hex string
-                .map(StringUtils::byteToString);
+        if (!validString(string)) {
+            return Optional.empty();
+        }
+        // hashed straight from the normalized buffer
+        return Optional.of(Sha256.hex(normalize(string, BUFFERS.get())));
     }
 
     public static boolean validString(final String string) {
@@ -131,22 +161,290 @@ public final class StringUtils {
     }
 
     /**
-     * This function won't do any null checking
+     * This function won't do any null checking. Code points are kept as their lower 16 bits, as they always were, so
+     * the signatures already stored don't change.
      *
      * @param toClean self explanatory
-     * @return a normalized string containing only [a-z0-9 ]
+     * @return the buffer with the normalized string containing only [a-z0-9 ], valid until the next call on the same
+     * thread
+     */
+    private static StringBuilder normalize(final String toClean, final Buffers buffers) {
+        StringBuilder normalized = buffers.normalized;
+        normalized.setLength(0);
+        for (int ind = 0; ind < toClean.length(); ) {
+            int codePoint = toClean.codePointAt(ind);
+            ind += Character.charCount(codePoint);
+            if (IS_ALPHANUM.test(codePoint)) {
+                normalized.append((char) Character.toLowerCase(codePoint));
+            }
+        }
+        return normalized;
+    }
+
+    /**
+     * Capitalizes the word in {@code source} from {@code start} to {@code end} into the result buffer, following the
+     * rules of {@link #capitalize(String, boolean, boolean)}. The result buffer itself can be the source, in which case
+     * the word is capitalized in place.
+     * <p>
+     * Words with characters whose case mapping depends on the locale or on more than one character go through
+     * {@link #capitalize(String, boolean, boolean)} instead, since the one to one mapping of {@link Character} would
+     * not give the same result.
+     */
+    private static void capitalize(
+            final CharSequence source,
+            final int start,
+            final int end,
+            final boolean force,
+            final boolean capitalizeArticles,
+            final boolean simpleCasing,
+            final Buffers buffers
+    ) {
+        StringBuilder result = buffers.result;
+        boolean inPlace = source == result;
+        if (!simpleCasing || !isSimpleCasing(source, start, end)) {
+            String capitalized = capitalize(source.subSequence(start, end).toString(), force, capitalizeArticles);
+            if (inPlace) {
+                result.setLength(start);
+            }
+            result.append(capitalized);
+            return;
+        }
+        if (!force && countUpperCase(source, start, end) >= 2) {
+            // If the word already has 2 upper case letters, we wont do anything for it and we'll leave it unchanged
+            if (!inPlace) {
+                result.append(source, start, end);
+            }
+            return;
+        }
+        StringBuilder lowerCaseWord = buffers.word;
+        lowerCaseWord.setLength(0);
+        for (int ind = start; ind < end; ind++) {
+            lowerCaseWord.append(Character.toLowerCase(source.charAt(ind)));
+        }
+        if (!inPlace) {
+            result.append(lowerCaseWord);
+        }
+        int offset = inPlace ? start : result.length() - lowerCaseWord.length();
+        if (isRomanNumeral(lowerCaseWord)) {
+            for (int ind = start; ind < end; ind++) {
+                result.setCharAt(offset + ind - start, Character.toUpperCase(source.charAt(ind)));
+            }
+            return;
+        }
+        if (!capitalizeArticles && isArticle(lowerCaseWord)) {
+            if (inPlace) {
+                copy(lowerCaseWord, result, offset);
+            }
+            return;
+        }
+        // The upper case letter comes from the word as given
+        int firstLetter = -1;
+        for (int ind = 0; ind < lowerCaseWord.length() && firstLetter < 0; ind++) {
+            if (Character.isAlphabetic(lowerCaseWord.charAt(ind))) {
+                firstLetter = ind;
+            }
+        }
+        char upperCase = firstLetter < 0 ? 0 : Character.toUpperCase(source.charAt(start + firstLetter));
+        if (inPlace) {
+            copy(lowerCaseWord, result, offset);
+        }
+        if (firstLetter >= 0) {
+            result.setCharAt(offset + firstLetter, upperCase);
+        }
+    }
+
+    private static void copy(final CharSequence from, final StringBuilder to, final int offset) {
+        for (int ind = 0; ind < from.length(); ind++) {
+            to.setCharAt(offset + ind, from.charAt(ind));
+        }
+    }
+
+    private static int countUpperCase(final CharSequence source, final int start, final int end) {
+        int counter = 0;
+        for (int ind = start; ind < end; ind++) {
+            if (Character.isUpperCase(source.charAt(ind))) {
+                counter++;
+            }
+        }
+        return counter;
+    }
+
+    private static boolean isSimpleCasing(final CharSequence source, final int start, final int end) {
+        for (int ind = start; ind < end; ind++) {
+            char character = source.charAt(ind);
+            if (character >= SIMPLE_CASING.length || !SIMPLE_CASING[character]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the length of the string without its trailing spaces
+     */
+    private static int trimmedLength(final CharSequence string) {
+        int end = string.length();
+        while (end > 0 && string.charAt(end - 1) == EMPTY_SPACE_ASCII) {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Same as matching {@link #ROMAN_NUMERAL}, lower case only, without going through a {@link Matcher}. Each group of
+     * the expression can only be matched one way, since the letters of the groups after it are not the ones that could
+     * be left over, so the word is read once from left to right.
+     *
+     * @param word  to check
+     * @param start of the range to check, inclusive
+     * @param end   of the range to check, exclusive
+     * @return true if the range is a valid roman numeral, including the empty one
+     */
+    public static boolean isRomanNumeral(final CharSequence word, final int start, final int end) {
+        int ind = start;
+        for (int thousands = 0; ind < end && thousands < 3 && word.charAt(ind) == 'm'; thousands++) {
+            ind++;
+        }
+        ind = romanDigit(word, ind, end, 'c', 'd', 'm');
+        ind = romanDigit(word, ind, end, 'x', 'l', 'c');
+        ind = romanDigit(word, ind, end, 'i', 'v', 'x');
+        return ind == end;
+    }
+
+    public static boolean isRomanNumeral(final CharSequence word) {
+        return isRomanNumeral(word, 0, word.length());
+    }
+
+    /**
+     * Reads a digit as {@code (9|4|5?1{0,3})}, with the letters given for 1, 5 and 10.
+     *
+     * @return the index after the digit
+     */
+    private static int romanDigit(final CharSequence word, int ind, final int end, final char one, final char five, final char ten) {
+        if (ind < end && word.charAt(ind) == one && ind + 1 < end) {
+            char next = word.charAt(ind + 1);
+            if (next == ten || next == five) {
+                return ind + 2;
+            }
+        }
+        if (ind < end && word.charAt(ind) == five) {
+            ind++;
+        }
+        for (int ones = 0; ind < end && ones < 3 && word.charAt(ind) == one; ones++) {
+            ind++;
+        }
+        return ind;
+    }
+
+    /**
+     * @return true for a, an, of, the, is, in and to
+     */
+    private static boolean isArticle(final CharSequence word, final int start, final int end) {
+        switch (end - start) {
+            case 1:
+                return word.charAt(start) == 'a';
+            case 2:
+                switch (word.charAt(start)) {
+                    case 'a':
+                        return word.charAt(start + 1) == 'n';
+                    case 'o':
+                        return word.charAt(start + 1) == 'f';
+                    case 'i':
+                        return word.charAt(start + 1) == 's' || word.charAt(start + 1) == 'n';
+                    case 't':
+                        return word.charAt(start + 1) == 'o';
+                    default:
+                        return false;
+                }
+            case 3:
+                return regionMatches(word, start, "the");
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isArticle(final CharSequence word) {
+        return isArticle(word, 0, word.length());
+    }
+
+    /**
+     * @return true for a, an and the
      */
-    private static String normalize(final String toClean) {
-        // convert to code points
-        return toClean.codePoints()
-                // extract only those valid ones
-                .filter(StringUtils.IS_ALPHANUM)
-                // convert to lower case
-                .map(Character::toLowerCase)
-                .mapToObj(codePoint -> (char) codePoint)
-                // put back on a single string
-                .collect(StringBuilder::new, StringBuilder::append, StringBuilder::append)
-                .toString();
+    private static boolean isTitleArticle(final CharSequence word, final int start, final int end) {
+        switch (end - start) {
+            case 1:
+                return word.charAt(start) == 'a';
+            case 2:
+                return regionMatches(word, start, "an");
+            case 3:
+                return regionMatches(word, start, "the");
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return true for sir, sire, mrs, miss, ms, lord, dr, phd, dphil, md, do, doc, sr and jr
+     */
+    private static boolean isHonorific(final CharSequence word, final int start, final int end) {
+        switch (end - start) {
+            case 2:
+                switch (word.charAt(start)) {
+                    case 'm':
+                        return word.charAt(start + 1) == 's' || word.charAt(start + 1) == 'd';
+                    case 'd':
+                        return word.charAt(start + 1) == 'r' || word.charAt(start + 1) == 'o';
+                    case 's':
+                    case 'j':
+                        return word.charAt(start + 1) == 'r';
+                    default:
+                        return false;
+                }
+            case 3:
+                switch (word.charAt(start)) {
+                    case 's':
+                        return regionMatches(word, start, "sir");
+                    case 'm':
+                        return regionMatches(word, start, "mrs");
+                    case 'p':
+                        return regionMatches(word, start, "phd");
+                    case 'd':
+                        return regionMatches(word, start, "doc");
+                    default:
+                        return false;
+                }
+            case 4:
+                switch (word.charAt(start)) {
+                    case 's':
+                        return regionMatches(word, start, "sire");
+                    case 'm':
+                        return regionMatches(word, start, "miss");
+                    case 'l':
+                        return regionMatches(word, start, "lord");
+                    default:
+                        return false;
+                }
+            case 5:
+                return regionMatches(word, start, "dphil");
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isInvalidAuthorWord(final CharSequence normalized, final int start, final int end) {
+        return isHonorific(normalized, start, end) || isRomanNumeral(normalized, start, end);
+    }
+
+    /**
+     * @return true if the word has the expected characters from start, the caller having checked its length
+     */
+    private static boolean regionMatches(final CharSequence word, final int start, final String expected) {
+        for (int ind = 0; ind < expected.length(); ind++) {
+            if (word.charAt(start + ind) != expected.charAt(ind)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -179,10 +477,10 @@ public final class StringUtils {
             }
         }
         String lowerCaseWord = word.toLowerCase();
-        if (ROMAN_NUMERAL.matcher(lowerCaseWord).matches()) {
+        if (isRomanNumeral(lowerCaseWord)) {
             return word.toUpperCase();
         }
-        if (!capitalizeArticles && ARTICLES.contains(lowerCaseWord)) {
+        if (!capitalizeArticles && isArticle(lowerCaseWord)) {
             return lowerCaseWord;
         }
         char[] working = lowerCaseWord.toCharArray();
@@ -195,13 +493,12 @@ public final class StringUtils {
         return new String(working);
     }
 
-    private static String byteToString(final byte[] bytes) {
-        char[] hexChars = new char[bytes.length * 2];
-        for (int j = 0; j < bytes.length; j++) {
-            int v = bytes[j] & 0xFF;
-            hexChars[j * 2] = HEX_ARRAY[v >>> 4];
-            hexChars[j * 2 + 1] = HEX_ARRAY[v & 0x0F];
-        }
-        return new String(hexChars);
+    /**
+     * Working buffers of a thread, kept for the strings normalized there so they only grow once.
+     */
+    private static final class Buffers {
+        private final StringBuilder normalized = new StringBuilder();
+        private final StringBuilder word = new StringBuilder();
+        private final StringBuilder result = new StringBuilder();
     }
 }
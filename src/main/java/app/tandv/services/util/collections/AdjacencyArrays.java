@@ -0,0 +1,123 @@
+package app.tandv.services.util.collections;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * Immutable adjacency lists in compressed sparse row layout: the neighbours of every row are stored one after the
+ * other in a single int array, sorted, and the row {@code r} spans from {@code offsets[r]} to {@code offsets[r + 1]}.
+ * Two arrays for the whole graph instead of one collection per node, no boxing, and sorted rows so they can be
+ * intersected by merging.
+ * <p>
+ * Changes build a new instance, copying the rows left alone in bulk, so it is safe to read from any thread once
+ * published.
+ *
+ * @author vic on 2020-10-19
+ */
+public final class AdjacencyArrays {
+    private static final AdjacencyArrays EMPTY = new AdjacencyArrays(new int[1], new int[0]);
+
+    private final int[] offsets;
+    private final int[] values;
+
+    private AdjacencyArrays(int[] offsets, int[] values) {
+        this.offsets = offsets;
+        this.values = values;
+    }
+
+    public static AdjacencyArrays empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @return the number of rows, rows past the last one are empty
+     */
+    public int rows() {
+        return this.offsets.length - 1;
+    }
+
+    /**
+     * @return the number of values in all the rows
+     */
+    public int size() {
+        return this.values.length;
+    }
+
+    /**
+     * @param row to read
+     * @return the number of values of the row
+     */
+    public int degree(int row) {
+        return row < this.rows() ? this.offsets[row + 1] - this.offsets[row] : 0;
+    }
+
+    /**
+     * @param row to read
+     * @return a copy of the values of the row, sorted
+     */
+    public int[] row(int row) {
+        return row < this.rows()
+                ? Arrays.copyOfRange(this.values, this.offsets[row], this.offsets[row + 1])
+                : new int[0];
+    }
+
+    /**
+     * @param row      to read
+     * @param consumer of every value of the row, in order
+     */
+    public void forEach(int row, IntConsumer consumer) {
+        if (row < this.rows()) {
+            for (int i = this.offsets[row]; i < this.offsets[row + 1]; i++) {
+                consumer.accept(this.values[i]);
+            }
+        }
+    }
+
+    /**
+     * @param rows    the new values of the rows changed, need not be sorted
+     * @param minRows number of rows the result should have at least
+     * @return a new instance with the rows given replaced and the rest as in this one
+     */
+    public AdjacencyArrays withRows(Map<Integer, int[]> rows, int minRows) {
+        int count = Math.max(this.rows(), minRows);
+        for (Integer row : rows.keySet()) {
+            count = Math.max(count, row + 1);
+        }
+        int size = this.values.length;
+        for (Map.Entry<Integer, int[]> entry : rows.entrySet()) {
+            size += entry.getValue().length - this.degree(entry.getKey());
+        }
+
+        int[] offsets = new int[count + 1];
+        int[] values = new int[size];
+        int next = 0;
+        int row = 0;
+        while (row < count) {
+            int[] replaced = rows.get(row);
+            if (replaced != null) {
+                offsets[row] = next;
+                System.arraycopy(replaced, 0, values, next, replaced.length);
+                Arrays.sort(values, next, next + replaced.length);
+                next += replaced.length;
+                row++;
+                continue;
+            }
+            // Copy every row up to the next replaced one at once, shifting their offsets
+            int end = row;
+            while (end < count && !rows.containsKey(end)) {
+                end++;
+            }
+            int from = row < this.rows() ? this.offsets[row] : this.values.length;
+            int to = end < this.rows() ? this.offsets[end] : this.values.length;
+            for (int r = row; r < end; r++) {
+                offsets[r] = r < this.rows() ? this.offsets[r] - from + next : next + to - from;
+            }
+            System.arraycopy(this.values, from, values, next, to - from);
+            next += to - from;
+            row = end;
+        }
+        offsets[count] = next;
+        return new AdjacencyArrays(offsets, values);
+    }
+}
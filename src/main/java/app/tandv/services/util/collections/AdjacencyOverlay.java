@@ -0,0 +1,108 @@
+package app.tandv.services.util.collections;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * Adjacency lists that take changes one row at a time: an {@link AdjacencyArrays} with the rows changed since it was
+ * built kept aside, each as its own sorted array, and read in place of the ones in the arrays.
+ * <p>
+ * Replacing a row costs its own length, not a copy of the whole graph. The rows kept aside are folded into a new
+ * {@link AdjacencyArrays} once there are more of them than {@link #COMPACT_RATIO the fraction} of the rows it has,
+ * or {@link #MIN_COMPACT} if there are less, so every row replaced pays a few values of the copy in the long run.
+ * <p>
+ * Not thread safe, readers and writers are expected to hold the lock of the owner.
+ *
+ * @author vic on 2020-10-19
+ */
+public final class AdjacencyOverlay {
+    /**
+     * Rows changed, as a fraction of the rows of the arrays, before compacting
+     */
+    public static final int COMPACT_RATIO = 8;
+
+    /**
+     * Rows changed kept aside before compacting at least, so a small graph is not copied on every change
+     */
+    public static final int MIN_COMPACT = 256;
+
+    private final Map<Integer, int[]> changed = new HashMap<>();
+    private AdjacencyArrays arrays = AdjacencyArrays.empty();
+    private int size;
+
+    /**
+     * @return the number of values in all the rows
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return the number of rows changed and not yet compacted
+     */
+    public int changedRows() {
+        return this.changed.size();
+    }
+
+    /**
+     * @param row to read
+     * @return the number of values of the row
+     */
+    public int degree(int row) {
+        int[] values = this.changed.get(row);
+        return values != null ? values.length : this.arrays.degree(row);
+    }
+
+    /**
+     * @param row to read
+     * @return a copy of the values of the row, sorted
+     */
+    public int[] row(int row) {
+        int[] values = this.changed.get(row);
+        return values != null ? values.clone() : this.arrays.row(row);
+    }
+
+    /**
+     * @param row      to read
+     * @param consumer of every value of the row, in order
+     */
+    public void forEach(int row, IntConsumer consumer) {
+        int[] values = this.changed.get(row);
+        if (values == null) {
+            this.arrays.forEach(row, consumer);
+            return;
+        }
+        for (int value : values) {
+            consumer.accept(value);
+        }
+    }
+
+    /**
+     * Replaces the rows given, compacting if too many rows have been changed since the last time.
+     *
+     * @param rows the new values of the rows changed, need not be sorted, not kept
+     */
+    public void setRows(Map<Integer, int[]> rows) {
+        rows.forEach((row, values) -> {
+            int[] sorted = values.clone();
+            Arrays.sort(sorted);
+            this.size += sorted.length - this.degree(row);
+            this.changed.put(row, sorted);
+        });
+        if (this.changed.size() > Math.max(MIN_COMPACT, this.arrays.rows() / COMPACT_RATIO)) {
+            this.compact();
+        }
+    }
+
+    /**
+     * Folds the rows changed into new {@link AdjacencyArrays}.
+     */
+    public void compact() {
+        if (!this.changed.isEmpty()) {
+            this.arrays = this.arrays.withRows(this.changed, 0);
+            this.changed.clear();
+        }
+    }
+}
@@ -0,0 +1,548 @@
+package app.tandv.services.util.collections;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of non negative ints, along the lines of a Roaring bitmap: values are split in chunks of 2^16 by
+ * their high 16 bits, and each chunk keeps its low 16 bits either as a sorted array (up to 4096 values, 2 bytes per
+ * value) or as a 2^16 bits bitmap (8 KiB), whichever is smaller. Intersections and unions work chunk by chunk, mostly
+ * over whole words.
+ * <p>
+ * Not thread safe.
+ *
+ * @author vic on 2020-10-19
+ */
+public final class CompactBitmap {
+    private static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1024;
+    // Ratio of sizes from which intersecting sorted arrays uses binary searches instead of merging
+    private static final int SKEW = 16;
+
+    private char[] keys = new char[0];
+    private Container[] containers = new Container[0];
+    private int size = 0;
+
+    /**
+     * @param value to add, not negative
+     * @return a reference to this instance for fluent API
+     */
+    public CompactBitmap add(int value) {
+        char high = high(value);
+        int index = this.indexOf(high);
+        if (index >= 0) {
+            this.containers[index] = this.containers[index].add(low(value));
+        } else {
+            this.insert(-index - 1, high, new ArrayContainer().add(low(value)));
+        }
+        return this;
+    }
+
+    /**
+     * @param value to remove
+     * @return a reference to this instance for fluent API
+     */
+    public CompactBitmap remove(int value) {
+        int index = this.indexOf(high(value));
+        if (index >= 0) {
+            Container container = this.containers[index].remove(low(value));
+            if (container.cardinality() == 0) {
+                this.delete(index);
+            } else {
+                this.containers[index] = container;
+            }
+        }
+        return this;
+    }
+
+    public boolean contains(int value) {
+        int index = this.indexOf(high(value));
+        return index >= 0 && this.containers[index].contains(low(value));
+    }
+
+    public int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < this.size; i++) {
+            cardinality += this.containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * @param other bitmap
+     * @return a new bitmap with the values in both
+     */
+    public CompactBitmap and(CompactBitmap other) {
+        CompactBitmap result = new CompactBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < this.size && j < other.size) {
+            if (this.keys[i] < other.keys[j]) {
+                i++;
+            } else if (this.keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container container = this.containers[i].and(other.containers[j]);
+                if (container.cardinality() > 0) {
+                    result.append(this.keys[i], container);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param other bitmap
+     * @return the number of values in both, without building their intersection
+     */
+    public int andCardinality(CompactBitmap other) {
+        int cardinality = 0;
+        int i = 0;
+        int j = 0;
+        while (i < this.size && j < other.size) {
+            if (this.keys[i] < other.keys[j]) {
+                i++;
+            } else if (this.keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                cardinality += this.containers[i].andCardinality(other.containers[j]);
+                i++;
+                j++;
+            }
+        }
+        return cardinality;
+    }
+
+    /**
+     * @param other bitmap
+     * @return a new bitmap with the values in either
+     */
+    public CompactBitmap or(CompactBitmap other) {
+        CompactBitmap result = new CompactBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < this.size || j < other.size) {
+            if (j == other.size || (i < this.size && this.keys[i] < other.keys[j])) {
+                result.append(this.keys[i], this.containers[i].copy());
+                i++;
+            } else if (i == this.size || this.keys[i] > other.keys[j]) {
+                result.append(other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                result.append(this.keys[i], this.containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Same as folding {@link #or(CompactBitmap)} over the bitmaps, but each chunk is accumulated in a bitmap and only
+     * compacted at the end, instead of building every partial result.
+     *
+     * @param bitmaps to join, not modified
+     * @return a new bitmap with the values in any of them
+     */
+    public static CompactBitmap union(Iterable<CompactBitmap> bitmaps) {
+        CompactBitmap result = new CompactBitmap();
+        for (CompactBitmap bitmap : bitmaps) {
+            for (int j = 0; j < bitmap.size; j++) {
+                int index = result.indexOf(bitmap.keys[j]);
+                if (index < 0) {
+                    index = -index - 1;
+                    result.insert(index, bitmap.keys[j], new BitmapContainer(new long[WORDS], 0));
+                }
+                ((BitmapContainer) result.containers[index]).orInPlace(bitmap.containers[j]);
+            }
+        }
+        for (int i = 0; i < result.size; i++) {
+            BitmapContainer container = (BitmapContainer) result.containers[i];
+            if (container.cardinality <= ARRAY_MAX) {
+                result.containers[i] = container.toArray();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param consumer of every value, in ascending order
+     */
+    public void forEach(IntConsumer consumer) {
+        for (int i = 0; i < this.size; i++) {
+            this.containers[i].forEach(this.keys[i] << 16, consumer);
+        }
+    }
+
+    /**
+     * @return the values, in ascending order
+     */
+    public int[] toArray() {
+        int[] values = new int[this.cardinality()];
+        int[] index = {0};
+        this.forEach(value -> values[index[0]++] = value);
+        return values;
+    }
+
+    private int indexOf(char high) {
+        return Arrays.binarySearch(this.keys, 0, this.size, high);
+    }
+
+    private void insert(int index, char high, Container container) {
+        this.ensureCapacity();
+        System.arraycopy(this.keys, index, this.keys, index + 1, this.size - index);
+        System.arraycopy(this.containers, index, this.containers, index + 1, this.size - index);
+        this.keys[index] = high;
+        this.containers[index] = container;
+        this.size++;
+    }
+
+    private void append(char high, Container container) {
+        this.ensureCapacity();
+        this.keys[this.size] = high;
+        this.containers[this.size] = container;
+        this.size++;
+    }
+
+    private void delete(int index) {
+        System.arraycopy(this.keys, index + 1, this.keys, index, this.size - index - 1);
+        System.arraycopy(this.containers, index + 1, this.containers, index, this.size - index - 1);
+        this.size--;
+        this.containers[this.size] = null;
+    }
+
+    private void ensureCapacity() {
+        if (this.size == this.keys.length) {
+            int capacity = Math.max(4, this.size * 2);
+            this.keys = Arrays.copyOf(this.keys, capacity);
+            this.containers = Arrays.copyOf(this.containers, capacity);
+        }
+    }
+
+    private static char high(int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+        return (char) (value >>> 16);
+    }
+
+    private static char low(int value) {
+        return (char) value;
+    }
+
+    private abstract static class Container {
+        abstract Container add(char value);
+
+        abstract Container remove(char value);
+
+        abstract boolean contains(char value);
+
+        abstract int cardinality();
+
+        abstract Container and(Container other);
+
+        abstract int andCardinality(Container other);
+
+        abstract Container or(Container other);
+
+        abstract Container copy();
+
+        abstract void forEach(int high, IntConsumer consumer);
+    }
+
+    private static final class ArrayContainer extends Container {
+        private char[] values;
+        private int cardinality;
+
+        private ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        private ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add(char value) {
+            int index = Arrays.binarySearch(this.values, 0, this.cardinality, value);
+            if (index >= 0) {
+                return this;
+            }
+            if (this.cardinality >= ARRAY_MAX) {
+                return this.toBitmap().add(value);
+            }
+            index = -index - 1;
+            if (this.cardinality == this.values.length) {
+                this.values = Arrays.copyOf(this.values, Math.min(ARRAY_MAX, this.values.length * 2));
+            }
+            System.arraycopy(this.values, index, this.values, index + 1, this.cardinality - index);
+            this.values[index] = value;
+            this.cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            int index = Arrays.binarySearch(this.values, 0, this.cardinality, value);
+            if (index >= 0) {
+                System.arraycopy(this.values, index + 1, this.values, index, this.cardinality - index - 1);
+                this.cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(this.values, 0, this.cardinality, value) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return this.cardinality;
+        }
+
+        @Override
+        Container and(Container other) {
+            char[] result = new char[Math.min(this.cardinality, other.cardinality())];
+            int count = 0;
+            if (other instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) other;
+                int i = 0;
+                int j = 0;
+                while (i < this.cardinality && j < array.cardinality) {
+                    if (this.values[i] < array.values[j]) {
+                        i++;
+                    } else if (this.values[i] > array.values[j]) {
+                        j++;
+                    } else {
+                        result[count++] = this.values[i];
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (int i = 0; i < this.cardinality; i++) {
+                    if (other.contains(this.values[i])) {
+                        result[count++] = this.values[i];
+                    }
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        int andCardinality(Container other) {
+            int count = 0;
+            if (other instanceof ArrayContainer && ((ArrayContainer) other).cardinality > this.cardinality * SKEW) {
+                // Much smaller than the other one, cheaper to look each value up
+                ArrayContainer array = (ArrayContainer) other;
+                for (int i = 0; i < this.cardinality; i++) {
+                    if (Arrays.binarySearch(array.values, 0, array.cardinality, this.values[i]) >= 0) {
+                        count++;
+                    }
+                }
+            } else if (other instanceof ArrayContainer && this.cardinality > ((ArrayContainer) other).cardinality * SKEW) {
+                return other.andCardinality(this);
+            } else if (other instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) other;
+                int i = 0;
+                int j = 0;
+                while (i < this.cardinality && j < array.cardinality) {
+                    if (this.values[i] < array.values[j]) {
+                        i++;
+                    } else if (this.values[i] > array.values[j]) {
+                        j++;
+                    } else {
+                        count++;
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (int i = 0; i < this.cardinality; i++) {
+                    if (other.contains(this.values[i])) {
+                        count++;
+                    }
+                }
+            }
+            return count;
+        }
+
+        @Override
+        Container or(Container other) {
+            if (other instanceof BitmapContainer) {
+                return other.or(this);
+            }
+            ArrayContainer array = (ArrayContainer) other;
+            char[] result = new char[this.cardinality + array.cardinality];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < this.cardinality || j < array.cardinality) {
+                if (j == array.cardinality || (i < this.cardinality && this.values[i] < array.values[j])) {
+                    result[count++] = this.values[i++];
+                } else if (i == this.cardinality || this.values[i] > array.values[j]) {
+                    result[count++] = array.values[j++];
+                } else {
+                    result[count++] = this.values[i];
+                    i++;
+                    j++;
+                }
+            }
+            ArrayContainer merged = new ArrayContainer(result, count);
+            return count > ARRAY_MAX ? merged.toBitmap() : merged;
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(this.values, Math.max(4, this.cardinality)), this.cardinality);
+        }
+
+        @Override
+        void forEach(int high, IntConsumer consumer) {
+            for (int i = 0; i < this.cardinality; i++) {
+                consumer.accept(high | this.values[i]);
+            }
+        }
+
+        private BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer(new long[WORDS], 0);
+            for (int i = 0; i < this.cardinality; i++) {
+                bitmap.add(this.values[i]);
+            }
+            return bitmap;
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        private final long[] words;
+        private int cardinality;
+
+        private BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add(char value) {
+            long word = this.words[value >>> 6];
+            long updated = word | (1L << value);
+            if (updated != word) {
+                this.words[value >>> 6] = updated;
+                this.cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            long word = this.words[value >>> 6];
+            long updated = word & ~(1L << value);
+            if (updated != word) {
+                this.words[value >>> 6] = updated;
+                this.cardinality--;
+            }
+            return this.cardinality <= ARRAY_MAX ? this.toArray() : this;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (this.words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return this.cardinality;
+        }
+
+        @Override
+        Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+            BitmapContainer bitmap = (BitmapContainer) other;
+            long[] result = new long[WORDS];
+            int count = 0;
+            for (int i = 0; i < WORDS; i++) {
+                result[i] = this.words[i] & bitmap.words[i];
+                count += Long.bitCount(result[i]);
+            }
+            BitmapContainer intersection = new BitmapContainer(result, count);
+            return count <= ARRAY_MAX ? intersection.toArray() : intersection;
+        }
+
+        @Override
+        int andCardinality(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.andCardinality(this);
+            }
+            BitmapContainer bitmap = (BitmapContainer) other;
+            int count = 0;
+            for (int i = 0; i < WORDS; i++) {
+                count += Long.bitCount(this.words[i] & bitmap.words[i]);
+            }
+            return count;
+        }
+
+        @Override
+        Container or(Container other) {
+            BitmapContainer result = (BitmapContainer) this.copy();
+            if (other instanceof ArrayContainer) {
+                other.forEach(0, value -> result.add((char) value));
+                return result;
+            }
+            BitmapContainer bitmap = (BitmapContainer) other;
+            int count = 0;
+            for (int i = 0; i < WORDS; i++) {
+                result.words[i] |= bitmap.words[i];
+                count += Long.bitCount(result.words[i]);
+            }
+            result.cardinality = count;
+            return result;
+        }
+
+        private void orInPlace(Container other) {
+            if (other instanceof ArrayContainer) {
+                other.forEach(0, value -> this.add((char) value));
+                return;
+            }
+            BitmapContainer bitmap = (BitmapContainer) other;
+            int count = 0;
+            for (int i = 0; i < WORDS; i++) {
+                this.words[i] |= bitmap.words[i];
+                count += Long.bitCount(this.words[i]);
+            }
+            this.cardinality = count;
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(Arrays.copyOf(this.words, WORDS), this.cardinality);
+        }
+
+        @Override
+        void forEach(int high, IntConsumer consumer) {
+            for (int i = 0; i < WORDS; i++) {
+                long word = this.words[i];
+                while (word != 0) {
+                    consumer.accept(high | (i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        private ArrayContainer toArray() {
+            char[] values = new char[Math.max(4, this.cardinality)];
+            int[] count = {0};
+            this.forEach(0, value -> values[count[0]++] = (char) value);
+            return new ArrayContainer(values, count[0]);
+        }
+    }
+}
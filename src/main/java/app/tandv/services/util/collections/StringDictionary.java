@@ -0,0 +1,54 @@
+package app.tandv.services.util.collections;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Interning dictionary for fields with few distinct values, such as languages: every value equal to one already seen
+ * is replaced by the same instance, so a catalog holds one string per language instead of one per book.
+ * <p>
+ * Unlike {@link String#intern()} it is bounded, once it holds about {@code maxSize} values the new ones are returned
+ * as they are, still correct but no longer shared. Safe to use from any thread.
+ *
+ * @author vic on 2020-10-19
+ */
+public final class StringDictionary {
+    private final int maxSize;
+    private final ConcurrentMap<String, String> values = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxSize number of values to intern at most
+     */
+    public StringDictionary(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Dictionary size must be positive");
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param value to intern
+     * @return the instance equal to the value already in the dictionary, the value if there is none, null for null
+     */
+    public String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String interned = this.values.get(value);
+        if (interned != null) {
+            return interned;
+        }
+        if (this.values.size() >= this.maxSize) {
+            return value;
+        }
+        interned = this.values.putIfAbsent(value, value);
+        return interned == null ? value : interned;
+    }
+
+    /**
+     * @return the number of values interned
+     */
+    public int size() {
+        return this.values.size();
+    }
+}
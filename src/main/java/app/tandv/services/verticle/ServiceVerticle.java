@@ -1,15 +1,49 @@
 package app.tandv.services.verticle;
 
+import app.tandv.services.concurrency.AdmissionController;
+import app.tandv.services.concurrency.AimdLimit;
+import app.tandv.services.concurrency.FixedLimit;
+import app.tandv.services.concurrency.Limit;
+import app.tandv.services.concurrency.NormalizationPool;
 import app.tandv.services.configuration.EventConfig;
+import app.tandv.services.configuration.HttpServerConfig;
 import app.tandv.services.configuration.MediaTypes;
+import app.tandv.services.configuration.VertxConfig;
+import app.tandv.services.data.catalog.CatalogCache;
+import app.tandv.services.data.catalog.CatalogIndex;
+import app.tandv.services.data.catalog.CatalogListener;
+import app.tandv.services.data.catalog.CatalogSnapshots;
+import app.tandv.services.data.catalog.CatalogVersion;
+import app.tandv.services.data.catalog.ChangeFeed;
+import app.tandv.services.data.catalog.ContributorGraph;
+import app.tandv.services.data.catalog.FacetIndex;
+import app.tandv.services.data.catalog.IsbnIndex;
+import app.tandv.services.data.catalog.NegativeCache;
+import app.tandv.services.data.entity.BookEntity;
+import app.tandv.services.data.entity.ContributorEntity;
+import app.tandv.services.data.entity.LibraryEntity;
 import app.tandv.services.data.handler.ContributorHandler;
 import app.tandv.services.data.handler.BooksHandler;
+import app.tandv.services.data.handler.PersistenceHandler;
+import app.tandv.services.data.jpa.CatalogMigrations;
+import app.tandv.services.data.jpa.PersistenceMetrics;
+import app.tandv.services.data.repository.BatchLoader;
+import app.tandv.services.data.repository.QueryExecutor;
+import app.tandv.services.exception.OverloadedException;
+import app.tandv.services.handler.AdmissionHandler;
+import app.tandv.services.handler.ChangeFeedHandler;
+import app.tandv.services.handler.MetricsHandler;
+import app.tandv.services.handler.Pipeline;
+import app.tandv.services.handler.RequestContext;
 import app.tandv.services.handler.RequestHandler;
 import app.tandv.services.handler.ResponseHandler;
+import app.tandv.services.metrics.MetricsRegistry;
+import app.tandv.services.metrics.VertxProbes;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.reactivex.Completable;
 import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerOptions;
 import io.vertx.core.json.JsonObject;
 import io.vertx.reactivex.core.AbstractVerticle;
 import io.vertx.reactivex.ext.web.Router;
@@ -23,7 +57,11 @@ import org.slf4j.LoggerFactory;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -34,10 +72,49 @@ public class ServiceVerticle extends AbstractVerticle {
     public static final String PORT_PROPERTY = "http.port";
     private static final int DEFAULT_PORT = 8080;
 
+    private static final String BODY_LIMIT_PROPERTY = "http.body.limit";
+    private static final String CORS_MAX_AGE_PROPERTY = "http.cors.max-age";
+    // in bytes, our payloads are single entities
+    private static final long DEFAULT_BODY_LIMIT = 64L * 1024L;
+    // in bytes, except for batch writes
+    private static final long DEFAULT_BATCH_BODY_LIMIT = 4L * 1024L * 1024L;
+    private static final String MAX_RECORDS_PROPERTY = "data.write.max-records";
+    private static final int DEFAULT_MAX_RECORDS = 1000;
+    // in seconds
+    private static final int DEFAULT_CORS_MAX_AGE = 3600;
+
+    private static final String LIMIT_PROPERTY = "db.admission.limit";
+    private static final String LIMIT_MIN_PROPERTY = "db.admission.limit.min";
+    private static final String LIMIT_MAX_PROPERTY = "db.admission.limit.max";
+    private static final String LIMIT_BACKOFF_PROPERTY = "db.admission.limit.backoff";
+    private static final String LIMIT_TOLERANCE_PROPERTY = "db.admission.limit.tolerance";
+    private static final String FIXED_LIMIT = "fixed";
+    private static final String ADAPTIVE_LIMIT = "adaptive";
+    private static final int DEFAULT_LIMIT_MIN = 1;
+    private static final int DEFAULT_LIMIT_MAX = 200;
+    private static final double DEFAULT_LIMIT_BACKOFF = 0.9;
+    private static final double DEFAULT_LIMIT_TOLERANCE = 2.0;
+
     private final EntityManagerFactory entityManagerFactory;
+    private final MetricsRegistry metricsRegistry = MetricsRegistry.getDefault();
 
     private RequestHandler requestHandler;
+    private AdmissionHandler admissionHandler;
     private ResponseHandler responseHandler;
+    private VertxProbes probes;
+    private PersistenceHandler persistenceHandler;
+    private CatalogCache catalogCache;
+    private NegativeCache negativeCache;
+    private ChangeFeed changeFeed;
+    private FacetIndex facetIndex;
+    private ContributorGraph contributorGraph;
+    private IsbnIndex isbnIndex;
+    private CatalogSnapshots catalogSnapshots;
+    private Pipeline pipeline;
+    // For the routes answered from the in memory indexes, which never touch the database
+    private Pipeline indexPipeline;
+    private QueryExecutor queryExecutor;
+    private NormalizationPool normalizationPool;
 
     public ServiceVerticle(EntityManagerFactory entityManagerFactory) {
         this.entityManagerFactory = entityManagerFactory;
@@ -47,17 +124,150 @@ public class ServiceVerticle extends AbstractVerticle {
     public Completable rxStart() {
         int port = this.config().getInteger(PORT_PROPERTY, DEFAULT_PORT);
         LOGGER.info("Starting service verticle in port {}", port);
-        this.requestHandler = new RequestHandler();
+        this.requestHandler = new RequestHandler(this.metricsRegistry);
         this.responseHandler = new ResponseHandler();
+        this.probes = new VertxProbes(this.vertx)
+                .register(this.metricsRegistry, VertxConfig.getWorkerPoolSize(this.config()));
+        this.probes.start();
+        Limit limit = this.getConcurrencyLimit();
+        this.queryExecutor = new QueryExecutor(this.vertx, this.metricsRegistry, limit, this.config());
+        this.normalizationPool = new NormalizationPool(
+                this.config().getInteger(NormalizationPool.THREADS_PROPERTY, NormalizationPool.DEFAULT_THREADS)
+        );
+        CatalogVersion catalogVersion = new CatalogVersion();
+        int compressionLevel = this.config()
+                .getInteger(HttpServerConfig.COMPRESSION_LEVEL_PROPERTY, HttpServerOptions.DEFAULT_COMPRESSION_LEVEL);
+        this.catalogCache = new CatalogCache(this.vertx, catalogVersion, compressionLevel);
+        this.catalogSnapshots = new CatalogSnapshots(
+                this.vertx,
+                this.entityManagerFactory,
+                catalogVersion,
+                this.config().getString(CatalogSnapshots.DIRECTORY_PROPERTY),
+                this.config().getBoolean(CatalogSnapshots.GZIP_PROPERTY, CatalogSnapshots.DEFAULT_GZIP),
+                compressionLevel,
+                this.config().getLong(CatalogSnapshots.DELAY_PROPERTY, CatalogSnapshots.DEFAULT_DELAY),
+                this.metricsRegistry
+        );
+        this.negativeCache = new NegativeCache(
+                catalogVersion,
+                this.config().getInteger(NegativeCache.MAX_SIZE_PROPERTY, NegativeCache.DEFAULT_MAX_SIZE),
+                this.config().getLong(NegativeCache.TTL_PROPERTY, NegativeCache.DEFAULT_TTL),
+                this.metricsRegistry
+        );
+        this.changeFeed = new ChangeFeed(
+                this.config().getInteger(ChangeFeed.HISTORY_PROPERTY, ChangeFeed.DEFAULT_HISTORY),
+                this.config().getInteger(ChangeFeed.BUFFER_SIZE_PROPERTY, ChangeFeed.DEFAULT_BUFFER_SIZE),
+                ChangeFeed.startOfInstance(),
+                this.metricsRegistry
+        );
+        this.facetIndex = new FacetIndex();
+        this.contributorGraph = new ContributorGraph();
+        this.isbnIndex = new IsbnIndex();
+        List<CatalogIndex> indexes = Arrays.asList(this.facetIndex, this.contributorGraph, this.isbnIndex);
+        List<CatalogListener> listeners = new ArrayList<>(indexes);
+        listeners.add(this.negativeCache);
+        listeners.add(this.changeFeed);
+        listeners.add(this.catalogSnapshots);
+        this.persistenceHandler = new PersistenceHandler(
+                this.entityManagerFactory,
+                new PersistenceMetrics(this.metricsRegistry, this.entityManagerFactory),
+                this.queryExecutor,
+                catalogVersion,
+                listeners
+        );
+        int highPriorityHeadroom = this.config()
+                .getInteger(AdmissionHandler.HIGH_PRIORITY_HEADROOM_PROPERTY, AdmissionHandler.DEFAULT_HIGH_PRIORITY_HEADROOM);
+        this.admissionHandler = new AdmissionHandler(
+                new AdmissionController(limit, highPriorityHeadroom, this.metricsRegistry),
+                this.config()
+        );
+        Pipeline.Mode pipelineMode = Pipeline.Mode
+                .fromString(this.config().getString(Pipeline.PIPELINE_PROPERTY, Pipeline.Mode.FUSED.name()));
+        this.pipeline = new Pipeline(
+                pipelineMode,
+                Arrays.asList(this.requestHandler, this.admissionHandler, this.persistenceHandler),
+                Arrays.asList(this.persistenceHandler, this.responseHandler)
+        );
+        this.indexPipeline = new Pipeline(
+                pipelineMode,
+                Collections.singletonList(this.requestHandler),
+                Collections.singletonList(this.responseHandler)
+        );
+        LOGGER.info("Using {} pipeline for data routes", this.pipeline.getMode());
         Router router = this.getRouter().mountSubRouter("/data", this.getDataApi());
-        return this.vertx.createHttpServer()
-                .requestHandler(router)
-                .rxListen(port)
-                .doOnSuccess(server -> LOGGER.info("Service verticle listening on port: {}", server.actualPort()))
+        router.get("/metrics").handler(new MetricsHandler(this.metricsRegistry));
+        HttpServerOptions serverOptions = HttpServerConfig.from(this.config());
+        return this.loadIndexes(indexes)
+                .andThen(this.catalogSnapshots.start())
+                .andThen(this.vertx.createHttpServer(serverOptions)
+                        .requestHandler(router)
+                        .rxListen(port))
+                .doOnSuccess(server -> LOGGER.info(
+                        "Service verticle listening on port: {} ({}, {})",
+                        server.actualPort(),
+                        VertxConfig.describe(VertxConfig.from(this.config()), this.vertx.isNativeTransportEnabled()),
+                        HttpServerConfig.describe(serverOptions)
+                ))
                 .doOnError(cause -> LOGGER.error("Unable to start service verticle", cause))
                 .ignoreElement();
     }
 
+    /**
+     * Reads the whole catalog once to load the in memory indexes, before any request can change it. Records stored by
+     * earlier versions are migrated first, see {@link CatalogMigrations}, so the catalog is read already in order. Ids
+     * are generated past the highest one in the database from then on.
+     *
+     * @param indexes to load
+     * @return completed once all the indexes are loaded
+     */
+    private Completable loadIndexes(List<CatalogIndex> indexes) {
+        return this.vertx
+                .<Integer>rxExecuteBlocking(promise -> {
+                    EntityManager entityManager = this.entityManagerFactory.createEntityManager();
+                    try {
+                        entityManager.getTransaction().begin();
+                        CatalogMigrations.migrate(entityManager);
+                        entityManager.getTransaction().commit();
+                        entityManager.clear();
+                        LibraryEntity.generateIdsAfter(Math.max(
+                                maxId(entityManager, BookEntity.class),
+                                maxId(entityManager, ContributorEntity.class)
+                        ));
+
+                        List<BookEntity> books = entityManager
+                                .createNamedQuery("BookEntity.findAll", BookEntity.class)
+                                .getResultList();
+                        indexes.forEach(index -> index.load(books));
+                        promise.complete(books.size());
+                    } finally {
+                        entityManager.close();
+                    }
+                })
+                .doOnSuccess(books -> LOGGER.info("Catalog indexes loaded with {} books", books))
+                .ignoreElement();
+    }
+
+    private static long maxId(EntityManager entityManager, Class<? extends LibraryEntity<?>> type) {
+        Long id = entityManager
+                .createQuery("SELECT MAX(e.id) FROM " + type.getSimpleName() + " e", Long.class)
+                .getSingleResult();
+        return id == null ? 0L : id;
+    }
+
+    @Override
+    public Completable rxStop() {
+        if (this.probes != null) {
+            this.probes.stop();
+        }
+        if (this.normalizationPool != null) {
+            this.normalizationPool.close();
+        }
+        if (this.queryExecutor != null) {
+            this.queryExecutor.close();
+        }
+        return Completable.complete();
+    }
+
     private Router getRouter() {
         Router router = Router.router(this.vertx);
         router.route()
@@ -65,62 +275,202 @@ public class ServiceVerticle extends AbstractVerticle {
                         CorsHandler.create("*")
                                 .allowedHeaders(this.getAllowedHeaders())
                                 .allowedMethods(this.getAllowedMethods())
+                                .maxAgeSeconds(this.config().getInteger(CORS_MAX_AGE_PROPERTY, DEFAULT_CORS_MAX_AGE))
                 )
-                .handler(BodyHandler.create())
                 .handler(ResponseContentTypeHandler.create())
                 // Do all of this in case of error
-                .failureHandler(this::releaseEntityManager)
+                .failureHandler(this::releasePersistence)
                 .failureHandler(this::routeFailureHandler)
                 .failureHandler(this.responseHandler);
         return router;
     }
 
     /**
-     * The purpose of this service is narrowed down to query all the collection of books or to add/update books.
+     * Reads and writes of the collection of books and contributors:
      * <p>
-     * More complex things like searches and queries should be performed at the frontend level that can process all at
-     * the client side instead at the server side.
+     * - the whole collection of books or contributors, from the snapshot or the cache when they are current
+     * - single entities by id, or several with the {@code ids} parameter, through the batch loader
+     * - the books filtered by format, language and year, and the count of each facet among them, from the
+     * {@link FacetIndex}
+     * - the books of an ISBN, in any of its forms, from the {@link IsbnIndex}
+     * - the co-contributors of a contributor, its books and the books contributors have in common, from the
+     * {@link ContributorGraph}
+     * - additions and updates, one at a time or in batches
+     * - the change feed of the catalog, outside of the pipeline
      *
      * @return the routes for the data api to read the collections and add/update elements
      */
     private Router getDataApi() {
-        BooksHandler booksHandler = new BooksHandler();
-        ContributorHandler contributorHandler = new ContributorHandler();
+        int maxRecords = this.config().getInteger(MAX_RECORDS_PROPERTY, DEFAULT_MAX_RECORDS);
+        BooksHandler booksHandler = new BooksHandler(
+                this.queryExecutor,
+                this.catalogCache,
+                this.getBatchLoader(BookEntity.class, "BookEntity.findAllById"),
+                this.negativeCache,
+                this.catalogSnapshots,
+                this.normalizationPool,
+                maxRecords,
+                this.facetIndex,
+                this.isbnIndex
+        );
+        ContributorHandler contributorHandler = new ContributorHandler(
+                this.queryExecutor,
+                this.catalogCache,
+                this.getBatchLoader(ContributorEntity.class, "ContributorEntity.findAllByIdWithContributions"),
+                this.negativeCache,
+                this.catalogSnapshots,
+                this.normalizationPool,
+                maxRecords,
+                this.contributorGraph
+        );
         Router router = Router.router(this.vertx);
         // all happy paths
-        router.get("/books")
-                .produces(MediaTypes.APPLICATION_JSON)
-                .handler(this.requestHandler)
-                .handler(this::addEntityManager)
-                .handler(booksHandler::books)
-                .handler(this::releaseEntityManager)
-                .handler(this.responseHandler);
-        router.post("/book")
-                .produces(MediaTypes.APPLICATION_JSON)
-                .consumes(MediaTypes.APPLICATION_JSON)
-                .handler(this.requestHandler)
-                .handler(this::addEntityManager)
-                .handler(booksHandler::add)
-                .handler(this::releaseEntityManager)
-                .handler(this.responseHandler);
-        router.get("/contributors")
-                .produces(MediaTypes.APPLICATION_JSON)
-                .handler(this.requestHandler)
-                .handler(this::addEntityManager)
-                .handler(contributorHandler::contributors)
-                .handler(this::releaseEntityManager)
-                .handler(this.responseHandler);
-        router.post("/contributor")
-                .produces(MediaTypes.APPLICATION_JSON)
-                .consumes(MediaTypes.APPLICATION_JSON)
-                .handler(this.requestHandler)
-                .handler(this::addEntityManager)
-                .handler(contributorHandler::add)
-                .handler(this::releaseEntityManager)
-                .handler(this.responseHandler);
+        this.pipeline.install(
+                router.get("/books").produces(MediaTypes.APPLICATION_JSON),
+                booksHandler::books
+        );
+        this.indexPipeline.install(
+                router.get("/books/facets").produces(MediaTypes.APPLICATION_JSON),
+                booksHandler::facets
+        );
+        this.indexPipeline.install(
+                router.get("/books/isbn/:isbn").produces(MediaTypes.APPLICATION_JSON),
+                booksHandler::byIsbn
+        );
+        this.pipeline.install(
+                router.get("/book/:id").produces(MediaTypes.APPLICATION_JSON),
+                booksHandler::book
+        );
+        this.pipeline.install(
+                router.post("/book")
+                        .produces(MediaTypes.APPLICATION_JSON)
+                        .consumes(MediaTypes.APPLICATION_JSON)
+                        .handler(this.getBodyHandler("book")),
+                booksHandler::add
+        );
+        this.pipeline.install(
+                router.post("/books")
+                        .produces(MediaTypes.APPLICATION_JSON)
+                        .consumes(MediaTypes.APPLICATION_JSON)
+                        .handler(this.getBodyHandler("books", DEFAULT_BATCH_BODY_LIMIT)),
+                booksHandler::addAll
+        );
+        this.pipeline.install(
+                router.get("/contributors").produces(MediaTypes.APPLICATION_JSON),
+                contributorHandler::contributors
+        );
+        this.indexPipeline.install(
+                router.get("/contributors/books").produces(MediaTypes.APPLICATION_JSON),
+                contributorHandler::commonBooks
+        );
+        this.pipeline.install(
+                router.get("/contributor/:id").produces(MediaTypes.APPLICATION_JSON),
+                contributorHandler::contributor
+        );
+        this.indexPipeline.install(
+                router.get("/contributor/:id/contributors").produces(MediaTypes.APPLICATION_JSON),
+                contributorHandler::coContributors
+        );
+        this.indexPipeline.install(
+                router.get("/contributor/:id/books").produces(MediaTypes.APPLICATION_JSON),
+                contributorHandler::contributions
+        );
+        this.pipeline.install(
+                router.post("/contributor")
+                        .produces(MediaTypes.APPLICATION_JSON)
+                        .consumes(MediaTypes.APPLICATION_JSON)
+                        .handler(this.getBodyHandler("contributor")),
+                contributorHandler::add
+        );
+        this.pipeline.install(
+                router.post("/contributors")
+                        .produces(MediaTypes.APPLICATION_JSON)
+                        .consumes(MediaTypes.APPLICATION_JSON)
+                        .handler(this.getBodyHandler("contributors", DEFAULT_BATCH_BODY_LIMIT)),
+                contributorHandler::addAll
+        );
+        // long lived, outside of the pipeline
+        router.get("/events").handler(new ChangeFeedHandler(
+                this.vertx,
+                this.changeFeed,
+                this.config().getLong(ChangeFeedHandler.HEARTBEAT_PROPERTY, ChangeFeedHandler.DEFAULT_HEARTBEAT)
+        ));
         return router;
     }
 
+    /**
+     * Lookups by id wait up to {@code data.batch.window} milliseconds (2 by default) for other lookups to run them all
+     * in one query of at most {@code data.batch.max-size} ids (100 by default).
+     *
+     * @param type      of the entities to load
+     * @param queryName of the named query to load them by id
+     * @param <T>       type of the entities to load
+     * @return the batch loader for the entity
+     */
+    private <T extends LibraryEntity<T>> BatchLoader<T> getBatchLoader(Class<T> type, String queryName) {
+        return new BatchLoader<>(
+                this.vertx,
+                this.queryExecutor,
+                this.entityManagerFactory,
+                type,
+                queryName,
+                this.config().getLong(BatchLoader.WINDOW_PROPERTY, BatchLoader.DEFAULT_WINDOW),
+                this.config().getInteger(BatchLoader.MAX_SIZE_PROPERTY, BatchLoader.DEFAULT_MAX_SIZE),
+                this.metricsRegistry.distribution(
+                        "db_batch_size",
+                        "Ids looked up by a single batched query",
+                        "query", queryName
+                ),
+                this.negativeCache
+        );
+    }
+
+    /**
+     * Bodies are only read for the routes that consume them, bounded by {@code http.body.limit.<name>} if present or
+     * {@code http.body.limit} otherwise. Anything bigger is rejected with a 413 before reaching the data handlers.
+     *
+     * @param name of the route, to look up its own limit
+     * @return the body handler for the route
+     */
+    private BodyHandler getBodyHandler(String name) {
+        return this.getBodyHandler(name, this.config().getLong(BODY_LIMIT_PROPERTY, DEFAULT_BODY_LIMIT));
+    }
+
+    /**
+     * @param name         of the route, to look up its own limit
+     * @param defaultLimit if the route has no limit of its own
+     * @return the body handler for the route
+     */
+    private BodyHandler getBodyHandler(String name, long defaultLimit) {
+        return BodyHandler.create(false)
+                .setBodyLimit(this.config().getLong(BODY_LIMIT_PROPERTY + "." + name, defaultLimit));
+    }
+
+    /**
+     * The adaptive limit starts at the configured max in flight and moves from there as query latencies are observed;
+     * the fixed limit stays at that value.
+     *
+     * @return the concurrency limit shared by the admission controller and the query executor
+     */
+    private Limit getConcurrencyLimit() {
+        int maxInFlight = this.config().getInteger(AdmissionHandler.MAX_IN_FLIGHT_PROPERTY, AdmissionHandler.DEFAULT_MAX_IN_FLIGHT);
+        String type = this.config().getString(LIMIT_PROPERTY, ADAPTIVE_LIMIT);
+        switch (type) {
+            case FIXED_LIMIT:
+                return new FixedLimit(maxInFlight);
+            case ADAPTIVE_LIMIT:
+                return new AimdLimit(
+                        maxInFlight,
+                        this.config().getInteger(LIMIT_MIN_PROPERTY, DEFAULT_LIMIT_MIN),
+                        this.config().getInteger(LIMIT_MAX_PROPERTY, DEFAULT_LIMIT_MAX),
+                        this.config().getDouble(LIMIT_BACKOFF_PROPERTY, DEFAULT_LIMIT_BACKOFF),
+                        this.config().getDouble(LIMIT_TOLERANCE_PROPERTY, DEFAULT_LIMIT_TOLERANCE)
+                );
+            default:
+                throw new IllegalArgumentException("Property '" + LIMIT_PROPERTY + "' must be one of: " + FIXED_LIMIT + ", " + ADAPTIVE_LIMIT);
+        }
+    }
+
     private Set<String> getAllowedHeaders() {
         Set<String> allowedHeaders = new HashSet<>();
         allowedHeaders.add("x-requested-with");
@@ -145,38 +495,32 @@ public class ServiceVerticle extends AbstractVerticle {
     private void routeFailureHandler(RoutingContext context) {
         LOGGER.error("Error processing request", context.failure());
         JsonObject error = new JsonObject()
-                .put("exception", context.failure().getClass().getName())
-                .put("message", context.failure().getMessage())
                 .put("timestamp", new Timestamp(System.currentTimeMillis()).toString())
                 .put("path", context.request().uri());
-        JsonObject event = context.get(EventConfig.EVENT);
-        event.put(EventConfig.CONTENT, error.encode())
-                .put(EventConfig.STATUS, context.statusCode());
+        if (context.failure() != null) {
+            error.put("exception", context.failure().getClass().getName())
+                    .put("message", context.failure().getMessage());
+        } else {
+            // Failed only with a status code, i.e. by one of the Vert.x handlers
+            error.put("message", HttpResponseStatus.valueOf(context.statusCode()).reasonPhrase());
+        }
+        RequestContext request = context.get(EventConfig.EVENT);
+        if (request == null) {
+            // The request failed before getting to the request handler
+            request = this.requestHandler.begin(context);
+        }
+        request.respond(context.statusCode(), error.encode());
         context.response().setStatusCode(context.statusCode());
+        if (context.failure() instanceof OverloadedException) {
+            long retryAfter = ((OverloadedException) context.failure()).getRetryAfter();
+            context.response().putHeader(HttpHeaders.RETRY_AFTER.toString(), String.valueOf(retryAfter));
+        }
         context.next();
     }
 
-    private void addEntityManager(RoutingContext context) {
-        LOGGER.debug("Creating Entity Manager");
-        EntityManager em = entityManagerFactory.createEntityManager();
-        context.put(EventConfig.ENTITY_MANAGER, em).next();
-    }
-
-    private void releaseEntityManager(RoutingContext context) {
-        LOGGER.debug("Closing Entity Manager");
-        EntityManager em = context.get(EventConfig.ENTITY_MANAGER);
-        try {
-            if (em.getTransaction().isActive()) {
-                LOGGER.debug("Committing transaction");
-                em.getTransaction().commit();
-            }
-        } catch (Exception exception) {
-            em.getTransaction().rollback();
-            context.fail(HttpResponseStatus.INTERNAL_SERVER_ERROR.code(), exception);
-        } finally {
-            em.close();
-            LOGGER.debug("Entity manager closed");
+    private void releasePersistence(RoutingContext context) {
+        if (this.persistenceHandler.afterHandler(context)) {
+            context.next();
         }
-        context.next();
     }
 }
@@ -3,12 +3,14 @@ package app.tandv.services;
 import app.tandv.services.configuration.EventConfig;
 import app.tandv.services.configuration.MediaTypes;
 import app.tandv.services.data.entity.BookFormat;
+import app.tandv.services.data.entity.ContributorType;
 import app.tandv.services.exception.PartialResultException;
 import app.tandv.services.util.ContributorData;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.reactivex.Observable;
 import io.reactivex.disposables.Disposable;
 import io.restassured.RestAssured;
+import io.restassured.config.DecoderConfig;
 import io.restassured.response.ValidatableResponse;
 import io.restassured.specification.RequestSpecification;
 import io.vertx.core.json.JsonArray;
@@ -21,7 +23,11 @@ import org.slf4j.LoggerFactory;
 import javax.persistence.NoResultException;
 import javax.persistence.PersistenceException;
 import java.io.*;
+import java.net.HttpURLConnection;
 import java.net.ServerSocket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
@@ -119,7 +125,7 @@ class AppTest {
             testCase.setId(
                     testCase.validate(response)
                             .extract().body()
-                            .jsonPath().getInt(EventConfig.ID)
+                            .jsonPath().getLong(EventConfig.ID)
             );
         }
     }
@@ -129,16 +135,16 @@ class AppTest {
     void testUpdateBookData() {
         LOGGER.info("\nTEST UPDATE BOOK DATA ===============================================");
         // Now that we got contributors loaded in the DB and we know their IDs we can populate them into our test data
-        List<Integer> contributorIds = contributors
+        List<JsonObject> contributions = contributors
                 .stream()
-                .map(ContributorData::getId)
+                .map(contributor -> contribution(contributor.getId()))
                 .collect(Collectors.toList());
 
-        books.get(0).getJsonArray(EventConfig.CONTRIBUTORS).add(contributorIds.get(0));
-        books.get(1).getJsonArray(EventConfig.CONTRIBUTORS).add(contributorIds.get(0)).add(contributorIds.get(1));
-        books.get(2).getJsonArray(EventConfig.CONTRIBUTORS).add(contributorIds.get(2));
-        books.get(3).getJsonArray(EventConfig.CONTRIBUTORS).add(contributorIds.get(3));
-        books.get(4).getJsonArray(EventConfig.CONTRIBUTORS).add(contributorIds.get(2)).add(contributorIds.get(3));
+        books.get(0).getJsonArray(EventConfig.CONTRIBUTORS).add(contributions.get(0));
+        books.get(1).getJsonArray(EventConfig.CONTRIBUTORS).add(contributions.get(0)).add(contributions.get(1));
+        books.get(2).getJsonArray(EventConfig.CONTRIBUTORS).add(contributions.get(2));
+        books.get(3).getJsonArray(EventConfig.CONTRIBUTORS).add(contributions.get(3));
+        books.get(4).getJsonArray(EventConfig.CONTRIBUTORS).add(contributions.get(2)).add(contributions.get(3));
 
         books.forEach(book -> Assertions.assertFalse(book.getJsonArray(EventConfig.CONTRIBUTORS).isEmpty()));
     }
@@ -202,6 +208,187 @@ class AppTest {
                 .forEach(AppTest::matchWithBook);
     }
 
+    @Test
+    @Order(6)
+    void testQueryContributorsById() {
+        LOGGER.info("\nTEST QUERY CONTRIBUTORS BY ID =======================================");
+        Long first = contributors.get(0).getId();
+        Long last = contributors.get(contributors.size() - 1).getId();
+        RestAssured.get("/data/contributor/" + first)
+                .then().assertThat()
+                .statusCode(HttpResponseStatus.OK.code())
+                .and().body(EventConfig.ID, is(first))
+                .and().body("$", hasKey(EventConfig.CONTRIBUTIONS));
+        // In the order requested, without duplicates
+        RestAssured.get("/data/contributors?ids=" + last + "," + first + "&ids=" + last)
+                .then().assertThat()
+                .statusCode(HttpResponseStatus.OK.code())
+                .and().body("id", contains(last, first));
+        RestAssured.get("/data/contributors?ids=" + first + ",999999")
+                .then().assertThat()
+                .statusCode(HttpResponseStatus.NOT_FOUND.code())
+                .and().body("exception", is(PartialResultException.class.getName()));
+        // Confirmed missing by the previous request, answered from the negative cache
+        RestAssured.get("/data/contributor/999999")
+                .then().assertThat()
+                .statusCode(HttpResponseStatus.NOT_FOUND.code())
+                .and().body("exception", is(NoResultException.class.getName()));
+        RestAssured.get("/data/contributor/abc")
+                .then().assertThat()
+                .statusCode(HttpResponseStatus.BAD_REQUEST.code());
+    }
+
+    @Test
+    @Order(6)
+    void testChangeFeed() throws IOException {
+        LOGGER.info("\nTEST CHANGE FEED ====================================================");
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+                "http://localhost:" + RestAssured.port + "/data/events?since=0"
+        ).openConnection();
+        connection.setReadTimeout(5000);
+        try {
+            Assertions.assertEquals(HttpResponseStatus.OK.code(), connection.getResponseCode());
+            Assertions.assertTrue(connection.getContentType().startsWith("text/event-stream"));
+            BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
+            // The contributors added so far are replayed from the start
+            List<JsonObject> events = new ArrayList<>();
+            String line;
+            while (events.size() < contributors.size() && (line = reader.readLine()) != null) {
+                if (line.startsWith("data: ")) {
+                    events.add(new JsonObject(line.substring("data: ".length())));
+                }
+            }
+            Assertions.assertEquals(contributors.size(), events.size());
+            // Numbered from the start of the instance, without gaps
+            for (int i = 1; i < events.size(); i++) {
+                Assertions.assertEquals(events.get(i - 1).getLong("seq") + 1, (long) events.get(i).getLong("seq"));
+            }
+            Assertions.assertEquals("contributor", events.get(0).getString("entity"));
+            Assertions.assertEquals("created", events.get(0).getString("change"));
+            Assertions.assertTrue(events.get(0).getJsonObject("data").containsKey(EventConfig.NAME));
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Test
+    void testBookFacets() {
+        LOGGER.info("\nTEST BOOK FACETS ====================================================");
+        // A language of their own, so the books added by other tests are not counted
+        List<Long> contributorIds = addAll("/data/contributors", new JsonArray()
+                .add(new JsonObject().put(EventConfig.NAME, "Facet Author")));
+        addAll("/data/books", new JsonArray()
+                .add(book("facet first", BookFormat.HARDBACK, contributorIds.get(0), ContributorType.AUTHOR)
+                        .put(EventConfig.LANGUAGE, "xq").put(EventConfig.YEAR, "1901"))
+                .add(book("facet second", BookFormat.EBOOK, contributorIds.get(0), ContributorType.AUTHOR)
+                        .put(EventConfig.LANGUAGE, "xq").put(EventConfig.YEAR, "1902"))
+                .add(book("facet third", BookFormat.EBOOK, contributorIds.get(0), ContributorType.AUTHOR)
+                        .put(EventConfig.LANGUAGE, "xq").put(EventConfig.YEAR, "1950")));
+
+        RestAssured.get("/data/books/facets?language=xq")
+                .then().assertThat()
+                .statusCode(HttpResponseStatus.OK.code())
+                .and().body("total", is(3))
+                .and().body("format.EBOOK", is(2))
+                .and().body("format.HARDBACK", is(1))
+                .and().body("language.xq", is(3))
+                .and().body("year.'1901'", is(1))
+                .and().body("year.'1950'", is(1));
+        RestAssured.get("/data/books/facets?language=xq&year=1900..1910")
+                .then().assertThat()
+                .statusCode(HttpResponseStatus.OK.code())
+                .and().body("total", is(2))
+                .and().body("format.EBOOK", is(1));
+        RestAssured.get("/data/books?language=xq&format=EBOOK")
+                .then().assertThat()
+                .statusCode(HttpResponseStatus.OK.code())
+                .and().body(EventConfig.TITLE, containsInAnyOrder("Facet Second", "Facet Third"));
+        RestAssured.get("/data/books?format=SCROLL")
+                .then().assertThat()
+                .statusCode(HttpResponseStatus.BAD_REQUEST.code());
+    }
+
+    @Test
+    void testContributorGraph() {
+        LOGGER.info("\nTEST CONTRIBUTOR GRAPH ==============================================");
+        List<Long> ids = addAll("/data/contributors", new JsonArray()
+                .add(new JsonObject().put(EventConfig.NAME, "Graph Author One"))
+                .add(new JsonObject().put(EventConfig.NAME, "Graph Author Two"))
+                .add(new JsonObject().put(EventConfig.NAME, "Graph Illustrator")));
+        long first = ids.get(0);
+        long second = ids.get(1);
+        long illustrator = ids.get(2);
+        JsonObject together = book("graph together", BookFormat.PAPERBACK, first, ContributorType.AUTHOR);
+        together.getJsonArray(EventConfig.CONTRIBUTORS)
+                .add(new JsonObject().put(EventConfig.ID, second).put(EventConfig.TYPE, ContributorType.AUTHOR.name()));
+        JsonObject illustrated = book("graph illustrated", BookFormat.PAPERBACK, first, ContributorType.AUTHOR);
+        illustrated.getJsonArray(EventConfig.CONTRIBUTORS)
+                .add(new JsonObject().put(EventConfig.ID, second).put(EventConfig.TYPE, ContributorType.EDITOR.name()))
+                .add(new JsonObject().put(EventConfig.ID, illustrator).put(EventConfig.TYPE, ContributorType.ILLUSTRATOR.name()));
+        List<Long> bookIds = addAll("/data/books", new JsonArray()
+                .add(together)
+                .add(illustrated)
+                .add(book("graph alone", BookFormat.PAPERBACK, illustrator, ContributorType.ILLUSTRATOR)));
+
+        RestAssured.get("/data/contributor/" + first + "/contributors")
+                .then().assertThat()
+                .statusCode(HttpResponseStatus.OK.code())
+                .and().body(EventConfig.ID, contains(second, illustrator))
+                .and().body("books", contains(2, 1));
+        RestAssured.get("/data/contributor/" + second + "/books?type=EDITOR")
+                .then().assertThat()
+                .statusCode(HttpResponseStatus.OK.code())
+                .and().body(EventConfig.ID, contains(bookIds.get(1)))
+                .and().body(EventConfig.TYPE, contains(ContributorType.EDITOR.name()));
+        RestAssured.get("/data/contributor/" + illustrator + "/books")
+                .then().assertThat()
+                .statusCode(HttpResponseStatus.OK.code())
+                .and().body("$", hasSize(2));
+        RestAssured.get("/data/contributors/books?ids=" + first + "," + illustrator)
+                .then().assertThat()
+                .statusCode(HttpResponseStatus.OK.code())
+                .and().body("$", contains(bookIds.get(1)));
+        RestAssured.get("/data/contributors/books?ids=" + first + "&ids=" + second + "&type=AUTHOR")
+                .then().assertThat()
+                .statusCode(HttpResponseStatus.OK.code())
+                .and().body("$", contains(bookIds.get(0)));
+
+        RestAssured.get("/data/contributor/1/contributors")
+                .then().assertThat()
+                .statusCode(HttpResponseStatus.OK.code())
+                .and().body("$", hasSize(0));
+        RestAssured.get("/data/contributor/" + first + "/books?type=SCRIBE")
+                .then().assertThat()
+                .statusCode(HttpResponseStatus.BAD_REQUEST.code());
+        RestAssured.get("/data/contributors/books")
+                .then().assertThat()
+                .statusCode(HttpResponseStatus.BAD_REQUEST.code());
+    }
+
+    @Test
+    void testIsbnLookup() {
+        LOGGER.info("\nTEST ISBN LOOKUP ====================================================");
+        List<Long> contributorIds = addAll("/data/contributors", new JsonArray()
+                .add(new JsonObject().put(EventConfig.NAME, "Isbn Author")));
+        List<Long> bookIds = addAll("/data/books", new JsonArray()
+                .add(book("isbn lookup", BookFormat.PAPERBACK, contributorIds.get(0), ContributorType.AUTHOR)
+                        .put(EventConfig.ISBN, "0-306-40615-2")));
+        // Stored as ISBN-13, found by either form
+        for (String isbn : Arrays.asList("0-306-40615-2", "0306406152", "978-0-306-40615-7")) {
+            RestAssured.get("/data/books/isbn/" + isbn)
+                    .then().assertThat()
+                    .statusCode(HttpResponseStatus.OK.code())
+                    .and().body(EventConfig.ID, contains(bookIds.get(0)))
+                    .and().body(EventConfig.ISBN, contains("9780306406157"));
+        }
+        RestAssured.get("/data/books/isbn/0-19-853453-1")
+                .then().assertThat()
+                .statusCode(HttpResponseStatus.NOT_FOUND.code());
+        RestAssured.get("/data/books/isbn/0-306-40615-3")
+                .then().assertThat()
+                .statusCode(HttpResponseStatus.BAD_REQUEST.code());
+    }
+
     @Test
     void testEndpointNotFound() {
         LOGGER.info("\nTEST ENDPOINT NOT FOUND =============================================");
@@ -251,7 +438,7 @@ class AppTest {
         JsonObject payload = new JsonObject()
                 .put(EventConfig.TITLE, "The Unknown")
                 .put(EventConfig.FORMAT, BookFormat.PAPERBACK.name())
-                .put(EventConfig.CONTRIBUTORS, new JsonArray().add(666));
+                .put(EventConfig.CONTRIBUTORS, new JsonArray().add(contribution(666L)));
         request()
                 .body(payload.encode())
                 .post("/data/book")
@@ -266,7 +453,9 @@ class AppTest {
         JsonObject payload = new JsonObject()
                 .put(EventConfig.TITLE, "The Unknown")
                 .put(EventConfig.FORMAT, BookFormat.PAPERBACK.name())
-                .put(EventConfig.CONTRIBUTORS, new JsonArray().add(1).add(666));
+                .put(EventConfig.CONTRIBUTORS, new JsonArray()
+                        .add(contribution(contributors.get(0).getId()))
+                        .add(contribution(666L)));
         request()
                 .body(payload.encode())
                 .post("/data/book")
@@ -289,15 +478,172 @@ class AppTest {
                 );
     }
 
+    @Test
+    void testAddContributorsBatch() {
+        LOGGER.info("\nTEST ADD CONTRIBUTORS BATCH =========================================");
+        JsonArray invalid = new JsonArray()
+                .add(new JsonObject().put(EventConfig.NAME, "Batch Author One"))
+                .add(new JsonObject().put("irrelevantKey", "irrelevantValue"))
+                .add(new JsonObject().put(EventConfig.NAME, "batch author one"));
+        request()
+                .body(invalid.encode())
+                .post("/data/contributors")
+                .then().assertThat()
+                .statusCode(HttpResponseStatus.BAD_REQUEST.code())
+                .and().body("message", startsWith("Invalid records: [1] "));
+        // Records 0 and 2 are the same contributor
+        invalid.remove(1);
+        request()
+                .body(invalid.encode())
+                .post("/data/contributors")
+                .then().assertThat()
+                .statusCode(HttpResponseStatus.BAD_REQUEST.code())
+                .and().body("message", hasToString("Records 0 and 1 are the same"));
+
+        JsonArray batch = new JsonArray()
+                .add(new JsonObject().put(EventConfig.NAME, "batch author one"))
+                .add(new JsonObject().put(EventConfig.NAME, "BATCH AUTHOR TWO"))
+                .add(new JsonObject().put(EventConfig.NAME, "Batch Author Three"));
+        List<Long> ids = request()
+                .body(batch.encode())
+                .post("/data/contributors")
+                .then().assertThat()
+                .statusCode(HttpResponseStatus.CREATED.code())
+                .and().body(EventConfig.NAME, contains("Batch Author One", "Batch Author Two", "Batch Author Three"))
+                .extract().body().jsonPath().getList(EventConfig.ID, Long.class);
+        Assertions.assertEquals(3, ids.size());
+
+        JsonArray books = new JsonArray()
+                .add(batchBook("the first batch book", ids.get(0)))
+                .add(batchBook("", ids.get(1)))
+                .add(batchBook("the second batch book", ids.get(1), ids.get(2)));
+        request()
+                .body(books.encode())
+                .post("/data/books")
+                .then().assertThat()
+                .statusCode(HttpResponseStatus.BAD_REQUEST.code())
+                .and().body("message", startsWith("Invalid records: [1] "));
+        books.remove(1);
+        request()
+                .body(books.encode())
+                .post("/data/books")
+                .then().assertThat()
+                .statusCode(HttpResponseStatus.CREATED.code())
+                .and().body(EventConfig.TITLE, contains("The First Batch Book", "The Second Batch Book"))
+                .and().body("collect { it." + EventConfig.CONTRIBUTORS + ".size() }", contains(1, 2));
+    }
+
+    /**
+     * @return the ids of the records added in a batch
+     */
+    private static List<Long> addAll(String path, JsonArray records) {
+        return request()
+                .body(records.encode())
+                .post(path)
+                .then().assertThat()
+                .statusCode(HttpResponseStatus.CREATED.code())
+                .extract().body().jsonPath().getList(EventConfig.ID, Long.class);
+    }
+
+    private static JsonObject book(String title, BookFormat format, long contributorId, ContributorType type) {
+        return new JsonObject()
+                .put(EventConfig.TITLE, title)
+                .put(EventConfig.FORMAT, format.name())
+                .put(EventConfig.CONTRIBUTORS, new JsonArray()
+                        .add(new JsonObject().put(EventConfig.ID, contributorId).put(EventConfig.TYPE, type.name())));
+    }
+
+    private static JsonObject batchBook(String title, Long... contributorIds) {
+        JsonArray contributors = new JsonArray();
+        for (Long id : contributorIds) {
+            contributors.add(new JsonObject().put(EventConfig.ID, id).put(EventConfig.TYPE, "AUTHOR"));
+        }
+        return new JsonObject()
+                .put(EventConfig.TITLE, title)
+                .put(EventConfig.FORMAT, BookFormat.PAPERBACK.name())
+                .put(EventConfig.CONTRIBUTORS, contributors);
+    }
+
+    @Test
+    void testPreflight() {
+        LOGGER.info("\nTEST CORS PREFLIGHT =================================================");
+        RestAssured.given()
+                .header("Origin", "http://localhost")
+                .header("Access-Control-Request-Method", "POST")
+                .options("/data/book")
+                .then().assertThat()
+                .statusCode(HttpResponseStatus.OK.code())
+                .and().header("Access-Control-Max-Age", "3600")
+                .and().header("uid", nullValue());
+    }
+
+    @Test
+    void testBodyTooLarge() {
+        LOGGER.info("\nTEST BODY TOO LARGE =================================================");
+        char[] name = new char[128 * 1024];
+        Arrays.fill(name, 'a');
+        request()
+                .body(new JsonObject().put(EventConfig.NAME, new String(name)).encode())
+                .post("/data/contributor")
+                .then().assertThat()
+                .statusCode(HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE.code());
+    }
+
+    @Test
+    void testCompressedCatalog() {
+        LOGGER.info("\nTEST COMPRESSED CATALOG =============================================");
+        for (int i = 0; i < 2; i++) {
+            RestAssured.given()
+                    .header("Accept-Encoding", "gzip")
+                    .get("/data/books")
+                    .then().assertThat()
+                    .statusCode(HttpResponseStatus.OK.code())
+                    .and().header("Content-Encoding", "gzip")
+                    .and().header("Vary", "accept-encoding")
+                    .and().body("$", isA(List.class));
+        }
+        // Otherwise rest assured asks for gzip on its own
+        RestAssured.given()
+                .config(RestAssured.config().decoderConfig(DecoderConfig.decoderConfig().noContentDecoders()))
+                .get("/data/books")
+                .then().assertThat()
+                .statusCode(HttpResponseStatus.OK.code())
+                .and().header("Content-Encoding", nullValue())
+                .and().body("$", isA(List.class));
+    }
+
+    @Test
+    @Order(7)
+    void testMetrics() {
+        LOGGER.info("\nTEST METRICS ========================================================");
+        RestAssured.get("/metrics")
+                .then().assertThat()
+                .statusCode(HttpResponseStatus.OK.code())
+                .and().contentType(startsWith("text/plain"))
+                .and().body(containsString("http_server_requests_seconds_count{route=\"/data/books\",method=\"GET\",status=\"200\"}"))
+                .and().body(containsString("vertx_event_loop_lag_seconds"))
+                .and().body(containsString("hikari_connections_active{pool=\"library\"}"))
+                .and().body(containsString("hibernate_query_executions"))
+                .and().body(containsString("db_query_seconds_count{query=\"ContributorEntity.findAll\"}"))
+                .and().body(containsString("db_statements_per_request_count{route=\"/data/contributors\"}"))
+                .and().body(containsString("db_connection_hold_seconds_count{route=\"/data/books\"}"))
+                .and().body(containsString("db_batch_size_count{query=\"ContributorEntity.findAllByIdWithContributions\"}"))
+                .and().body(containsString("db_negative_cache_hits_total{entity=\"ContributorEntity\",key=\"id\"}"));
+    }
+
     private static RequestSpecification request() {
         return RestAssured.given()
                 .contentType(MediaTypes.APPLICATION_JSON)
                 .accept(MediaTypes.APPLICATION_JSON);
     }
 
-    private static Optional<JsonObject> findById(List<JsonObject> from, int id) {
+    private static JsonObject contribution(long contributorId) {
+        return new JsonObject().put(EventConfig.ID, contributorId).put(EventConfig.TYPE, "AUTHOR");
+    }
+
+    private static Optional<JsonObject> findById(List<JsonObject> from, long id) {
         return from.stream()
-                .filter(obj -> obj.getInteger(EventConfig.ID) == id)
+                .filter(obj -> obj.getLong(EventConfig.ID) == id)
                 .findFirst();
     }
 
@@ -307,7 +653,7 @@ class AppTest {
         Assertions.assertTrue(contributor.containsKey(EventConfig.CONTRIBUTIONS));
 
         // from the DB
-        int contributorId = contributor.getInteger(EventConfig.ID);
+        long contributorId = contributor.getLong(EventConfig.ID);
 
         // from test data
         boolean expectsBooks = contributors.stream()
@@ -329,7 +675,8 @@ class AppTest {
 
         // Let's grab each book id in the contributor.books[] array
         Disposable toDispose = Observable.range(0, contributorBooks.size())
-                .map(contributorBooks::getInteger)
+                .map(contributorBooks::getJsonObject)
+                .map(contribution -> contribution.getLong(EventConfig.ID))
                 // we find the book based on its id
                 .map(bookId -> findById(books, bookId)
                         .orElseThrow(() -> new IllegalArgumentException(
@@ -339,7 +686,10 @@ class AppTest {
                 // extract the contributors
                 .map(book -> book.getJsonArray(EventConfig.CONTRIBUTORS))
                 // check if the book contains the contributor
-                .filter(contributorsInBook -> contributorsInBook.contains(contributorId))
+                .filter(contributorsInBook -> contributorsInBook
+                        .stream()
+                        .map(JsonObject.class::cast)
+                        .anyMatch(contribution -> contribution.getLong(EventConfig.ID) == contributorId))
                 .count()
                 .subscribe(
                         validBooks -> Assertions.assertEquals((long) validBooks, contributorBooks.size()),
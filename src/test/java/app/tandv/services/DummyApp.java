@@ -1,5 +1,6 @@
 package app.tandv.services;
 
+import app.tandv.services.data.entity.BookContributor;
 import app.tandv.services.data.entity.ContributorEntity;
 import app.tandv.services.data.entity.BookEntity;
 import app.tandv.services.data.jpa.DummyJpaEntityManagerFactory;
@@ -38,7 +39,8 @@ class DummyApp extends App {
                     new DummyJpaEntityManagerFactory(
                             config,
                             BookEntity.class,
-                            ContributorEntity.class
+                            ContributorEntity.class,
+                            BookContributor.class
                     ).getFactory()
             );
         } catch (Throwable exception) {
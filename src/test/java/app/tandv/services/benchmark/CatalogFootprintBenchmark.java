@@ -0,0 +1,140 @@
+package app.tandv.services.benchmark;
+
+import app.tandv.services.data.catalog.CompactBook;
+import app.tandv.services.data.entity.BookEntity;
+import app.tandv.services.data.entity.BookFormat;
+import app.tandv.services.data.entity.ContributorEntity;
+import app.tandv.services.data.entity.ContributorType;
+import app.tandv.services.util.StringUtils;
+import app.tandv.services.util.collections.Pair;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Heap footprint of the books kept by the in memory indexes, as the {@link JsonObject} of each book they used to keep
+ * against {@link CompactBook}, and the cost of building the json of a book from each. The footprint is printed in
+ * bytes per book by {@link #main(String[])} before the benchmarks run, measured as the heap still in use after
+ * collecting once the entities are gone.
+ *
+ * @author vic on 2020-10-19
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CatalogFootprintBenchmark {
+    private static final String[] LANGUAGES = {"en", "es", "fr", "de", "it", "pt", "ja", "zh"};
+    private static final String[] WORDS = {"the", "lord", "rings", "return", "king", "night", "shadow", "river", "war"};
+    private static final int FOOTPRINT_BOOKS = 100_000;
+
+    // Keeps what is being measured reachable
+    private static volatile Object retained;
+
+    private JsonObject json;
+    private CompactBook compact;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BookEntity book = catalog(1, new Random(42)).get(0);
+        this.json = book.toJson();
+        this.compact = CompactBook.of(book);
+    }
+
+    @Benchmark
+    public JsonObject renderJson() {
+        // What the indexes returned before, a copy so the books kept could not be changed by the caller
+        return this.json.copy();
+    }
+
+    @Benchmark
+    public JsonObject renderCompact() {
+        return this.compact.toJson();
+    }
+
+    /**
+     * @return bytes of heap per book kept as built by the function
+     */
+    static long footprint(Function<BookEntity, Object> keep) {
+        long before = usedHeap();
+        List<BookEntity> catalog = catalog(FOOTPRINT_BOOKS, new Random(42));
+        Object[] books = new Object[catalog.size()];
+        for (int i = 0; i < books.length; i++) {
+            books[i] = keep.apply(catalog.get(i));
+        }
+        retained = books;
+        catalog = null;
+        long after = usedHeap();
+        retained = null;
+        return (after - before) / FOOTPRINT_BOOKS;
+    }
+
+    private static List<BookEntity> catalog(int size, Random random) {
+        List<ContributorEntity> contributors = new ArrayList<>();
+        for (long id = 0; id < size / 4 + 1; id++) {
+            ContributorEntity contributor = new ContributorEntity().withName("Contributor " + id);
+            contributor.setId(id);
+            contributors.add(contributor);
+        }
+        List<BookEntity> catalog = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            StringBuilder title = new StringBuilder();
+            for (int word = 0; word < 2 + random.nextInt(5); word++) {
+                title.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            title.append(i);
+            BookEntity book = new BookEntity()
+                    .withTitle(StringUtils.titleCase(title.toString()).orElse(null))
+                    .withIsbn(String.valueOf(9780000000000L + random.nextInt(1_000_000_000)))
+                    .withFormat(BookFormat.values()[random.nextInt(BookFormat.values().length)])
+                    // Each book reads its own strings from the database
+                    .withLanguage(new String(LANGUAGES[random.nextInt(LANGUAGES.length)]))
+                    .withYear(String.valueOf(1900 + random.nextInt(120)));
+            book.setId((long) i);
+            book.setCataloguing(StringUtils.titleForOrdering(title.toString()).orElse(null));
+            book.setSha256(StringUtils.sha256(title.toString()).orElse(null));
+            for (int contributor = 0; contributor < 1 + random.nextInt(2); contributor++) {
+                book.addContributor(new Pair<>(
+                        contributors.get(random.nextInt(contributors.size())),
+                        ContributorType.values()[contributor]
+                ));
+            }
+            catalog.add(book);
+        }
+        return catalog;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        System.out.printf("JsonObject:  %d bytes per book%n", footprint(BookEntity::toJson));
+        System.out.printf("CompactBook: %d bytes per book%n", footprint(CompactBook::of));
+        new Runner(new OptionsBuilder().include(CatalogFootprintBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,84 @@
+package app.tandv.services.benchmark;
+
+import app.tandv.services.data.catalog.FacetIndex;
+import app.tandv.services.data.entity.BookEntity;
+import app.tandv.services.data.entity.BookFormat;
+import app.tandv.services.util.BookFixtures;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Facet counts over a catalog of random books, unfiltered and filtered by the three facets.
+ *
+ * @author vic on 2020-10-19
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FacetIndexBenchmark {
+    private static final String[] LANGUAGES = {"en", "es", "fr", "de", "it", "pt", "ja", "zh"};
+
+    @Param({"10000", "100000"})
+    public int books;
+
+    private FacetIndex index;
+    private FacetIndex.Query all;
+    private FacetIndex.Query filtered;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        List<BookEntity> catalog = new ArrayList<>(this.books);
+        for (int i = 0; i < this.books; i++) {
+            catalog.add(BookFixtures
+                    .book(i)
+                    .withFormat(BookFormat.values()[random.nextInt(BookFormat.values().length)])
+                    .withLanguage(LANGUAGES[random.nextInt(LANGUAGES.length)])
+                    .withYear(String.valueOf(1900 + random.nextInt(120))));
+        }
+        this.index = new FacetIndex();
+        this.index.load(catalog);
+        this.all = new FacetIndex.Query();
+        this.filtered = new FacetIndex.Query()
+                .withFormats(Collections.singletonList("EBOOK"))
+                .withLanguages(Collections.singletonList("en"))
+                .withYears(Collections.singletonList("1990..1999"));
+    }
+
+    @Benchmark
+    public JsonObject facetsAll() {
+        return this.index.facets(this.all);
+    }
+
+    @Benchmark
+    public JsonObject facetsFiltered() {
+        return this.index.facets(this.filtered);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(FacetIndexBenchmark.class.getSimpleName()).build()).run();
+    }
+}
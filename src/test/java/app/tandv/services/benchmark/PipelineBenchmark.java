@@ -0,0 +1,131 @@
+package app.tandv.services.benchmark;
+
+import app.tandv.services.concurrency.AdmissionController;
+import app.tandv.services.concurrency.FixedLimit;
+import app.tandv.services.configuration.EventConfig;
+import app.tandv.services.configuration.MediaTypes;
+import app.tandv.services.handler.AdmissionHandler;
+import app.tandv.services.handler.LifecycleHook;
+import app.tandv.services.handler.Pipeline;
+import app.tandv.services.handler.RequestContext;
+import app.tandv.services.handler.RequestHandler;
+import app.tandv.services.handler.ResponseHandler;
+import app.tandv.services.metrics.MetricsRegistry;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.Vertx;
+import io.vertx.reactivex.core.http.HttpClient;
+import io.vertx.reactivex.core.http.HttpServer;
+import io.vertx.reactivex.ext.web.Router;
+import io.vertx.reactivex.ext.web.RoutingContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trip of a GET through the same hooks the data routes use (minus the database), with the pipeline chained and
+ * fused. The data handler does no work, so the difference between both modes is the dispatch overhead.
+ *
+ * @author vic on 2020-10-19
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+    private static final String ROUTE = "/benchmark";
+
+    @Param({"CHAINED", "FUSED"})
+    public String mode;
+
+    private Vertx vertx;
+    private HttpServer server;
+    private HttpClient client;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        MetricsRegistry registry = new MetricsRegistry();
+        // Stands for the persistence handler, it puts and removes one entry from the context
+        LifecycleHook resource = new LifecycleHook() {
+            @Override
+            public boolean beforeHandler(RoutingContext context) {
+                context.put(EventConfig.PERSISTENCE, this);
+                return true;
+            }
+
+            @Override
+            public boolean afterHandler(RoutingContext context) {
+                return context.remove(EventConfig.PERSISTENCE) != null;
+            }
+        };
+        AdmissionHandler admissionHandler = new AdmissionHandler(
+                new AdmissionController(new FixedLimit(Integer.MAX_VALUE), 0, registry),
+                new JsonObject()
+        );
+        Pipeline pipeline = new Pipeline(
+                Pipeline.Mode.fromString(this.mode),
+                Arrays.asList(new RequestHandler(registry), admissionHandler, resource),
+                Arrays.asList(resource, new ResponseHandler())
+        );
+
+        this.vertx = Vertx.vertx();
+        Router router = Router.router(this.vertx);
+        pipeline.install(router.get(ROUTE).produces(MediaTypes.APPLICATION_JSON), context -> {
+            RequestContext request = context.get(EventConfig.EVENT);
+            request.respond(200, Collections.emptyList().toString());
+            context.next();
+        });
+        this.server = this.vertx.createHttpServer()
+                .requestHandler(router)
+                .rxListen(0)
+                .blockingGet();
+        this.client = this.vertx.createHttpClient(new HttpClientOptions()
+                .setDefaultHost("localhost")
+                .setDefaultPort(this.server.actualPort())
+                .setKeepAlive(true)
+                .setMaxPoolSize(1)
+        );
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.client.close();
+        this.server.rxClose().blockingAwait();
+        this.vertx.rxClose().blockingAwait();
+    }
+
+    @Benchmark
+    public int get() throws Exception {
+        CompletableFuture<Integer> status = new CompletableFuture<>();
+        this.client.get(ROUTE)
+                .putHeader("Accept", MediaTypes.APPLICATION_JSON)
+                .handler(response -> response.bodyHandler(body -> status.complete(response.statusCode())))
+                .exceptionHandler(status::completeExceptionally)
+                .end();
+        return status.get(5, TimeUnit.SECONDS);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PipelineBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,64 @@
+package app.tandv.services.benchmark;
+
+import app.tandv.services.util.LegacyStringUtils;
+import app.tandv.services.util.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the contributor signature with a digest per thread against the single shared one of
+ * {@link LegacyStringUtils}, from one and from eight threads.
+ *
+ * @author vic on 2020-10-19
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Sha256Benchmark {
+    private static final String NAME = "John Ronald Reuel Tolkien";
+
+    @Benchmark
+    @Threads(1)
+    public Optional<String> perThread1() {
+        return StringUtils.sha256(NAME);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Optional<String> perThread8() {
+        return StringUtils.sha256(NAME);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Optional<String> shared1() {
+        return LegacyStringUtils.sha256(NAME);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Optional<String> shared8() {
+        return LegacyStringUtils.sha256(NAME);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(Sha256Benchmark.class.getSimpleName()).build()).run();
+    }
+}
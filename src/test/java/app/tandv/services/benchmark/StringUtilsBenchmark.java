@@ -0,0 +1,74 @@
+package app.tandv.services.benchmark;
+
+import app.tandv.services.util.LegacyStringUtils;
+import app.tandv.services.util.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Normalization of a book as it is added, title and contributor names, against {@link LegacyStringUtils}, and the
+ * roman numeral check of its words against {@link StringUtils#ROMAN_NUMERAL}. Run with {@code -prof gc} to compare the
+ * allocations as well.
+ *
+ * @author vic on 2020-10-19
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StringUtilsBenchmark {
+    private static final String TITLE = "the lord of the rings: the return of the king, part III";
+    private static final String NAME = "Dr. John Ronald Reuel TOLKIEN jr";
+    private static final String[] WORDS = {"the", "lord", "of", "rings", "return", "king", "part", "iii", "mcmxciv", "civil"};
+
+    @Benchmark
+    public void normalize(Blackhole blackhole) {
+        blackhole.consume(StringUtils.titleCase(TITLE));
+        blackhole.consume(StringUtils.titleForOrdering(TITLE));
+        blackhole.consume(StringUtils.contributorForOrdering(TITLE));
+        blackhole.consume(StringUtils.titleCase(NAME, true));
+        blackhole.consume(StringUtils.contributorForOrdering(NAME));
+    }
+
+    @Benchmark
+    public void normalizeLegacy(Blackhole blackhole) {
+        blackhole.consume(LegacyStringUtils.titleCase(TITLE));
+        blackhole.consume(LegacyStringUtils.titleForOrdering(TITLE));
+        blackhole.consume(LegacyStringUtils.contributorForOrdering(TITLE));
+        blackhole.consume(LegacyStringUtils.titleCase(NAME, true));
+        blackhole.consume(LegacyStringUtils.contributorForOrdering(NAME));
+    }
+
+    @Benchmark
+    public void romanNumerals(Blackhole blackhole) {
+        for (String word : WORDS) {
+            blackhole.consume(StringUtils.isRomanNumeral(word));
+        }
+    }
+
+    @Benchmark
+    public void romanNumeralsPattern(Blackhole blackhole) {
+        for (String word : WORDS) {
+            blackhole.consume(StringUtils.ROMAN_NUMERAL.matcher(word).matches());
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(StringUtilsBenchmark.class.getSimpleName()).build()).run();
+    }
+}
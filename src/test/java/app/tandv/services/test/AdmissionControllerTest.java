@@ -0,0 +1,58 @@
+package app.tandv.services.test;
+
+import app.tandv.services.concurrency.AdmissionController;
+import app.tandv.services.concurrency.AdmissionController.Permit;
+import app.tandv.services.concurrency.AdmissionController.Priority;
+import app.tandv.services.concurrency.FixedLimit;
+import app.tandv.services.metrics.MetricsRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+/**
+ * @author vic on 2020-10-19
+ */
+class AdmissionControllerTest {
+    @Test
+    void testLowPriorityShedFirst() {
+        AdmissionController controller = new AdmissionController(new FixedLimit(2), 1, new MetricsRegistry());
+
+        Optional<Permit> first = controller.tryAcquire(Priority.LOW);
+        Optional<Permit> second = controller.tryAcquire(Priority.LOW);
+        Assertions.assertTrue(first.isPresent());
+        Assertions.assertTrue(second.isPresent());
+
+        // The limit is reached, only high priority work is still admitted
+        Assertions.assertFalse(controller.tryAcquire(Priority.LOW).isPresent());
+        Optional<Permit> above = controller.tryAcquire(Priority.HIGH);
+        Assertions.assertTrue(above.isPresent());
+
+        // And so is its headroom
+        Assertions.assertFalse(controller.tryAcquire(Priority.HIGH).isPresent());
+        Assertions.assertEquals(3, controller.getInFlight());
+
+        above.get().release();
+        first.get().release();
+        Assertions.assertEquals(1, controller.getInFlight());
+        Assertions.assertTrue(controller.tryAcquire(Priority.LOW).isPresent());
+    }
+
+    @Test
+    void testReleaseIsIdempotent() {
+        AdmissionController controller = new AdmissionController(new FixedLimit(1), 0, new MetricsRegistry());
+        Permit permit = controller.tryAcquire(Priority.HIGH).orElseThrow(IllegalStateException::new);
+        permit.release();
+        permit.release();
+        Assertions.assertEquals(0, controller.getInFlight());
+    }
+
+    @Test
+    void testRejectionsAreCounted() {
+        MetricsRegistry registry = new MetricsRegistry();
+        AdmissionController controller = new AdmissionController(new FixedLimit(1), 0, registry);
+        controller.tryAcquire(Priority.HIGH);
+        controller.tryAcquire(Priority.LOW);
+        Assertions.assertTrue(registry.scrape().contains("admission_rejected_total{priority=\"low\"} 1\n"));
+    }
+}
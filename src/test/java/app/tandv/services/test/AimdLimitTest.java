@@ -0,0 +1,61 @@
+package app.tandv.services.test;
+
+import app.tandv.services.concurrency.AimdLimit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author vic on 2020-10-19
+ */
+class AimdLimitTest {
+    private static final long BASELINE = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    void testIncreaseWhileHealthy() {
+        AimdLimit limit = new AimdLimit(10, 1, 15, 0.9, 2.0);
+        for (int i = 0; i < 10; i++) {
+            limit.onSample("query", BASELINE, limit.getLimit(), false);
+        }
+        // capped by the max limit
+        Assertions.assertEquals(15, limit.getLimit());
+    }
+
+    @Test
+    void testNoIncreaseWhenAppLimited() {
+        AimdLimit limit = new AimdLimit(10, 1, 100, 0.9, 2.0);
+        for (int i = 0; i < 10; i++) {
+            limit.onSample("query", BASELINE, 1, false);
+        }
+        Assertions.assertEquals(10, limit.getLimit());
+    }
+
+    @Test
+    void testDecreaseOnCongestion() {
+        AimdLimit limit = new AimdLimit(20, 1, 100, 0.9, 2.0);
+        limit.onSample("query", BASELINE, 1, false);
+        limit.onSample("query", BASELINE * 3, 20, false);
+        Assertions.assertEquals(18, limit.getLimit());
+        // Within the cooldown further congestion does not collapse the limit
+        limit.onSample("query", BASELINE * 3, 20, false);
+        Assertions.assertEquals(18, limit.getLimit());
+    }
+
+    @Test
+    void testBaselinePerKey() {
+        AimdLimit limit = new AimdLimit(20, 1, 100, 0.9, 2.0);
+        limit.onSample("findById", BASELINE, 1, false);
+        // A slow query is not congestion when it is always that slow
+        limit.onSample("findAll", BASELINE * 50, 1, false);
+        limit.onSample("findAll", BASELINE * 50, 1, false);
+        Assertions.assertEquals(20, limit.getLimit());
+    }
+
+    @Test
+    void testDropIsCongestion() {
+        AimdLimit limit = new AimdLimit(20, 1, 100, 0.5, 2.0);
+        limit.onSample("query", BASELINE, 20, true);
+        Assertions.assertEquals(10, limit.getLimit());
+    }
+}
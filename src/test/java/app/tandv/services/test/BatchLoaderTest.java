@@ -0,0 +1,147 @@
+package app.tandv.services.test;
+
+import app.tandv.services.concurrency.FixedLimit;
+import app.tandv.services.data.catalog.CatalogVersion;
+import app.tandv.services.data.catalog.NegativeCache;
+import app.tandv.services.data.entity.BookEntity;
+import app.tandv.services.data.repository.BatchLoader;
+import app.tandv.services.data.repository.QueryExecutor;
+import app.tandv.services.metrics.Histogram;
+import app.tandv.services.metrics.MetricsRegistry;
+import app.tandv.services.util.BookFixtures;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.Vertx;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.TypedQuery;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * @author vic on 2020-10-19
+ */
+class BatchLoaderTest {
+    private static final int MAX_SIZE = 3;
+
+    private Vertx vertx;
+    private QueryExecutor executor;
+    private final List<List<Long>> batches = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    void setUp() {
+        this.vertx = Vertx.vertx();
+        this.executor = new QueryExecutor(this.vertx, new MetricsRegistry(), new FixedLimit(10), new JsonObject());
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.executor.close();
+        this.vertx.close();
+    }
+
+    @Test
+    void testLookupLargerThanBatch() {
+        BatchLoader<BookEntity> loader = this.loader(50L);
+        Map<Long, JsonObject> books = loader.load(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L, 7L)).blockingGet();
+
+        Assertions.assertEquals(7, books.size());
+        List<Integer> sizes = this.sizes();
+        Collections.sort(sizes);
+        Assertions.assertEquals(Arrays.asList(1, 3, 3), sizes);
+    }
+
+    @Test
+    void testLookupsSharingBatches() throws Exception {
+        BatchLoader<BookEntity> loader = this.loader(50L);
+        Future<Map<Long, JsonObject>> first = loader.load(Arrays.asList(1L, 2L)).toFuture();
+        Future<Map<Long, JsonObject>> second = loader.load(Arrays.asList(3L, 4L, 5L)).toFuture();
+
+        Assertions.assertTrue(first.get(5, TimeUnit.SECONDS).keySet().containsAll(Arrays.asList(1L, 2L)));
+        Assertions.assertTrue(second.get(5, TimeUnit.SECONDS).keySet().containsAll(Arrays.asList(3L, 4L, 5L)));
+        List<Integer> sizes = this.sizes();
+        Collections.sort(sizes);
+        Assertions.assertEquals(Arrays.asList(2, 3), sizes);
+    }
+
+    @Test
+    void testNoWindow() {
+        BatchLoader<BookEntity> loader = this.loader(0L);
+        Assertions.assertEquals(5, loader.load(Arrays.asList(1L, 2L, 3L, 4L, 5L)).blockingGet().size());
+        // Both batches run right away, in any order
+        List<Integer> sizes = this.sizes();
+        Collections.sort(sizes);
+        Assertions.assertEquals(Arrays.asList(2, 3), sizes);
+    }
+
+    private List<Integer> sizes() {
+        synchronized (this.batches) {
+            return this.batches.stream().map(List::size).collect(Collectors.toList());
+        }
+    }
+
+    private BatchLoader<BookEntity> loader(long window) {
+        return new BatchLoader<>(
+                this.vertx,
+                this.executor,
+                this.entityManagerFactory(),
+                BookEntity.class,
+                "BookEntity.findAllById",
+                window,
+                MAX_SIZE,
+                new Histogram(),
+                new NegativeCache(new CatalogVersion(), 100, 5000L, new MetricsRegistry())
+        );
+    }
+
+    /**
+     * Every id asked for is found.
+     */
+    @SuppressWarnings("unchecked")
+    private EntityManagerFactory entityManagerFactory() {
+        return proxy(EntityManagerFactory.class, (factoryMethod, factoryArgs) -> {
+            if (!factoryMethod.equals("createEntityManager")) {
+                return null;
+            }
+            return proxy(EntityManager.class, (managerMethod, managerArgs) -> {
+                if (!managerMethod.equals("createNamedQuery")) {
+                    return null;
+                }
+                List<Long> ids = new ArrayList<>();
+                return proxy(TypedQuery.class, (queryMethod, queryArgs) -> {
+                    if (queryMethod.equals("setParameter")) {
+                        ids.addAll((List<Long>) queryArgs[1]);
+                        return null;
+                    }
+                    this.batches.add(ids);
+                    return ids.stream().map(id -> BookFixtures.book(id)).collect(Collectors.toList());
+                }, true);
+            }, false);
+        }, false);
+    }
+
+    private interface Answer {
+        Object answer(String method, Object[] args);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, Answer answer, boolean fluent) {
+        Object[] self = new Object[1];
+        self[0] = Proxy.newProxyInstance(type.getClassLoader(), new Class[]{type}, (proxy, method, args) -> {
+            Object result = answer.answer(method.getName(), args);
+            return result == null && fluent ? self[0] : result;
+        });
+        return (T) self[0];
+    }
+}
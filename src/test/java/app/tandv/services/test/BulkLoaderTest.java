@@ -0,0 +1,157 @@
+package app.tandv.services.test;
+
+import app.tandv.services.data.entity.BookContributor;
+import app.tandv.services.data.entity.BookEntity;
+import app.tandv.services.data.entity.ContributorEntity;
+import app.tandv.services.data.entity.LibraryEntity;
+import app.tandv.services.data.jpa.DummyJpaEntityManagerFactory;
+import app.tandv.services.loader.BulkLoader;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author vic on 2020-10-19
+ */
+class BulkLoaderTest {
+    @TempDir
+    Path directory;
+
+    private EntityManagerFactory entityManagerFactory;
+
+    @BeforeEach
+    void setUp() {
+        this.entityManagerFactory = new DummyJpaEntityManagerFactory(
+                new JsonObject()
+                        .put("db.url", "jdbc:h2:mem:bulk-loader-test")
+                        .put("db.username", "sa")
+                        .put("db.secret", "")
+                        .put("db.class-name", "org.h2.jdbcx.JdbcDataSource"),
+                BookEntity.class,
+                ContributorEntity.class,
+                BookContributor.class
+        ).getFactory();
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.entityManagerFactory.close();
+    }
+
+    @Test
+    void testLoadCsvAndJson() throws IOException, SQLException {
+        Path csv = this.write("books.csv", String.join("\r\n",
+                "Title,Format,ISBN,Year,Contributors,Shelf",
+                "the outsider,PAPERBACK,978-1-5011-8098-9,2018,STEPHEN KING:author,A1",
+                "",
+                "\"It, \"\"the\"\" novel\",HARDBACK,,1986,Stephen King,B2",
+                "the outsider,PAPERBACK,,2018,Stephen King:AUTHOR,A1",
+                "no contributors,PAPERBACK,,,,",
+                "bad format,SCROLL,,,Someone,"
+        ));
+        Path json = this.write("books.json", "["
+                + "{\"title\": \"good omens\", \"format\": \"PAPERBACK\", \"year\": 1990, \"contributors\": ["
+                + "{\"name\": \"Terry Pratchett\", \"type\": \"AUTHOR\"},"
+                + "{\"name\": \"Neil Gaiman\", \"type\": \"AUTHOR\"}]},"
+                + "{\"title\": \"coraline\", \"format\": \"HARDBACK\", \"year\": \"20021\", \"contributors\": ["
+                + "{\"name\": \"Neil Gaiman\"}]},"
+                + "{\"title\": \"coraline\", \"format\": \"HARDBACK\", \"contributors\": ["
+                + "{\"name\": \"neil gaiman\", \"type\": \"AUTHOR\"}, {\"name\": \"Dave McKean\", \"type\": \"ILLUSTRATOR\"}]}"
+                + "]");
+
+        // Chunks and batches smaller than the input, so several of each go through
+        BulkLoader.Result result = new BulkLoader(3, 2, 2).load(this.entityManagerFactory, Arrays.asList(csv, json));
+
+        Assertions.assertEquals(8L, result.getRead());
+        Assertions.assertEquals(4L, result.getBooks());
+        Assertions.assertEquals(4L, result.getContributors());
+        Assertions.assertEquals(1L, result.getDuplicates());
+        Assertions.assertEquals(3L, result.getRejected());
+
+        List<BookEntity> books = this.findAll(BookEntity.class);
+        Assertions.assertEquals(4, books.size());
+        BookEntity outsider = books
+                .stream()
+                .filter(book -> "The Outsider".equals(book.getTitle()))
+                .findFirst()
+                .orElseThrow(AssertionError::new);
+        Assertions.assertEquals("9781501180989", outsider.getIsbn());
+        Assertions.assertEquals("2018", outsider.getYear());
+        Assertions.assertEquals(1, outsider.getContributors().size());
+        Assertions.assertEquals("Stephen King", outsider.getContributors().iterator().next().getContributor().getName());
+        Assertions.assertTrue(books.stream().anyMatch(book -> "It, \"The\" Novel".equals(book.getTitle())));
+        Assertions.assertEquals(4, this.findAll(ContributorEntity.class).size());
+
+        // Loading again only finds duplicates
+        result = new BulkLoader(1, 10, 10).load(this.entityManagerFactory, Collections.singletonList(json));
+        Assertions.assertEquals(0L, result.getBooks());
+        Assertions.assertEquals(0L, result.getContributors());
+        Assertions.assertEquals(2L, result.getDuplicates());
+    }
+
+    @Test
+    void testIdsNotGivenAgain() throws IOException, SQLException {
+        Path json = this.write("books.json", "["
+                + "{\"title\": \"good omens\", \"format\": \"PAPERBACK\", \"contributors\": ["
+                + "{\"name\": \"Terry Pratchett\", \"type\": \"AUTHOR\"},"
+                + "{\"name\": \"Neil Gaiman\", \"type\": \"AUTHOR\"}]}"
+                + "]");
+        long started = System.currentTimeMillis();
+        new BulkLoader(1, 10, 10).load(this.entityManagerFactory, Collections.singletonList(json));
+
+        // Numbered from the clock, as the service does
+        long maxId = 0L;
+        for (BookEntity book : this.findAll(BookEntity.class)) {
+            Assertions.assertTrue(book.getId() > started, "Book " + book.getId());
+            maxId = Math.max(maxId, book.getId());
+        }
+        for (ContributorEntity contributor : this.findAll(ContributorEntity.class)) {
+            Assertions.assertTrue(contributor.getId() > started, "Contributor " + contributor.getId());
+            maxId = Math.max(maxId, contributor.getId());
+        }
+
+        // As the service does once started, ids ahead of the clock are not generated again
+        LibraryEntity.generateIdsAfter(maxId + 1000L);
+        ContributorEntity contributor = ContributorEntity.fromJson(new JsonObject().put("name", "Dave McKean"));
+        Assertions.assertTrue(contributor.getId() > maxId + 1000L, "Contributor " + contributor.getId());
+    }
+
+    @Test
+    void testUnknownFileType() throws IOException {
+        Path file = this.write("books.xml", "<books/>");
+        Assertions.assertThrows(
+                IOException.class,
+                () -> new BulkLoader(1, 1, 1).load(this.entityManagerFactory, Collections.singletonList(file))
+        );
+    }
+
+    private <T> List<T> findAll(Class<T> type) {
+        EntityManager entityManager = this.entityManagerFactory.createEntityManager();
+        try {
+            List<T> result = entityManager.createNamedQuery(type.getSimpleName() + ".findAll", type).getResultList();
+            // Initialize the associations while the entity manager is open
+            result.forEach(Object::toString);
+            return result;
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.write(this.directory.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
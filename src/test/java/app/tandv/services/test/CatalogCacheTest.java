@@ -0,0 +1,92 @@
+package app.tandv.services.test;
+
+import app.tandv.services.data.catalog.CatalogCache;
+import app.tandv.services.data.catalog.CatalogVersion;
+import io.vertx.reactivex.core.Vertx;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.awaitility.Awaitility.await;
+
+/**
+ * @author vic on 2020-10-19
+ */
+class CatalogCacheTest {
+    private Vertx vertx;
+
+    @BeforeEach
+    void setUp() {
+        this.vertx = Vertx.vertx();
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.vertx.close();
+    }
+
+    @Test
+    void testEntryIsStaleAfterBump() {
+        CatalogVersion version = new CatalogVersion();
+        CatalogCache cache = new CatalogCache(this.vertx, version, 6);
+        cache.put("books", version.current(), "[]");
+        Assertions.assertTrue(cache.get("books").isPresent());
+        Assertions.assertFalse(cache.get("contributors").isPresent());
+
+        version.bump();
+        Assertions.assertFalse(cache.get("books").isPresent());
+    }
+
+    @Test
+    void testResultReadAtOldVersionIsNotKept() {
+        CatalogVersion version = new CatalogVersion();
+        CatalogCache cache = new CatalogCache(this.vertx, version, 6);
+        long readAt = version.current();
+        // A write commits while the query runs
+        version.bump();
+        CatalogCache.Entry entry = cache.put("books", readAt, "[]");
+        Assertions.assertEquals("[]", entry.getJson());
+        Assertions.assertFalse(cache.get("books").isPresent());
+        // Not worth compressing either
+        Assertions.assertNull(entry.getGzipped());
+    }
+
+    @Test
+    void testGzippedInBackground() throws IOException {
+        CatalogVersion version = new CatalogVersion();
+        CatalogCache cache = new CatalogCache(this.vertx, version, 9);
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 1000; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"title\":\"The Devil's Trap\",\"format\":\"PAPERBACK\"}");
+        }
+        json.append(']');
+        CatalogCache.Entry entry = cache.put("books", version.current(), json.toString());
+
+        // Served as is until compressed
+        await().atMost(5, TimeUnit.SECONDS).until(() -> entry.getGzipped() != null);
+        byte[] gzipped = entry.getGzipped().getBytes();
+        Assertions.assertSame(entry.getGzipped(), entry.getGzipped());
+        Assertions.assertTrue(gzipped.length < json.length() / 10);
+        Assertions.assertEquals(json.toString(), gunzip(gzipped));
+    }
+
+    private static String gunzip(byte[] bytes) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
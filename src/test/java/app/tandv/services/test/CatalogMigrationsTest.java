@@ -0,0 +1,137 @@
+package app.tandv.services.test;
+
+import app.tandv.services.configuration.EventConfig;
+import app.tandv.services.data.entity.BookContributor;
+import app.tandv.services.data.entity.BookEntity;
+import app.tandv.services.data.entity.BookFormat;
+import app.tandv.services.data.entity.ContributorEntity;
+import app.tandv.services.data.entity.ContributorType;
+import app.tandv.services.data.jpa.CatalogMigrations;
+import app.tandv.services.data.jpa.DummyJpaEntityManagerFactory;
+import app.tandv.services.util.CollationKeys;
+import app.tandv.services.util.StringUtils;
+import app.tandv.services.util.collections.Pair;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.function.Consumer;
+
+/**
+ * @author vic on 2020-10-19
+ */
+class CatalogMigrationsTest {
+    private EntityManagerFactory entityManagerFactory;
+
+    @BeforeEach
+    void setUp() {
+        this.entityManagerFactory = new DummyJpaEntityManagerFactory(
+                new JsonObject()
+                        .put("db.url", "jdbc:h2:mem:catalog-migrations-test")
+                        .put("db.username", "sa")
+                        .put("db.secret", "")
+                        .put("db.class-name", "org.h2.jdbcx.JdbcDataSource"),
+                BookEntity.class,
+                ContributorEntity.class,
+                BookContributor.class
+        ).getFactory();
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.entityManagerFactory.close();
+    }
+
+    @Test
+    void testBookSignaturesInOrder() {
+        ContributorEntity first = ContributorEntity.fromJson(new JsonObject().put(EventConfig.NAME, "Terry Pratchett"));
+        ContributorEntity second = ContributorEntity.fromJson(new JsonObject().put(EventConfig.NAME, "Neil Gaiman"));
+        // Contributors in the order they happened to be iterated in
+        String low = first.getSha256().compareTo(second.getSha256()) < 0 ? first.getSha256() : second.getSha256();
+        String high = low.equals(first.getSha256()) ? second.getSha256() : first.getSha256();
+        BookEntity unordered = book("good omens", first, second);
+        unordered.setSha256(sha256("Good Omens", high, low));
+        BookEntity stored = book("the long earth", first, second);
+        stored.setSha256(sha256("The Long Earth", low, high));
+        // The same book stored twice, the one signed in order stays
+        BookEntity duplicate = book("the long earth", first, second);
+        duplicate.setSha256(sha256("The Long Earth", high, low));
+        this.transaction(entityManager -> {
+            entityManager.persist(first);
+            entityManager.persist(second);
+            entityManager.persist(unordered);
+            entityManager.persist(stored);
+            entityManager.persist(duplicate);
+        });
+
+        this.transaction(CatalogMigrations::migrate);
+
+        this.transaction(entityManager -> {
+            Assertions.assertEquals(
+                    sha256("Good Omens", low, high),
+                    entityManager.find(BookEntity.class, unordered.getId()).getSha256()
+            );
+            Assertions.assertEquals(
+                    sha256("The Long Earth", low, high),
+                    entityManager.find(BookEntity.class, stored.getId()).getSha256()
+            );
+            Assertions.assertEquals(
+                    sha256("The Long Earth", high, low),
+                    entityManager.find(BookEntity.class, duplicate.getId()).getSha256()
+            );
+        });
+    }
+
+    @Test
+    void testBookCataloguingFromTitle() {
+        ContributorEntity contributor = ContributorEntity.fromJson(new JsonObject().put(EventConfig.NAME, "Terry Pratchett"));
+        BookEntity book = book("the long earth", contributor).calculateSha256();
+        // As catalogued when titles were ordered as names
+        book.setCataloguing("long earth the");
+        this.transaction(entityManager -> {
+            entityManager.persist(contributor);
+            entityManager.persist(book);
+        });
+
+        this.transaction(CatalogMigrations::migrate);
+
+        this.transaction(entityManager -> {
+            BookEntity migrated = entityManager.find(BookEntity.class, book.getId());
+            Assertions.assertEquals("long earth", migrated.getCataloguing());
+            Assertions.assertArrayEquals(CollationKeys.of("long earth"), migrated.getCollationKey());
+        });
+    }
+
+    private static BookEntity book(String title, ContributorEntity... contributors) {
+        BookEntity book = BookEntity.fromJson(new JsonObject()
+                .put(EventConfig.TITLE, title)
+                .put(EventConfig.FORMAT, BookFormat.PAPERBACK.name())
+                .put(EventConfig.CONTRIBUTORS, new JsonArray()));
+        for (ContributorEntity contributor : contributors) {
+            book.addContributor(new Pair<>(contributor, ContributorType.AUTHOR));
+        }
+        return book;
+    }
+
+    private static String sha256(String title, String... contributors) {
+        return StringUtils
+                .sha256(title + StringUtils.WORD_SEPARATOR + String.join(StringUtils.WORD_SEPARATOR, contributors))
+                .orElseThrow(IllegalStateException::new);
+    }
+
+    private void transaction(Consumer<EntityManager> work) {
+        EntityManager entityManager = this.entityManagerFactory.createEntityManager();
+        try {
+            entityManager.getTransaction().begin();
+            work.accept(entityManager);
+            entityManager.getTransaction().commit();
+        } finally {
+            entityManager.close();
+        }
+    }
+}
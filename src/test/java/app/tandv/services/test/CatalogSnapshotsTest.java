@@ -0,0 +1,138 @@
+package app.tandv.services.test;
+
+import app.tandv.services.configuration.EventConfig;
+import app.tandv.services.data.catalog.CatalogChange;
+import app.tandv.services.data.catalog.CatalogSnapshots;
+import app.tandv.services.data.catalog.CatalogVersion;
+import app.tandv.services.data.entity.BookContributor;
+import app.tandv.services.data.entity.BookEntity;
+import app.tandv.services.data.entity.ContributorEntity;
+import app.tandv.services.data.jpa.DummyJpaEntityManagerFactory;
+import app.tandv.services.metrics.MetricsRegistry;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.Vertx;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.awaitility.Awaitility.await;
+
+/**
+ * @author vic on 2020-10-19
+ */
+class CatalogSnapshotsTest {
+    @TempDir
+    Path directory;
+
+    private Vertx vertx;
+    private EntityManagerFactory entityManagerFactory;
+
+    @BeforeEach
+    void setUp() {
+        this.vertx = Vertx.vertx();
+        this.entityManagerFactory = new DummyJpaEntityManagerFactory(
+                new JsonObject()
+                        .put("db.url", "jdbc:h2:mem:snapshots-test")
+                        .put("db.username", "sa")
+                        .put("db.secret", "")
+                        .put("db.class-name", "org.h2.jdbcx.JdbcDataSource"),
+                BookEntity.class,
+                ContributorEntity.class,
+                BookContributor.class
+        ).getFactory();
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.entityManagerFactory.close();
+        this.vertx.rxClose().blockingAwait();
+    }
+
+    @Test
+    void testSnapshotPerVersion() throws IOException {
+        Files.write(this.directory.resolve("books-7.json"), "left over".getBytes(StandardCharsets.UTF_8));
+        CatalogVersion version = new CatalogVersion();
+        CatalogSnapshots snapshots = new CatalogSnapshots(
+                this.vertx, this.entityManagerFactory, version, this.directory.toString(), true, 6, 10L, new MetricsRegistry()
+        );
+        snapshots.start().blockingAwait(10, TimeUnit.SECONDS);
+
+        Assertions.assertFalse(Files.exists(this.directory.resolve("books-7.json")));
+        CatalogSnapshots.Snapshot first = snapshots.get(CatalogSnapshots.CONTRIBUTORS).orElseThrow(AssertionError::new);
+        Assertions.assertEquals(new JsonArray(), new JsonArray(read(first.getFile(), false)));
+
+        for (int i = 1; i <= 3; i++) {
+            ContributorEntity contributor = this.add(i, "Contributor Number " + i);
+            version.bump();
+            Assertions.assertFalse(snapshots.get(CatalogSnapshots.CONTRIBUTORS).isPresent());
+            snapshots.committed(version.current(), Collections.singletonList(
+                    new CatalogChange(CatalogChange.Kind.CREATED, contributor)
+            ));
+            await().atMost(10, TimeUnit.SECONDS).until(() -> snapshots.get(CatalogSnapshots.CONTRIBUTORS).isPresent());
+        }
+
+        CatalogSnapshots.Snapshot last = snapshots.get(CatalogSnapshots.CONTRIBUTORS).orElseThrow(AssertionError::new);
+        Assertions.assertEquals(3L, last.getVersion());
+        JsonArray contributors = new JsonArray(read(last.getGzipped(), true));
+        Assertions.assertEquals(3, contributors.size());
+        Assertions.assertEquals(contributors, new JsonArray(read(last.getFile(), false)));
+        Assertions.assertEquals("Contributor Number 1", contributors.getJsonObject(0).getString(EventConfig.NAME));
+        // Only the last two versions are kept
+        Assertions.assertFalse(Files.exists(Paths.get(first.getFile())));
+        Assertions.assertTrue(Files.exists(this.directory.resolve("contributors-2.json.gz")));
+    }
+
+    @Test
+    void testDisabled() {
+        CatalogSnapshots snapshots = new CatalogSnapshots(
+                this.vertx, this.entityManagerFactory, new CatalogVersion(), null, true, 6, 10L, new MetricsRegistry()
+        );
+        snapshots.start().blockingAwait(10, TimeUnit.SECONDS);
+        snapshots.committed(1L, Collections.emptyList());
+        Assertions.assertFalse(snapshots.isEnabled());
+        Assertions.assertFalse(snapshots.get(CatalogSnapshots.BOOKS).isPresent());
+    }
+
+    private ContributorEntity add(long id, String name) {
+        EntityManager entityManager = this.entityManagerFactory.createEntityManager();
+        try {
+            entityManager.getTransaction().begin();
+            ContributorEntity contributor = ContributorEntity.fromJson(new JsonObject().put(EventConfig.NAME, name));
+            // Generated ids are the current time, too close to each other here
+            contributor.setId(id);
+            entityManager.persist(contributor);
+            entityManager.getTransaction().commit();
+            return contributor;
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    private static String read(String file, boolean gzipped) throws IOException {
+        try (InputStream in = gzipped
+                ? new GZIPInputStream(Files.newInputStream(Paths.get(file)))
+                : Files.newInputStream(Paths.get(file))) {
+            byte[] buffer = new byte[8192];
+            StringBuilder result = new StringBuilder();
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                result.append(new String(buffer, 0, read, StandardCharsets.UTF_8));
+            }
+            return result.toString();
+        }
+    }
+}
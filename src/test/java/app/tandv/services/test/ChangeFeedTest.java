@@ -0,0 +1,161 @@
+package app.tandv.services.test;
+
+import app.tandv.services.data.catalog.ChangeFeed;
+import app.tandv.services.metrics.MetricsRegistry;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.Vertx;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+
+/**
+ * @author vic on 2020-10-19
+ */
+class ChangeFeedTest {
+    private Vertx vertx;
+
+    @BeforeEach
+    void setUp() {
+        this.vertx = Vertx.vertx();
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.vertx.rxClose().blockingAwait();
+    }
+
+    @Test
+    void testResumeFromSequence() {
+        ChangeFeed feed = new ChangeFeed(16, 16, new MetricsRegistry());
+        for (int i = 0; i < 3; i++) {
+            feed.publish(new JsonObject());
+        }
+        TestSink sink = new TestSink(false);
+        feed.subscribe(1L, this.vertx.getOrCreateContext(), sink);
+        feed.publish(new JsonObject());
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> sink.sequences.size() == 3);
+        Assertions.assertEquals(List.of(2L, 3L, 4L), sink.sequences);
+        Assertions.assertEquals(4L, new JsonObject(sink.json.get(2)).getLong("seq"));
+        Assertions.assertEquals(-1L, sink.reset);
+    }
+
+    @Test
+    void testOnlyNewEventsWithoutSequence() {
+        ChangeFeed feed = new ChangeFeed(16, 16, new MetricsRegistry());
+        feed.publish(new JsonObject());
+        TestSink sink = new TestSink(false);
+        feed.subscribe(-1L, this.vertx.getOrCreateContext(), sink);
+        feed.publish(new JsonObject());
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> sink.sequences.size() == 1);
+        Assertions.assertEquals(List.of(2L), sink.sequences);
+    }
+
+    @Test
+    void testResetWhenHistoryIsGone() {
+        ChangeFeed feed = new ChangeFeed(2, 16, new MetricsRegistry());
+        for (int i = 0; i < 5; i++) {
+            feed.publish(new JsonObject());
+        }
+        TestSink sink = new TestSink(false);
+        feed.subscribe(1L, this.vertx.getOrCreateContext(), sink);
+        feed.publish(new JsonObject());
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> sink.sequences.size() == 1);
+        Assertions.assertEquals(5L, sink.reset);
+        Assertions.assertEquals(List.of(6L), sink.sequences);
+    }
+
+    @Test
+    void testResetAfterRestart() {
+        ChangeFeed before = new ChangeFeed(16, 16, 1_000L, new MetricsRegistry());
+        for (int i = 0; i < 5; i++) {
+            before.publish(new JsonObject());
+        }
+        Assertions.assertEquals(1_005L, before.current());
+
+        // A client of the previous instance, ahead of the new one
+        ChangeFeed restarted = new ChangeFeed(16, 16, new MetricsRegistry());
+        restarted.publish(new JsonObject());
+        TestSink ahead = new TestSink(false);
+        restarted.subscribe(before.current(), this.vertx.getOrCreateContext(), ahead);
+        // Behind the new one once it started past the previous instance
+        ChangeFeed later = new ChangeFeed(16, 16, 2_000L, new MetricsRegistry());
+        later.publish(new JsonObject());
+        TestSink behind = new TestSink(false);
+        later.subscribe(before.current(), this.vertx.getOrCreateContext(), behind);
+        restarted.publish(new JsonObject());
+        later.publish(new JsonObject());
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> ahead.sequences.size() == 1 && behind.sequences.size() == 1);
+        Assertions.assertEquals(1L, ahead.reset);
+        Assertions.assertEquals(List.of(2L), ahead.sequences);
+        Assertions.assertEquals(2_001L, behind.reset);
+        Assertions.assertEquals(List.of(2_002L), behind.sequences);
+        Assertions.assertTrue(ChangeFeed.startOfInstance() < 1L << 53);
+    }
+
+    @Test
+    void testSlowConsumerIsDisconnected() {
+        MetricsRegistry registry = new MetricsRegistry();
+        ChangeFeed feed = new ChangeFeed(16, 2, registry);
+        // Never accepts anything
+        TestSink sink = new TestSink(true);
+        feed.subscribe(-1L, this.vertx.getOrCreateContext(), sink);
+        Assertions.assertTrue(registry.scrape().contains("catalog_feed_subscribers 1"));
+        for (int i = 0; i < 3; i++) {
+            feed.publish(new JsonObject());
+        }
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> sink.closed);
+        Assertions.assertTrue(sink.sequences.isEmpty());
+        Assertions.assertTrue(registry.scrape().contains("catalog_feed_subscribers 0"));
+        Assertions.assertTrue(registry.scrape().contains("catalog_feed_slow_consumers_total 1"));
+    }
+
+    private static final class TestSink implements ChangeFeed.Sink {
+        private final boolean full;
+        private final List<Long> sequences = new CopyOnWriteArrayList<>();
+        private final List<String> json = new CopyOnWriteArrayList<>();
+        private volatile long reset = -1L;
+        private volatile boolean closed = false;
+
+        private TestSink(boolean full) {
+            this.full = full;
+        }
+
+        @Override
+        public boolean writeQueueFull() {
+            return this.full;
+        }
+
+        @Override
+        public void drainHandler(Handler<Void> handler) {
+        }
+
+        @Override
+        public void write(ChangeFeed.Event event) {
+            this.sequences.add(event.getSequence());
+            this.json.add(event.getJson());
+        }
+
+        @Override
+        public void reset(long sequence) {
+            this.reset = sequence;
+        }
+
+        @Override
+        public void close() {
+            this.closed = true;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package app.tandv.services.test;
+
+import app.tandv.services.util.CollationKeys;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @author vic on 2020-10-19
+ */
+class CollationKeysTest {
+    private static final String[] WORDS = {
+            "cote", "coté", "côte", "côté", "Cote", "cote d", "coter", "co", "", "1984", "77th", "9",
+            "strasse", "straße", "Strasse", "aesop", "æsop", "oersted", "ørsted", "lodz", "łódź", "zoe", "zoë",
+            "a", "a b", "ab", "a-b", "!!!", "ΣΟΦΙΑ", "σοφια", "Достоевский", "東京", "𝐀lpha", "éclair", "eclipse",
+    };
+
+    @Test
+    void testOrder() {
+        assertOrder("co", "cote", "coté", "côte", "côté", "cote d", "coteé", "coter");
+        assertOrder("", "a", "a b", "ab", "b");
+        assertOrder("1984", "77th", "9", "a");
+        assertOrder("stras", "straße", "strasz", "zebra");
+        assertOrder("éclair", "eclipse");
+        assertOrder("oersted", "orsted", "ørsted", "orstede");
+        Assertions.assertEquals(0, CollationKeys.compare(CollationKeys.of("oersted"), CollationKeys.of("œrsted")));
+        Assertions.assertEquals(0, CollationKeys.compare(CollationKeys.of("Cote"), CollationKeys.of("cote")));
+        Assertions.assertEquals(0, CollationKeys.compare(CollationKeys.of("strasse"), CollationKeys.of("straße")));
+        // Other characters go after latin letters, in code point order
+        assertOrder("zzz", "σοφια", "достоевский", "東京");
+        Assertions.assertNull(CollationKeys.of(null));
+        Assertions.assertTrue(CollationKeys.compare(null, CollationKeys.of("")) < 0);
+    }
+
+    @Test
+    void testBytesAndLength() {
+        Random random = new Random(13);
+        for (int i = 0; i < 5_000; i++) {
+            for (byte b : CollationKeys.of(randomString(random))) {
+                Assertions.assertTrue(b >= 0x01 && b <= 0x7F);
+            }
+        }
+        char[] accents = new char[2_000];
+        Arrays.fill(accents, 'é');
+        Assertions.assertEquals(CollationKeys.MAX_LENGTH, CollationKeys.of(new String(accents)).length);
+    }
+
+    @Test
+    void testSameOrderInDatabase() throws SQLException {
+        List<String> strings = new ArrayList<>(Arrays.asList(WORDS));
+        Random random = new Random(17);
+        for (int i = 0; i < 500; i++) {
+            strings.add(randomString(random));
+        }
+        Collections.shuffle(strings, random);
+
+        List<String> expected = new ArrayList<>(strings);
+        expected.sort((a, b) -> CollationKeys.compare(CollationKeys.of(a), CollationKeys.of(b)));
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:collation-keys-test", "sa", "")) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE entry (id INT PRIMARY KEY, collation_key VARBINARY(1024))");
+            }
+            try (PreparedStatement insert = connection.prepareStatement("INSERT INTO entry VALUES (?, ?)")) {
+                for (int i = 0; i < strings.size(); i++) {
+                    insert.setInt(1, i);
+                    insert.setBytes(2, CollationKeys.of(strings.get(i)));
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+            List<String> actual = new ArrayList<>();
+            try (Statement statement = connection.createStatement();
+                 ResultSet result = statement.executeQuery("SELECT id FROM entry ORDER BY collation_key, id")) {
+                while (result.next()) {
+                    actual.add(strings.get(result.getInt(1)));
+                }
+            }
+            // Strings with the same key may come in any order, compare their keys
+            Assertions.assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                Assertions.assertArrayEquals(
+                        CollationKeys.of(expected.get(i)),
+                        CollationKeys.of(actual.get(i)),
+                        expected.get(i) + " / " + actual.get(i)
+                );
+            }
+        }
+    }
+
+    private static void assertOrder(String... strings) {
+        for (int i = 1; i < strings.length; i++) {
+            byte[] previous = CollationKeys.of(strings[i - 1]);
+            byte[] next = CollationKeys.of(strings[i]);
+            Assertions.assertTrue(CollationKeys.compare(previous, next) < 0, strings[i - 1] + " < " + strings[i]);
+        }
+    }
+
+    private static String randomString(Random random) {
+        StringBuilder string = new StringBuilder();
+        int length = random.nextInt(12);
+        for (int i = 0; i < length; i++) {
+            switch (random.nextInt(5)) {
+                case 0:
+                    string.append(' ');
+                    break;
+                case 1:
+                    string.append(WORDS[random.nextInt(WORDS.length)]);
+                    break;
+                case 2:
+                    string.append((char) (0x80 + random.nextInt(0x780)));
+                    break;
+                case 3:
+                    string.appendCodePoint(random.nextInt(0x10FFFF));
+                    break;
+                default:
+                    string.append((char) ('a' + random.nextInt(26)));
+            }
+        }
+        return string.toString();
+    }
+}
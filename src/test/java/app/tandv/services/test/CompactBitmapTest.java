@@ -0,0 +1,77 @@
+package app.tandv.services.test;
+
+import app.tandv.services.util.collections.CompactBitmap;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * @author vic on 2020-10-19
+ */
+class CompactBitmapTest {
+    // Spans several chunks, with sparse (array) and dense (bitmap) ones
+    private static final int RANGE = 4 * 65536;
+
+    @Test
+    void testAgainstBitSet() {
+        Random random = new Random(42);
+        for (double density : new double[]{0.001, 0.05, 0.5, 0.95}) {
+            BitSet expectedA = new BitSet();
+            BitSet expectedB = new BitSet();
+            CompactBitmap a = new CompactBitmap();
+            CompactBitmap b = new CompactBitmap();
+            for (int i = 0; i < RANGE; i++) {
+                if (random.nextDouble() < density) {
+                    expectedA.set(i);
+                    a.add(i);
+                }
+                if (random.nextDouble() < density) {
+                    expectedB.set(i);
+                    b.add(i);
+                }
+            }
+            // Removing goes back from bitmaps to arrays
+            for (int i = 0; i < RANGE; i += 3) {
+                expectedA.clear(i);
+                a.remove(i);
+            }
+            assertSame(expectedA, a);
+            assertSame(expectedB, b);
+
+            BitSet and = (BitSet) expectedA.clone();
+            and.and(expectedB);
+            assertSame(and, a.and(b));
+            Assertions.assertEquals(and.cardinality(), a.andCardinality(b));
+
+            BitSet or = (BitSet) expectedA.clone();
+            or.or(expectedB);
+            assertSame(or, a.or(b));
+            assertSame(or, CompactBitmap.union(Arrays.asList(a, b)));
+            // The operands are not modified
+            assertSame(expectedA, a);
+            assertSame(expectedB, b);
+        }
+    }
+
+    @Test
+    void testAddIsIdempotent() {
+        CompactBitmap bitmap = new CompactBitmap().add(7).add(7).add(70_000);
+        Assertions.assertEquals(2, bitmap.cardinality());
+        Assertions.assertTrue(bitmap.contains(70_000));
+        Assertions.assertFalse(bitmap.contains(8));
+        bitmap.remove(7).remove(70_000);
+        Assertions.assertTrue(bitmap.isEmpty());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> bitmap.add(-1));
+    }
+
+    private static void assertSame(BitSet expected, CompactBitmap actual) {
+        Assertions.assertEquals(expected.cardinality(), actual.cardinality());
+        Assertions.assertArrayEquals(expected.stream().toArray(), actual.toArray());
+        for (int i = 0; i < RANGE; i += 97) {
+            Assertions.assertEquals(expected.get(i), actual.contains(i));
+        }
+    }
+}
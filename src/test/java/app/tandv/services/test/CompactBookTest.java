@@ -0,0 +1,80 @@
+package app.tandv.services.test;
+
+import app.tandv.services.data.catalog.CompactBook;
+import app.tandv.services.data.entity.BookEntity;
+import app.tandv.services.data.entity.BookFormat;
+import app.tandv.services.data.entity.ContributorType;
+import app.tandv.services.util.BookFixtures;
+import app.tandv.services.util.StringUtils;
+import app.tandv.services.util.collections.StringDictionary;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author vic on 2020-10-19
+ */
+class CompactBookTest {
+    @Test
+    void testSameJsonAsEntity() {
+        String sha256 = StringUtils.sha256("the hobbit").orElseThrow(IllegalStateException::new);
+        String[] signatures = {sha256, sha256.toLowerCase(), "not a signature", "", null};
+        String[] years = {"1937", "0", "-44", "32767", "-32768", "32768", "01937", "-0", "-", " 1937", "c. 1937", "", null};
+        for (String signature : signatures) {
+            for (String year : years) {
+                BookEntity book = book(signature, year);
+                Assertions.assertEquals(
+                        book.toJson().encode(),
+                        CompactBook.of(book).toJson().encode(),
+                        signature + " " + year
+                );
+            }
+        }
+    }
+
+    @Test
+    void testCompactValues() {
+        String sha256 = StringUtils.sha256("the hobbit").orElseThrow(IllegalStateException::new);
+        CompactBook book = CompactBook.of(book(sha256, "1937"));
+        Assertions.assertEquals(sha256, book.getSha256());
+        Assertions.assertTrue(book.hasYearNumber());
+        Assertions.assertEquals(1937, book.getYearNumber());
+        Assertions.assertEquals(BookFormat.HARDBACK, book.getFormat());
+
+        CompactBook irregular = CompactBook.of(book(sha256, "c. 1937"));
+        Assertions.assertFalse(irregular.hasYearNumber());
+        Assertions.assertEquals("c. 1937", irregular.getYear());
+        // Languages are shared between books
+        Assertions.assertSame(book.getLanguage(), irregular.getLanguage());
+        Assertions.assertSame(book.getLanguage(), CompactBook.of(book(sha256, "1937").withLanguage(new String("en"))).getLanguage());
+    }
+
+    @Test
+    void testDictionaryBounded() {
+        StringDictionary dictionary = new StringDictionary(2);
+        String first = dictionary.intern(new String("en"));
+        Assertions.assertSame(first, dictionary.intern(new String("en")));
+        dictionary.intern("es");
+        String full = new String("fr");
+        Assertions.assertSame(full, dictionary.intern(full));
+        Assertions.assertNotSame(full, dictionary.intern(new String("fr")));
+        Assertions.assertEquals(2, dictionary.size());
+        Assertions.assertNull(dictionary.intern(null));
+    }
+
+    private static BookEntity book(String sha256, String year) {
+        BookEntity book = BookFixtures
+                .book(
+                        1L,
+                        BookFixtures.contribution(10L, ContributorType.AUTHOR),
+                        BookFixtures.contribution(11L, ContributorType.ILLUSTRATOR)
+                )
+                .withTitle("The Hobbit")
+                .withIsbn("9780547928227")
+                .withYear(year)
+                .withFormat(BookFormat.HARDBACK)
+                .withLanguage(new String("en"));
+        book.setCataloguing("hobbit the");
+        book.setSha256(sha256);
+        return book;
+    }
+}
@@ -0,0 +1,155 @@
+package app.tandv.services.test;
+
+import app.tandv.services.configuration.EventConfig;
+import app.tandv.services.data.catalog.CatalogChange;
+import app.tandv.services.data.catalog.ContributorGraph;
+import app.tandv.services.data.entity.ContributorType;
+import app.tandv.services.util.collections.AdjacencyArrays;
+import app.tandv.services.util.collections.AdjacencyOverlay;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static app.tandv.services.util.BookFixtures.book;
+import static app.tandv.services.util.BookFixtures.contribution;
+
+/**
+ * @author vic on 2020-10-19
+ */
+class ContributorGraphTest {
+    @Test
+    void testQueries() {
+        ContributorGraph graph = new ContributorGraph();
+        graph.load(Arrays.asList(
+                book(1L, contribution(10L, ContributorType.AUTHOR), contribution(11L, ContributorType.AUTHOR)),
+                book(2L, contribution(10L, ContributorType.AUTHOR), contribution(11L, ContributorType.EDITOR),
+                        contribution(12L, ContributorType.ILLUSTRATOR)),
+                book(3L, contribution(10L, ContributorType.TRANSLATOR), contribution(12L, ContributorType.AUTHOR)),
+                book(4L, contribution(13L, ContributorType.AUTHOR))
+        ));
+
+        Assertions.assertEquals(
+                new JsonArray()
+                        .add(new JsonObject().put(EventConfig.ID, 11L).put("books", 2L))
+                        .add(new JsonObject().put(EventConfig.ID, 12L).put("books", 2L)),
+                graph.coContributors(10L)
+        );
+        Assertions.assertTrue(graph.coContributors(13L).isEmpty());
+        Assertions.assertTrue(graph.coContributors(99L).isEmpty());
+
+        Assertions.assertEquals(3, graph.contributions(10L, EnumSet.noneOf(ContributorType.class)).size());
+        Assertions.assertEquals(
+                new JsonArray().add(new JsonObject().put(EventConfig.ID, 3L).put(EventConfig.TYPE, "TRANSLATOR")),
+                graph.contributions(10L, EnumSet.of(ContributorType.TRANSLATOR))
+        );
+
+        Assertions.assertEquals(new JsonArray().add(2L).add(3L), graph.commonBooks(Arrays.asList(10L, 12L), EnumSet.noneOf(ContributorType.class)));
+        Assertions.assertEquals(new JsonArray().add(1L), graph.commonBooks(Arrays.asList(10L, 11L), EnumSet.of(ContributorType.AUTHOR)));
+        Assertions.assertTrue(graph.commonBooks(Arrays.asList(10L, 13L), EnumSet.noneOf(ContributorType.class)).isEmpty());
+    }
+
+    @Test
+    void testUpdateReplacesContributors() {
+        ContributorGraph graph = new ContributorGraph();
+        graph.load(Collections.singletonList(
+                book(1L, contribution(10L, ContributorType.AUTHOR), contribution(11L, ContributorType.AUTHOR))
+        ));
+        graph.committed(1L, Arrays.asList(
+                new CatalogChange(CatalogChange.Kind.UPDATED,
+                        book(1L, contribution(10L, ContributorType.AUTHOR), contribution(12L, ContributorType.EDITOR))),
+                new CatalogChange(CatalogChange.Kind.CREATED, book(2L, contribution(11L, ContributorType.AUTHOR)))
+        ));
+
+        Assertions.assertEquals(
+                new JsonArray().add(new JsonObject().put(EventConfig.ID, 12L).put("books", 1L)),
+                graph.coContributors(10L)
+        );
+        Assertions.assertEquals(
+                new JsonArray().add(new JsonObject().put(EventConfig.ID, 2L).put(EventConfig.TYPE, "AUTHOR")),
+                graph.contributions(11L, EnumSet.noneOf(ContributorType.class))
+        );
+    }
+
+    @Test
+    void testInvalidTypes() {
+        Assertions.assertEquals(
+                EnumSet.of(ContributorType.AUTHOR, ContributorType.EDITOR),
+                ContributorGraph.parseTypes(Collections.singletonList("author,Editor"))
+        );
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> ContributorGraph.parseTypes(Collections.singletonList("SCRIBE"))
+        );
+    }
+
+    @Test
+    void testAdjacencyRowsReplaced() {
+        Random random = new Random(42);
+        Map<Integer, int[]> expected = new HashMap<>();
+        AdjacencyArrays adjacency = AdjacencyArrays.empty();
+        for (int round = 0; round < 200; round++) {
+            Map<Integer, int[]> rows = new HashMap<>();
+            for (int i = random.nextInt(4); i >= 0; i--) {
+                int[] row = random.ints(random.nextInt(6), 0, 1000).distinct().toArray();
+                rows.put(random.nextInt(50), row);
+            }
+            adjacency = adjacency.withRows(rows, random.nextInt(60));
+            rows.forEach((row, values) -> {
+                int[] sorted = values.clone();
+                Arrays.sort(sorted);
+                expected.put(row, sorted);
+            });
+            int size = 0;
+            for (int row = 0; row < Math.max(adjacency.rows(), 60); row++) {
+                int[] values = expected.getOrDefault(row, new int[0]);
+                Assertions.assertArrayEquals(values, adjacency.row(row), "Row " + row);
+                Assertions.assertEquals(values.length, adjacency.degree(row));
+                size += values.length;
+            }
+            Assertions.assertEquals(size, adjacency.size());
+        }
+    }
+
+    @Test
+    void testOverlayRowsReplaced() {
+        Random random = new Random(42);
+        Map<Integer, int[]> expected = new HashMap<>();
+        AdjacencyOverlay adjacency = new AdjacencyOverlay();
+        for (int round = 0; round < 2000; round++) {
+            Map<Integer, int[]> rows = new HashMap<>();
+            for (int i = random.nextInt(4); i >= 0; i--) {
+                int[] row = random.ints(random.nextInt(6), 0, 1000).distinct().toArray();
+                rows.put(random.nextInt(500), row);
+            }
+            adjacency.setRows(rows);
+            rows.forEach((row, values) -> {
+                int[] sorted = values.clone();
+                Arrays.sort(sorted);
+                expected.put(row, sorted);
+            });
+            // Rows replaced are kept aside only until the overlay compacts
+            Assertions.assertTrue(adjacency.changedRows() <= AdjacencyOverlay.MIN_COMPACT);
+        }
+        int size = 0;
+        for (int row = 0; row < 600; row++) {
+            int[] values = expected.getOrDefault(row, new int[0]);
+            Assertions.assertArrayEquals(values, adjacency.row(row), "Row " + row);
+            Assertions.assertEquals(values.length, adjacency.degree(row));
+            size += values.length;
+        }
+        Assertions.assertEquals(size, adjacency.size());
+        adjacency.compact();
+        Assertions.assertEquals(0, adjacency.changedRows());
+        for (int row = 0; row < 600; row++) {
+            Assertions.assertArrayEquals(expected.getOrDefault(row, new int[0]), adjacency.row(row), "Row " + row);
+        }
+    }
+}
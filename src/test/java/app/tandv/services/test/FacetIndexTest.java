@@ -0,0 +1,109 @@
+package app.tandv.services.test;
+
+import app.tandv.services.configuration.EventConfig;
+import app.tandv.services.data.catalog.CatalogChange;
+import app.tandv.services.data.catalog.FacetIndex;
+import app.tandv.services.data.entity.BookEntity;
+import app.tandv.services.data.entity.BookFormat;
+import app.tandv.services.util.BookFixtures;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author vic on 2020-10-19
+ */
+class FacetIndexTest {
+    @Test
+    void testFilterAndCount() {
+        FacetIndex index = new FacetIndex();
+        index.load(Arrays.asList(
+                book(1L, BookFormat.EBOOK, "en", "1991"),
+                book(2L, BookFormat.EBOOK, "es", "1995"),
+                book(3L, BookFormat.PAPERBACK, "en", "1999"),
+                book(4L, BookFormat.EBOOK, "en", "2005"),
+                book(5L, BookFormat.HARDBACK, null, null)
+        ));
+
+        JsonArray books = index.filter(query("ebook", "en", "1990..1999"));
+        Assertions.assertEquals(1, books.size());
+        Assertions.assertEquals(1L, (long) books.getJsonObject(0).getLong(EventConfig.ID));
+        // Values of the same facet are alternatives
+        Assertions.assertEquals(3, index.filter(query("EBOOK,PAPERBACK", "en", "")).size());
+        Assertions.assertEquals(2, index.filter(query("", "", "2000..,..1991")).size());
+        Assertions.assertEquals(5, index.filter(new FacetIndex.Query()).size());
+
+        JsonObject facets = index.facets(query("EBOOK", "", ""));
+        Assertions.assertEquals(3, facets.getInteger("total"));
+        Assertions.assertEquals(new JsonObject().put("EBOOK", 3), facets.getJsonObject(EventConfig.FORMAT));
+        Assertions.assertEquals(new JsonObject().put("en", 2).put("es", 1), facets.getJsonObject(EventConfig.LANGUAGE));
+        Assertions.assertEquals(
+                new JsonObject().put("1991", 1).put("1995", 1).put("2005", 1),
+                facets.getJsonObject(EventConfig.YEAR)
+        );
+    }
+
+    @Test
+    void testUpdateMovesBook() {
+        FacetIndex index = new FacetIndex();
+        index.load(Collections.singletonList(book(1L, BookFormat.EBOOK, "en", "1991")));
+        index.committed(1L, Arrays.asList(
+                new CatalogChange(CatalogChange.Kind.UPDATED, book(1L, BookFormat.AUDIOBOOK, "fr", "1991")),
+                new CatalogChange(CatalogChange.Kind.CREATED, book(2L, BookFormat.EBOOK, "en", "2001"))
+        ));
+
+        JsonObject facets = index.facets(new FacetIndex.Query());
+        Assertions.assertEquals(2, facets.getInteger("total"));
+        Assertions.assertEquals(new JsonObject().put("AUDIOBOOK", 1).put("EBOOK", 1), facets.getJsonObject(EventConfig.FORMAT));
+        Assertions.assertEquals(new JsonObject().put("en", 1).put("fr", 1), facets.getJsonObject(EventConfig.LANGUAGE));
+    }
+
+    @Test
+    void testFilterInCatalogOrder() {
+        FacetIndex index = new FacetIndex();
+        BookEntity zebra = book(1L, BookFormat.EBOOK, "en", "1991");
+        zebra.setCataloguing("zebra");
+        BookEntity eclair = book(2L, BookFormat.EBOOK, "en", "1991");
+        eclair.setCataloguing("éclair");
+        BookEntity eclipse = book(3L, BookFormat.EBOOK, "en", "1991");
+        eclipse.setCataloguing("eclipse");
+        BookEntity again = book(4L, BookFormat.EBOOK, "en", "1991");
+        again.setCataloguing("eclipse");
+        index.load(Arrays.asList(zebra, again, eclipse, eclair));
+
+        JsonArray books = index.filter(new FacetIndex.Query());
+        Assertions.assertEquals(Arrays.asList(2L, 3L, 4L, 1L), Arrays.asList(
+                books.getJsonObject(0).getLong(EventConfig.ID),
+                books.getJsonObject(1).getLong(EventConfig.ID),
+                books.getJsonObject(2).getLong(EventConfig.ID),
+                books.getJsonObject(3).getLong(EventConfig.ID)
+        ));
+    }
+
+    @Test
+    void testInvalidQuery() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> query("SCROLL", "", ""));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> query("", "", "199x"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> query("", "", "1999..1990"));
+    }
+
+    private static FacetIndex.Query query(String format, String language, String year) {
+        return new FacetIndex.Query()
+                .withFormats(list(format))
+                .withLanguages(list(language))
+                .withYears(list(year));
+    }
+
+    private static List<String> list(String value) {
+        return value.isEmpty() ? Collections.emptyList() : Collections.singletonList(value);
+    }
+
+    private static BookEntity book(long id, BookFormat format, String language, String year) {
+        return BookFixtures.book(id).withFormat(format).withLanguage(language).withYear(year);
+    }
+}
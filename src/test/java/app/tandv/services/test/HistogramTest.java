@@ -0,0 +1,73 @@
+package app.tandv.services.test;
+
+import app.tandv.services.metrics.Histogram;
+import app.tandv.services.metrics.MetricsRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author vic on 2020-10-19
+ */
+class HistogramTest {
+    @Test
+    void testEmptyHistogram() {
+        Histogram histogram = new Histogram();
+        Assertions.assertEquals(0L, histogram.getCount());
+        Assertions.assertEquals(0L, histogram.getValueAtQuantile(0.99));
+    }
+
+    @Test
+    void testSmallValuesAreExact() {
+        Histogram histogram = new Histogram();
+        for (long value = 0; value < 16; value++) {
+            histogram.record(value);
+        }
+        Assertions.assertEquals(16L, histogram.getCount());
+        Assertions.assertEquals(15L, histogram.getMax());
+        Assertions.assertEquals(7L, histogram.getValueAtQuantile(0.5));
+        Assertions.assertEquals(15L, histogram.getValueAtQuantile(1.0));
+    }
+
+    @Test
+    void testQuantilesWithinPrecision() {
+        Histogram histogram = new Histogram();
+        // 1 to 1000 microseconds in nanoseconds
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(value));
+        }
+        assertWithin(TimeUnit.MICROSECONDS.toNanos(500), histogram.getValueAtQuantile(0.5));
+        assertWithin(TimeUnit.MICROSECONDS.toNanos(990), histogram.getValueAtQuantile(0.99));
+        Assertions.assertEquals(TimeUnit.MICROSECONDS.toNanos(1000), histogram.getValueAtQuantile(1.0));
+    }
+
+    @Test
+    void testExtremeValues() {
+        Histogram histogram = new Histogram();
+        histogram.record(-10L);
+        histogram.record(Long.MAX_VALUE);
+        Assertions.assertEquals(0L, histogram.getValueAtQuantile(0.5));
+        Assertions.assertEquals(Long.MAX_VALUE, histogram.getValueAtQuantile(1.0));
+    }
+
+    @Test
+    void testPrometheusFormat() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.timer("test_seconds", "Test timer", "route", "/data/books").record(TimeUnit.MILLISECONDS.toNanos(2));
+        registry.counter("test_total", "Test counter").increment();
+        registry.gauge("test_gauge", "Test gauge", () -> 0.5);
+
+        String scrape = registry.scrape();
+        Assertions.assertTrue(scrape.contains("# TYPE test_seconds summary\n"), scrape);
+        Assertions.assertTrue(scrape.contains("test_seconds_count{route=\"/data/books\"} 1\n"), scrape);
+        Assertions.assertTrue(scrape.contains("test_seconds{route=\"/data/books\",quantile=\"0.99\"} 0.002"), scrape);
+        Assertions.assertTrue(scrape.contains("test_total 1\n"), scrape);
+        Assertions.assertTrue(scrape.contains("test_gauge 0.5\n"), scrape);
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        // 1/16 of relative error given by 4 bits of sub buckets
+        Assertions.assertTrue(Math.abs(expected - actual) <= expected / 16, expected + " vs " + actual);
+    }
+}
@@ -0,0 +1,87 @@
+package app.tandv.services.test;
+
+import app.tandv.services.configuration.HttpServerConfig;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpVersion;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author vic on 2020-10-19
+ */
+class HttpServerConfigTest {
+    private Vertx vertx;
+
+    @BeforeEach
+    void setUp() {
+        this.vertx = Vertx.vertx();
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.vertx.close();
+    }
+
+    @Test
+    void testHttp2Settings() {
+        JsonObject config = new JsonObject()
+                .put(HttpServerConfig.MAX_CONCURRENT_STREAMS_PROPERTY, 250L)
+                .put(HttpServerConfig.INITIAL_WINDOW_SIZE_PROPERTY, 1 << 20)
+                .put(HttpServerConfig.CONNECTION_WINDOW_SIZE_PROPERTY, 1 << 22);
+        Assertions.assertEquals(250L, HttpServerConfig.from(config).getInitialSettings().getMaxConcurrentStreams());
+        Assertions.assertEquals(1 << 20, HttpServerConfig.from(config).getInitialSettings().getInitialWindowSize());
+        Assertions.assertEquals(1 << 22, HttpServerConfig.from(config).getHttp2ConnectionWindowSize());
+        Assertions.assertFalse(HttpServerConfig.from(config).isSsl());
+    }
+
+    @Test
+    void testClearTextHttp2() throws Exception {
+        HttpClientOptions client = new HttpClientOptions()
+                .setProtocolVersion(HttpVersion.HTTP_2)
+                // prior knowledge
+                .setHttp2ClearTextUpgrade(false);
+        Assertions.assertEquals(HttpVersion.HTTP_2, this.requestVersion(new JsonObject(), client));
+    }
+
+    @Test
+    void testHttp2OverTls() throws Exception {
+        HttpClientOptions client = new HttpClientOptions()
+                .setProtocolVersion(HttpVersion.HTTP_2)
+                .setSsl(true)
+                .setUseAlpn(true)
+                .setTrustAll(true)
+                .setVerifyHost(false);
+        JsonObject config = new JsonObject().put(HttpServerConfig.SSL_PROPERTY, true);
+        Assertions.assertEquals(HttpVersion.HTTP_2, this.requestVersion(config, client));
+    }
+
+    private HttpVersion requestVersion(JsonObject config, HttpClientOptions clientOptions) throws Exception {
+        CompletableFuture<HttpServer> listening = new CompletableFuture<>();
+        this.vertx.createHttpServer(HttpServerConfig.from(config))
+                .requestHandler(request -> request.response().end(request.version().name()))
+                .listen(0, result -> {
+                    if (result.succeeded()) {
+                        listening.complete(result.result());
+                    } else {
+                        listening.completeExceptionally(result.cause());
+                    }
+                });
+        int port = listening.get(10, TimeUnit.SECONDS).actualPort();
+
+        HttpClient client = this.vertx.createHttpClient(clientOptions);
+        CompletableFuture<HttpVersion> version = new CompletableFuture<>();
+        client.get(port, "localhost", "/", response -> version.complete(response.version()))
+                .exceptionHandler(version::completeExceptionally)
+                .end();
+        return version.get(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,89 @@
+package app.tandv.services.test;
+
+import app.tandv.services.configuration.EventConfig;
+import app.tandv.services.data.catalog.CatalogChange;
+import app.tandv.services.data.catalog.IsbnIndex;
+import app.tandv.services.data.entity.BookEntity;
+import app.tandv.services.data.entity.BookFormat;
+import app.tandv.services.util.BookFixtures;
+import app.tandv.services.util.IsbnUtils;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+/**
+ * @author vic on 2020-10-19
+ */
+class IsbnUtilsTest {
+    @Test
+    void testCanonical() {
+        Assertions.assertEquals(Optional.of("9780306406157"), IsbnUtils.canonical("978-0-306-40615-7"));
+        Assertions.assertEquals(Optional.of("9780306406157"), IsbnUtils.canonical("9780306406157"));
+        Assertions.assertEquals(Optional.of("9791090636071"), IsbnUtils.canonical("979 10 90636 07 1"));
+        // ISBN-10 are converted
+        Assertions.assertEquals(Optional.of("9780306406157"), IsbnUtils.canonical("0-306-40615-2"));
+        Assertions.assertEquals(Optional.of("9780804429573"), IsbnUtils.canonical("0-8044-2957-X"));
+        Assertions.assertEquals(Optional.of("9780439420891"), IsbnUtils.canonical("043942089x"));
+    }
+
+    @Test
+    void testInvalid() {
+        Assertions.assertFalse(IsbnUtils.canonical(null).isPresent());
+        Assertions.assertFalse(IsbnUtils.canonical("").isPresent());
+        // Check digits off by one
+        Assertions.assertFalse(IsbnUtils.canonical("978-0-306-40615-8").isPresent());
+        Assertions.assertFalse(IsbnUtils.canonical("0-306-40615-3").isPresent());
+        // Not a book
+        Assertions.assertFalse(IsbnUtils.canonical("4006381333931").isPresent());
+        // X anywhere but the check digit of an ISBN-10
+        Assertions.assertFalse(IsbnUtils.canonical("X306406152").isPresent());
+        Assertions.assertFalse(IsbnUtils.canonical("978030640X157").isPresent());
+        Assertions.assertFalse(IsbnUtils.canonical("97803064061570").isPresent());
+        Assertions.assertFalse(IsbnUtils.canonical("978-0-306-4061").isPresent());
+        Assertions.assertFalse(IsbnUtils.canonical("ISBN 9780306406157").isPresent());
+    }
+
+    @Test
+    void testIndex() {
+        IsbnIndex index = new IsbnIndex();
+        index.load(Collections.singletonList(book(1L, "9780306406157")));
+        Assertions.assertEquals(1L, (long) index.find("0-306-40615-2").getJsonObject(0).getLong(EventConfig.ID));
+
+        // The same book with a new isbn, and a second edition sharing it
+        index.committed(1L, Arrays.asList(
+                new CatalogChange(CatalogChange.Kind.UPDATED, book(1L, "9780804429573")),
+                new CatalogChange(CatalogChange.Kind.CREATED, book(2L, "9780804429573"))
+        ));
+        Assertions.assertTrue(index.find("9780306406157").isEmpty());
+        Assertions.assertEquals(
+                Arrays.asList(1L, 2L),
+                Arrays.asList(
+                        index.find("080442957X").getJsonObject(0).getLong(EventConfig.ID),
+                        index.find("080442957X").getJsonObject(1).getLong(EventConfig.ID)
+                )
+        );
+        Assertions.assertThrows(IllegalArgumentException.class, () -> index.find("12345"));
+    }
+
+    @Test
+    void testBookIsbnCanonicalized() {
+        JsonObject data = new JsonObject()
+                .put(EventConfig.TITLE, "the title")
+                .put(EventConfig.FORMAT, BookFormat.PAPERBACK.name())
+                .put(EventConfig.CONTRIBUTORS, Collections.emptyList());
+        Assertions.assertEquals("9780306406157", BookEntity.fromJson(data.copy().put(EventConfig.ISBN, "0-306-40615-2")).getIsbn());
+        Assertions.assertNull(BookEntity.fromJson(data.copy().put(EventConfig.ISBN, " ")).getIsbn());
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> BookEntity.fromJson(data.copy().put(EventConfig.ISBN, "0-306-40615-3"))
+        );
+    }
+
+    private static BookEntity book(long id, String isbn) {
+        return BookFixtures.book(id).withIsbn(isbn);
+    }
+}
@@ -0,0 +1,99 @@
+package app.tandv.services.test;
+
+import app.tandv.services.concurrency.FixedLimit;
+import app.tandv.services.data.catalog.CatalogVersion;
+import app.tandv.services.data.catalog.NegativeCache;
+import app.tandv.services.data.entity.BookContributor;
+import app.tandv.services.data.entity.BookEntity;
+import app.tandv.services.data.entity.ContributorEntity;
+import app.tandv.services.data.jpa.DummyJpaEntityManagerFactory;
+import app.tandv.services.data.jpa.PersistenceHandle;
+import app.tandv.services.data.jpa.RequestStatisticsInterceptor;
+import app.tandv.services.data.repository.ContributorsRepository;
+import app.tandv.services.data.repository.QueryExecutor;
+import app.tandv.services.metrics.MetricsRegistry;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.Vertx;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author vic on 2020-10-19
+ */
+class LibraryRepositoryTest {
+    private static final int BATCH_SIZE = 50;
+    private static final int CONTRIBUTORS = 20;
+
+    private Vertx vertx;
+    private EntityManagerFactory entityManagerFactory;
+    private QueryExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        JsonObject config = new JsonObject()
+                .put("db.url", "jdbc:h2:mem:library-repository-test")
+                .put("db.username", "sa")
+                .put("db.secret", "")
+                .put("db.class-name", "org.h2.jdbcx.JdbcDataSource")
+                .put("db.batch-size", BATCH_SIZE);
+        this.vertx = Vertx.vertx();
+        this.entityManagerFactory = new DummyJpaEntityManagerFactory(
+                config,
+                BookEntity.class,
+                ContributorEntity.class,
+                BookContributor.class
+        ).getFactory();
+        this.executor = new QueryExecutor(this.vertx, new MetricsRegistry(), new FixedLimit(10), config);
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.executor.close();
+        this.entityManagerFactory.close();
+        this.vertx.close();
+    }
+
+    @Test
+    void testNewEntitiesInsertedInBatches() {
+        List<ContributorEntity> contributors = new ArrayList<>();
+        for (int i = 0; i < CONTRIBUTORS; i++) {
+            contributors.add(ContributorEntity.fromJson(new JsonObject().put("name", "Contributor " + i)));
+        }
+        PersistenceHandle persistence = new PersistenceHandle(this.entityManagerFactory).transactional();
+        try {
+            new ContributorsRepository(this.executor, persistence, this.negativeCache())
+                    .addAll(contributors)
+                    .blockingGet();
+            EntityManager entityManager = persistence.get();
+            RequestStatisticsInterceptor interceptor = RequestStatisticsInterceptor.of(entityManager)
+                    .orElseThrow(AssertionError::new);
+            // A single batch of inserts, without selecting each contributor by its id first
+            Assertions.assertEquals(1, interceptor.getStatements());
+            Assertions.assertEquals(0, interceptor.getEntityLoads());
+            persistence.commit();
+        } finally {
+            persistence.close();
+        }
+
+        EntityManager entityManager = this.entityManagerFactory.createEntityManager();
+        try {
+            Assertions.assertEquals(CONTRIBUTORS, entityManager
+                    .createNamedQuery("ContributorEntity.findAll", ContributorEntity.class)
+                    .getResultList()
+                    .size());
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    private NegativeCache negativeCache() {
+        return new NegativeCache(new CatalogVersion(), 10, 60_000L, new MetricsRegistry());
+    }
+}
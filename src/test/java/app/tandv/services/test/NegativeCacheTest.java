@@ -0,0 +1,69 @@
+package app.tandv.services.test;
+
+import app.tandv.services.data.catalog.CatalogVersion;
+import app.tandv.services.data.catalog.NegativeCache;
+import app.tandv.services.data.entity.BookEntity;
+import app.tandv.services.data.entity.ContributorEntity;
+import app.tandv.services.metrics.MetricsRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author vic on 2020-10-19
+ */
+class NegativeCacheTest {
+    @Test
+    void testMissIsKeptPerType() {
+        CatalogVersion version = new CatalogVersion();
+        NegativeCache cache = new NegativeCache(version, 10, 60_000L, new MetricsRegistry());
+        cache.missingId(ContributorEntity.class, 1L, version.current());
+        Assertions.assertTrue(cache.isMissingId(ContributorEntity.class, 1L));
+        Assertions.assertFalse(cache.isMissingId(BookEntity.class, 1L));
+        Assertions.assertFalse(cache.isMissingId(ContributorEntity.class, 2L));
+    }
+
+    @Test
+    void testMissReadAtOldVersionIsNotKept() {
+        CatalogVersion version = new CatalogVersion();
+        NegativeCache cache = new NegativeCache(version, 10, 60_000L, new MetricsRegistry());
+        long readAt = version.current();
+        // A write commits while the query runs
+        version.bump();
+        cache.missingId(ContributorEntity.class, 1L, readAt);
+        Assertions.assertFalse(cache.isMissingId(ContributorEntity.class, 1L));
+    }
+
+    @Test
+    void testMissExpires() throws InterruptedException {
+        CatalogVersion version = new CatalogVersion();
+        NegativeCache cache = new NegativeCache(version, 10, 1L, new MetricsRegistry());
+        cache.missingId(ContributorEntity.class, 1L, version.current());
+        Thread.sleep(5L);
+        Assertions.assertFalse(cache.isMissingId(ContributorEntity.class, 1L));
+    }
+
+    @Test
+    void testCreatedInvalidatesId() {
+        CatalogVersion version = new CatalogVersion();
+        NegativeCache cache = new NegativeCache(version, 10, 60_000L, new MetricsRegistry());
+        cache.missingId(ContributorEntity.class, 1L, version.current());
+
+        ContributorEntity created = new ContributorEntity();
+        created.setId(1L);
+        version.bump();
+        cache.created(created);
+        Assertions.assertFalse(cache.isMissingId(ContributorEntity.class, 1L));
+    }
+
+    @Test
+    void testOldestMissIsEvicted() {
+        CatalogVersion version = new CatalogVersion();
+        NegativeCache cache = new NegativeCache(version, 2, 60_000L, new MetricsRegistry());
+        cache.missingId(ContributorEntity.class, 1L, version.current());
+        cache.missingId(ContributorEntity.class, 2L, version.current());
+        cache.missingId(ContributorEntity.class, 3L, version.current());
+        Assertions.assertFalse(cache.isMissingId(ContributorEntity.class, 1L));
+        Assertions.assertTrue(cache.isMissingId(ContributorEntity.class, 2L));
+        Assertions.assertTrue(cache.isMissingId(ContributorEntity.class, 3L));
+    }
+}
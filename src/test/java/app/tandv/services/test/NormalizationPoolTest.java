@@ -0,0 +1,90 @@
+package app.tandv.services.test;
+
+import app.tandv.services.concurrency.NormalizationPool;
+import app.tandv.services.util.StringUtils;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author vic on 2020-10-19
+ */
+class NormalizationPoolTest {
+    @Test
+    void testResultsInInputOrder() throws Exception {
+        List<String> titles = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            titles.add(i % 1000 == 7 ? "   " : "the title number " + i);
+        }
+        try (NormalizationPool pool = new NormalizationPool(4)) {
+            List<NormalizationPool.Normalized<String>> results = pool
+                    .submit(titles, title -> StringUtils.titleCase(title)
+                            .orElseThrow(() -> new IllegalArgumentException("No title [" + title + "]")))
+                    .get(1, TimeUnit.MINUTES);
+
+            Assertions.assertEquals(titles.size(), results.size());
+            for (int i = 0; i < titles.size(); i++) {
+                NormalizationPool.Normalized<String> result = results.get(i);
+                Assertions.assertEquals(i, result.getIndex());
+                if (i % 1000 == 7) {
+                    Assertions.assertFalse(result.isValid());
+                    Assertions.assertNull(result.getValue());
+                    Assertions.assertTrue(result.getError() instanceof IllegalArgumentException);
+                } else {
+                    Assertions.assertTrue(result.isValid());
+                    Assertions.assertEquals("The Title Number " + i, result.getValue());
+                }
+            }
+        }
+    }
+
+    @Test
+    void testBoundedThreads() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger most = new AtomicInteger();
+        List<Integer> inputs = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            inputs.add(i);
+        }
+        try (NormalizationPool pool = new NormalizationPool(2)) {
+            Assertions.assertEquals(2, pool.getThreads());
+            pool.submit(inputs, input -> {
+                most.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                return input;
+            }).get(1, TimeUnit.MINUTES);
+        }
+        Assertions.assertTrue(most.get() <= 2, "At most 2 at once, got " + most.get());
+    }
+
+    @Test
+    void testCompletesInCallingContext() throws Exception {
+        Vertx vertx = Vertx.vertx();
+        try (NormalizationPool pool = new NormalizationPool(2)) {
+            Context context = vertx.getOrCreateContext();
+            CompletableFuture<Boolean> sameContext = new CompletableFuture<>();
+            context.runOnContext(ignored -> pool
+                    .rxNormalize(Arrays.asList("a", "b"), String::toUpperCase)
+                    .subscribe(
+                            results -> sameContext.complete(Vertx.currentContext() == context),
+                            sameContext::completeExceptionally
+                    ));
+            Assertions.assertTrue(sameContext.get(1, TimeUnit.MINUTES));
+        } finally {
+            vertx.close();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package app.tandv.services.test;
+
+import app.tandv.services.concurrency.AimdLimit;
+import app.tandv.services.concurrency.Limit;
+import app.tandv.services.data.repository.QueryExecutor;
+import app.tandv.services.metrics.MetricsRegistry;
+import io.reactivex.Maybe;
+import io.vertx.core.json.JsonObject;
+import io.vertx.reactivex.core.Vertx;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author vic on 2020-10-19
+ */
+class QueryExecutorTest {
+    private static final int POOL_SIZE = 2;
+    private static final long QUERY_MILLIS = 20L;
+
+    private Vertx vertx;
+
+    @BeforeEach
+    void setUp() {
+        this.vertx = Vertx.vertx();
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.vertx.close();
+    }
+
+    @Test
+    void testSamplesUnderLoad() {
+        AtomicInteger mostInFlight = new AtomicInteger();
+        AtomicLong longestRtt = new AtomicLong();
+        Limit limit = new Limit() {
+            @Override
+            public int getLimit() {
+                return Integer.MAX_VALUE;
+            }
+
+            @Override
+            public void onSample(String key, long rtt, int inFlight, boolean dropped) {
+                mostInFlight.accumulateAndGet(inFlight, Math::max);
+                longestRtt.accumulateAndGet(rtt, Math::max);
+            }
+        };
+        this.load(limit, 10);
+
+        // Queries of the same context run side by side, but never more than there are connections
+        Assertions.assertEquals(POOL_SIZE, mostInFlight.get());
+        // The last queries waited for four rounds of the others
+        Assertions.assertTrue(longestRtt.get() >= TimeUnit.MILLISECONDS.toNanos(QUERY_MILLIS * 4), "rtt " + longestRtt);
+    }
+
+    @Test
+    void testAdaptiveLimitFindsKnee() {
+        AimdLimit limit = new AimdLimit(20, 1, 100, 0.9, 2.0);
+        for (int round = 0; round < 3; round++) {
+            this.load(limit, 20);
+        }
+        // Only queueing for the pool, the limit backs off instead of climbing to its maximum
+        Assertions.assertTrue(limit.getLimit() < 20, "limit " + limit.getLimit());
+    }
+
+    private void load(Limit limit, int queries) {
+        QueryExecutor executor = new QueryExecutor(
+                this.vertx,
+                new MetricsRegistry(),
+                limit,
+                new JsonObject().put("db.pool.size", POOL_SIZE)
+        );
+        try {
+            List<Maybe<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < queries; i++) {
+                int query = i;
+                results.add(executor.execute("query", () -> {
+                    sleep();
+                    return query;
+                }));
+            }
+            Assertions.assertEquals(queries, (long) Maybe.merge(results).count().blockingGet());
+        } finally {
+            executor.close();
+        }
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(QUERY_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package app.tandv.services.test;
+
+import app.tandv.services.handler.RequestContext;
+import app.tandv.services.metrics.MetricsRegistry;
+import app.tandv.services.metrics.RouteMetrics;
+import app.tandv.services.util.RequestIds;
+import io.vertx.core.http.HttpMethod;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * @author vic on 2020-10-19
+ */
+class RequestContextTest {
+    private static final Pattern UUID_V4 =
+            Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-4[0-9a-f]{3}-[89ab][0-9a-f]{3}-[0-9a-f]{12}");
+    private static final int ITERATIONS = 100_000;
+    // The only allocation left per request should be the id string
+    private static final long MAX_BYTES_PER_REQUEST = 128L;
+
+    @Test
+    void testRequestIdsFormat() {
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 10_000; i++) {
+            String id = RequestIds.next();
+            Assertions.assertTrue(UUID_V4.matcher(id).matches(), id);
+            Assertions.assertEquals(4, UUID.fromString(id).version());
+            ids.add(id);
+        }
+        Assertions.assertEquals(10_000, ids.size());
+    }
+
+    @Test
+    void testContextIsReused() {
+        RouteMetrics route = new RouteMetrics(new MetricsRegistry(), "/test");
+        RequestContext first = RequestContext.acquire(route);
+        first.respond(201, "content");
+        first.release();
+
+        RequestContext second = RequestContext.acquire(route);
+        Assertions.assertSame(first, second);
+        Assertions.assertEquals(200, second.getStatus());
+        Assertions.assertFalse(second.hasContent());
+        Assertions.assertSame(route, second.getRoute());
+        second.release();
+    }
+
+    @Test
+    void testAllocationPerRequest() {
+        Assumptions.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assumptions.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        RouteMetrics route = new RouteMetrics(new MetricsRegistry(), "/test");
+        // Warm up, so that the pool, the histograms and the JIT are all settled
+        this.simulateRequests(route, ITERATIONS);
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        this.simulateRequests(route, ITERATIONS);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        long perRequest = allocated / ITERATIONS;
+        Assertions.assertTrue(perRequest <= MAX_BYTES_PER_REQUEST, "Allocated " + perRequest + " bytes per request");
+    }
+
+    private void simulateRequests(RouteMetrics route, int count) {
+        for (int i = 0; i < count; i++) {
+            RequestContext request = RequestContext.acquire(route);
+            request.respond(200, "[]");
+            route.timer(HttpMethod.GET, request.getStatus()).record(System.nanoTime() - request.getStartNanos());
+            request.release();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package app.tandv.services.test;
+
+import app.tandv.services.util.LegacyStringUtils;
+import app.tandv.services.util.Sha256;
+import app.tandv.services.util.StringUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author vic on 2020-10-19
+ */
+class Sha256Test {
+    private static final int THREADS = 16;
+    private static final int INPUTS = 2_000;
+
+    @Test
+    void testSameAsMessageDigest() throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        Random random = new Random(3);
+        for (int i = 0; i < INPUTS; i++) {
+            String input = randomString(random);
+            byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+            String expected = hex(digest.digest(bytes));
+            Assertions.assertEquals(expected, Sha256.hex(input), input);
+            Assertions.assertEquals(expected, Sha256.hex(new StringBuilder(input)), input);
+            Assertions.assertEquals(expected, Sha256.hex(bytes, 0, bytes.length), input);
+
+            byte[] padded = new byte[bytes.length + 7];
+            System.arraycopy(bytes, 0, padded, 3, bytes.length);
+            Assertions.assertEquals(expected, Sha256.hex(padded, 3, bytes.length), input);
+        }
+        // Unpaired surrogates are replaced, as String does
+        Assertions.assertEquals(Sha256.hex("?a?"), Sha256.hex("\uDC00a\uD800"));
+    }
+
+    @Test
+    void testConcurrentHashing() throws Exception {
+        Random random = new Random(5);
+        List<String> inputs = new ArrayList<>(INPUTS);
+        List<String> expected = new ArrayList<>(INPUTS);
+        for (int i = 0; i < INPUTS; i++) {
+            String input = randomString(random) + " " + i;
+            inputs.add(input);
+            expected.add(LegacyStringUtils.sha256(input).orElseThrow(AssertionError::new));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                int offset = thread * 131;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    int checked = 0;
+                    for (int round = 0; round < 5; round++) {
+                        for (int i = 0; i < INPUTS; i++) {
+                            int index = (offset + i) % INPUTS;
+                            String actual = StringUtils.sha256(inputs.get(index)).orElseThrow(AssertionError::new);
+                            Assertions.assertEquals(expected.get(index), actual, inputs.get(index));
+                            checked++;
+                        }
+                    }
+                    return checked;
+                }));
+            }
+            start.countDown();
+            for (Future<Integer> result : results) {
+                Assertions.assertEquals(5 * INPUTS, result.get(1, TimeUnit.MINUTES));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static String randomString(Random random) {
+        StringBuilder string = new StringBuilder();
+        int length = random.nextInt(40);
+        for (int i = 0; i < length; i++) {
+            switch (random.nextInt(6)) {
+                case 0:
+                    string.append((char) ('a' + random.nextInt(26)));
+                    break;
+                case 1:
+                    string.append(' ');
+                    break;
+                case 2:
+                    string.append((char) (0x80 + random.nextInt(0x780)));
+                    break;
+                case 3:
+                    string.append((char) (0x800 + random.nextInt(0xF000)));
+                    break;
+                case 4:
+                    string.appendCodePoint(0x10000 + random.nextInt(0x10000));
+                    break;
+                default:
+                    string.append((char) ('A' + random.nextInt(26)));
+            }
+        }
+        return string.toString();
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02X", b));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,136 @@
+package app.tandv.services.test;
+
+import app.tandv.services.util.LegacyStringUtils;
+import app.tandv.services.util.StringUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Checks the string normalization gives the same results as {@link LegacyStringUtils} on random titles and names,
+ * including the odd cases of both: characters whose case changes their length, supplementary code points, repeated,
+ * leading and trailing spaces.
+ *
+ * @author vic on 2020-10-19
+ */
+class StringUtilsDifferentialTest {
+    private static final String[] WORDS = {
+            "the", "The", "THE", "a", "A", "an", "of", "Of", "is", "in", "to",
+            "sir", "Dr.", "PhD", "jr", "Sr.", "mrs", "Lord", "do", "doc",
+            "i", "ii", "IV", "ix", "MCMXCIV", "mmm", "mmmm", "vx", "lil", "Civil", "mix", "dim", "C3PO",
+            "stephen", "KING", "McDonald", "o'brien", "DiCaprio", "JRR", "tolkien", "ursula", "K.", "Le", "Guin",
+            "josé", "ÉMILE", "Zoë", "Straße", "İstanbul", "ıı", "ǅemal", "ǆ", "ŉ", "Øresund", "ÿ",
+            "ΣΟΦΙΑ", "Οδύσσεια", "Достоевский", "東京", "𝐀lpha", "𐐀𐐁", "\uD800", "\uDC00x", "İ",
+            "77th", "1984", "2001:", "#1", "-", "!!!", "'salem's", "it,", "\"the\"", "a\tb", "x y", "",
+    };
+
+    @Test
+    void testSameAsLegacy() {
+        Random random = new Random(7);
+        for (int i = 0; i < 20_000; i++) {
+            String input = randomInput(random);
+            compare(input, StringUtils::titleCase, LegacyStringUtils::titleCase);
+            compare(input, s -> StringUtils.titleCase(s, true), s -> LegacyStringUtils.titleCase(s, true));
+            compare(input, StringUtils::titleForOrdering, LegacyStringUtils::titleForOrdering);
+            compare(input, StringUtils::contributorForOrdering, LegacyStringUtils::contributorForOrdering);
+            compare(input, StringUtils::sha256, LegacyStringUtils::sha256);
+        }
+    }
+
+    @Test
+    void testSameAsLegacyWithLocaleCasing() {
+        Locale locale = Locale.getDefault();
+        try {
+            for (String language : new String[]{"tr", "lt", "de"}) {
+                Locale.setDefault(new Locale(language));
+                Random random = new Random(11);
+                for (int i = 0; i < 2_000; i++) {
+                    String input = randomInput(random);
+                    compare(input, StringUtils::titleCase, LegacyStringUtils::titleCase);
+                    compare(input, s -> StringUtils.titleCase(s, true), s -> LegacyStringUtils.titleCase(s, true));
+                }
+            }
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    @Test
+    void testWordListsSameAsLegacy() {
+        // Every short word out of the letters of the articles and honorifics, and the long ones with a letter changed
+        String letters = "adehijlmnoprst";
+        List<String> words = new ArrayList<>();
+        words.add("");
+        for (int i = 0; i < words.size(); i++) {
+            String word = words.get(i);
+            for (int j = 0; word.length() < 3 && j < letters.length(); j++) {
+                words.add(word + letters.charAt(j));
+            }
+        }
+        for (String word : new String[]{"sire", "miss", "lord", "dphil"}) {
+            for (int i = 0; i < word.length(); i++) {
+                for (int j = 0; j < letters.length(); j++) {
+                    words.add(word.substring(0, i) + letters.charAt(j) + word.substring(i + 1));
+                }
+            }
+            words.add(word + "s");
+        }
+        for (String word : words) {
+            for (String input : new String[]{word, "x " + word, word + " x", word.toUpperCase(Locale.ROOT) + " x"}) {
+                compare(input, StringUtils::titleCase, LegacyStringUtils::titleCase);
+                compare(input, StringUtils::titleForOrdering, LegacyStringUtils::titleForOrdering);
+                compare(input, StringUtils::contributorForOrdering, LegacyStringUtils::contributorForOrdering);
+            }
+        }
+    }
+
+    @Test
+    void testNothingLeft() {
+        // These used to fail with an IndexOutOfBoundsException
+        Assertions.assertFalse(StringUtils.titleCase("   ").isPresent());
+        Assertions.assertFalse(StringUtils.contributorForOrdering("Dr. III").isPresent());
+        Assertions.assertFalse(StringUtils.contributorForOrdering("!!!").isPresent());
+        Assertions.assertEquals(Optional.of(""), StringUtils.titleForOrdering("   "));
+    }
+
+    private static String randomInput(Random random) {
+        StringBuilder input = new StringBuilder();
+        int words = random.nextInt(6);
+        for (int i = 0; i < words || input.length() == 0; i++) {
+            int spaces = random.nextInt(10) == 0 ? random.nextInt(3) : 1;
+            for (int j = 0; i > 0 && j < spaces; j++) {
+                input.append(' ');
+            }
+            input.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        if (random.nextInt(8) == 0) {
+            input.insert(0, ' ');
+        }
+        if (random.nextInt(8) == 0) {
+            input.append(' ');
+        }
+        return input.toString();
+    }
+
+    private static void compare(
+            String input,
+            Function<String, Optional<String>> actual,
+            Function<String, Optional<String>> expected
+    ) {
+        Optional<String> legacy;
+        try {
+            legacy = expected.apply(input);
+        } catch (IndexOutOfBoundsException exception) {
+            // Nothing left of the input, now reported as empty
+            Assertions.assertEquals(Optional.empty(), actual.apply(input), input);
+            return;
+        }
+        Assertions.assertEquals(legacy, actual.apply(input), input);
+    }
+}
@@ -144,6 +144,7 @@ class StringUtilsTest {
         };
         for (String roman : romans) {
             Assertions.assertTrue(StringUtils.ROMAN_NUMERAL.matcher(roman).matches(), roman);
+            Assertions.assertTrue(StringUtils.isRomanNumeral(roman), roman);
         }
         String[] noRomans = {
                 "iiii",
@@ -156,6 +157,29 @@ class StringUtilsTest {
         };
         for (String noRoman : noRomans) {
             Assertions.assertFalse(StringUtils.ROMAN_NUMERAL.matcher(noRoman).matches(), noRoman);
+            Assertions.assertFalse(StringUtils.isRomanNumeral(noRoman), noRoman);
+        }
+    }
+
+    @Test
+    void testRomanNumeralsSameAsPattern() {
+        // Every word of up to 7 letters out of the roman ones plus another, with the range check in the middle of them
+        char[] letters = {'m', 'd', 'c', 'l', 'x', 'v', 'i', 'a'};
+        char[] word = new char[7];
+        for (int length = 0; length <= word.length; length++) {
+            int combinations = (int) Math.pow(letters.length, length);
+            for (int combination = 0; combination < combinations; combination++) {
+                for (int ind = 0, rest = combination; ind < length; ind++, rest /= letters.length) {
+                    word[ind] = letters[rest % letters.length];
+                }
+                String candidate = new String(word, 0, length);
+                String padded = "x " + candidate + " i";
+                Assertions.assertEquals(
+                        StringUtils.ROMAN_NUMERAL.matcher(candidate).matches(),
+                        StringUtils.isRomanNumeral(padded, 2, 2 + length),
+                        candidate
+                );
+            }
         }
     }
 }
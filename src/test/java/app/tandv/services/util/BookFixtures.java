@@ -0,0 +1,45 @@
+package app.tandv.services.util;
+
+import app.tandv.services.data.entity.BookEntity;
+import app.tandv.services.data.entity.BookFormat;
+import app.tandv.services.data.entity.ContributorEntity;
+import app.tandv.services.data.entity.ContributorType;
+import app.tandv.services.util.collections.Pair;
+
+/**
+ * Books and contributors built in memory, with their ids set, for the tests of the indexes and caches.
+ *
+ * @author vic on 2020-10-19
+ */
+public final class BookFixtures {
+    private BookFixtures() {
+    }
+
+    /**
+     * @param id            of the book
+     * @param contributions to add to the book
+     * @return a paperback titled after its id, to be completed with the fluent setters
+     */
+    @SafeVarargs
+    public static BookEntity book(long id, Pair<ContributorEntity, ContributorType>... contributions) {
+        BookEntity book = new BookEntity()
+                .withTitle("Book " + id)
+                .withFormat(BookFormat.PAPERBACK);
+        book.setId(id);
+        for (Pair<ContributorEntity, ContributorType> contribution : contributions) {
+            book.addContributor(contribution);
+        }
+        return book;
+    }
+
+    /**
+     * @param id   of the contributor
+     * @param type of the contribution
+     * @return a contributor named after its id, with the type of its contribution to a book
+     */
+    public static Pair<ContributorEntity, ContributorType> contribution(long id, ContributorType type) {
+        ContributorEntity contributor = new ContributorEntity().withName("Contributor " + id);
+        contributor.setId(id);
+        return new Pair<>(contributor, type);
+    }
+}
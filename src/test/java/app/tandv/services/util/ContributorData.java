@@ -19,7 +19,7 @@ public final class ContributorData {
     private final String expectedSha256;
     public final boolean expectsBooks;
 
-    private int id;
+    private long id;
 
     public ContributorData(JsonObject fromJsonObject) {
         Assertions.assertTrue(fromJsonObject.containsKey("input"));
@@ -35,11 +35,11 @@ public final class ContributorData {
         this.expectsBooks = fromJsonObject.getBoolean("withBooks");
     }
 
-    public int getId() {
+    public long getId() {
         return id;
     }
 
-    public void setId(int id) {
+    public void setId(long id) {
         this.id = id;
     }
 